@@ -21,6 +21,7 @@ import be.hyperrail.android.logging.HyperRailLogWriter;
 import be.hyperrail.android.util.ReviewDialogProvider;
 import be.hyperrail.opentransportdata.OpenTransportApi;
 import be.hyperrail.opentransportdata.be.IrailDataProvider;
+import be.hyperrail.opentransportdata.composite.ResultCacheConfiguration;
 
 /**
  * The application base class
@@ -38,7 +39,7 @@ public class Launcher extends android.app.Application {
         }
         HyperRailLog.initLogWriter(logger);
         // Setup the factory as soon as the app is created.
-        OpenTransportApi.init(getApplicationContext(), new IrailDataProvider(), logger);
+        OpenTransportApi.init(getApplicationContext(), new IrailDataProvider(), logger, new ResultCacheConfiguration());
         // Set up Crashlytics, disabled for debug builds
         FirebaseCrashlytics.getInstance().setCrashlyticsCollectionEnabled(true);
         ReviewDialogProvider.init(this);
@@ -18,6 +18,7 @@ import android.content.pm.PackageManager;
 import android.os.Bundle;
 import android.view.View;
 import android.widget.TextView;
+import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AlertDialog;
@@ -35,14 +36,18 @@ import com.google.android.gms.maps.model.MarkerOptions;
 
 import org.joda.time.LocalTime;
 
+import java.io.IOException;
+
 import be.hyperrail.android.R;
 import be.hyperrail.android.activities.searchresult.LiveboardActivity;
+import be.hyperrail.android.logging.HyperRailLog;
 import be.hyperrail.opentransportdata.OpenTransportApi;
 import be.hyperrail.opentransportdata.common.contracts.QueryTimeDefinition;
 import be.hyperrail.opentransportdata.common.models.LiveboardType;
 import be.hyperrail.opentransportdata.common.models.StopLocation;
 import be.hyperrail.opentransportdata.common.models.StopLocationFacilities;
 import be.hyperrail.opentransportdata.common.requests.LiveboardRequest;
+import be.hyperrail.opentransportdata.common.serialization.ModelCodec;
 
 public class StationActivity extends AppCompatActivity implements OnMapReadyCallback {
 
@@ -50,7 +55,7 @@ public class StationActivity extends AppCompatActivity implements OnMapReadyCall
 
     public static Intent createIntent(Context context, StopLocation station) {
         Intent i = new Intent(context, StationActivity.class);
-        i.putExtra("station", station);
+        i.putExtra("station", new ModelCodec().encodeStopLocation(station));
         return i;
     }
 
@@ -65,7 +70,18 @@ public class StationActivity extends AppCompatActivity implements OnMapReadyCall
             getSupportActionBar().setDisplayHomeAsUpEnabled(true);
         }
 
-        mStation = (StopLocation) getIntent().getSerializableExtra("station");
+        try {
+            mStation = new ModelCodec().decodeStopLocation(getIntent().getByteArrayExtra("station"));
+        } catch (IOException e) {
+            // Intents from shortcuts can outlive the stations they refer to
+            HyperRailLog.getLogger(StationActivity.class).logException(e);
+            mStation = null;
+        }
+        if (mStation == null) {
+            Toast.makeText(this, R.string.station_not_found, Toast.LENGTH_LONG).show();
+            finish();
+            return;
+        }
 
         findViewById(R.id.floating_action_button).setOnClickListener(
                 v -> startActivity(LiveboardActivity.createIntent(StationActivity.this,
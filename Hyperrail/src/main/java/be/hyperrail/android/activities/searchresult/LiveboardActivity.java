@@ -14,8 +14,10 @@ import android.os.Bundle;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.View.OnClickListener;
+import android.view.ViewGroup;
 import android.widget.Toast;
 
+import androidx.annotation.NonNull;
 import androidx.fragment.app.Fragment;
 import androidx.fragment.app.FragmentManager;
 import androidx.fragment.app.FragmentPagerAdapter;
@@ -25,6 +27,8 @@ import com.google.android.material.snackbar.Snackbar;
 
 import org.joda.time.DateTime;
 
+import java.io.IOException;
+
 import be.hyperrail.android.R;
 import be.hyperrail.android.R.id;
 import be.hyperrail.android.R.layout;
@@ -33,12 +37,14 @@ import be.hyperrail.android.R.string;
 import be.hyperrail.android.activities.MainActivity;
 import be.hyperrail.android.activities.StationActivity;
 import be.hyperrail.android.fragments.searchresult.LiveboardFragment;
+import be.hyperrail.android.logging.HyperRailLog;
 import be.hyperrail.android.persistence.Suggestion;
 import be.hyperrail.android.persistence.SuggestionType;
 import be.hyperrail.android.util.ShortcutHelper;
 import be.hyperrail.opentransportdata.OpenTransportApi;
 import be.hyperrail.opentransportdata.common.exceptions.StopLocationNotResolvedException;
 import be.hyperrail.opentransportdata.common.requests.LiveboardRequest;
+import be.hyperrail.opentransportdata.common.serialization.ModelCodec;
 
 import static be.hyperrail.opentransportdata.common.contracts.QueryTimeDefinition.EQUAL_OR_LATER;
 import static be.hyperrail.opentransportdata.common.models.LiveboardType.ARRIVALS;
@@ -56,7 +62,7 @@ public class LiveboardActivity extends ResultActivity {
 
     public static Intent createIntent(Context context, LiveboardRequest request) {
         Intent i = new Intent(context, LiveboardActivity.class);
-        i.putExtra("request", request);
+        i.putExtra("request", new ModelCodec().encodeLiveboardRequest(request));
         return i;
     }
 
@@ -84,7 +90,12 @@ public class LiveboardActivity extends ResultActivity {
                 return;
             }
         } else if (getIntent().hasExtra("request")) {
-            this.mRequest = (LiveboardRequest) getIntent().getSerializableExtra("request");
+            try {
+                this.mRequest = new ModelCodec().decodeLiveboardRequest(getIntent().getByteArrayExtra("request"));
+            } catch (IOException e) {
+                HyperRailLog.getLogger(LiveboardActivity.class).logException(e);
+                this.mRequest = null;
+            }
         }
 
         if (mRequest == null) {
@@ -222,6 +233,19 @@ public class LiveboardActivity extends ResultActivity {
             return fragments[i];
         }
 
+        @NonNull
+        @Override
+        public Object instantiateItem(@NonNull ViewGroup container, int position) {
+            // Fragments which are restored after the activity was recreated aren't created through getItem
+            LiveboardFragment fragment = (LiveboardFragment) super.instantiateItem(container, position);
+            fragments[position] = fragment;
+            if (fragment.getRequest() == null) {
+                // The fragment could not restore its request
+                fragment.setRequest(mRequest.withLiveboardType(position == 0 ? DEPARTURES : ARRIVALS));
+            }
+            return fragment;
+        }
+
         @Override
         public int getCount() {
             return 2;
@@ -18,8 +18,11 @@ import com.google.android.material.snackbar.Snackbar;
 
 import org.joda.time.DateTime;
 
+import java.io.IOException;
+
 import be.hyperrail.android.R;
 import be.hyperrail.android.fragments.searchresult.RoutesFragment;
+import be.hyperrail.android.logging.HyperRailLog;
 import be.hyperrail.android.persistence.Suggestion;
 import be.hyperrail.android.util.OnDateTimeSetListener;
 import be.hyperrail.android.util.ShortcutHelper;
@@ -28,6 +31,7 @@ import be.hyperrail.opentransportdata.common.contracts.QueryTimeDefinition;
 import be.hyperrail.opentransportdata.common.exceptions.StopLocationNotResolvedException;
 import be.hyperrail.opentransportdata.common.models.StopLocation;
 import be.hyperrail.opentransportdata.common.requests.RoutePlanningRequest;
+import be.hyperrail.opentransportdata.common.serialization.ModelCodec;
 
 import static be.hyperrail.android.persistence.SuggestionType.FAVORITE;
 
@@ -38,7 +42,7 @@ public class RouteActivity extends ResultActivity implements OnDateTimeSetListen
 
     public static Intent createIntent(Context context, @NonNull RoutePlanningRequest request) {
         Intent i = new Intent(context, RouteActivity.class);
-        i.putExtra("request", request);
+        i.putExtra("request", new ModelCodec().encodeRoutePlanningRequest(request));
         return i;
     }
 
@@ -71,7 +75,12 @@ public class RouteActivity extends ResultActivity implements OnDateTimeSetListen
             }
             this.mRequest = new RoutePlanningRequest(origin, destination, QueryTimeDefinition.EQUAL_OR_LATER, null);
         } else {
-            this.mRequest = (RoutePlanningRequest) getIntent().getSerializableExtra("request");
+            try {
+                this.mRequest = new ModelCodec().decodeRoutePlanningRequest(getIntent().getByteArrayExtra("request"));
+            } catch (IOException e) {
+                HyperRailLog.getLogger(RouteActivity.class).logException(e);
+                this.mRequest = null;
+            }
         }
 
         if (this.mRequest == null) {
@@ -10,15 +10,20 @@ package be.hyperrail.android.activities.searchresult;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Bundle;
+import android.widget.Toast;
 import androidx.fragment.app.Fragment;
 
 import org.joda.time.DateTime;
 import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
 
+import java.io.IOException;
+
 import be.hyperrail.android.R;
 import be.hyperrail.android.fragments.searchresult.RouteFragment;
+import be.hyperrail.android.logging.HyperRailLog;
 import be.hyperrail.opentransportdata.common.models.Route;
+import be.hyperrail.opentransportdata.common.serialization.ModelCodec;
 
 /**
  * Activity to show one specific route
@@ -27,14 +32,25 @@ public class RouteDetailActivity extends ResultActivity {
 
     public static Intent createIntent(Context c, Route r) {
         Intent i = new Intent(c, RouteDetailActivity.class);
-        i.putExtra("route", r);
+        i.putExtra("route", new ModelCodec().encodeRoute(r));
         return i;
     }
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
-        Route route = (Route) getIntent().getSerializableExtra("route");
+        Route route;
+        try {
+            route = new ModelCodec().decodeRoute(getIntent().getByteArrayExtra("route"));
+        } catch (IOException e) {
+            HyperRailLog.getLogger(RouteDetailActivity.class).logException(e);
+            route = null;
+        }
         super.onCreate(savedInstanceState);
+        if (route == null) {
+            Toast.makeText(this, R.string.error_general, Toast.LENGTH_LONG).show();
+            finish();
+            return;
+        }
 
         setTitle(route.getDepartureStation().getLocalizedName() + " - " + route.getArrivalStation().getLocalizedName());
 
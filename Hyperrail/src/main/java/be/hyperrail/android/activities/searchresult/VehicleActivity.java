@@ -10,11 +10,14 @@ import android.content.Context;
 import android.content.Intent;
 import android.os.Bundle;
 import android.view.MenuItem;
+import android.widget.Toast;
 
 import com.google.android.material.snackbar.Snackbar;
 
 import org.joda.time.DateTime;
 
+import java.io.IOException;
+
 import be.hyperrail.android.R;
 import be.hyperrail.android.fragments.searchresult.VehicleFragment;
 import be.hyperrail.android.logging.HyperRailLog;
@@ -25,6 +28,7 @@ import be.hyperrail.opentransportdata.OpenTransportApi;
 import be.hyperrail.opentransportdata.be.irail.IrailVehicleInfo;
 import be.hyperrail.opentransportdata.common.requests.RequestType;
 import be.hyperrail.opentransportdata.common.requests.VehicleRequest;
+import be.hyperrail.opentransportdata.common.serialization.ModelCodec;
 
 /**
  * Activity to show a train
@@ -37,7 +41,7 @@ public class VehicleActivity extends ResultActivity {
 
     public static Intent createIntent(Context context, VehicleRequest request) {
         Intent i = new Intent(context, VehicleActivity.class);
-        i.putExtra("request", request);
+        i.putExtra("request", new ModelCodec().encodeVehicleRequest(request));
         return i;
     }
 
@@ -54,7 +58,17 @@ public class VehicleActivity extends ResultActivity {
         if (getIntent().hasExtra("shortcut")) {
             mRequest = new VehicleRequest(getIntent().getStringExtra("id"), null);
         } else {
-            mRequest = (VehicleRequest) getIntent().getSerializableExtra("request");
+            try {
+                mRequest = new ModelCodec().decodeVehicleRequest(getIntent().getByteArrayExtra("request"));
+            } catch (IOException e) {
+                log.logException(e);
+            }
+        }
+        if (mRequest == null) {
+            super.onCreate(savedInstanceState);
+            Toast.makeText(this, R.string.error_general, Toast.LENGTH_LONG).show();
+            finish();
+            return;
         }
         log.setDebugVariable("vehicleId", mRequest.getVehicleId());
 
@@ -22,11 +22,15 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.core.util.ObjectsCompat;
 import androidx.recyclerview.widget.RecyclerView;
 
 import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
 
+import java.util.Arrays;
+import java.util.List;
+
 import be.hyperrail.android.R;
 import be.hyperrail.opentransportdata.common.models.Disturbance;
 
@@ -37,6 +41,24 @@ public class DisturbanceCardAdapter extends RecyclerView.Adapter<RecyclerView.Vi
 
     private static final int VIEW_TYPE_DISTURBANCE = 0;
     private static final int VIEW_TYPE_NO_RESULTS = 1;
+    private static final long ID_NO_RESULTS = Long.MIN_VALUE;
+
+    private static final ListDiffer.ItemComparator<Disturbance> DISTURBANCE_COMPARATOR = new ListDiffer.ItemComparator<Disturbance>() {
+        @Override
+        public boolean isSameItem(@NonNull Disturbance oldItem, @NonNull Disturbance newItem) {
+            return getStableId(oldItem) == getStableId(newItem);
+        }
+
+        @Override
+        public boolean hasSameContents(@NonNull Disturbance oldItem, @NonNull Disturbance newItem) {
+            return oldItem.getType() == newItem.getType()
+                    && ObjectsCompat.equals(oldItem.getTitle(), newItem.getTitle())
+                    && ObjectsCompat.equals(oldItem.getDescription(), newItem.getDescription())
+                    && ObjectsCompat.equals(oldItem.getTime(), newItem.getTime());
+        }
+    };
+
+    private final ListDiffer<Disturbance> mDiffer = new ListDiffer<>(this, DISTURBANCE_COMPARATOR);
     private final Context context;
     private Disturbance[] disturbances;
     private OnRecyclerItemClickListener<Disturbance> listener;
@@ -44,11 +66,32 @@ public class DisturbanceCardAdapter extends RecyclerView.Adapter<RecyclerView.Vi
     public DisturbanceCardAdapter(Context context, Disturbance[] disturbances) {
         this.context = context;
         this.disturbances = disturbances;
+        setHasStableIds(true);
     }
 
-    public void updateDisturbances(Disturbance[] disturbances) {
-        this.disturbances = disturbances;
-        super.notifyDataSetChanged();
+    /**
+     * Show new disturbances. Disturbances which didn't change keep their view, including whether their details are expanded.
+     */
+    public void updateDisturbances(final Disturbance[] disturbances) {
+        // An empty list replaces the placeholder, or is replaced by it, which is handled as a full change by the differ
+        mDiffer.submit(asList(this.disturbances), asList(disturbances), list -> this.disturbances = disturbances);
+    }
+
+    private static List<Disturbance> asList(Disturbance[] disturbances) {
+        return disturbances == null ? null : Arrays.asList(disturbances);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        if (getItemViewType(position) == VIEW_TYPE_NO_RESULTS) {
+            return ID_NO_RESULTS;
+        }
+        return getStableId(disturbances[position]);
+    }
+
+    private static long getStableId(Disturbance disturbance) {
+        // The id of a disturbance is its position in the response, which changes when other disturbances are added or removed
+        return StableIds.of("disturbance", disturbance.getLink(), disturbance.getTitle());
     }
 
     @Override
@@ -0,0 +1,209 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.android.adapter;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListUpdateCallback;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Replace the list shown by a recyclerview adapter, and notify the adapter about the items which changed instead of the entire list.
+ * <p>
+ * The changes are calculated on a background thread, while the adapter keeps showing its current list. The new list is applied on the
+ * main thread, right before the adapter is notified. When another list is submitted in the meantime, the older list is never applied.
+ *
+ * @param <T> The type of the items
+ */
+public class ListDiffer<T> {
+
+    /**
+     * Compare the items of the shown list and the new list.
+     */
+    public interface ItemComparator<T> {
+        /**
+         * @return true if both items represent the same thing, e.g. the same departure
+         */
+        boolean isSameItem(@NonNull T oldItem, @NonNull T newItem);
+
+        /**
+         * @return true if both items would be shown in the same way, e.g. with the same delay. Only called for the same items.
+         */
+        boolean hasSameContents(@NonNull T oldItem, @NonNull T newItem);
+    }
+
+    /**
+     * Replace the shown list in the adapter.
+     */
+    public interface ListApplier<T> {
+        void apply(@Nullable List<T> list);
+    }
+
+    /**
+     * The position in the adapter of the first item in the list.
+     */
+    public interface PositionOffset {
+        int getOffset();
+    }
+
+    private static ExecutorService sDiffExecutor;
+
+    private final ItemComparator<T> mComparator;
+    private final ListUpdateCallback mUpdateCallback;
+    private final Runnable mReplacedCallback;
+    private final Executor mMainThreadExecutor;
+    private final Executor mDiffExecutor;
+
+    // Only accessed on the main thread
+    private int mGeneration;
+    private boolean mPending;
+
+    public ListDiffer(RecyclerView.Adapter<?> adapter, ItemComparator<T> comparator) {
+        this(adapter, comparator, () -> 0);
+    }
+
+    public ListDiffer(RecyclerView.Adapter<?> adapter, ItemComparator<T> comparator, PositionOffset offset) {
+        this(comparator, new AdapterUpdateCallback(adapter, offset), adapter::notifyDataSetChanged,
+                new Handler(Looper.getMainLooper())::post, getDiffExecutor());
+    }
+
+    /**
+     * @param updateCallback     Notified about the items which changed
+     * @param replacedCallback   Notified when the entire list changed
+     * @param mainThreadExecutor Runs tasks on the main thread
+     * @param diffExecutor       Compares lists in the background
+     */
+    ListDiffer(ItemComparator<T> comparator, ListUpdateCallback updateCallback, Runnable replacedCallback,
+               Executor mainThreadExecutor, Executor diffExecutor) {
+        mComparator = comparator;
+        mUpdateCallback = updateCallback;
+        mReplacedCallback = replacedCallback;
+        mMainThreadExecutor = mainThreadExecutor;
+        mDiffExecutor = diffExecutor;
+    }
+
+    /**
+     * Show a new list. Should be called on the main thread.
+     *
+     * @param shownList The list which is shown by the adapter. This list should not be modified until the new list is applied.
+     * @param newList   The list to show
+     * @param applier   Replaces the shown list with the new list in the adapter
+     */
+    public void submit(@Nullable final List<T> shownList, @Nullable final List<T> newList, final ListApplier<T> applier) {
+        final int generation = ++mGeneration;
+        mPending = true;
+
+        if (shownList == null || newList == null || shownList.isEmpty() || newList.isEmpty()) {
+            // Nothing to compare. The change is still posted, as this might be called while the recyclerview is scrolling.
+            mMainThreadExecutor.execute(() -> {
+                if (generation == mGeneration) {
+                    mPending = false;
+                    applier.apply(newList);
+                    mReplacedCallback.run();
+                }
+            });
+            return;
+        }
+
+        mDiffExecutor.execute(() -> {
+            final DiffUtil.DiffResult result = DiffUtil.calculateDiff(new Callback(shownList, newList), false);
+            mMainThreadExecutor.execute(() -> {
+                if (generation == mGeneration) {
+                    mPending = false;
+                    applier.apply(newList);
+                    result.dispatchUpdatesTo(mUpdateCallback);
+                }
+            });
+        });
+    }
+
+    /**
+     * @return true if a submitted list hasn't been applied yet. Should be called on the main thread.
+     */
+    public boolean isPending() {
+        return mPending;
+    }
+
+    private static synchronized ExecutorService getDiffExecutor() {
+        if (sDiffExecutor == null) {
+            sDiffExecutor = Executors.newSingleThreadExecutor();
+        }
+        return sDiffExecutor;
+    }
+
+    private class Callback extends DiffUtil.Callback {
+        private final List<T> mOldList;
+        private final List<T> mNewList;
+
+        Callback(List<T> oldList, List<T> newList) {
+            mOldList = oldList;
+            mNewList = newList;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOldList.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNewList.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return mComparator.isSameItem(mOldList.get(oldItemPosition), mNewList.get(newItemPosition));
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            return mComparator.hasSameContents(mOldList.get(oldItemPosition), mNewList.get(newItemPosition));
+        }
+    }
+
+    /**
+     * Notify the adapter about changes in its list, which might not start at the first position of the adapter.
+     */
+    private static class AdapterUpdateCallback implements ListUpdateCallback {
+        private final RecyclerView.Adapter<?> mAdapter;
+        private final PositionOffset mOffset;
+
+        AdapterUpdateCallback(RecyclerView.Adapter<?> adapter, PositionOffset offset) {
+            mAdapter = adapter;
+            mOffset = offset;
+        }
+
+        @Override
+        public void onInserted(int position, int count) {
+            mAdapter.notifyItemRangeInserted(mOffset.getOffset() + position, count);
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            mAdapter.notifyItemRangeRemoved(mOffset.getOffset() + position, count);
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            mAdapter.notifyItemMoved(mOffset.getOffset() + fromPosition, mOffset.getOffset() + toPosition);
+        }
+
+        @Override
+        public void onChanged(int position, int count, Object payload) {
+            mAdapter.notifyItemRangeChanged(mOffset.getOffset() + position, count, payload);
+        }
+    }
+}
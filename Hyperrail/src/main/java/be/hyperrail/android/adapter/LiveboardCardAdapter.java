@@ -15,6 +15,7 @@ package be.hyperrail.android.adapter;
 import android.app.Activity;
 import android.content.Context;
 import android.preference.PreferenceManager;
+import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -24,14 +25,21 @@ import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import be.hyperrail.android.R;
 import be.hyperrail.android.infiniteScrolling.InfiniteScrollingAdapter;
 import be.hyperrail.android.infiniteScrolling.InfiniteScrollingDataSource;
 import be.hyperrail.android.viewgroup.LiveboardStopLayout;
+import be.hyperrail.opentransportdata.common.contracts.DelayChange;
 import be.hyperrail.opentransportdata.common.models.Liveboard;
 import be.hyperrail.opentransportdata.common.models.VehicleStop;
 import be.hyperrail.opentransportdata.common.models.VehicleStopType;
+import be.hyperrail.opentransportdata.common.models.implementation.LiveboardImpl;
+import be.hyperrail.opentransportdata.common.models.implementation.VehicleStopImpl;
+import be.hyperrail.opentransportdata.util.SortedChunkList;
 
 import static be.hyperrail.opentransportdata.common.models.LiveboardType.DEPARTURES;
 import static org.joda.time.Days.daysBetween;
@@ -46,7 +54,9 @@ public class LiveboardCardAdapter extends InfiniteScrollingAdapter<VehicleStop>
     private static final int STYLE_LIST = 0;
     private static final int STYLE_CARD = 1;
     private int style = STYLE_LIST;
-    private Object[] displayList;
+    private List<Object> displayList;
+    // The day of the last stop in the display list, used to place day separators when stops are added
+    private DateTime lastDay;
 
     private static final int VIEW_TYPE_DATE = 1;
 
@@ -56,6 +66,8 @@ public class LiveboardCardAdapter extends InfiniteScrollingAdapter<VehicleStop>
     }
 
     public void updateLiveboard(Liveboard liveBoard) {
+        Liveboard previousLiveboard = this.liveboard;
+        int previousStyle = style;
         this.liveboard = liveBoard;
 
         if (PreferenceManager.getDefaultSharedPreferences(context).getBoolean("use_card_layout", false)) {
@@ -64,51 +76,142 @@ public class LiveboardCardAdapter extends InfiniteScrollingAdapter<VehicleStop>
             style = STYLE_LIST;
         }
 
-        ArrayList<Integer> daySeparatorPositions = new ArrayList<>();
-
         if (liveboard == null || liveboard.getStops() == null || liveboard.getStops().length == 0) {
             displayList = null;
             return;
         }
 
-        detectNumberOfDayChanges(liveBoard, daySeparatorPositions);
-
-        this.displayList = new Object[daySeparatorPositions.size() + liveBoard.getStops().length];
+        if (displayList != null && style == previousStyle
+                && previousLiveboard instanceof LiveboardImpl && liveBoard instanceof LiveboardImpl) {
+            SortedChunkList<VehicleStop> previousStops = ((LiveboardImpl) previousLiveboard).getStopList();
+            SortedChunkList<VehicleStop> stops = ((LiveboardImpl) liveBoard).getStopList();
+            if (stops.isExtensionOf(previousStops)) {
+                insertStops(stops.countPrependedSince(previousStops), stops.countAppendedSince(previousStops));
+                return;
+            }
+        }
 
-        weaveDataWithDayHeaders(liveBoard, daySeparatorPositions);
+        VehicleStop[] stops = liveBoard.getStops();
+        displayList = new ArrayList<>(stops.length);
+        lastDay = getFirstDay(stops[0]);
+        addStops(displayList, stops, 0, stops.length);
 
         mRecyclerView.post(this::notifyDataSetChanged);
     }
 
-    private void weaveDataWithDayHeaders(Liveboard liveBoard, ArrayList<Integer> daySeparatorPositions) {
-        // Convert to array + take previous separators into account for position of next separator
-        int dayPosition = 0;
-        int stopPosition = 0;
-        int resultPosition = 0;
-        while (resultPosition < daySeparatorPositions.size() + liveBoard.getStops().length) {
-            // Keep in mind that position shifts with the number of already placed date separators
-            if (dayPosition < daySeparatorPositions.size() && resultPosition == daySeparatorPositions.get(dayPosition) + dayPosition) {
+    /**
+     * Add stops which were loaded in front of or after the shown stops, and only notify the recyclerview about the inserted items.
+     *
+     * @param prependedCount The number of stops in front of the shown stops
+     * @param appendedCount  The number of stops after the shown stops
+     */
+    private void insertStops(int prependedCount, int appendedCount) {
+        VehicleStop[] stops = liveboard.getStops();
+        int offset = getListItemOffset();
+
+        if (prependedCount > 0) {
+            // Whether the first shown stop needs a separator depends on the stops in front of it, so it's placed again
+            DateTime appendDay = lastDay;
+            List<Object> prepended = new ArrayList<>();
+            lastDay = getFirstDay(stops[0]);
+            addStops(prepended, stops, 0, prependedCount + 1);
+            prepended.remove(prepended.size() - 1);
+            lastDay = appendDay;
+
+            boolean removedSeparator = displayList.get(0) instanceof DateTime;
+            if (removedSeparator) {
+                displayList.remove(0);
+            }
+            displayList.addAll(0, prepended);
+
+            if (removedSeparator) {
+                notifyItemRemoved(offset);
+            }
+            notifyItemRangeInserted(offset, prepended.size());
+        }
+
+        if (appendedCount > 0) {
+            int position = displayList.size();
+            addStops(displayList, stops, stops.length - appendedCount, stops.length);
+            notifyItemRangeInserted(offset + position, displayList.size() - position);
+        }
+    }
+
+    /**
+     * Show new delays, and only bind the stops of which the connection changed again.
+     *
+     * @param changes The connections of which the delay changed
+     */
+    public void updateDelays(@NonNull List<DelayChange> changes) {
+        if (displayList == null) {
+            return;
+        }
+        Map<String, DelayChange> changesById = new HashMap<>();
+        for (DelayChange change : changes) {
+            changesById.put(change.getSemanticId(), change);
+        }
+
+        int offset = getListItemOffset();
+        for (int i = 0; i < displayList.size(); i++) {
+            Object item = displayList.get(i);
+            if (!(item instanceof VehicleStop)) {
+                continue;
+            }
+            DelayChange change = changesById.get(((VehicleStop) item).getDepartureUri());
+            if (change != null) {
+                displayList.set(i, VehicleStopImpl.withDelays((VehicleStop) item, change));
+                notifyItemChanged(offset + i);
+            }
+        }
+    }
+
+    /**
+     * Get the connections of the stops at the given adapter positions, e.g. to refresh the delays of the visible stops.
+     *
+     * @param first The adapter position of the first stop
+     * @param last  The adapter position of the last stop
+     * @return The semantic ids of the connections
+     */
+    public List<String> getConnectionIds(int first, int last) {
+        List<String> ids = new ArrayList<>();
+        if (displayList == null) {
+            return ids;
+        }
+        int offset = getListItemOffset();
+        for (int i = Math.max(0, first - offset); i <= last - offset && i < displayList.size(); i++) {
+            Object item = displayList.get(i);
+            if (item instanceof VehicleStop && ((VehicleStop) item).getDepartureUri() != null) {
+                ids.add(((VehicleStop) item).getDepartureUri());
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Add stops to a list, preceded by a day separator when a stop is on a different day than the stop before it.
+     */
+    private void addStops(List<Object> target, VehicleStop[] stops, int from, int to) {
+        for (int i = from; i < to; i++) {
+            DateTime stoptime = getStopTime(stops[i]);
+            if (daysBetween(stoptime.toLocalDate(), lastDay.toLocalDate()).getDays() != 0) {
+                lastDay = stoptime.withTimeAtStartOfDay();
                 if (liveboard.getLiveboardType() == DEPARTURES) {
-                    this.displayList[resultPosition] = liveBoard.getStops()[stopPosition].getDepartureTime();
+                    target.add(stops[i].getDepartureTime());
                 } else {
-                    this.displayList[resultPosition] = liveBoard.getStops()[stopPosition].getArrivalTime();
+                    target.add(stops[i].getArrivalTime());
                 }
-                dayPosition++;
-            } else {
-                this.displayList[resultPosition] = liveboard.getStops()[stopPosition];
-                stopPosition++;
             }
-
-            resultPosition++;
+            target.add(stops[i]);
         }
     }
 
-    private void detectNumberOfDayChanges(Liveboard liveBoard, ArrayList<Integer> daySeparatorPositions) {
+    /**
+     * Get the day to which the first stop is compared, to determine if it needs a day separator.
+     */
+    private DateTime getFirstDay(VehicleStop firstStop) {
         // Default day to compare to is today
         DateTime dateCompareObj = DateTime.now().withZone(DateTimeZone.UTC).withTimeAtStartOfDay();
-        DateTime stoptime = liveBoard.getStops()[0].getType() == VehicleStopType.DEPARTURE ?
-                liveBoard.getStops()[0].getDepartureTime() :
-                liveboard.getStops()[0].getArrivalTime();
+        DateTime stoptime = getStopTime(firstStop);
 
         if (stoptime.withZone(DateTimeZone.UTC).withTimeAtStartOfDay().isBefore(dateCompareObj)) {
             // If the first stop is not today, add date separators everywhere
@@ -117,20 +220,16 @@ public class LiveboardCardAdapter extends InfiniteScrollingAdapter<VehicleStop>
             // If the search results differ from the date searched, everything after the date searched should have separators
             dateCompareObj = liveboard.getSearchTime().withTimeAtStartOfDay();
         }
+        return dateCompareObj;
+    }
 
-        for (int i = 0; i < liveboard.getStops().length; i++) {
-            stoptime = liveBoard.getStops()[i].getType() == VehicleStopType.DEPARTURE ? liveBoard.getStops()[i].getDepartureTime() : liveboard.getStops()[i].getArrivalTime();
-
-            if (daysBetween(stoptime.toLocalDate(), dateCompareObj.toLocalDate()).getDays() != 0) {
-                dateCompareObj = stoptime.withTimeAtStartOfDay();
-                daySeparatorPositions.add(i);
-            }
-        }
+    private static DateTime getStopTime(VehicleStop stop) {
+        return stop.getType() == VehicleStopType.DEPARTURE ? stop.getDepartureTime() : stop.getArrivalTime();
     }
 
     @Override
     protected int onGetItemViewType(int position) {
-        if (displayList[position] instanceof DateTime) {
+        if (displayList.get(position) instanceof DateTime) {
             return VIEW_TYPE_DATE;
         }
         return VIEW_TYPE_ITEM;
@@ -159,11 +258,11 @@ public class LiveboardCardAdapter extends InfiniteScrollingAdapter<VehicleStop>
     public void onBindItemViewHolder(RecyclerView.ViewHolder genericHolder, int position) {
         if (genericHolder instanceof DateSeparatorViewHolder) {
             DateSeparatorViewHolder holder = (DateSeparatorViewHolder) genericHolder;
-            holder.bind((DateTime) displayList[position]);
+            holder.bind((DateTime) displayList.get(position));
             return;
         }
 
-        final VehicleStop stop = (VehicleStop) displayList[position];
+        final VehicleStop stop = (VehicleStop) displayList.get(position);
         LiveboardStopViewHolder holder = (LiveboardStopViewHolder) genericHolder;
         holder.liveboardStopView.bind(context, stop, liveboard, position);
 
@@ -192,7 +291,7 @@ public class LiveboardCardAdapter extends InfiniteScrollingAdapter<VehicleStop>
         if (liveboard == null || liveboard.getStops() == null || displayList == null) {
             return 0;
         }
-        return displayList.length;
+        return displayList.size();
     }
 
     private class LiveboardStopViewHolder extends RecyclerView.ViewHolder {
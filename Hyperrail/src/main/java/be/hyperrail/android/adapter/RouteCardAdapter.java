@@ -15,6 +15,8 @@ package be.hyperrail.android.adapter;
 import android.app.Activity;
 import android.content.Context;
 import android.preference.PreferenceManager;
+import androidx.annotation.NonNull;
+import androidx.core.util.ObjectsCompat;
 import androidx.recyclerview.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -24,99 +26,272 @@ import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import be.hyperrail.android.R;
 import be.hyperrail.android.infiniteScrolling.InfiniteScrollingAdapter;
 import be.hyperrail.android.infiniteScrolling.InfiniteScrollingDataSource;
 import be.hyperrail.android.viewgroup.RouteListItemLayout;
+import be.hyperrail.opentransportdata.common.contracts.DelayChange;
 import be.hyperrail.opentransportdata.common.models.Route;
+import be.hyperrail.opentransportdata.common.models.RouteLeg;
 import be.hyperrail.opentransportdata.common.models.RoutesList;
+import be.hyperrail.opentransportdata.common.models.implementation.RouteImpl;
+import be.hyperrail.opentransportdata.common.models.implementation.RoutesListImpl;
+import be.hyperrail.opentransportdata.util.SortedChunkList;
 
 /**
  * Recyclerview adapter to show results of route searches
  */
 public class RouteCardAdapter extends InfiniteScrollingAdapter<Route> {
 
+    private RoutesList routesList;
     private Route[] routes;
     private final Context context;
 
-    private Object[] displayList;
+    private List<Object> displayList;
+    // The days to which the first and the next route are compared, used to place day separators when routes are added
+    private DateTime firstDay;
+    private DateTime lastDay;
 
     private static final int VIEW_TYPE_DATE = 1;
 
+    /**
+     * Routes are the same if they depart with the same connection, and separators if they're for the same day
+     */
+    private static final ListDiffer.ItemComparator<Object> DISPLAY_ITEM_COMPARATOR = new ListDiffer.ItemComparator<Object>() {
+        @Override
+        public boolean isSameItem(@NonNull Object oldItem, @NonNull Object newItem) {
+            return getStableId(oldItem) == getStableId(newItem);
+        }
+
+        @Override
+        public boolean hasSameContents(@NonNull Object oldItem, @NonNull Object newItem) {
+            if (oldItem instanceof DateTime) {
+                // Separators only show their day, which was already compared
+                return true;
+            }
+            Route oldRoute = (Route) oldItem;
+            Route newRoute = (Route) newItem;
+            return oldRoute.getDepartureTime().equals(newRoute.getDepartureTime())
+                    && oldRoute.getArrivalTime().equals(newRoute.getArrivalTime())
+                    && oldRoute.getDepartureDelay().equals(newRoute.getDepartureDelay())
+                    && oldRoute.getArrivalDelay().equals(newRoute.getArrivalDelay())
+                    && ObjectsCompat.equals(oldRoute.getDeparturePlatform(), newRoute.getDeparturePlatform())
+                    && oldRoute.isDeparturePlatformNormal() == newRoute.isDeparturePlatformNormal()
+                    && oldRoute.isPartiallyCanceled() == newRoute.isPartiallyCanceled()
+                    && oldRoute.getTransferCount() == newRoute.getTransferCount()
+                    && getAlertCount(oldRoute) == getAlertCount(newRoute);
+        }
+    };
+
+    private final ListDiffer<Object> mDiffer;
+
     public RouteCardAdapter(Activity context, RecyclerView recyclerView, InfiniteScrollingDataSource listener) {
         super(context, recyclerView, listener);
         this.context = context;
+        setHasStableIds(true);
+        mDiffer = new ListDiffer<>(this, DISPLAY_ITEM_COMPARATOR, this::getListItemOffset);
     }
 
     /**
-     * Update the routes in this listview, and calculate where day separators should be placed
+     * Update the routes in this listview, and calculate where day separators should be placed.
+     * When the new routes extend the shown routes, only the added routes are inserted.
      * @param newRoutes
      */
     public void updateRoutes(RoutesList newRoutes) {
+        RoutesList previousRoutes = this.routesList;
+        this.routesList = newRoutes;
+
         if (newRoutes == null || newRoutes.getRoutes() == null || newRoutes.getRoutes().length < 1) {
-            this.routes = null;
-            this.displayList = null;
+            // Also discards a list which is still being compared
+            mDiffer.submit(displayList, null, list -> {
+                displayList = list;
+                routes = null;
+            });
             return;
         }
 
-        this.routes = newRoutes.getRoutes();
+        final Route[] newRouteArray = newRoutes.getRoutes();
+
+        // Routes can only be inserted in the shown list, not in a list which is still being compared to the shown list
+        if (displayList != null && !mDiffer.isPending() && previousRoutes instanceof RoutesListImpl && newRoutes instanceof RoutesListImpl) {
+            SortedChunkList<Route> previousList = ((RoutesListImpl) previousRoutes).getRouteList();
+            SortedChunkList<Route> list = ((RoutesListImpl) newRoutes).getRouteList();
+            if (list.isExtensionOf(previousList)
+                    && insertRoutes(newRoutes, list.countPrependedSince(previousList), list.countAppendedSince(previousList))) {
+                return;
+            }
+        }
+
+        List<Object> newDisplayList = new ArrayList<>(newRouteArray.length);
+        final DateTime newFirstDay = getFirstDay(newRoutes);
+        final DateTime newLastDay = addRoutes(newDisplayList, newRouteArray, 0, newRouteArray.length, newFirstDay);
+
+        // Only the routes which changed, e.g. because of a delay, are bound again.
+        // The shown routes and days are kept until the new list is shown, as routes can still be inserted in the shown list.
+        mDiffer.submit(displayList, newDisplayList, list -> {
+            displayList = list;
+            routes = newRouteArray;
+            firstDay = newFirstDay;
+            lastDay = newLastDay;
+        });
+    }
 
-        ArrayList<Integer> daySeparatorPositions = new ArrayList<>();
+    /**
+     * Show new delays, and only bind the routes of which a connection changed again.
+     * A list which is still being compared already contains the latest delays, and isn't changed.
+     *
+     * @param changes The connections of which the delay changed
+     */
+    public void updateDelays(@NonNull List<DelayChange> changes) {
+        if (displayList == null || mDiffer.isPending()) {
+            return;
+        }
+        Map<String, DelayChange> changesById = new HashMap<>();
+        for (DelayChange change : changes) {
+            changesById.put(change.getSemanticId(), change);
+        }
 
-        initializeDataAndDayHeaders(newRoutes, daySeparatorPositions);
+        int offset = getListItemOffset();
+        for (int i = 0; i < displayList.size(); i++) {
+            Object item = displayList.get(i);
+            if (!(item instanceof RouteImpl)) {
+                continue;
+            }
+            RouteImpl updated = ((RouteImpl) item).withDelays(changesById);
+            if (updated != item) {
+                displayList.set(i, updated);
+                notifyItemChanged(offset + i);
+            }
+        }
+    }
 
-        this.displayList = new Object[daySeparatorPositions.size() + routes.length];
-        weaveDataAndDayHeaders(daySeparatorPositions);
+    /**
+     * Get the connections used by the routes at the given adapter positions, e.g. to refresh the delays of the visible routes.
+     *
+     * @param first The adapter position of the first route
+     * @param last  The adapter position of the last route
+     * @return The semantic ids of the connections
+     */
+    public List<String> getConnectionIds(int first, int last) {
+        List<String> ids = new ArrayList<>();
+        if (displayList == null) {
+            return ids;
+        }
+        int offset = getListItemOffset();
+        for (int i = Math.max(0, first - offset); i <= last - offset && i < displayList.size(); i++) {
+            Object item = displayList.get(i);
+            if (!(item instanceof Route)) {
+                continue;
+            }
+            for (RouteLeg leg : ((Route) item).getLegs()) {
+                addIfPresent(ids, leg.getDeparture().getSemanticId());
+                addIfPresent(ids, leg.getArrival().getSemanticId());
+            }
+        }
+        return ids;
+    }
 
-        mRecyclerView.post(this::notifyDataSetChanged);
+    private static void addIfPresent(List<String> ids, String id) {
+        if (id != null) {
+            ids.add(id);
+        }
     }
 
-    private void weaveDataAndDayHeaders(ArrayList<Integer> daySeparatorPositions) {
-        // Convert to array + take previous separators into account for position of next separator
-        int dayPosition = 0;
-        int routePosition = 0;
-        int resultPosition = 0;
+    /**
+     * Add routes which were loaded in front of or after the shown routes, and only notify the recyclerview about the inserted items.
+     *
+     * @param newRoutes      The shown routes, extended with the new routes
+     * @param prependedCount The number of routes in front of the shown routes
+     * @param appendedCount  The number of routes after the shown routes
+     * @return false if the separators of the shown routes would change, in which case the entire list should be created again
+     */
+    private boolean insertRoutes(RoutesList newRoutes, int prependedCount, int appendedCount) {
+        Route[] newRouteArray = newRoutes.getRoutes();
+        int offset = getListItemOffset();
+
+        DateTime newFirstDay = firstDay;
+        if (prependedCount > 0) {
+            newFirstDay = getFirstDay(newRoutes);
+            DateTime shownFirstDay = newRouteArray[prependedCount].getDepartureTime().withTimeAtStartOfDay();
+            if (newFirstDay.isAfter(shownFirstDay) || firstDay.isAfter(shownFirstDay)) {
+                // The separators after the first shown route depend on the day it was compared to
+                return false;
+            }
+        }
+
+        routes = newRouteArray;
 
-        while (resultPosition < daySeparatorPositions.size() + routes.length) {
-            // Keep in mind that position shifts with the number of already placed date separators
-            if (dayPosition < daySeparatorPositions.size() && resultPosition == daySeparatorPositions.get(dayPosition) + dayPosition) {
-                this.displayList[resultPosition] = routes[routePosition].getDepartureTime();
+        if (prependedCount > 0) {
+            // Whether the first shown route needs a separator depends on the routes in front of it, so it's placed again
+            List<Object> prepended = new ArrayList<>();
+            addRoutes(prepended, newRouteArray, 0, prependedCount + 1, newFirstDay);
+            prepended.remove(prepended.size() - 1);
+            firstDay = newFirstDay;
+
+            boolean removedSeparator = displayList.get(0) instanceof DateTime;
+            if (removedSeparator) {
+                displayList.remove(0);
+            }
+            displayList.addAll(0, prepended);
 
-                dayPosition++;
-            } else {
-                this.displayList[resultPosition] = routes[routePosition];
-                routePosition++;
+            if (removedSeparator) {
+                notifyItemRemoved(offset);
             }
+            notifyItemRangeInserted(offset, prepended.size());
+        }
+
+        if (appendedCount > 0) {
+            int position = displayList.size();
+            lastDay = addRoutes(displayList, newRouteArray, newRouteArray.length - appendedCount, newRouteArray.length, lastDay);
+            notifyItemRangeInserted(offset + position, displayList.size() - position);
+        }
+        return true;
+    }
+
+    /**
+     * Add routes to a list, preceded by a day separator when a route departs on a later day than the routes before it.
+     *
+     * @param day The day to which the first route is compared
+     * @return The day to which a route after the added routes should be compared
+     */
+    private static DateTime addRoutes(List<Object> target, Route[] routes, int from, int to, DateTime day) {
+        for (int i = from; i < to; i++) {
+            Route route = routes[i];
 
-            resultPosition++;
+            if (route.getDepartureTime().withTimeAtStartOfDay().isAfter(day)) {
+                day = route.getDepartureTime().withTimeAtStartOfDay();
+                target.add(route.getDepartureTime());
+            }
+            target.add(route);
         }
+        return day;
     }
 
-    private void initializeDataAndDayHeaders(RoutesList newRoutes, ArrayList<Integer> daySeparatorPositions) {
+    /**
+     * Get the day to which the first route is compared, to determine if it needs a day separator.
+     */
+    private static DateTime getFirstDay(RoutesList routesList) {
+        Route[] routes = routesList.getRoutes();
         // Default day to compare to is today
         DateTime lastday = DateTime.now().withZone(DateTimeZone.UTC).withTimeAtStartOfDay();
 
         if (routes[0].getDepartureTime().withZone(DateTimeZone.UTC).withTimeAtStartOfDay().isBefore(lastday)) {
             // If the first stop is not today, add date separators everywhere
             lastday = routes[0].getDepartureTime().withTimeAtStartOfDay().minusDays(1);
-        } else if (!newRoutes.getSearchTime().withTimeAtStartOfDay().withZone(DateTimeZone.UTC).equals(routes[0].getDepartureTime().withZone(DateTimeZone.UTC).withTimeAtStartOfDay())) {
+        } else if (!routesList.getSearchTime().withTimeAtStartOfDay().withZone(DateTimeZone.UTC).equals(routes[0].getDepartureTime().withZone(DateTimeZone.UTC).withTimeAtStartOfDay())) {
             // If the search results differ from the date searched, everything after the date searched should have separators
-            lastday = newRoutes.getSearchTime().withTimeAtStartOfDay();
-        }
-        for (int i = 0; i < routes.length; i++) {
-            Route route = routes[i];
-
-            if (route.getDepartureTime().withTimeAtStartOfDay().isAfter(lastday)) {
-                lastday = route.getDepartureTime().withTimeAtStartOfDay();
-                daySeparatorPositions.add(i);
-            }
+            lastday = routesList.getSearchTime().withTimeAtStartOfDay();
         }
+        return lastday;
     }
 
     @Override
     protected int onGetItemViewType(int position) {
-        if (displayList[position] instanceof DateTime) {
+        if (displayList.get(position) instanceof DateTime) {
             return VIEW_TYPE_DATE;
         }
         return VIEW_TYPE_ITEM;
@@ -145,12 +320,12 @@ public class RouteCardAdapter extends InfiniteScrollingAdapter<Route> {
 
         if (genericHolder instanceof DateSeparatorViewHolder) {
             DateSeparatorViewHolder holder = (DateSeparatorViewHolder) genericHolder;
-            holder.bind((DateTime) displayList[position]);
+            holder.bind((DateTime) displayList.get(position));
             return;
         }
 
         RouteViewHolder holder = (RouteViewHolder) genericHolder;
-        final Route route = (Route) displayList[position];
+        final Route route = (Route) displayList.get(position);
 
         holder.routeListItemLayout.bind(context, route, null, position);
 
@@ -169,12 +344,34 @@ public class RouteCardAdapter extends InfiniteScrollingAdapter<Route> {
         });
     }
 
+    @Override
+    protected long getListItemId(int position) {
+        return getStableId(displayList.get(position));
+    }
+
+    private static long getStableId(Object item) {
+        if (item instanceof DateTime) {
+            return StableIds.of("day", ((DateTime) item).withTimeAtStartOfDay().getMillis());
+        }
+        Route route = (Route) item;
+        String departureUri = route.getDeparture().getDepartureSemanticId();
+        if (departureUri != null) {
+            return StableIds.of("route", departureUri, route.getArrivalStation().getSemanticId(), route.getArrivalTime().getMillis());
+        }
+        // Without semantic ids, a route is identified by its scheduled departure and arrival
+        return StableIds.of("route", route.getDepartureTime().getMillis(), route.getArrivalTime().getMillis());
+    }
+
+    private static int getAlertCount(Route route) {
+        return route.getAlerts() == null ? 0 : route.getAlerts().length;
+    }
+
     @Override
     public int getListItemCount() {
         if (routes == null || displayList == null) {
             return 0;
         }
-        return displayList.length;
+        return displayList.size();
     }
 
     private class RouteViewHolder extends RecyclerView.ViewHolder {
@@ -14,6 +14,7 @@ package be.hyperrail.android.adapter;
 
 import android.content.Context;
 import android.preference.PreferenceManager;
+import androidx.annotation.NonNull;
 import androidx.core.content.ContextCompat;
 import androidx.recyclerview.widget.RecyclerView;
 import android.view.LayoutInflater;
@@ -32,7 +33,22 @@ import be.hyperrail.opentransportdata.common.requests.RoutePlanningRequest;
  */
 public class RouteSuggestionsCardAdapter extends RecyclerView.Adapter<RouteSuggestionsCardAdapter.RouteHistoryViewHolder> {
 
+    private static final ListDiffer.ItemComparator<Suggestion<RoutePlanningRequest>> SUGGESTION_COMPARATOR =
+            new ListDiffer.ItemComparator<Suggestion<RoutePlanningRequest>>() {
+                @Override
+                public boolean isSameItem(@NonNull Suggestion<RoutePlanningRequest> oldItem, @NonNull Suggestion<RoutePlanningRequest> newItem) {
+                    return getStableId(oldItem) == getStableId(newItem);
+                }
+
+                @Override
+                public boolean hasSameContents(@NonNull Suggestion<RoutePlanningRequest> oldItem, @NonNull Suggestion<RoutePlanningRequest> newItem) {
+                    // The shown names and icon follow from the stations and the type, which are part of the id
+                    return true;
+                }
+            };
+
     private final Context context;
+    private final ListDiffer<Suggestion<RoutePlanningRequest>> mDiffer = new ListDiffer<>(this, SUGGESTION_COMPARATOR);
     private List<Suggestion<RoutePlanningRequest>> queries;
 
     private OnRecyclerItemClickListener<Suggestion<RoutePlanningRequest>> listener;
@@ -41,11 +57,21 @@ public class RouteSuggestionsCardAdapter extends RecyclerView.Adapter<RouteSugge
     public RouteSuggestionsCardAdapter(Context context, List<Suggestion<RoutePlanningRequest>> queries) {
         this.queries = queries;
         this.context = context;
+        setHasStableIds(true);
     }
 
-    public void setSuggestedRoutes(List<Suggestion<RoutePlanningRequest>> queries) {
-        this.queries = queries;
-        this.notifyDataSetChanged();
+    public void setSuggestedRoutes(final List<Suggestion<RoutePlanningRequest>> queries) {
+        mDiffer.submit(this.queries, queries, list -> this.queries = list);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return getStableId(queries.get(position));
+    }
+
+    private static long getStableId(Suggestion<RoutePlanningRequest> suggestion) {
+        RoutePlanningRequest request = suggestion.getData();
+        return StableIds.of(suggestion.getType(), request.getOrigin().getSemanticId(), request.getDestination().getSemanticId());
     }
 
     @Override
@@ -0,0 +1,49 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.android.adapter;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Derive recyclerview item ids from the semantic ids of the shown items, so an item keeps its id when a list is refreshed.
+ */
+final class StableIds {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    // Hashed instead of a null part, or after every other part. Characters are 16 bit, so they can never be confused with these markers.
+    private static final int NULL_MARKER = 0x10000;
+    private static final int SEPARATOR = 0x10001;
+
+    private StableIds() {
+        // No instances
+    }
+
+    /**
+     * @param parts The parts of the key, e.g. a kind of item and a semantic id. Null parts are allowed, and differ from any text.
+     * @return A 64 bit FNV-1a hash of the parts, which makes collisions between the items of a list practically impossible
+     */
+    static long of(@Nullable Object... parts) {
+        long hash = FNV_OFFSET_BASIS;
+        for (Object part : parts) {
+            if (part == null) {
+                hash ^= NULL_MARKER;
+                hash *= FNV_PRIME;
+                continue;
+            }
+            String text = String.valueOf(part);
+            for (int i = 0; i < text.length(); i++) {
+                hash ^= text.charAt(i);
+                hash *= FNV_PRIME;
+            }
+            // Separate the parts, so ("ab", "c") and ("a", "bc") differ
+            hash ^= SEPARATOR;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.android.adapter;
+
+import android.content.Context;
+import android.widget.ArrayAdapter;
+import android.widget.Filter;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+import be.hyperrail.android.util.StationAutoCompleteIndex;
+
+/**
+ * Show station names in the dropdown of an AutoCompleteTextView, searched in the shared {@link StationAutoCompleteIndex}.
+ */
+public class StationNamesAdapter extends ArrayAdapter<String> {
+
+    /**
+     * The maximum number of names in the dropdown
+     */
+    private static final int MAX_RESULTS = 25;
+
+    private final Filter mFilter = new Filter() {
+        @Override
+        protected FilterResults performFiltering(CharSequence constraint) {
+            // Called on a background thread by the filter, which skips queries superseded before they started
+            FilterResults results = new FilterResults();
+            String[] names = constraint == null ? new String[0] : StationAutoCompleteIndex.getInstance(getContext()).search(constraint, MAX_RESULTS);
+            results.values = names;
+            results.count = names.length;
+            return results;
+        }
+
+        @Override
+        protected void publishResults(CharSequence constraint, FilterResults results) {
+            setNotifyOnChange(false);
+            clear();
+            addAll(Arrays.asList((String[]) results.values));
+            if (results.count > 0) {
+                notifyDataSetChanged();
+            } else {
+                notifyDataSetInvalidated();
+            }
+        }
+    };
+
+    public StationNamesAdapter(@NonNull Context context) {
+        super(context, android.R.layout.simple_dropdown_item_1line);
+    }
+
+    @NonNull
+    @Override
+    public Filter getFilter() {
+        return mFilter;
+    }
+}
@@ -67,6 +67,7 @@ public class StationSuggestionsCardAdapter extends RecyclerView.Adapter<StationS
     public StationSuggestionsCardAdapter(Context context, StopLocation[] stations) {
         this.context = context;
         this.stations = stations;
+        setHasStableIds(true);
     }
 
     @NonNull
@@ -222,6 +223,29 @@ public class StationSuggestionsCardAdapter extends RecyclerView.Adapter<StationS
         this.longClickListener = listener;
     }
 
+    /**
+     * Get an id from the section and the station. The same station can be shown as a suggestion and as a search result.
+     */
+    @Override
+    public long getItemId(int position) {
+        int suggestedStationsLength = 0;
+        if (showSuggestions && suggestedStations != null) {
+            suggestedStationsLength = suggestedStations.size();
+        }
+
+        int stationsLength = stations == null ? 0 : stations.length;
+        if (nearbyOnTop && position >= stationsLength) {
+            Suggestion<LiveboardRequest> suggestion = suggestedStations.get(position - stationsLength);
+            return StableIds.of("suggestion", suggestion.getType(), suggestion.getData().getStation().getSemanticId());
+        } else if (!nearbyOnTop && position < suggestedStationsLength) {
+            Suggestion<LiveboardRequest> suggestion = suggestedStations.get(position);
+            return StableIds.of("suggestion", suggestion.getType(), suggestion.getData().getStation().getSemanticId());
+        }
+
+        int stationPosition = nearbyOnTop ? position : position - suggestedStationsLength;
+        return StableIds.of("station", stations[stationPosition].getSemanticId());
+    }
+
     @Override
     public int getItemCount() {
         int result = 0;
@@ -9,11 +9,15 @@ package be.hyperrail.android.adapter;
 import android.content.Context;
 import android.preference.PreferenceManager;
 import androidx.annotation.NonNull;
+import androidx.core.util.ObjectsCompat;
 import androidx.recyclerview.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 
+import java.util.Arrays;
+import java.util.List;
+
 import be.hyperrail.android.R;
 import be.hyperrail.android.viewgroup.VehicleStopLayout;
 import be.hyperrail.opentransportdata.common.models.VehicleJourney;
@@ -24,6 +28,30 @@ import be.hyperrail.opentransportdata.common.models.VehicleStop;
  */
 public class VehicleStopCardAdapter extends RecyclerView.Adapter<VehicleStopCardAdapter.TrainStopViewHolder> {
 
+    /**
+     * Stops are the same if they're the same call at a station, and are shown the same way if their realtime data didn't change
+     */
+    private static final ListDiffer.ItemComparator<VehicleStop> STOP_COMPARATOR = new ListDiffer.ItemComparator<VehicleStop>() {
+        @Override
+        public boolean isSameItem(@NonNull VehicleStop oldItem, @NonNull VehicleStop newItem) {
+            return getStableId(oldItem) == getStableId(newItem);
+        }
+
+        @Override
+        public boolean hasSameContents(@NonNull VehicleStop oldItem, @NonNull VehicleStop newItem) {
+            return ObjectsCompat.equals(oldItem.getArrivalDelay(), newItem.getArrivalDelay())
+                    && ObjectsCompat.equals(oldItem.getDepartureDelay(), newItem.getDepartureDelay())
+                    && ObjectsCompat.equals(oldItem.getPlatform(), newItem.getPlatform())
+                    && oldItem.isPlatformNormal() == newItem.isPlatformNormal()
+                    && oldItem.hasArrived() == newItem.hasArrived()
+                    && oldItem.hasLeft() == newItem.hasLeft()
+                    && oldItem.isArrivalCanceled() == newItem.isArrivalCanceled()
+                    && oldItem.isDepartureCanceled() == newItem.isDepartureCanceled()
+                    && oldItem.getOccupancyLevel() == newItem.getOccupancyLevel();
+        }
+    };
+
+    private final ListDiffer<VehicleStop> mDiffer = new ListDiffer<>(this, STOP_COMPARATOR);
     private VehicleJourney mTrain;
     private final Context context;
     private OnRecyclerItemClickListener<VehicleStop> clickListener;
@@ -32,6 +60,7 @@ public class VehicleStopCardAdapter extends RecyclerView.Adapter<VehicleStopCard
     public VehicleStopCardAdapter(Context context, VehicleJourney train) {
         this.context = context;
         this.mTrain = train;
+        setHasStableIds(true);
     }
 
     @NonNull
@@ -67,6 +96,19 @@ public class VehicleStopCardAdapter extends RecyclerView.Adapter<VehicleStopCard
         });
     }
 
+    @Override
+    public long getItemId(int position) {
+        return getStableId(mTrain.getStops()[position]);
+    }
+
+    private static long getStableId(VehicleStop stop) {
+        if (stop.getDepartureUri() != null) {
+            return StableIds.of("stop", stop.getDepartureUri());
+        }
+        // The last stop has no departure, but the vehicle only arrives once at its destination
+        return StableIds.of("stop", stop.getStopLocation().getSemanticId(), stop.getArrivalTime());
+    }
+
     @Override
     public int getItemCount() {
         if (mTrain == null || mTrain.getStops() == null) {
@@ -83,9 +125,18 @@ public class VehicleStopCardAdapter extends RecyclerView.Adapter<VehicleStopCard
         this.longClickListener = listener;
     }
 
-    public void updateTrain(VehicleJourney train) {
-        this.mTrain = train;
-        notifyDataSetChanged();
+    /**
+     * Show a new version of the journey. Only the stops with changed realtime data are bound again.
+     */
+    public void updateTrain(final VehicleJourney train) {
+        mDiffer.submit(getStops(mTrain), getStops(train), list -> mTrain = train);
+    }
+
+    private static List<VehicleStop> getStops(VehicleJourney train) {
+        if (train == null || train.getStops() == null) {
+            return null;
+        }
+        return Arrays.<VehicleStop>asList(train.getStops());
     }
 
     class TrainStopViewHolder extends RecyclerView.ViewHolder {
@@ -15,9 +15,11 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.core.content.ContextCompat;
 import androidx.recyclerview.widget.RecyclerView;
 
+import org.joda.time.DateTime;
 import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
 
@@ -26,6 +28,7 @@ import java.util.List;
 import be.hyperrail.android.R;
 import be.hyperrail.android.persistence.Suggestion;
 import be.hyperrail.opentransportdata.be.irail.IrailVehicleInfo;
+import be.hyperrail.opentransportdata.common.models.StopLocation;
 import be.hyperrail.opentransportdata.common.requests.VehicleRequest;
 
 /**
@@ -33,7 +36,24 @@ import be.hyperrail.opentransportdata.common.requests.VehicleRequest;
  */
 public class VehicleSuggestionsCardAdapter extends RecyclerView.Adapter<VehicleSuggestionsCardAdapter.TrainViewHolder> {
 
+    private static final ListDiffer.ItemComparator<Suggestion<VehicleRequest>> SUGGESTION_COMPARATOR =
+            new ListDiffer.ItemComparator<Suggestion<VehicleRequest>>() {
+                @Override
+                public boolean isSameItem(@NonNull Suggestion<VehicleRequest> oldItem, @NonNull Suggestion<VehicleRequest> newItem) {
+                    return getStableId(oldItem) == getStableId(newItem);
+                }
+
+                @Override
+                public boolean hasSameContents(@NonNull Suggestion<VehicleRequest> oldItem, @NonNull Suggestion<VehicleRequest> newItem) {
+                    VehicleRequest oldRequest = oldItem.getData();
+                    VehicleRequest newRequest = newItem.getData();
+                    return getSemanticId(oldRequest.getOrigin()).equals(getSemanticId(newRequest.getOrigin()))
+                            && getSemanticId(oldRequest.getDirection()).equals(getSemanticId(newRequest.getDirection()));
+                }
+            };
+
     private final Context context;
+    private final ListDiffer<Suggestion<VehicleRequest>> mDiffer = new ListDiffer<>(this, SUGGESTION_COMPARATOR);
     private List<Suggestion<VehicleRequest>> suggestedTrains;
 
     private OnRecyclerItemLongClickListener<Suggestion<VehicleRequest>> longClickListener;
@@ -41,6 +61,7 @@ public class VehicleSuggestionsCardAdapter extends RecyclerView.Adapter<VehicleS
 
     public VehicleSuggestionsCardAdapter(Context context) {
         this.context = context;
+        setHasStableIds(true);
     }
 
     @NonNull
@@ -102,9 +123,23 @@ public class VehicleSuggestionsCardAdapter extends RecyclerView.Adapter<VehicleS
         });
     }
 
-    public void setSuggestedTrains(List<Suggestion<VehicleRequest>> suggestions) {
-        this.suggestedTrains = suggestions;
-        this.notifyDataSetChanged();
+    public void setSuggestedTrains(final List<Suggestion<VehicleRequest>> suggestions) {
+        mDiffer.submit(this.suggestedTrains, suggestions, list -> this.suggestedTrains = list);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return getStableId(suggestedTrains.get(position));
+    }
+
+    private static long getStableId(Suggestion<VehicleRequest> suggestion) {
+        VehicleRequest request = suggestion.getData();
+        DateTime departureTime = request.getDepartureTime();
+        return StableIds.of(suggestion.getType(), request.getVehicleId(), departureTime == null ? null : departureTime.getMillis());
+    }
+
+    private static String getSemanticId(@Nullable StopLocation station) {
+        return station == null ? "" : station.getSemanticId();
     }
 
     public void setOnItemClickListener(OnRecyclerItemClickListener<Suggestion<VehicleRequest>> listener) {
@@ -63,6 +63,7 @@ import be.hyperrail.android.adapter.StationSuggestionsCardAdapter;
 import be.hyperrail.android.persistence.PersistentQueryProvider;
 import be.hyperrail.android.persistence.Suggestion;
 import be.hyperrail.android.persistence.SuggestionType;
+import be.hyperrail.android.util.SearchPipeline;
 import be.hyperrail.opentransportdata.OpenTransportApi;
 import be.hyperrail.opentransportdata.common.contracts.QueryTimeDefinition;
 import be.hyperrail.opentransportdata.common.contracts.TransportStopsDataSource;
@@ -81,7 +82,8 @@ public class LiveboardSearchFragment extends Fragment implements OnRecyclerItemC
     public static final String PREF_STATIONS_NEARBY_COUNT = "stations_nearby_count";
 
     private RecyclerView stationRecyclerView;
-    private Location mLastLocation;
+    // Read by the station search on a background thread
+    private volatile Location mLastLocation;
     private EditText vStationSearchField;
 
     private int mNumberOfNearbyStations = 3;
@@ -90,6 +92,7 @@ public class LiveboardSearchFragment extends Fragment implements OnRecyclerItemC
     private boolean mNearbyOnTop;
     private Suggestion<LiveboardRequest> mLastSelectedQuery;
     private StationSuggestionsCardAdapter mStationAdapter;
+    private SearchPipeline<StationSearchResult> mStationSearch;
 
     UpdateSuggestionsTask activeSuggestionsUpdateTask;
     AlertDialog permissionExplanationDialog;
@@ -153,6 +156,8 @@ public class LiveboardSearchFragment extends Fragment implements OnRecyclerItemC
         // 2 || 3: nearby before suggestions
         mNearbyOnTop = (order == 2 || order == 3);
 
+        mStationSearch = new SearchPipeline<>(this::searchStations, (query, result) -> showStations(result));
+
         persistentQueryProvider = PersistentQueryProvider.getInstance(this.getActivity());
         activeSuggestionsUpdateTask = new UpdateSuggestionsTask(this);
         activeSuggestionsUpdateTask.execute(persistentQueryProvider);
@@ -164,7 +169,7 @@ public class LiveboardSearchFragment extends Fragment implements OnRecyclerItemC
             String stationName = savedInstanceState.getString("station", "");
             if (!stationName.isEmpty()) {
                 vStationSearchField.setText(stationName);
-                loadStations(stationName);
+                mStationSearch.submitNow(stationName);
             }
         }
 
@@ -176,7 +181,7 @@ public class LiveboardSearchFragment extends Fragment implements OnRecyclerItemC
 
             @Override
             public void onTextChanged(CharSequence s, int start, int before, int count) {
-                loadStations(s.toString());
+                mStationSearch.submit(s.toString());
             }
 
             @Override
@@ -195,29 +200,42 @@ public class LiveboardSearchFragment extends Fragment implements OnRecyclerItemC
         outState.putString("station", vStationSearchField.getText().toString());
     }
 
-    private void loadStations(String s) {
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        // Results arriving after the views are gone would update a detached adapter
+        mStationSearch.cancel();
+    }
+
+    /**
+     * Search stations by name, or get nearby or popular stations when nothing was entered. Called on a background thread.
+     */
+    private StationSearchResult searchStations(String s) {
         TransportStopsDataSource stationProvider = OpenTransportApi.getStopLocationProviderInstance();
 
         // remove whitespaces
         s = s.trim();
 
+        Location location = mLastLocation;
         if (s.length() > 0) {
             // Text search
-            setStations(stationProvider.getStoplocationsByNameOrderBySize(s), StationSuggestionsCardAdapter.stationType.SEARCHED);
-            mStationAdapter.setSuggestionsVisible(false);
-            mStationAdapter.setSearchResultType(StationSuggestionsCardAdapter.stationType.SEARCHED);
-        } else if (mLastLocation != null) {
+            return new StationSearchResult(stationProvider.getStoplocationsByNameOrderBySize(s), StationSuggestionsCardAdapter.stationType.SEARCHED);
+        } else if (location != null) {
             // Nearby stations
-            setStations(stationProvider.getStoplocationsOrderedByLocationAndSize(mLastLocation, mNumberOfNearbyStations), StationSuggestionsCardAdapter.stationType.NEARBY);
-            mStationAdapter.showNearbyStationsOnTop(mNearbyOnTop);
-            mStationAdapter.setSuggestionsVisible(true);
-            mStationAdapter.setSearchResultType(StationSuggestionsCardAdapter.stationType.NEARBY);
+            return new StationSearchResult(stationProvider.getStoplocationsOrderedByLocationAndSize(location, mNumberOfNearbyStations), StationSuggestionsCardAdapter.stationType.NEARBY);
         } else {
             // Just a list of popular stations as fallback
-            setStations(stationProvider.getStoplocationsOrderedBySize(), StationSuggestionsCardAdapter.stationType.UNDEFINED);
-            mStationAdapter.showNearbyStationsOnTop(false);
+            return new StationSearchResult(stationProvider.getStoplocationsOrderedBySize(), StationSuggestionsCardAdapter.stationType.UNDEFINED);
+        }
+    }
+
+    private void showStations(StationSearchResult result) {
+        setStations(result.stations, result.type);
+        if (result.type == StationSuggestionsCardAdapter.stationType.SEARCHED) {
+            mStationAdapter.setSuggestionsVisible(false);
+        } else {
+            mStationAdapter.showNearbyStationsOnTop(result.type == StationSuggestionsCardAdapter.stationType.NEARBY && mNearbyOnTop);
             mStationAdapter.setSuggestionsVisible(true);
-            mStationAdapter.setSearchResultType(StationSuggestionsCardAdapter.stationType.UNDEFINED);
         }
     }
 
@@ -341,7 +359,7 @@ public class LiveboardSearchFragment extends Fragment implements OnRecyclerItemC
                         if (location != null) {
                             mLastLocation = location;
                             // Load the stations again. Location will be considered as it is available in a field.
-                            loadStations(vStationSearchField.getText().toString());
+                            mStationSearch.submitNow(vStationSearchField.getText().toString());
                         }
                     });
         }
@@ -370,6 +388,16 @@ public class LiveboardSearchFragment extends Fragment implements OnRecyclerItemC
         this.alternativeOnClickListener = alternativeOnClickListener;
     }
 
+    private static class StationSearchResult {
+        private final StopLocation[] stations;
+        private final StationSuggestionsCardAdapter.stationType type;
+
+        StationSearchResult(StopLocation[] stations, StationSuggestionsCardAdapter.stationType type) {
+            this.stations = stations;
+            this.type = type;
+        }
+    }
+
     private static class UpdateSuggestionsTask extends AsyncTask<PersistentQueryProvider, Void, List<Suggestion<LiveboardRequest>>> {
 
         private WeakReference<LiveboardSearchFragment> fragmentReference;
@@ -381,6 +409,7 @@ public class LiveboardSearchFragment extends Fragment implements OnRecyclerItemC
 
         @Override
         protected List<Suggestion<LiveboardRequest>> doInBackground(PersistentQueryProvider... provider) {
+            provider[0].awaitLoaded();
             return provider[0].getAllStations();
         }
 
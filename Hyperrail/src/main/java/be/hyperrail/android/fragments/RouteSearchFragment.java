@@ -28,7 +28,6 @@ import android.view.LayoutInflater;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ArrayAdapter;
 import android.widget.AutoCompleteTextView;
 import android.widget.Button;
 import android.widget.LinearLayout;
@@ -55,12 +54,14 @@ import be.hyperrail.android.activities.searchresult.RouteActivity;
 import be.hyperrail.android.adapter.OnRecyclerItemClickListener;
 import be.hyperrail.android.adapter.OnRecyclerItemLongClickListener;
 import be.hyperrail.android.adapter.RouteSuggestionsCardAdapter;
+import be.hyperrail.android.adapter.StationNamesAdapter;
 import be.hyperrail.android.persistence.PersistentQueryProvider;
 import be.hyperrail.android.persistence.Suggestion;
 import be.hyperrail.android.persistence.SuggestionType;
 import be.hyperrail.android.util.DateTimePicker;
 import be.hyperrail.android.util.ErrorDialogFactory;
 import be.hyperrail.android.util.OnDateTimeSetListener;
+import be.hyperrail.android.util.StationAutoCompleteIndex;
 import be.hyperrail.opentransportdata.OpenTransportApi;
 import be.hyperrail.opentransportdata.common.contracts.QueryTimeDefinition;
 import be.hyperrail.opentransportdata.common.contracts.TransportStopsDataSource;
@@ -116,10 +117,7 @@ public class RouteSearchFragment extends Fragment implements OnRecyclerItemClick
 
         createSuggestionsAdapter();
 
-        // Load autocomplete information
-        LoadAutoCompleteTask loadAutoCompleteTask = new LoadAutoCompleteTask(this);
-        loadAutoCompleteTask.execute(OpenTransportApi.getStopLocationProviderInstance());
-
+        createAutoComplete();
         createKeyListeners();
         createClickListeners(view);
 
@@ -175,6 +173,15 @@ public class RouteSearchFragment extends Fragment implements OnRecyclerItemClick
         vPickDateTime.setOnClickListener(l);
     }
 
+    /**
+     * Complete station names in the origin and destination fields
+     */
+    private void createAutoComplete() {
+        StationAutoCompleteIndex.preload(getActivity());
+        vFromText.setAdapter(new StationNamesAdapter(getActivity()));
+        vToText.setAdapter(new StationNamesAdapter(getActivity()));
+    }
+
     private void createKeyListeners() {
         // Handle special keys in "from" text
         vFromText.setOnKeyListener((v, keyCode, event) -> {
@@ -415,6 +422,7 @@ public class RouteSearchFragment extends Fragment implements OnRecyclerItemClick
 
         @Override
         protected List<Suggestion<RoutePlanningRequest>> doInBackground(PersistentQueryProvider... provider) {
+            provider[0].awaitLoaded();
             return provider[0].getAllRoutes();
         }
 
@@ -432,40 +440,5 @@ public class RouteSearchFragment extends Fragment implements OnRecyclerItemClick
         }
     }
 
-    private static class LoadAutoCompleteTask extends AsyncTask<TransportStopsDataSource, Void, String[]> {
-
-        private WeakReference<RouteSearchFragment> fragmentReference;
-
-        // only retain a weak reference to the activity
-        LoadAutoCompleteTask(RouteSearchFragment context) {
-            fragmentReference = new WeakReference<>(context);
-        }
-
-        @Override
-        protected String[] doInBackground(TransportStopsDataSource... provider) {
-            Thread.currentThread().setName("LoadAutoCompleteTask");
-            return provider[0].getStoplocationsNames(provider[0].getStoplocationsOrderedBySize());
-
-        }
-
-        @Override
-        protected void onPostExecute(String[] stations) {
-            super.onPostExecute(stations);
-
-            // get a reference to the activity if it is still there
-            RouteSearchFragment fragment = fragmentReference.get();
-            if (fragment == null || fragment.getActivity() == null) {
-                return;
-            }
-
-            // Initialize autocomplete
-            ArrayAdapter<String> autocompleteAdapter = new ArrayAdapter<>(fragment.getActivity(),
-                    android.R.layout.simple_dropdown_item_1line, stations);
-
-            fragment.vFromText.setAdapter(autocompleteAdapter);
-            fragment.vToText.setAdapter(autocompleteAdapter);
-        }
-    }
-
 }
 
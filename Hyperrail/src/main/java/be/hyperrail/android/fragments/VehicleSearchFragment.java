@@ -212,6 +212,7 @@ public class VehicleSearchFragment extends Fragment implements OnRecyclerItemCli
 
         @Override
         protected List<Suggestion<VehicleRequest>> doInBackground(PersistentQueryProvider... provider) {
+            provider[0].awaitLoaded();
             return provider[0].getAllTrains();
         }
 
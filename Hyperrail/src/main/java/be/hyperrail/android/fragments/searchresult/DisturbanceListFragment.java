@@ -91,6 +91,7 @@ public class DisturbanceListFragment extends RecyclerViewFragment<Disturbance[]>
             // Don't finish, this is the main activity
            showError(e);
         }, null);
+        request.setCacheBypassed(isPullToRefresh());
         OpenTransportApi.getDataProviderInstance().getActualDisturbances(request);
     }
 
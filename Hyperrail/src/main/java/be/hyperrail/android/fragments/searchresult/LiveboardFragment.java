@@ -19,6 +19,8 @@ import android.view.ViewGroup;
 import org.joda.time.DateTime;
 
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.List;
 
 import be.hyperrail.android.R;
 import be.hyperrail.android.VehiclePopupContextMenu;
@@ -27,7 +29,9 @@ import be.hyperrail.android.adapter.LiveboardCardAdapter;
 import be.hyperrail.android.adapter.OnRecyclerItemClickListener;
 import be.hyperrail.android.adapter.OnRecyclerItemLongClickListener;
 import be.hyperrail.android.infiniteScrolling.InfiniteScrollingDataSource;
+import be.hyperrail.android.logging.HyperRailLog;
 import be.hyperrail.opentransportdata.OpenTransportApi;
+import be.hyperrail.opentransportdata.common.contracts.DelayChange;
 import be.hyperrail.opentransportdata.common.contracts.TransportDataSource;
 import be.hyperrail.opentransportdata.common.models.Liveboard;
 import be.hyperrail.opentransportdata.common.models.VehicleStop;
@@ -35,6 +39,7 @@ import be.hyperrail.opentransportdata.common.requests.ExtendLiveboardRequest;
 import be.hyperrail.opentransportdata.common.requests.LiveboardRequest;
 import be.hyperrail.opentransportdata.common.requests.ResultExtensionType;
 import be.hyperrail.opentransportdata.common.requests.VehicleRequest;
+import be.hyperrail.opentransportdata.common.serialization.ModelCodec;
 
 /**
  * A fragment for showing liveboard results
@@ -44,6 +49,7 @@ public class LiveboardFragment extends RecyclerViewFragment<Liveboard> implement
 
     public static final String INSTANCESTATE_KEY_LIVEBOARD = "result";
     public static final String INSTANCESTATE_KEY_REQUEST = "request";
+    private static final HyperRailLog log = HyperRailLog.getLogger(LiveboardFragment.class);
     private Liveboard mCurrentLiveboard;
     private LiveboardCardAdapter mLiveboardCardAdapter;
     private LiveboardRequest mRequest;
@@ -59,7 +65,12 @@ public class LiveboardFragment extends RecyclerViewFragment<Liveboard> implement
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater, @Nullable ViewGroup container, Bundle savedInstanceState) {
         if (savedInstanceState != null && savedInstanceState.containsKey(INSTANCESTATE_KEY_REQUEST)) {
-            mRequest = (LiveboardRequest) savedInstanceState.getSerializable(INSTANCESTATE_KEY_REQUEST);
+            try {
+                mRequest = new ModelCodec().decodeLiveboardRequest(savedInstanceState.getByteArray(INSTANCESTATE_KEY_REQUEST));
+            } catch (IOException e) {
+                // Leave the request unset, the activity which shows this fragment will provide it again
+                log.warning("Could not restore the request", e);
+            }
         }
         return inflater.inflate(R.layout.fragment_recyclerview_list, container, false);
     }
@@ -67,14 +78,21 @@ public class LiveboardFragment extends RecyclerViewFragment<Liveboard> implement
     @Override
     public void onSaveInstanceState(@NonNull Bundle outState) {
         super.onSaveInstanceState(outState);
-        outState.putSerializable(INSTANCESTATE_KEY_REQUEST, mRequest);
-        outState.putSerializable(INSTANCESTATE_KEY_LIVEBOARD, mCurrentLiveboard);
+        ModelCodec codec = new ModelCodec();
+        outState.putByteArray(INSTANCESTATE_KEY_REQUEST, codec.encodeLiveboardRequest(mRequest));
+        outState.putByteArray(INSTANCESTATE_KEY_LIVEBOARD, codec.encodeLiveboard(mCurrentLiveboard));
     }
 
     @Override
     protected Liveboard getRestoredInstanceStateItems(Bundle savedInstanceState) {
         if (savedInstanceState != null && savedInstanceState.containsKey(INSTANCESTATE_KEY_LIVEBOARD)) {
-            mCurrentLiveboard = (Liveboard) savedInstanceState.getSerializable(INSTANCESTATE_KEY_LIVEBOARD);
+            try {
+                mCurrentLiveboard = new ModelCodec().decodeLiveboard(savedInstanceState.getByteArray(INSTANCESTATE_KEY_LIVEBOARD));
+            } catch (IOException e) {
+                // Load the liveboard again instead
+                log.warning("Could not restore the liveboard", e);
+                mCurrentLiveboard = null;
+            }
         }
         return mCurrentLiveboard;
     }
@@ -82,7 +100,9 @@ public class LiveboardFragment extends RecyclerViewFragment<Liveboard> implement
     @Override
     public void setRequest(@NonNull LiveboardRequest request) {
         this.mRequest = request;
-        getInitialData();
+        if (getView() != null) {
+            getInitialData();
+        }
     }
 
     @Override
@@ -113,6 +133,11 @@ public class LiveboardFragment extends RecyclerViewFragment<Liveboard> implement
 
     @Override
     protected void getData() {
+        if (mRequest == null) {
+            // The request could not be restored, data is loaded once the activity sets it again
+            vRefreshLayout.setRefreshing(false);
+            return;
+        }
 
         mCurrentLiveboard = null;
         showData(null);
@@ -123,6 +148,11 @@ public class LiveboardFragment extends RecyclerViewFragment<Liveboard> implement
         TransportDataSource api = OpenTransportApi.getDataProviderInstance();
         // Don't abort all queries: there might be multiple fragments at the same screen!
 
+        mRequest.setOnPartialResponseListener((data, tag) -> {
+            // Show the stops found so far. The liveboard can't be extended yet, and the refresh indicator keeps spinning until all stops have been found.
+            resetErrorState();
+            showData(data);
+        });
         mRequest.setCallback((data, tag) -> {
             resetErrorState();
             vRefreshLayout.setRefreshing(false);
@@ -147,6 +177,7 @@ public class LiveboardFragment extends RecyclerViewFragment<Liveboard> implement
             // only finish if we're loading new data
             showError(e);
         }, null);
+        mRequest.setCacheBypassed(isPullToRefresh());
         api.getLiveboard(mRequest);
     }
 
@@ -223,6 +254,16 @@ public class LiveboardFragment extends RecyclerViewFragment<Liveboard> implement
     }
 
 
+    @Override
+    protected List<String> getConnectionIds(int first, int last) {
+        return mLiveboardCardAdapter.getConnectionIds(first, last);
+    }
+
+    @Override
+    protected void onDelaysUpdated(@NonNull List<DelayChange> changes) {
+        mLiveboardCardAdapter.updateDelays(changes);
+    }
+
     @Override
     public void onRecyclerItemClick(RecyclerView.Adapter sender, VehicleStop object) {
         Intent i = VehicleActivity.createIntent(getActivity(), new VehicleRequest(object.getVehicle().getId(), object.getDepartureTime()));
@@ -14,6 +14,8 @@ package be.hyperrail.android.fragments.searchresult;
 
 
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.preference.PreferenceManager;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -32,10 +34,17 @@ import com.android.volley.NoConnectionError;
 import com.android.volley.ServerError;
 import com.android.volley.TimeoutError;
 
+import java.util.Collections;
+import java.util.List;
+
 import javax.net.ssl.SSLHandshakeException;
 
 import be.hyperrail.android.R;
 import be.hyperrail.android.infiniteScrolling.InfiniteScrollingDataSource;
+import be.hyperrail.opentransportdata.OpenTransportApi;
+import be.hyperrail.opentransportdata.common.contracts.DelayChange;
+import be.hyperrail.opentransportdata.common.contracts.DelayUpdateListener;
+import be.hyperrail.opentransportdata.common.contracts.TransportDelaysDataSource;
 
 /**
  * A base class for recyclerviews with results, supporting pull-to-refresh, infinite loading, and more.
@@ -62,6 +71,37 @@ public abstract class RecyclerViewFragment<T> extends Fragment implements Infini
      */
     protected boolean mShowDividers = true;
 
+    /**
+     * Whether the data is being loaded again because the user pulled to refresh
+     */
+    private boolean mPullToRefresh;
+
+    /**
+     * How often the delays of the visible results are refreshed, while this fragment is resumed
+     */
+    private static final long DELAY_REFRESH_INTERVAL_MILLIS = 60 * 1000;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    // Delay changes are reported on a background thread
+    private final DelayUpdateListener mDelayUpdateListener = changes -> mHandler.post(() -> {
+        if (getView() != null) {
+            onDelaysUpdated(changes);
+        }
+    });
+
+    private final Runnable mDelayRefresh = new Runnable() {
+        @Override
+        public void run() {
+            TransportDelaysDataSource dataSource = OpenTransportApi.getDelaysDataSourceInstance();
+            List<String> connections = getVisibleConnectionIds();
+            if (dataSource != null && !connections.isEmpty()) {
+                dataSource.refreshDelays(connections.toArray(new String[0]));
+            }
+            mHandler.postDelayed(this, DELAY_REFRESH_INTERVAL_MILLIS);
+        }
+    };
+
     @Override
     public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
         super.onViewCreated(view, savedInstanceState);
@@ -76,8 +116,13 @@ public abstract class RecyclerViewFragment<T> extends Fragment implements Infini
                     // The method calls setRefreshing(false) when it's finished.
                     vRefreshLayout.setRefreshing(true);
 
-                    // Call getInitialData to reset the data again.
-                    getInitialData();
+                    // Call getInitialData to reset the data again. Cached results are skipped, as the user asked for the latest data.
+                    mPullToRefresh = true;
+                    try {
+                        getInitialData();
+                    } finally {
+                        mPullToRefresh = false;
+                    }
                 }
         );
 
@@ -111,6 +156,55 @@ public abstract class RecyclerViewFragment<T> extends Fragment implements Infini
         }
     }
 
+    @Override
+    public void onResume() {
+        super.onResume();
+        TransportDelaysDataSource dataSource = OpenTransportApi.getDelaysDataSourceInstance();
+        if (dataSource != null) {
+            dataSource.addDelayUpdateListener(mDelayUpdateListener);
+            mHandler.postDelayed(mDelayRefresh, DELAY_REFRESH_INTERVAL_MILLIS);
+        }
+    }
+
+    @Override
+    public void onPause() {
+        mHandler.removeCallbacks(mDelayRefresh);
+        TransportDelaysDataSource dataSource = OpenTransportApi.getDelaysDataSourceInstance();
+        if (dataSource != null) {
+            dataSource.removeDelayUpdateListener(mDelayUpdateListener);
+        }
+        super.onPause();
+    }
+
+    private List<String> getVisibleConnectionIds() {
+        LinearLayoutManager layoutManager = (LinearLayoutManager) vRecyclerView.getLayoutManager();
+        int first = layoutManager.findFirstVisibleItemPosition();
+        if (first == RecyclerView.NO_POSITION) {
+            return Collections.emptyList();
+        }
+        return getConnectionIds(first, layoutManager.findLastVisibleItemPosition());
+    }
+
+    /**
+     * Get the connections used by the results at the given adapter positions. Their delays are refreshed while this fragment is resumed.
+     *
+     * @param first The adapter position of the first visible item
+     * @param last  The adapter position of the last visible item
+     * @return The semantic ids of the connections, or an empty list if the results don't have real-time delays
+     */
+    protected List<String> getConnectionIds(int first, int last) {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Show new delays for the shown results. Called on the main thread.
+     *
+     * @param changes The connections of which the delay changed
+     */
+    protected void onDelaysUpdated(@NonNull List<DelayChange> changes) {
+        // Results without real-time delays aren't updated
+    }
+
     /**
      * Get the recyclerview adapter
      *
@@ -139,6 +233,13 @@ public abstract class RecyclerViewFragment<T> extends Fragment implements Infini
         getData();
     }
 
+    /**
+     * @return true while getting the data because the user pulled to refresh. Requests made in the meantime should bypass cached results.
+     */
+    protected boolean isPullToRefresh() {
+        return mPullToRefresh;
+    }
+
     /**
      * Show data
      *
@@ -17,11 +17,14 @@ import android.view.ViewGroup;
 
 import org.joda.time.DateTime;
 
+import java.io.IOException;
+
 import be.hyperrail.android.R;
 import be.hyperrail.android.activities.searchresult.LiveboardActivity;
 import be.hyperrail.android.activities.searchresult.VehicleActivity;
 import be.hyperrail.android.adapter.OnRecyclerItemClickListener;
 import be.hyperrail.android.adapter.RouteDetailCardAdapter;
+import be.hyperrail.android.logging.HyperRailLog;
 import be.hyperrail.opentransportdata.common.contracts.QueryTimeDefinition;
 import be.hyperrail.opentransportdata.common.models.LiveboardType;
 import be.hyperrail.opentransportdata.common.models.Route;
@@ -31,12 +34,15 @@ import be.hyperrail.opentransportdata.common.models.VehicleStop;
 import be.hyperrail.opentransportdata.common.requests.LiveboardRequest;
 import be.hyperrail.opentransportdata.common.requests.RouteRefreshRequest;
 import be.hyperrail.opentransportdata.common.requests.VehicleRequest;
+import be.hyperrail.opentransportdata.common.serialization.ModelCodec;
 
 /**
  * A fragment for showing liveboard results
  */
 public class RouteFragment extends RecyclerViewFragment<Route> implements ResultFragment<RouteRefreshRequest>, OnRecyclerItemClickListener<VehicleStop>{
 
+    private static final HyperRailLog log = HyperRailLog.getLogger(RouteFragment.class);
+
     private RouteRefreshRequest mRequest;
     /**
      * The route to show
@@ -68,13 +74,18 @@ public class RouteFragment extends RecyclerViewFragment<Route> implements Result
     public void onSaveInstanceState(@NonNull Bundle outState) {
         super.onSaveInstanceState(outState);
         outState.putSerializable("request", mRequest);
-        outState.putSerializable("result", mRoute);
+        outState.putByteArray("result", new ModelCodec().encodeRoute(mRoute));
     }
 
     @Override
     protected Route getRestoredInstanceStateItems(Bundle savedInstanceState) {
         if (savedInstanceState != null && savedInstanceState.containsKey("result")) {
-            this.mRoute = (Route) savedInstanceState.get("result");
+            try {
+                this.mRoute = new ModelCodec().decodeRoute(savedInstanceState.getByteArray("result"));
+            } catch (IOException e) {
+                // Leave the route unset, the activity which shows this fragment will provide it again
+                log.warning("Could not restore the route", e);
+            }
         }
         return mRoute;
     }
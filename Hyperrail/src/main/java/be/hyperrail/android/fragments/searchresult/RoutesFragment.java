@@ -26,13 +26,18 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import org.joda.time.DateTime;
 
+import java.io.IOException;
+import java.util.List;
+
 import be.hyperrail.android.R;
 import be.hyperrail.android.activities.searchresult.RouteDetailActivity;
 import be.hyperrail.android.adapter.OnRecyclerItemClickListener;
 import be.hyperrail.android.adapter.OnRecyclerItemLongClickListener;
 import be.hyperrail.android.adapter.RouteCardAdapter;
 import be.hyperrail.android.infiniteScrolling.InfiniteScrollingDataSource;
+import be.hyperrail.android.logging.HyperRailLog;
 import be.hyperrail.opentransportdata.OpenTransportApi;
+import be.hyperrail.opentransportdata.common.contracts.DelayChange;
 import be.hyperrail.opentransportdata.common.contracts.TransportDataSource;
 import be.hyperrail.opentransportdata.common.models.Route;
 import be.hyperrail.opentransportdata.common.models.RoutesList;
@@ -40,6 +45,7 @@ import be.hyperrail.opentransportdata.common.requests.ExtendRoutePlanningRequest
 import be.hyperrail.opentransportdata.common.requests.RequestType;
 import be.hyperrail.opentransportdata.common.requests.ResultExtensionType;
 import be.hyperrail.opentransportdata.common.requests.RoutePlanningRequest;
+import be.hyperrail.opentransportdata.common.serialization.ModelCodec;
 
 /**
  * A fragment for showing liveboard results
@@ -48,9 +54,12 @@ public class RoutesFragment extends RecyclerViewFragment<RoutesList> implements
 
     public static final String INSTANCESTATE_KEY_REQUEST = "request";
     public static final String INSTANCESTATE_KEY_RESULT = "result";
+    private static final HyperRailLog log = HyperRailLog.getLogger(RoutesFragment.class);
     private RoutesList mCurrentRouteResult;
     private RouteCardAdapter mRouteCardAdapter;
     private RoutePlanningRequest mRequest;
+    // The request for the routes which are being loaded, of which partial results might still arrive
+    private RoutePlanningRequest mPendingRequest;
 
     public static RoutesFragment createInstance(RoutePlanningRequest request) {
         RoutesFragment frg = new RoutesFragment();
@@ -62,7 +71,12 @@ public class RoutesFragment extends RecyclerViewFragment<RoutesList> implements
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater, @Nullable ViewGroup container, Bundle savedInstanceState) {
         if (savedInstanceState != null && savedInstanceState.containsKey(INSTANCESTATE_KEY_REQUEST)) {
-            mRequest = (RoutePlanningRequest) savedInstanceState.getSerializable(INSTANCESTATE_KEY_REQUEST);
+            try {
+                mRequest = new ModelCodec().decodeRoutePlanningRequest(savedInstanceState.getByteArray(INSTANCESTATE_KEY_REQUEST));
+            } catch (IOException e) {
+                // Leave the request unset, the activity which shows this fragment will provide it again
+                log.warning("Could not restore the request", e);
+            }
         }
         return inflater.inflate(R.layout.fragment_recyclerview_list, container, false);
     }
@@ -92,14 +106,31 @@ public class RoutesFragment extends RecyclerViewFragment<RoutesList> implements
     @Override
     public void onSaveInstanceState(@NonNull Bundle outState) {
         super.onSaveInstanceState(outState);
-        outState.putSerializable(INSTANCESTATE_KEY_RESULT, mCurrentRouteResult);
-        outState.putSerializable(INSTANCESTATE_KEY_REQUEST, mRequest);
+        ModelCodec codec = new ModelCodec();
+        if (ModelCodec.canEncode(mCurrentRouteResult)) {
+            outState.putByteArray(INSTANCESTATE_KEY_RESULT, codec.encodeRoutesList(mCurrentRouteResult));
+        } else {
+            // Keep provider specific state, such as the state needed to extend linked connections results
+            outState.putSerializable(INSTANCESTATE_KEY_RESULT, mCurrentRouteResult);
+        }
+        outState.putByteArray(INSTANCESTATE_KEY_REQUEST, codec.encodeRoutePlanningRequest(mRequest));
     }
 
     @Override
     protected RoutesList getRestoredInstanceStateItems(Bundle savedInstanceState) {
         if (savedInstanceState != null && savedInstanceState.containsKey(INSTANCESTATE_KEY_RESULT)) {
-            this.mCurrentRouteResult = (RoutesList) savedInstanceState.get(INSTANCESTATE_KEY_RESULT);
+            Object result = savedInstanceState.get(INSTANCESTATE_KEY_RESULT);
+            if (result instanceof byte[]) {
+                try {
+                    this.mCurrentRouteResult = new ModelCodec().decodeRoutesList((byte[]) result);
+                } catch (IOException e) {
+                    // Load the routes again instead
+                    log.warning("Could not restore the routes", e);
+                    this.mCurrentRouteResult = null;
+                }
+            } else {
+                this.mCurrentRouteResult = (RoutesList) result;
+            }
         }
         return mCurrentRouteResult;
     }
@@ -120,6 +151,12 @@ public class RoutesFragment extends RecyclerViewFragment<RoutesList> implements
     }
 
     protected void getData() {
+        if (mRequest == null) {
+            // The request could not be restored, this fragment is replaced by the activity
+            vRefreshLayout.setRefreshing(false);
+            return;
+        }
+
         // Clear the view
         showData(null);
         mCurrentRouteResult = null;
@@ -129,11 +166,22 @@ public class RoutesFragment extends RecyclerViewFragment<RoutesList> implements
 
         TransportDataSource api = OpenTransportApi.getDataProviderInstance();
         api.abortQueries(RequestType.ROUTEPLANNING);
+        if (mPendingRequest != null) {
+            // Results for the previous search shouldn't replace the results of this search
+            mPendingRequest.cancel();
+        }
 
         RoutePlanningRequest request = new RoutePlanningRequest(mRequest.getOrigin(),
                 mRequest.getDestination(),
                 mRequest.getTimeDefinition(),
                 mRequest.getSearchTime());
+        request.setCacheBypassed(isPullToRefresh());
+        mPendingRequest = request;
+        request.setOnPartialResponseListener((data, tag) -> {
+            // Show the routes found so far. The list can't be extended yet, and the refresh indicator keeps spinning until all routes have been found.
+            resetErrorState();
+            showData(data);
+        });
         request.setCallback((data, tag) -> {
                     vRefreshLayout.setRefreshing(false);
                     resetErrorState();
@@ -224,6 +272,25 @@ public class RoutesFragment extends RecyclerViewFragment<RoutesList> implements
         mRouteCardAdapter.updateRoutes(routeList);
     }
 
+    @Override
+    public void onDestroyView() {
+        if (mPendingRequest != null) {
+            mPendingRequest.cancel();
+            mPendingRequest = null;
+        }
+        super.onDestroyView();
+    }
+
+    @Override
+    protected List<String> getConnectionIds(int first, int last) {
+        return mRouteCardAdapter.getConnectionIds(first, last);
+    }
+
+    @Override
+    protected void onDelaysUpdated(@NonNull List<DelayChange> changes) {
+        mRouteCardAdapter.updateDelays(changes);
+    }
+
     @Override
     public void onRecyclerItemClick(RecyclerView.Adapter sender, Route object) {
         // Nothing to do, collapsing/expanding of items is handled by the adapter.
@@ -39,6 +39,7 @@ import com.google.android.gms.maps.model.PolylineOptions;
 
 import org.joda.time.DateTime;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -51,6 +52,7 @@ import be.hyperrail.android.adapter.OnRecyclerItemLongClickListener;
 import be.hyperrail.android.adapter.VehicleStopCardAdapter;
 import be.hyperrail.android.fragments.embed.TrainCompositionFragment;
 import be.hyperrail.android.infiniteScrolling.InfiniteScrollingDataSource;
+import be.hyperrail.android.logging.HyperRailLog;
 import be.hyperrail.android.persistence.PersistentQueryProvider;
 import be.hyperrail.android.persistence.Suggestion;
 import be.hyperrail.android.persistence.SuggestionType;
@@ -63,6 +65,7 @@ import be.hyperrail.opentransportdata.common.models.VehicleStop;
 import be.hyperrail.opentransportdata.common.requests.LiveboardRequest;
 import be.hyperrail.opentransportdata.common.requests.RequestType;
 import be.hyperrail.opentransportdata.common.requests.VehicleRequest;
+import be.hyperrail.opentransportdata.common.serialization.ModelCodec;
 
 /**
  * A fragment for showing liveboard results
@@ -70,6 +73,8 @@ import be.hyperrail.opentransportdata.common.requests.VehicleRequest;
 public class VehicleFragment extends RecyclerViewFragment<VehicleJourney> implements InfiniteScrollingDataSource,
         ResultFragment<VehicleRequest>, OnRecyclerItemClickListener<VehicleStop>, OnRecyclerItemLongClickListener<VehicleStop>, OnMapReadyCallback {
 
+    private static final HyperRailLog log = HyperRailLog.getLogger(VehicleFragment.class);
+
     private VehicleJourney mCurrentTrain;
     private VehicleRequest mRequest;
     private VehicleStopCardAdapter mRecyclerviewAdapter;
@@ -85,7 +90,12 @@ public class VehicleFragment extends RecyclerViewFragment<VehicleJourney> implem
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater, @Nullable ViewGroup container, Bundle savedInstanceState) {
         if (savedInstanceState != null && savedInstanceState.containsKey("request")) {
-            mRequest = (VehicleRequest) savedInstanceState.getSerializable("request");
+            try {
+                mRequest = new ModelCodec().decodeVehicleRequest(savedInstanceState.getByteArray("request"));
+            } catch (IOException e) {
+                // Leave the request unset, the activity which shows this fragment will provide it again
+                log.warning("Could not restore the request", e);
+            }
         }
         if (isMapEnabled()) {
             return inflater.inflate(R.layout.fragment_recyclerview_vehiclejourney_map, container, false);
@@ -102,7 +112,7 @@ public class VehicleFragment extends RecyclerViewFragment<VehicleJourney> implem
             mapFragment.getMapAsync(this);
         }
 
-        if (showVehicleComposition()) {
+        if (showVehicleComposition() && mRequest != null) {
             // Train composition is handled in an embedded fragment
             TrainCompositionFragment trainCompositionFragment = TrainCompositionFragment.createInstance(mRequest.getVehicleId());
             getChildFragmentManager().beginTransaction().replace(R.id.fragment_vehicle_composition, trainCompositionFragment).commit();
@@ -122,13 +132,13 @@ public class VehicleFragment extends RecyclerViewFragment<VehicleJourney> implem
     @Override
     public void onSaveInstanceState(@NonNull Bundle outState) {
         super.onSaveInstanceState(outState);
-        outState.putSerializable("request", mRequest);
+        outState.putByteArray("request", new ModelCodec().encodeVehicleRequest(mRequest));
         outState.putSerializable("result", mCurrentTrain);
     }
 
     @Override
     protected VehicleJourney getRestoredInstanceStateItems(Bundle savedInstanceState) {
-        if (savedInstanceState != null && savedInstanceState.containsKey("result")) {
+        if (mRequest != null && savedInstanceState != null && savedInstanceState.containsKey("result")) {
             this.mCurrentTrain = (VehicleJourney) savedInstanceState.get("result");
         }
         return mCurrentTrain;
@@ -165,6 +175,10 @@ public class VehicleFragment extends RecyclerViewFragment<VehicleJourney> implem
     }
 
     protected void getData() {
+        if (mRequest == null) {
+            // The request could not be restored, this fragment is replaced by the activity
+            return;
+        }
         vRefreshLayout.setRefreshing(true);
 
         OpenTransportApi.getDataProviderInstance().abortQueries(RequestType.VEHICLEJOURNEY);
@@ -182,6 +196,7 @@ public class VehicleFragment extends RecyclerViewFragment<VehicleJourney> implem
             // only finish if we're loading new data
             showError(e);
         }, null);
+        request.setCacheBypassed(isPullToRefresh());
         OpenTransportApi.getDataProviderInstance().getVehicleJourney(request);
     }
 
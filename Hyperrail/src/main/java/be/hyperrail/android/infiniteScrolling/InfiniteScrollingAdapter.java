@@ -45,6 +45,10 @@ public abstract class InfiniteScrollingAdapter<T> extends RecyclerView.Adapter<R
     protected final int VIEW_TYPE_LOADING = 601;
     protected final int VIEW_TYPE_LOAD_EARLIER = 602;
 
+    // Ids of the load earlier button and the load next spinner, for adapters with stable ids
+    private static final long ID_LOAD_EARLIER = Long.MIN_VALUE;
+    private static final long ID_LOADING = Long.MIN_VALUE + 1;
+
     private final InfiniteScrollingDataSource mInfiniteScrollingDataSource;
     protected final RecyclerView mRecyclerView;
 
@@ -254,6 +258,40 @@ public abstract class InfiniteScrollingAdapter<T> extends RecyclerView.Adapter<R
 
     }
 
+    /**
+     * Get the id of an item. Data items get their id from {@link #getListItemId(int)}.
+     *
+     * @inheritDoc
+     */
+    @Override
+    public final long getItemId(int position) {
+        if (mInfinitePrevScrolling && position == 0) {
+            return ID_LOAD_EARLIER;
+        } else if (mInfiniteNextScrolling && position == getItemCount() - 1) {
+            return ID_LOADING;
+        }
+        return getListItemId(position - getListItemOffset());
+    }
+
+    /**
+     * Get a stable id for a data item. Adapters which call setHasStableIds(true) should override this method.
+     *
+     * @param position The position of the data item
+     * @return The id of the data item
+     */
+    protected long getListItemId(int position) {
+        return RecyclerView.NO_ID;
+    }
+
+    /**
+     * The position of the first data item in this adapter, which is preceded by the load earlier button when it's shown.
+     *
+     * @return The number of items in front of the data items
+     */
+    protected int getListItemOffset() {
+        return mInfinitePrevScrolling ? 1 : 0;
+    }
+
     /**
      * The number of data items to be shown
      *
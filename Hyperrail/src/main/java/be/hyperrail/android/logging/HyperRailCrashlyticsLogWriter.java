@@ -1,18 +1,56 @@
 package be.hyperrail.android.logging;
 
+import androidx.annotation.NonNull;
+
 import com.google.firebase.crashlytics.FirebaseCrashlytics;
 
 import java.util.logging.Level;
 
+import be.hyperrail.opentransportdata.logging.OpenTransportRingBufferLogWriter;
+
 public class HyperRailCrashlyticsLogWriter extends HyperRailConsoleLogWriter implements HyperRailLogWriter {
 
+    // Messages below the minimum level are only kept in memory, and are added to the crash log when an exception is recorded
+    private final OpenTransportRingBufferLogWriter mRecentDebugMessages = new OpenTransportRingBufferLogWriter(64, Level.ALL);
+
+    /**
+     * Write info messages and above to the crash log, and keep recent debug messages in memory.
+     */
+    public HyperRailCrashlyticsLogWriter() {
+        this(Level.INFO);
+    }
+
+    /**
+     * @param minimumLevel The lowest priority which is written to the crash log. Messages with a lower priority are only
+     *                     kept in memory, until an exception is recorded.
+     */
+    public HyperRailCrashlyticsLogWriter(@NonNull Level minimumLevel) {
+        super(minimumLevel);
+    }
+
+    @Override
+    public boolean isLoggable(Level priority, String tag) {
+        return super.isLoggable(priority, tag) || mRecentDebugMessages.isLoggable(priority, tag);
+    }
+
     @Override
     public void logException(String tag, Throwable throwable) {
-        FirebaseCrashlytics.getInstance().recordException(throwable);
+        FirebaseCrashlytics crashlytics = FirebaseCrashlytics.getInstance();
+        synchronized (mRecentDebugMessages) {
+            for (OpenTransportRingBufferLogWriter.Entry entry : mRecentDebugMessages.getEntries()) {
+                crashlytics.log(entry.toString());
+            }
+            mRecentDebugMessages.clear();
+        }
+        crashlytics.recordException(throwable);
     }
 
     @Override
     public void log(Level priority, String tag, String msg) {
+        if (!super.isLoggable(priority, tag)) {
+            mRecentDebugMessages.log(priority, tag, msg);
+            return;
+        }
         FirebaseCrashlytics.getInstance().log("[" + priority.getName() + "] [" + tag + "] " + msg);
     }
 
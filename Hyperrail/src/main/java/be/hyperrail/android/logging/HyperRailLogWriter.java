@@ -6,6 +6,8 @@ import be.hyperrail.opentransportdata.logging.OpenTransportLogWriter;
 
 public interface HyperRailLogWriter extends OpenTransportLogWriter {
 
+    boolean isLoggable(Level priority, String tag);
+
     void logException(String tag, Throwable throwable);
 
     void log(Level priority, String tag, String msg);
@@ -0,0 +1,99 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.android.persistence;
+
+import org.joda.time.DateTimeZone;
+
+import java.util.Arrays;
+
+/**
+ * Rank suggestions by how often and how recently they were used, and by how close those uses were to the current time of day.
+ * <p>
+ * Only the most recent uses are kept as samples. The score is the total number of uses multiplied by the average weight of the samples,
+ * so frequently used suggestions rank high without every use having to be stored.
+ */
+class Frecency {
+
+    /**
+     * The number of recent uses which are kept for every suggestion
+     */
+    static final int MAX_SAMPLES = 10;
+
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+    private static final int MINUTES_PER_DAY = 24 * 60;
+
+    private Frecency() {
+        // No instances
+    }
+
+    /**
+     * @param useCount   The total number of uses
+     * @param recentUses The times of the most recent uses, in milliseconds
+     * @param now        The current time, in milliseconds
+     * @param zone       The time zone in which the time of day is determined
+     * @return The score, higher is better
+     */
+    static double score(int useCount, long[] recentUses, long now, DateTimeZone zone) {
+        if (useCount == 0 || recentUses.length == 0) {
+            return 0;
+        }
+        int minuteOfDay = getMinuteOfDay(now, zone);
+        double total = 0;
+        for (long use : recentUses) {
+            total += getRecencyWeight(now - use) * getTimeOfDayWeight(minuteOfDay, getMinuteOfDay(use, zone));
+        }
+        return useCount * total / recentUses.length;
+    }
+
+    /**
+     * Add a use to the samples, dropping the oldest sample when there are too many.
+     *
+     * @return The new samples, oldest first
+     */
+    static long[] addUse(long[] recentUses, long use) {
+        long[] result;
+        if (recentUses.length < MAX_SAMPLES) {
+            result = Arrays.copyOf(recentUses, recentUses.length + 1);
+        } else {
+            result = Arrays.copyOfRange(recentUses, recentUses.length - MAX_SAMPLES + 1, recentUses.length + 1);
+        }
+        result[result.length - 1] = use;
+        return result;
+    }
+
+    private static double getRecencyWeight(long age) {
+        if (age < 4 * DAY) {
+            return 100;
+        } else if (age < 14 * DAY) {
+            return 70;
+        } else if (age < 31 * DAY) {
+            return 50;
+        } else if (age < 90 * DAY) {
+            return 30;
+        }
+        return 10;
+    }
+
+    /**
+     * Uses around the same time of day count more, e.g. the route to work in the morning.
+     */
+    private static double getTimeOfDayWeight(int minuteOfDay, int useMinuteOfDay) {
+        int difference = Math.abs(minuteOfDay - useMinuteOfDay);
+        difference = Math.min(difference, MINUTES_PER_DAY - difference);
+        if (difference <= 60) {
+            return 2;
+        } else if (difference <= 180) {
+            return 1.5;
+        }
+        return 1;
+    }
+
+    private static int getMinuteOfDay(long millis, DateTimeZone zone) {
+        long local = millis + zone.getOffset(millis);
+        return (int) (((local / 60000) % MINUTES_PER_DAY + MINUTES_PER_DAY) % MINUTES_PER_DAY);
+    }
+}
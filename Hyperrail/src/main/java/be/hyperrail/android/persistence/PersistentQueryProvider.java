@@ -10,65 +10,50 @@ import android.content.Context;
 import android.content.SharedPreferences;
 import android.preference.PreferenceManager;
 
+import org.joda.time.DateTimeZone;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 import be.hyperrail.android.logging.HyperRailLog;
 import be.hyperrail.opentransportdata.common.contracts.TransportDataRequest;
-import be.hyperrail.opentransportdata.common.requests.ActualDisturbancesRequest;
 import be.hyperrail.opentransportdata.common.requests.LiveboardRequest;
 import be.hyperrail.opentransportdata.common.requests.RoutePlanningRequest;
 import be.hyperrail.opentransportdata.common.requests.VehicleRequest;
 
 import static be.hyperrail.android.persistence.SuggestionType.FAVORITE;
 import static be.hyperrail.android.persistence.SuggestionType.HISTORY;
-import static be.hyperrail.android.persistence.SuggestionType.LIST;
+import static be.hyperrail.android.persistence.SuggestionsDataContract.KIND_ROUTE;
+import static be.hyperrail.android.persistence.SuggestionsDataContract.KIND_STATION;
+import static be.hyperrail.android.persistence.SuggestionsDataContract.KIND_VEHICLE;
 
 /**
- * Store data about recent and favorite searches as json object in preferences.
- * For code-duplication reasons, all data is stored as a RoutePlanningRequest. Stations are stored as a query from the station, with an empty string as destination.
+ * Store recent and favorite searches in a database, and rank them by frecency.
+ * <p>
+ * Every route, station or vehicle is stored once, no matter how often it was searched. All rows are read into memory in the background
+ * when the provider is created, after which suggestions are sorted without touching the database. Changes are written in the background, one row at a time.
+ * <p>
+ * No method waits for the rows to be read, except for {@link #awaitLoaded()}. Until then no suggestions are returned, and changes are queued.
  */
-public class PersistentQueryProvider implements Serializable {
+public class PersistentQueryProvider {
 
     private static final HyperRailLog log = HyperRailLog.getLogger(PersistentQueryProvider.class);
 
     /**
-     * Tag under which recent routes are stored
+     * Tags under which recent and favorite searches were stored in the preferences, before they were moved to the database
      */
-    private static final String TAG_RECENT_ROUTES = "recent_routes";
-
-    /**
-     * Tag under which recent stations are stored
-     */
-    private static final String TAG_RECENT_STATIONS = "recent_stations";
-
-    /**
-     * Tag under which recent stations are stored
-     */
-    private static final String TAG_RECENT_TRAINS = "recent_trains";
-
-    /**
-     * Tag under which favorite routes are stored
-     */
-    private static final String TAG_FAV_ROUTES = "fav_routes";
-
-    /**
-     * Tag under which favorite routes are stored
-     */
-    private static final String TAG_FAV_STATIONS = "fav_stations";
-
-    /**
-     * Tag under which favorite trains are stored
-     */
-    private static final String TAG_FAV_TRAINS = "fav_trains";
+    private static final String[] LEGACY_TAGS_RECENT = {"recent_routes", "recent_stations", "recent_trains"};
+    private static final String[] LEGACY_TAGS_FAVORITE = {"fav_routes", "fav_stations", "fav_trains"};
+    private static final int[] LEGACY_TAG_KINDS = {KIND_ROUTE, KIND_STATION, KIND_VEHICLE};
 
     private static final String PREF_ROUTES_ORDER = "routes_order";
     private static final String PREF_ROUTES_HISTORY_COUNT = "routes_history_count";
@@ -76,19 +61,37 @@ public class PersistentQueryProvider implements Serializable {
     public static final String PREF_STATIONS_ORDER = "stations_order";
 
     /**
-     * An instance of sharedPreferences
+     * Limit the amount of history per kind, so the least used searches are eventually forgotten
      */
+    private static final int MAX_HISTORY = 500;
+
     private final SharedPreferences sharedPreferences;
+    private final SuggestionsDatabase mDatabase;
+    // Writes are done in order, on a single background thread
+    private final Executor mWriteExecutor;
 
-    /**
-     * Limit the amount of stored items per tag for performance reasons
-     */
-    private static final int MAX_STORED = 8;
+    // All stored suggestions per kind, by key. Null until loaded.
+    private List<Map<String, StoredSuggestion>> mCache;
+    // The number of changes which are queued on the write executor, and haven't been applied to the cache yet
+    private int mQueuedChanges;
+    private final CountDownLatch mLoaded = new CountDownLatch(1);
 
     private static PersistentQueryProvider mInstance;
 
     private PersistentQueryProvider(Context context) {
-        this.sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+        this(PreferenceManager.getDefaultSharedPreferences(context), new SuggestionsDatabase(context.getApplicationContext()),
+             Executors.newSingleThreadExecutor());
+    }
+
+    /**
+     * @param writeExecutor Executor which runs tasks one at a time, in the order in which they were queued
+     */
+    PersistentQueryProvider(SharedPreferences sharedPreferences, SuggestionsDatabase database, Executor writeExecutor) {
+        this.sharedPreferences = sharedPreferences;
+        this.mDatabase = database;
+        this.mWriteExecutor = writeExecutor;
+        // Loading is queued before any write, so writes never race with reading the database
+        mWriteExecutor.execute(this::load);
     }
 
     public static PersistentQueryProvider getInstance(Context context) {
@@ -104,37 +107,13 @@ public class PersistentQueryProvider implements Serializable {
      * @return Sorted array with favorite and recent route requests
      */
     public List<Suggestion<RoutePlanningRequest>> getAllRoutes() {
-
         //noinspection ConstantConditions
         int recentLimit = Integer.valueOf(sharedPreferences.getString(PREF_ROUTES_HISTORY_COUNT, "3"));
         //noinspection ConstantConditions
         int order = Integer.valueOf(sharedPreferences.getString(PREF_ROUTES_ORDER, "0"));
         // 0: recents before favorites
         // 1: favorites before recents
-
-        List<Suggestion<RoutePlanningRequest>> favorites = getRoutes(FAVORITE);
-
-        if (recentLimit == 0) {
-            return favorites;
-        }
-
-        // Keep some margin to ensure that we will always show the number of recents set by the user
-        List<Suggestion<RoutePlanningRequest>> recents = getRoutes(HISTORY,
-                recentLimit + favorites.size());
-
-        removeFromCollection(recents, favorites);
-
-        if (recents.size() > recentLimit) {
-            recents = recents.subList(0, recentLimit);
-        }
-
-        if (order == 0) {
-            recents.addAll(favorites);
-            return recents;
-        } else {
-            favorites.addAll(recents);
-            return favorites;
-        }
+        return getAll(KIND_ROUTE, recentLimit, order == 0, RoutePlanningRequest.class);
     }
 
     /**
@@ -150,30 +129,7 @@ public class PersistentQueryProvider implements Serializable {
         int order = Integer.valueOf(sharedPreferences.getString(PREF_STATIONS_ORDER, "0"));
         // 0 || 2: recents before favorites
         // 1 || 3: favorites before recents
-
-        List<Suggestion<LiveboardRequest>> favorites = getStations(FAVORITE);
-
-        if (recentLimit == 0) {
-            return favorites;
-        }
-
-        // Keep some margin to ensure that we will always show the number of recents set by the user
-        List<Suggestion<LiveboardRequest>> recents = getStations(HISTORY,
-                recentLimit + favorites.size());
-
-        removeFromCollection(recents, favorites);
-
-        if (recents.size() > recentLimit) {
-            recents = recents.subList(0, recentLimit);
-        }
-
-        if (order == 0 || order == 2) {
-            recents.addAll(favorites);
-            return recents;
-        } else {
-            favorites.addAll(recents);
-            return favorites;
-        }
+        return getAll(KIND_STATION, recentLimit, order == 0 || order == 2, LiveboardRequest.class);
     }
 
     /**
@@ -188,24 +144,17 @@ public class PersistentQueryProvider implements Serializable {
         int order = Integer.valueOf(sharedPreferences.getString("trains_order", "0"));
         // 0: recents before favorites
         // 1: favorites before recents
+        return getAll(KIND_VEHICLE, recentLimit, order == 0, VehicleRequest.class);
+    }
 
-        List<Suggestion<VehicleRequest>> favorites = getTrains(FAVORITE);
-
-        if (recentLimit == 0) {
+    private <T extends TransportDataRequest> List<Suggestion<T>> getAll(int kind, int recentLimit, boolean recentsFirst, Class<T> classInstance) {
+        List<Suggestion<T>> favorites = getSuggestions(kind, FAVORITE, Integer.MAX_VALUE, classInstance);
+        if (recentLimit <= 0) {
             return favorites;
         }
-
-        // Keep some margin to ensure that we will always show the number of recents set by the user
-        List<Suggestion<VehicleRequest>> recents = getTrains(HISTORY,
-                recentLimit + favorites.size());
-
-        removeFromCollection(recents, favorites);
-
-        if (recents.size() > recentLimit) {
-            recents = recents.subList(0, recentLimit);
-        }
-
-        if (order == 0) {
+        // Favorites are never part of the recents, so the number of recents set by the user is always shown
+        List<Suggestion<T>> recents = getSuggestions(kind, HISTORY, recentLimit, classInstance);
+        if (recentsFirst) {
             recents.addAll(favorites);
             return recents;
         } else {
@@ -214,330 +163,380 @@ public class PersistentQueryProvider implements Serializable {
         }
     }
 
-    private List<Suggestion<RoutePlanningRequest>> getRoutes(SuggestionType type) {
-        return getRoutes(type, MAX_STORED);
-    }
-
-    private List<Suggestion<RoutePlanningRequest>> getRoutes(SuggestionType type, int limit) {
-        if (type == FAVORITE) {
-            return load(TAG_FAV_ROUTES, limit, type, RoutePlanningRequest.class);
-        } else if (type == HISTORY) {
-            return load(TAG_RECENT_ROUTES, limit, true, type, RoutePlanningRequest.class);
+    /**
+     * Get the favorites or the recents which aren't favorites, with the highest frecency first
+     */
+    private <T extends TransportDataRequest> List<Suggestion<T>> getSuggestions(int kind, SuggestionType type, int limit, Class<T> classInstance) {
+        final long now = System.currentTimeMillis();
+        final DateTimeZone zone = DateTimeZone.getDefault();
+
+        List<StoredSuggestion> candidates = new ArrayList<>();
+        synchronized (this) {
+            if (mCache == null) {
+                return new ArrayList<>();
+            }
+            for (StoredSuggestion suggestion : getCache(kind).values()) {
+                if (type == FAVORITE ? suggestion.favorite : suggestion.history && !suggestion.favorite) {
+                    candidates.add(suggestion);
+                }
+            }
+            sortByFrecency(candidates, now, zone);
         }
-        return new ArrayList<>();
-    }
-
-    private List<Suggestion<LiveboardRequest>> getStations(SuggestionType type) {
-        return getStations(type, MAX_STORED);
-    }
 
-    private List<Suggestion<LiveboardRequest>> getStations(SuggestionType type, int limit) {
-        if (type == FAVORITE) {
-            return load(TAG_FAV_STATIONS, limit, type, LiveboardRequest.class);
-        } else if (type == HISTORY) {
-            return load(TAG_RECENT_STATIONS, limit, true, type, LiveboardRequest.class);
+        List<Suggestion<T>> results = new ArrayList<>(Math.min(candidates.size(), limit));
+        for (StoredSuggestion candidate : candidates) {
+            if (results.size() >= limit) {
+                break;
+            }
+            TransportDataRequest request = getRequest(candidate, classInstance);
+            if (request != null) {
+                // The request was created from the class for this kind
+                //noinspection unchecked
+                results.add(new Suggestion<>((T) request, type));
+            }
         }
-        return new ArrayList<>();
+        return results;
     }
 
-    private List<Suggestion<VehicleRequest>> getTrains(SuggestionType type) {
-        return getTrains(type, MAX_STORED);
-    }
+    public <T extends TransportDataRequest> void store(Suggestion<T> query) {
+        final int kind = getKind(query.getData());
+        final String key = getKey(query.getData());
+        final SuggestionType type = query.getType();
+        if (key == null || (type != FAVORITE && type != HISTORY)) {
+            return;
+        }
 
-    private List<Suggestion<VehicleRequest>> getTrains(SuggestionType type, int limit) {
-        if (type == FAVORITE) {
-            return load(TAG_FAV_TRAINS, limit, type, VehicleRequest.class);
-        } else if (type == HISTORY) {
-            return load(TAG_RECENT_TRAINS, limit, true, type, VehicleRequest.class);
+        final String json;
+        try {
+            json = query.getData().toJson().toString();
+        } catch (JSONException e) {
+            log.severe("Failed to store query", e);
+            return;
         }
-        return new ArrayList<>();
-    }
 
-    public <T extends TransportDataRequest> void store(Suggestion<T> query) {
-        if (query.getData().getClass() == RoutePlanningRequest.class) {
-            if (query.getType() == FAVORITE) {
-                store(TAG_FAV_ROUTES, (RoutePlanningRequest) query.getData(),
-                        RoutePlanningRequest.class);
-            } else if (query.getType() == HISTORY) {
-                store(TAG_RECENT_ROUTES, (RoutePlanningRequest) query.getData(),
-                        RoutePlanningRequest.class);
+        change(() -> {
+            Map<String, StoredSuggestion> suggestions = getCache(kind);
+            StoredSuggestion suggestion = suggestions.get(key);
+            if (suggestion == null) {
+                suggestion = new StoredSuggestion(kind, key, json);
+                suggestions.put(key, suggestion);
             }
-        } else if (query.getData().getClass() == LiveboardRequest.class) {
-            if (query.getType() == FAVORITE) {
-                store(TAG_FAV_STATIONS, (LiveboardRequest) query.getData(),
-                        LiveboardRequest.class);
-            } else if (query.getType() == HISTORY) {
-                store(TAG_RECENT_STATIONS, (LiveboardRequest) query.getData(),
-                        LiveboardRequest.class);
+            // Keep the latest search, e.g. with its latest departure time. The caller's request can still change,
+            // so the stored request is created again from the json when it's needed.
+            suggestion.json = json;
+            suggestion.request = null;
+
+            if (type == FAVORITE) {
+                suggestion.favorite = true;
+            } else {
+                long now = System.currentTimeMillis();
+                suggestion.history = true;
+                suggestion.useCount++;
+                suggestion.lastUsed = now;
+                suggestion.recentUses = Frecency.addUse(suggestion.recentUses, now);
             }
-        } else if (query.getData().getClass() == VehicleRequest.class) {
-            if (query.getType() == FAVORITE) {
-                store(TAG_FAV_TRAINS, (VehicleRequest) query.getData(),
-                        VehicleRequest.class);
-            } else if (query.getType() == HISTORY) {
-                store(TAG_RECENT_TRAINS, (VehicleRequest) query.getData(),
-                        VehicleRequest.class);
+            write(suggestion.copy());
+            if (type == HISTORY) {
+                mWriteExecutor.execute(() -> removeLeastUsedHistory(kind));
             }
-        }
+        });
     }
 
     public <T extends TransportDataRequest> void delete(Suggestion<T> query) {
-        if (query.getData().getClass() == RoutePlanningRequest.class) {
-            if (query.getType() == FAVORITE) {
-                remove(TAG_FAV_ROUTES, query.getData());
-            } else if (query.getType() == HISTORY) {
-                remove(TAG_RECENT_ROUTES, query.getData());
+        final int kind = getKind(query.getData());
+        final String key = getKey(query.getData());
+        final SuggestionType type = query.getType();
+        if (key == null) {
+            return;
+        }
+
+        change(() -> {
+            Map<String, StoredSuggestion> suggestions = getCache(kind);
+            StoredSuggestion suggestion = suggestions.get(key);
+            if (suggestion == null) {
+                return;
             }
-        } else if (query.getData().getClass() == LiveboardRequest.class) {
-            if (query.getType() == FAVORITE) {
-                remove(TAG_FAV_STATIONS, query.getData());
-            } else if (query.getType() == HISTORY) {
-                remove(TAG_RECENT_STATIONS, query.getData());
+            if (type == FAVORITE) {
+                suggestion.favorite = false;
+            } else if (type == HISTORY) {
+                suggestion.history = false;
+                suggestion.useCount = 0;
+                suggestion.recentUses = new long[0];
             }
-        } else if (query.getData().getClass() == VehicleRequest.class) {
-            if (query.getType() == FAVORITE) {
-                remove(TAG_FAV_TRAINS, query.getData());
-            } else if (query.getType() == HISTORY) {
-                remove(TAG_RECENT_TRAINS, query.getData());
+            if (suggestion.favorite || suggestion.history) {
+                write(suggestion.copy());
+            } else {
+                suggestions.remove(key);
+                delete(suggestion.copy());
             }
-        }
+        });
     }
 
     /**
-     * Store a query under a tag
-     *
-     * @param tag    The tag under which the query will be stored
-     * @param object The query to store
+     * @return Whether the request is a favorite. False while the suggestions are being loaded.
      */
-    private <T extends TransportDataRequest> void store(String tag, T object, Class<T> classInstance) {
-        Set<String> items = new HashSet<>(
-                sharedPreferences.getStringSet(tag, new HashSet<>()));
-
-        // If this query is already in the recents list, remove it (so we can update it)
-        removeOneFromPersistentSet(items, object);
-
-        // Keep the amount of items under the set threshold
-        while (items.size() >= MAX_STORED) {
-            ArrayList<Suggestion<T>> queries = setToList(items, LIST, classInstance);
-            sortByTime(queries);
-
-            if (queries.isEmpty()) {
-                break;
-            }
-            // Remove latest query
-            removeOneFromPersistentSet(items, queries.get(queries.size() - 1).getData());
+    public <T extends TransportDataRequest> boolean isFavorite(T toCheck) {
+        String key = getKey(toCheck);
+        if (key == null) {
+            return false;
         }
-
-        // Store as JSON
-        try {
-            JSONObject json = object.toJson();
-            items.add(json.toString());
-
-            SharedPreferences.Editor editor = sharedPreferences.edit();
-            editor.putStringSet(tag, items);
-            editor.apply();
-
-        } catch (JSONException e) {
-            log.severe("Failed to store query", e);
+        synchronized (this) {
+            if (mCache == null) {
+                return false;
+            }
+            StoredSuggestion suggestion = getCache(getKind(toCheck)).get(key);
+            return suggestion != null && suggestion.favorite;
         }
     }
 
-    public <T extends TransportDataRequest> boolean isFavorite(T toCheck) {
-        if (toCheck.getClass() == RoutePlanningRequest.class) {
-            return isFavoriteRouteplanningRequest(toCheck);
-        } else if (toCheck.getClass() == LiveboardRequest.class) {
-            return isFavoriteLiveboardRequest(toCheck);
-        } else if (toCheck.getClass() == VehicleRequest.class) {
-            return isFavoriteVehicleRequest(toCheck);
+    /**
+     * Apply a change to the cache, while holding the lock on this object. The change is applied right away when the suggestions are loaded,
+     * or queued on the write executor until they are. Changes are always applied in the order in which they were made.
+     */
+    private void change(final Runnable change) {
+        synchronized (this) {
+            if (mCache != null && mQueuedChanges == 0) {
+                change.run();
+                return;
+            }
+            mQueuedChanges++;
         }
-        return false;
+        mWriteExecutor.execute(() -> {
+            synchronized (this) {
+                mQueuedChanges--;
+                change.run();
+            }
+        });
     }
 
-    private <T extends TransportDataRequest> boolean isFavoriteRouteplanningRequest(T toCheck) {
-        for (Suggestion<RoutePlanningRequest> favorite : getRoutes(FAVORITE)) {
-            if (toCheck.equalsIgnoringTime(favorite.getData())) {
-                return true;
+    /**
+     * Forget the history item with the lowest frecency if there are too many history items. Runs on the write executor.
+     */
+    private void removeLeastUsedHistory(int kind) {
+        long now = System.currentTimeMillis();
+        DateTimeZone zone = DateTimeZone.getDefault();
+        StoredSuggestion leastUsed = null;
+        synchronized (this) {
+            Map<String, StoredSuggestion> suggestions = getCache(kind);
+            int historySize = 0;
+            double leastUsedScore = Double.MAX_VALUE;
+            for (StoredSuggestion suggestion : suggestions.values()) {
+                if (!suggestion.history || suggestion.favorite) {
+                    continue;
+                }
+                historySize++;
+                double score = Frecency.score(suggestion.useCount, suggestion.recentUses, now, zone);
+                if (score < leastUsedScore || (score == leastUsedScore && suggestion.lastUsed < leastUsed.lastUsed)) {
+                    leastUsed = suggestion;
+                    leastUsedScore = score;
+                }
             }
+            if (historySize <= MAX_HISTORY) {
+                return;
+            }
+            suggestions.remove(leastUsed.key);
         }
-        return false;
+        mDatabase.delete(leastUsed.kind, leastUsed.key);
+    }
+
+    private void write(final StoredSuggestion suggestion) {
+        mWriteExecutor.execute(() -> mDatabase.write(suggestion));
     }
 
-    private <T extends TransportDataRequest> boolean isFavoriteLiveboardRequest(T toCheck) {
-        for (Suggestion<LiveboardRequest> favorite : getStations(FAVORITE)) {
-            if (toCheck.equalsIgnoringTime(favorite.getData())) {
-                return true;
+    private void delete(final StoredSuggestion suggestion) {
+        mWriteExecutor.execute(() -> mDatabase.delete(suggestion.kind, suggestion.key));
+    }
+
+    /**
+     * Read all suggestions from the database, and import those which are still stored in the preferences. Runs on the write executor.
+     */
+    private void load() {
+        List<Map<String, StoredSuggestion>> cache = new ArrayList<>(3);
+        for (int i = 0; i < 3; i++) {
+            cache.add(new HashMap<String, StoredSuggestion>());
+        }
+        try {
+            for (StoredSuggestion suggestion : mDatabase.loadAll()) {
+                cache.get(suggestion.kind).put(suggestion.key, suggestion);
+            }
+            synchronized (this) {
+                mCache = cache;
+                importLegacyPreferences();
+            }
+        } catch (RuntimeException e) {
+            log.severe("Failed to load stored queries", e);
+        } finally {
+            synchronized (this) {
+                if (mCache == null) {
+                    mCache = cache;
+                }
             }
+            mLoaded.countDown();
         }
-        return false;
     }
 
-    private <T extends TransportDataRequest> boolean isFavoriteVehicleRequest(T toCheck) {
-        for (Suggestion<VehicleRequest> favorite : getTrains(FAVORITE)) {
-            if (toCheck.equalsIgnoringTime(favorite.getData())) {
-                return true;
+    /**
+     * Wait until the suggestions have been loaded. This only blocks when the provider is used right after it was created.
+     * Should only be called from a background thread, before getting suggestions which are shown as soon as they're available.
+     */
+    public void awaitLoaded() {
+        boolean interrupted = false;
+        while (mLoaded.getCount() > 0) {
+            try {
+                mLoaded.await();
+            } catch (InterruptedException e) {
+                interrupted = true;
             }
         }
-        return false;
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     /**
-     * Load a limited number of routeQueries from a tag
-     *
-     * @param limit the number of queries to load
-     * @param tag   The tag to load
-     * @param type  The type which should be applied to the loaded results (for use in other parts of the application, e.g. recent or favorite)
-     * @return List or routeQueries
+     * Get the cached suggestions of a kind. Should be called after the suggestions are loaded, while holding the lock on this object.
      */
-    private <T extends TransportDataRequest> ArrayList<Suggestion<T>> load(String tag, int limit, SuggestionType type, Class<T> classInstance) {
-        return load(tag, limit, false, type, classInstance);
+    private Map<String, StoredSuggestion> getCache(int kind) {
+        return mCache.get(kind);
     }
 
     /**
-     * Load a limited number of routeQueries from a tag
-     *
-     * @param limit         the number of queries to load
-     * @param timeSensitive Whether or not the results should be ordered by date (most recent first
-     * @param tag           The tag to load
-     * @param type          The type which should be applied to the loaded results (for use in other parts of the application, e.g. recent or favorite)
-     * @return List or routeQueries
+     * Move recent and favorite searches which were stored as json strings in the preferences to the database.
      */
-    private <T extends TransportDataRequest> ArrayList<Suggestion<T>> load(String tag, int limit, boolean timeSensitive, SuggestionType type, Class<T> classInstance) {
-
-        if (limit <= 0) {
-            return new ArrayList<>(0);
+    private void importLegacyPreferences() {
+        SharedPreferences.Editor editor = null;
+        for (int i = 0; i < LEGACY_TAG_KINDS.length; i++) {
+            for (String tag : new String[]{LEGACY_TAGS_RECENT[i], LEGACY_TAGS_FAVORITE[i]}) {
+                Set<String> items = sharedPreferences.getStringSet(tag, null);
+                if (items == null) {
+                    continue;
+                }
+                boolean favorite = tag.equals(LEGACY_TAGS_FAVORITE[i]);
+                for (String json : items) {
+                    importLegacySuggestion(LEGACY_TAG_KINDS[i], json, favorite);
+                }
+                if (editor == null) {
+                    editor = sharedPreferences.edit();
+                }
+                editor.remove(tag);
+            }
         }
-
-        Set<String> items = sharedPreferences.getStringSet(tag, null);
-
-        if (items == null) {
-            return new ArrayList<>(0);
+        if (editor != null) {
+            editor.apply();
         }
+    }
 
-        ArrayList<Suggestion<T>> results = setToList(items, type, classInstance);
-
-        // apply time sort
-        if (timeSensitive) {
-            sortByTime(results);
+    private void importLegacySuggestion(int kind, String json, boolean favorite) {
+        TransportDataRequest request;
+        try {
+            request = createRequest(kind, new JSONObject(json));
+        } catch (Exception exception) {
+            log.warning("Failed to import stored request of kind " + kind + ": " + exception.getMessage());
+            return;
         }
-
-        // apply limit
-        if (results.size() > limit) {
-            results.subList(0, limit - 1);
+        String key = getKey(request);
+        if (key == null) {
+            return;
         }
 
-        return results;
+        StoredSuggestion suggestion = mCache.get(kind).get(key);
+        if (suggestion == null) {
+            suggestion = new StoredSuggestion(kind, key, json);
+            suggestion.request = request;
+            mCache.get(kind).put(key, suggestion);
+        }
+        if (favorite) {
+            suggestion.favorite = true;
+        } else {
+            long createdAt = request.getCreatedAt() != null ? request.getCreatedAt().getMillis() : 0;
+            suggestion.history = true;
+            suggestion.useCount++;
+            suggestion.lastUsed = Math.max(suggestion.lastUsed, createdAt);
+            suggestion.recentUses = Frecency.addUse(suggestion.recentUses, createdAt);
+        }
+        write(suggestion.copy());
     }
 
     /**
-     * Remove a query from a tag
+     * Get the request of a stored suggestion, creating it from its json if needed.
      *
-     * @param tag   The tag to remove from
-     * @param query The query to remove
+     * @return The request, or null if it couldn't be created
      */
-    private void remove(String tag, TransportDataRequest query) {
-        Set<String> items = new HashSet<>(
-                sharedPreferences.getStringSet(tag, new HashSet<String>()));
-
-        // If this query is already in the recents list, remove it (so we can update it)
-        removeOneFromPersistentSet(items, query);
-
-        SharedPreferences.Editor editor = sharedPreferences.edit();
-        editor.putStringSet(tag, items);
-        editor.apply();
+    private TransportDataRequest getRequest(StoredSuggestion suggestion, Class<?> classInstance) {
+        String json;
+        synchronized (this) {
+            if (suggestion.request != null) {
+                return suggestion.request;
+            }
+            json = suggestion.json;
+        }
+        try {
+            TransportDataRequest request = createRequest(suggestion.kind, new JSONObject(json));
+            synchronized (this) {
+                suggestion.request = request;
+            }
+            return request;
+        } catch (Exception exception) {
+            log.warning("Failed to load stored " + classInstance.getSimpleName() + ": " + exception.getMessage());
+            return null;
+        }
     }
 
-    /**
-     * Sort a list by time, newest first
-     *
-     * @param items the routeQueries
-     */
-    private <T extends TransportDataRequest> void sortByTime(ArrayList<Suggestion<T>> items) {
-        Collections.sort(items, (o1, o2) -> o2.getData().getCreatedAt().compareTo(o1.getData().getCreatedAt()));
+    private static TransportDataRequest createRequest(int kind, JSONObject object) throws Exception {
+        switch (kind) {
+            case KIND_ROUTE:
+                return new RoutePlanningRequest(object);
+            case KIND_STATION:
+                return new LiveboardRequest(object);
+            case KIND_VEHICLE:
+                return new VehicleRequest(object);
+            default:
+                throw new IllegalStateException("Attempted to deserialize an unsupported TransportDataRequest kind!");
+        }
     }
 
-    /**
-     * Load a stringset to a list of routeQueries
-     *
-     * @param set  The stringset
-     * @param type The type which should be assigned to these queries
-     * @return List of queries
-     */
-    private <T extends TransportDataRequest> ArrayList<Suggestion<T>> setToList(Set<String> set, SuggestionType type, Class<T> objectClass) {
-        ArrayList<Suggestion<T>> results = new ArrayList<>(set.size());
-
-        for (String entry : set) {
-            try {
-                JSONObject object = new JSONObject(entry);
-
-                TransportDataRequest suggestionData;
-                if (objectClass == LiveboardRequest.class) {
-                    suggestionData = new LiveboardRequest(object);
-                } else if (objectClass == RoutePlanningRequest.class) {
-                    suggestionData = new RoutePlanningRequest(object);
-                } else if (objectClass == VehicleRequest.class) {
-                    suggestionData = new VehicleRequest(object);
-                } else if (objectClass == ActualDisturbancesRequest.class) {
-                    suggestionData = new ActualDisturbancesRequest(object);
-                } else {
-                    throw new IllegalStateException(
-                            "Attempted to deserialize an unsupported TransportDataRequest class!");
-                }
-
-                // We verified T extends TransportDataRequest, and are sure suggestionData isan TransportDataRequest, and we've ensured we created the right object
-                //noinspection unchecked
-                Suggestion<T> s = new Suggestion<>((T) suggestionData, type);
-                results.add(s);
-
-            } catch (Exception exception) {
-                log.warning("Failed to load stored request for type " + type + ": " + exception.getMessage());
-                // ignored
-            }
+    private static int getKind(TransportDataRequest request) {
+        if (request.getClass() == RoutePlanningRequest.class) {
+            return KIND_ROUTE;
+        } else if (request.getClass() == LiveboardRequest.class) {
+            return KIND_STATION;
         }
-
-        return results;
+        return KIND_VEHICLE;
     }
 
     /**
-     * Remove a query from a stringset
+     * Get the key which identifies a request, regardless of its time. Requests which are equal when ignoring time have the same key.
      *
-     * @param collection The items from which should be removed
-     * @param remove     The item to remove
+     * @return The key, or null if this request can't be stored
      */
-    private <T extends TransportDataRequest> void removeOneFromPersistentSet(Set<String> collection, T remove) {
-        Set<String> toBeRemoved = new HashSet<>();
-
-        for (String entry : collection) {
-            try {
-                JSONObject object = new JSONObject(entry);
-
-                if (remove.equals(object)) {
-                    toBeRemoved.add(entry);
-                }
-            } catch (JSONException exception) {
-                // ignored
+    private static String getKey(TransportDataRequest request) {
+        if (request.getClass() == RoutePlanningRequest.class) {
+            RoutePlanningRequest route = (RoutePlanningRequest) request;
+            if (route.getOrigin() == null || route.getDestination() == null) {
+                return null;
             }
+            return route.getOrigin().getSemanticId() + " " + route.getDestination().getSemanticId();
+        } else if (request.getClass() == LiveboardRequest.class) {
+            LiveboardRequest liveboard = (LiveboardRequest) request;
+            return liveboard.getStation() != null ? liveboard.getStation().getSemanticId() : null;
+        } else if (request.getClass() == VehicleRequest.class) {
+            return ((VehicleRequest) request).getVehicleId();
         }
-        collection.removeAll(toBeRemoved);
+        return null;
     }
 
     /**
-     * Remove queries from another collection
-     *
-     * @param collection The items from which should be removed
-     * @param remove     The items to remove
+     * Sort suggestions by frecency, highest first. Suggestions which were never used are sorted by when they were last used.
      */
-    private <T extends TransportDataRequest> void removeFromCollection(Collection<Suggestion<T>> collection, Collection<Suggestion<T>> remove) {
-
-        Set<Suggestion<T>> toBeRemoved = new HashSet<>();
-        for (Suggestion<T> entry : collection) {
-            for (Suggestion<T> removalEntry : remove) {
-                if (entry.getData().equalsIgnoringTime(removalEntry.getData())) {
-                    toBeRemoved.add(entry);
-                }
-            }
+    private static void sortByFrecency(List<StoredSuggestion> suggestions, long now, DateTimeZone zone) {
+        final Map<StoredSuggestion, Double> scores = new HashMap<>(suggestions.size());
+        for (StoredSuggestion suggestion : suggestions) {
+            scores.put(suggestion, Frecency.score(suggestion.useCount, suggestion.recentUses, now, zone));
         }
-
-        collection.removeAll(toBeRemoved);
+        Collections.sort(suggestions, (o1, o2) -> {
+            int result = Double.compare(scores.get(o2), scores.get(o1));
+            return result != 0 ? result : Long.compare(o2.lastUsed, o1.lastUsed);
+        });
     }
 
 }
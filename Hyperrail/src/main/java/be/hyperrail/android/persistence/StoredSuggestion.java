@@ -0,0 +1,48 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.android.persistence;
+
+import be.hyperrail.opentransportdata.common.contracts.TransportDataRequest;
+
+/**
+ * A row in the favorites and history database, as it's kept in memory.
+ * The request is only created from its JSON when it's needed, as this requires resolving its stations.
+ */
+class StoredSuggestion {
+
+    final int kind;
+    final String key;
+    String json;
+    boolean favorite;
+    boolean history;
+    int useCount;
+    long lastUsed;
+    long[] recentUses = new long[0];
+
+    // The request created from the json, or null if it hasn't been created yet
+    TransportDataRequest request;
+
+    StoredSuggestion(int kind, String key, String json) {
+        this.kind = kind;
+        this.key = key;
+        this.json = json;
+    }
+
+    /**
+     * Create a copy which can be written to the database while this suggestion keeps changing.
+     */
+    StoredSuggestion copy() {
+        StoredSuggestion copy = new StoredSuggestion(kind, key, json);
+        copy.favorite = favorite;
+        copy.history = history;
+        copy.useCount = useCount;
+        copy.lastUsed = lastUsed;
+        copy.recentUses = recentUses;
+        copy.request = request;
+        return copy;
+    }
+}
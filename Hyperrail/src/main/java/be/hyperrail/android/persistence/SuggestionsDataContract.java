@@ -0,0 +1,60 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.android.persistence;
+
+import android.provider.BaseColumns;
+
+/**
+ * Define the database structure for the favorites and history database.
+ * Every row is one route, station or vehicle, which can be a favorite, part of the history, or both.
+ */
+class SuggestionsDataContract {
+
+    static final int KIND_ROUTE = 0;
+    static final int KIND_STATION = 1;
+    static final int KIND_VEHICLE = 2;
+
+    static final String SQL_CREATE_TABLE_SUGGESTIONS =
+            "CREATE TABLE " + SuggestionsColumns.TABLE_NAME + " (" +
+                    SuggestionsColumns.COLUMN_NAME_KIND + " INTEGER NOT NULL," +
+                    SuggestionsColumns.COLUMN_NAME_KEY + " TEXT NOT NULL," +
+                    SuggestionsColumns.COLUMN_NAME_JSON + " TEXT NOT NULL," +
+                    SuggestionsColumns.COLUMN_NAME_FAVORITE + " INTEGER NOT NULL DEFAULT 0," +
+                    SuggestionsColumns.COLUMN_NAME_HISTORY + " INTEGER NOT NULL DEFAULT 0," +
+                    SuggestionsColumns.COLUMN_NAME_USE_COUNT + " INTEGER NOT NULL DEFAULT 0," +
+                    SuggestionsColumns.COLUMN_NAME_LAST_USED + " INTEGER NOT NULL DEFAULT 0," +
+                    SuggestionsColumns.COLUMN_NAME_RECENT_USES + " TEXT," +
+                    "PRIMARY KEY (" + SuggestionsColumns.COLUMN_NAME_KIND + ", " + SuggestionsColumns.COLUMN_NAME_KEY + "));";
+
+    private SuggestionsDataContract() {
+        // No public constructor
+    }
+
+    static class SuggestionsColumns implements BaseColumns {
+        static final String TABLE_NAME = "suggestions";
+        /**
+         * Whether this is a route, station or vehicle
+         */
+        static final String COLUMN_NAME_KIND = "kind";
+        /**
+         * The identity of the request, ignoring its time
+         */
+        static final String COLUMN_NAME_KEY = "key";
+        /**
+         * The most recent request, as JSON
+         */
+        static final String COLUMN_NAME_JSON = "json";
+        static final String COLUMN_NAME_FAVORITE = "favorite";
+        static final String COLUMN_NAME_HISTORY = "history";
+        static final String COLUMN_NAME_USE_COUNT = "use_count";
+        static final String COLUMN_NAME_LAST_USED = "last_used";
+        /**
+         * The times of the most recent uses, in milliseconds, separated by commas
+         */
+        static final String COLUMN_NAME_RECENT_USES = "recent_uses";
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.android.persistence;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static be.hyperrail.android.persistence.SuggestionsDataContract.SuggestionsColumns;
+
+/**
+ * The favorites and history database. Rows are read once, and written one at a time when they change.
+ */
+class SuggestionsDatabase extends SQLiteOpenHelper {
+
+    private static final int DATABASE_VERSION = 1;
+
+    SuggestionsDatabase(Context context) {
+        super(context, "suggestions.db", null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL(SuggestionsDataContract.SQL_CREATE_TABLE_SUGGESTIONS);
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // Only one version exists
+    }
+
+    /**
+     * @return All stored suggestions
+     */
+    List<StoredSuggestion> loadAll() {
+        List<StoredSuggestion> result = new ArrayList<>();
+        Cursor c = getReadableDatabase().query(SuggestionsColumns.TABLE_NAME, new String[]{
+                SuggestionsColumns.COLUMN_NAME_KIND,
+                SuggestionsColumns.COLUMN_NAME_KEY,
+                SuggestionsColumns.COLUMN_NAME_JSON,
+                SuggestionsColumns.COLUMN_NAME_FAVORITE,
+                SuggestionsColumns.COLUMN_NAME_HISTORY,
+                SuggestionsColumns.COLUMN_NAME_USE_COUNT,
+                SuggestionsColumns.COLUMN_NAME_LAST_USED,
+                SuggestionsColumns.COLUMN_NAME_RECENT_USES
+        }, null, null, null, null, null);
+        try {
+            while (c.moveToNext()) {
+                StoredSuggestion suggestion = new StoredSuggestion(c.getInt(0), c.getString(1), c.getString(2));
+                suggestion.favorite = c.getInt(3) == 1;
+                suggestion.history = c.getInt(4) == 1;
+                suggestion.useCount = c.getInt(5);
+                suggestion.lastUsed = c.getLong(6);
+                suggestion.recentUses = parseUses(c.getString(7));
+                result.add(suggestion);
+            }
+        } finally {
+            c.close();
+        }
+        return result;
+    }
+
+    /**
+     * Insert or replace a suggestion.
+     */
+    void write(StoredSuggestion suggestion) {
+        ContentValues values = new ContentValues();
+        values.put(SuggestionsColumns.COLUMN_NAME_KIND, suggestion.kind);
+        values.put(SuggestionsColumns.COLUMN_NAME_KEY, suggestion.key);
+        values.put(SuggestionsColumns.COLUMN_NAME_JSON, suggestion.json);
+        values.put(SuggestionsColumns.COLUMN_NAME_FAVORITE, suggestion.favorite ? 1 : 0);
+        values.put(SuggestionsColumns.COLUMN_NAME_HISTORY, suggestion.history ? 1 : 0);
+        values.put(SuggestionsColumns.COLUMN_NAME_USE_COUNT, suggestion.useCount);
+        values.put(SuggestionsColumns.COLUMN_NAME_LAST_USED, suggestion.lastUsed);
+        values.put(SuggestionsColumns.COLUMN_NAME_RECENT_USES, formatUses(suggestion.recentUses));
+        getWritableDatabase().insertWithOnConflict(SuggestionsColumns.TABLE_NAME, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    void delete(int kind, String key) {
+        getWritableDatabase().delete(SuggestionsColumns.TABLE_NAME,
+                SuggestionsColumns.COLUMN_NAME_KIND + "=? AND " + SuggestionsColumns.COLUMN_NAME_KEY + "=?",
+                new String[]{String.valueOf(kind), key});
+    }
+
+    private static long[] parseUses(String uses) {
+        if (uses == null || uses.isEmpty()) {
+            return new long[0];
+        }
+        String[] parts = uses.split(",");
+        long[] result = new long[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            result[i] = Long.parseLong(parts[i]);
+        }
+        return result;
+    }
+
+    private static String formatUses(long[] uses) {
+        StringBuilder result = new StringBuilder();
+        for (long use : uses) {
+            if (result.length() > 0) {
+                result.append(',');
+            }
+            result.append(use);
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.android.util;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import be.hyperrail.android.logging.HyperRailLog;
+
+/**
+ * Run searches for text typed by the user on a background thread.
+ * <p>
+ * Queries are debounced, so typing quickly only searches once the user pauses. Every query gets a generation number.
+ * A new query cancels the previous query if it hasn't started yet, and results of older generations are never delivered.
+ * Results are delivered on the main thread.
+ *
+ * @param <R> The type of the search results
+ */
+public class SearchPipeline<R> {
+
+    /**
+     * Search for a query. Called on a background thread.
+     */
+    public interface Searcher<R> {
+        R search(String query);
+    }
+
+    /**
+     * Receive the results of the most recent query. Called on the main thread.
+     */
+    public interface ResultListener<R> {
+        void onSearchResult(String query, R result);
+    }
+
+    /**
+     * The time to wait for more keystrokes before searching
+     */
+    public static final long DEFAULT_DEBOUNCE_MS = 150;
+
+    private static final HyperRailLog log = HyperRailLog.getLogger(SearchPipeline.class);
+
+    // Searches are cheap, but shouldn't run in parallel with each other as they use the same database
+    private static ExecutorService sSearchExecutor;
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final Searcher<R> mSearcher;
+    private final ResultListener<R> mListener;
+    private final long mDebounceMs;
+
+    // Only accessed on the main thread
+    private int mGeneration;
+    private Runnable mPendingSubmit;
+    private Future<?> mRunningSearch;
+
+    public SearchPipeline(Searcher<R> searcher, ResultListener<R> listener) {
+        this(searcher, listener, DEFAULT_DEBOUNCE_MS);
+    }
+
+    public SearchPipeline(Searcher<R> searcher, ResultListener<R> listener, long debounceMs) {
+        mSearcher = searcher;
+        mListener = listener;
+        mDebounceMs = debounceMs;
+    }
+
+    /**
+     * Search once no other query has been submitted for the debounce time. Should be called on the main thread.
+     */
+    public void submit(final String query) {
+        final int generation = supersede();
+        mPendingSubmit = () -> {
+            mPendingSubmit = null;
+            start(query, generation);
+        };
+        mMainHandler.postDelayed(mPendingSubmit, mDebounceMs);
+    }
+
+    /**
+     * Search immediately, e.g. when restoring a query or when the location changed. Should be called on the main thread.
+     */
+    public void submitNow(String query) {
+        start(query, supersede());
+    }
+
+    /**
+     * Cancel the pending query, and drop the results of running queries. Should be called on the main thread.
+     */
+    public void cancel() {
+        supersede();
+    }
+
+    /**
+     * Cancel everything which was submitted before.
+     *
+     * @return The generation of the next query
+     */
+    private int supersede() {
+        mGeneration++;
+        if (mPendingSubmit != null) {
+            mMainHandler.removeCallbacks(mPendingSubmit);
+            mPendingSubmit = null;
+        }
+        if (mRunningSearch != null) {
+            // A search which already started can't be interrupted, but its result will be dropped
+            mRunningSearch.cancel(false);
+            mRunningSearch = null;
+        }
+        return mGeneration;
+    }
+
+    private void start(final String query, final int generation) {
+        mRunningSearch = getSearchExecutor().submit(() -> {
+            final R result;
+            try {
+                result = mSearcher.search(query);
+            } catch (Exception e) {
+                log.warning("Search failed for query " + query, e);
+                return;
+            }
+            mMainHandler.post(() -> {
+                if (generation == mGeneration) {
+                    mRunningSearch = null;
+                    mListener.onSearchResult(query, result);
+                }
+            });
+        });
+    }
+
+    private static synchronized ExecutorService getSearchExecutor() {
+        if (sSearchExecutor == null) {
+            sSearchExecutor = Executors.newSingleThreadExecutor();
+        }
+        return sSearchExecutor;
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.android.util;
+
+import android.content.Context;
+import android.preference.PreferenceManager;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import be.hyperrail.opentransportdata.OpenTransportApi;
+import be.hyperrail.opentransportdata.common.contracts.TransportStopsDataSource;
+import be.hyperrail.opentransportdata.common.models.StopLocation;
+
+/**
+ * Find station names for autocompletion. The index is shared by all search fields, and rebuilt when the language of the
+ * station names changes.
+ * <p>
+ * Every word in the name of a station and in its translations can be used to find it, and accents and punctuation are ignored.
+ * "zuid", "bruxelles midi" and "brussel-zuid" all find Brussel-Zuid. Results are ordered by the size of the station.
+ */
+public class StationAutoCompleteIndex {
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private static StationAutoCompleteIndex sInstance;
+    // The ISO3 language code of the names in sInstance
+    private static String sLanguage;
+
+    // The names which are shown, ordered by the size of their station
+    private final String[] mNames;
+    // Normalized names and their suffixes starting at every word, sorted
+    private final String[] mKeys;
+    // The position in mNames of the station for every key
+    private final int[] mStations;
+
+    /**
+     * @param names   The names to show, ordered by the size of their station
+     * @param aliases For every name, other names by which it can be found. May be null.
+     */
+    StationAutoCompleteIndex(@NonNull String[] names, @NonNull String[][] aliases) {
+        mNames = names;
+
+        List<Entry> entries = new ArrayList<>();
+        Set<String> stationKeys = new HashSet<>();
+        for (int i = 0; i < names.length; i++) {
+            stationKeys.clear();
+            addKeys(stationKeys, names[i]);
+            if (aliases[i] != null) {
+                for (String alias : aliases[i]) {
+                    addKeys(stationKeys, alias);
+                }
+            }
+            for (String key : stationKeys) {
+                entries.add(new Entry(key, i));
+            }
+        }
+
+        Entry[] sorted = entries.toArray(new Entry[0]);
+        Arrays.sort(sorted);
+        mKeys = new String[sorted.length];
+        mStations = new int[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            mKeys[i] = sorted[i].mKey;
+            mStations[i] = sorted[i].mStation;
+        }
+    }
+
+    /**
+     * Get the index, building it if needed. This can take some time the first time or after the language changed,
+     * and should not be called on the main thread.
+     */
+    public static synchronized StationAutoCompleteIndex getInstance(@NonNull Context context) {
+        String language = getLanguage(context);
+        if (sInstance == null || !language.equals(sLanguage)) {
+            TransportStopsDataSource stationProvider = OpenTransportApi.getStopLocationProviderInstance();
+            StopLocation[] stations = stationProvider.getStoplocationsOrderedBySize();
+            String[] names = new String[stations.length];
+            String[][] aliases = new String[stations.length][];
+            for (int i = 0; i < stations.length; i++) {
+                names[i] = getLocalizedName(stations[i].getName(), stations[i].getTranslations(), language);
+                List<String> stationAliases = new ArrayList<>();
+                stationAliases.add(stations[i].getName());
+                if (stations[i].getTranslations() != null) {
+                    stationAliases.addAll(stations[i].getTranslations().values());
+                }
+                aliases[i] = stationAliases.toArray(new String[0]);
+            }
+            sInstance = new StationAutoCompleteIndex(names, aliases);
+            sLanguage = language;
+        }
+        return sInstance;
+    }
+
+    /**
+     * Build the index in the background, so it's ready when the user starts typing.
+     */
+    public static void preload(@NonNull Context context) {
+        Context appContext = context.getApplicationContext();
+        synchronized (StationAutoCompleteIndex.class) {
+            if (sInstance != null && getLanguage(appContext).equals(sLanguage)) {
+                return;
+            }
+        }
+        Thread thread = new Thread(() -> getInstance(appContext), "StationAutoCompleteIndex");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * @return The ISO3 code of the language in which station names are shown, as chosen in the settings or by the system
+     */
+    @NonNull
+    private static String getLanguage(Context context) {
+        String language = PreferenceManager.getDefaultSharedPreferences(context).getString("pref_stations_language", "");
+        if (language == null || language.isEmpty()) {
+            language = Locale.getDefault().getISO3Language();
+        }
+        return language;
+    }
+
+    /**
+     * @param name         The name of the station
+     * @param translations The translations of the name, by ISO2 language code. May be null.
+     * @param language     The ISO3 code of the language to show
+     * @return The translation in the given language, or English for other languages, or the name if there is no translation
+     */
+    @NonNull
+    static String getLocalizedName(@NonNull String name, @Nullable Map<String, String> translations, @NonNull String language) {
+        if (translations == null) {
+            return name;
+        }
+        String localizedName;
+        switch (language) {
+            case "nld":
+                localizedName = translations.get("nl");
+                break;
+            case "fra":
+                localizedName = translations.get("fr");
+                break;
+            case "deu":
+                localizedName = translations.get("de");
+                break;
+            case "eng":
+            default:
+                localizedName = translations.get("en");
+                break;
+        }
+        if (localizedName == null || localizedName.isEmpty()) {
+            return name;
+        }
+        return localizedName;
+    }
+
+    /**
+     * @param query The text entered by the user
+     * @param limit The maximum number of results
+     * @return The names of the stations which have a word starting with the query, largest stations first
+     */
+    @NonNull
+    public String[] search(@NonNull CharSequence query, int limit) {
+        String key = normalize(query.toString());
+        if (key.isEmpty()) {
+            return new String[0];
+        }
+
+        BitSet matches = new BitSet(mNames.length);
+        for (int i = findFirst(key); i < mKeys.length && mKeys[i].startsWith(key); i++) {
+            matches.set(mStations[i]);
+        }
+
+        String[] results = new String[Math.min(limit, matches.cardinality())];
+        int station = matches.nextSetBit(0);
+        for (int i = 0; i < results.length; i++) {
+            results[i] = mNames[station];
+            station = matches.nextSetBit(station + 1);
+        }
+        return results;
+    }
+
+    /**
+     * @return The position of the first key which isn't smaller than the given key
+     */
+    private int findFirst(String key) {
+        int low = 0;
+        int high = mKeys.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (mKeys[middle].compareTo(key) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static void addKeys(Set<String> keys, String name) {
+        String normalized = normalize(name);
+        if (normalized.isEmpty()) {
+            return;
+        }
+        keys.add(normalized);
+        for (int i = normalized.indexOf(' '); i >= 0; i = normalized.indexOf(' ', i + 1)) {
+            keys.add(normalized.substring(i + 1));
+        }
+    }
+
+    /**
+     * Remove accents and case, and replace punctuation by single spaces.
+     */
+    static String normalize(String text) {
+        String result = Normalizer.normalize(text, Normalizer.Form.NFD);
+        result = DIACRITICS.matcher(result).replaceAll("");
+        result = SEPARATORS.matcher(result).replaceAll(" ");
+        return result.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static class Entry implements Comparable<Entry> {
+        private final String mKey;
+        private final int mStation;
+
+        Entry(String key, int station) {
+            mKey = key;
+            mStation = station;
+        }
+
+        @Override
+        public int compareTo(Entry o) {
+            return mKey.compareTo(o.mKey);
+        }
+    }
+}
@@ -8,9 +8,6 @@ package be.hyperrail.android.widget;
 
 import android.content.Context;
 import android.content.Intent;
-import android.graphics.drawable.BitmapDrawable;
-import androidx.core.content.ContextCompat;
-import android.util.Log;
 import android.view.View;
 import android.widget.RemoteViews;
 import android.widget.RemoteViewsService;
@@ -20,12 +17,10 @@ import org.joda.time.format.DateTimeFormatter;
 
 import be.hyperrail.android.R;
 import be.hyperrail.opentransportdata.OpenTransportApi;
-import be.hyperrail.opentransportdata.common.contracts.QueryTimeDefinition;
 import be.hyperrail.opentransportdata.common.exceptions.StopLocationNotResolvedException;
 import be.hyperrail.opentransportdata.common.models.Liveboard;
-import be.hyperrail.opentransportdata.common.models.LiveboardType;
+import be.hyperrail.opentransportdata.common.models.StopLocation;
 import be.hyperrail.opentransportdata.common.models.VehicleStop;
-import be.hyperrail.opentransportdata.common.requests.LiveboardRequest;
 import be.hyperrail.opentransportdata.util.OccupancyHelper;
 
 import static android.appwidget.AppWidgetManager.EXTRA_APPWIDGET_ID;
@@ -54,30 +49,18 @@ class NextDeparturesRemoteViewsDataProvider implements RemoteViewsService.Remote
             return;
         }
 
-        LiveboardRequest request = null;
+        StopLocation station;
         try {
-            request = new LiveboardRequest(
-                    OpenTransportApi.getStopLocationProviderInstance().getStoplocationBySemanticId(id),
-                    QueryTimeDefinition.EQUAL_OR_LATER,
-                    LiveboardType.DEPARTURES,
-                    null
-            );
+            station = OpenTransportApi.getStopLocationProviderInstance().getStoplocationBySemanticId(id);
         } catch (StopLocationNotResolvedException e) {
             this.mError = true;
             return;
         }
-        request.setCallback((data, tag) -> {
-            Log.w("widgets", "Received iRail data...");
-            NextDeparturesRemoteViewsDataProvider.this.mLiveboard = data;
-        }, null, null);
-        Log.w("widgets", "Requesting iRail data...");
-        OpenTransportApi.getDataProviderInstance().getLiveboard(request);
 
-        try {
-            Thread.sleep(2500);
-        } catch (InterruptedException e) {
-            // Nothing to do
-        }
+        NextDeparturesWidgetData data = NextDeparturesWidgetData.getInstance();
+        mLiveboard = data.getLiveboard(station);
+        mError = false;
+        data.scheduleRefresh(mContext);
     }
 
     @Override
@@ -131,10 +114,8 @@ class NextDeparturesRemoteViewsDataProvider implements RemoteViewsService.Remote
         }
 
         rv.setBitmap(R.id.container_occupancy, "setImageDrawable",
-                     ((BitmapDrawable) ContextCompat.getDrawable(mContext,
-                                                                 OccupancyHelper.getOccupancyDrawable(
-                                                                         stop.getOccupancyLevel())
-                     )).getBitmap()
+                     NextDeparturesWidgetData.getInstance().getBitmap(mContext,
+                                                                      OccupancyHelper.getOccupancyDrawable(stop.getOccupancyLevel()))
         );
 
         // Return the remote views object.
@@ -0,0 +1,214 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.android.widget;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.appwidget.AppWidgetManager;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.os.Build;
+import android.util.SparseArray;
+
+import androidx.annotation.Nullable;
+import androidx.core.content.ContextCompat;
+
+import org.joda.time.DateTime;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import be.hyperrail.android.logging.HyperRailLog;
+import be.hyperrail.opentransportdata.OpenTransportApi;
+import be.hyperrail.opentransportdata.async.AsyncTransportDataSource;
+import be.hyperrail.opentransportdata.async.TransportDataFuture;
+import be.hyperrail.opentransportdata.common.contracts.QueryTimeDefinition;
+import be.hyperrail.opentransportdata.common.models.Liveboard;
+import be.hyperrail.opentransportdata.common.models.LiveboardType;
+import be.hyperrail.opentransportdata.common.models.StopLocation;
+import be.hyperrail.opentransportdata.common.models.VehicleStop;
+import be.hyperrail.opentransportdata.common.requests.LiveboardRequest;
+
+/**
+ * Load the liveboards shown in next departure widgets.
+ * <p>
+ * Widgets showing the same station share one request and its result. Widgets are refreshed when the next train departs,
+ * instead of on a fixed interval.
+ */
+class NextDeparturesWidgetData {
+
+    private static final HyperRailLog log = HyperRailLog.getLogger(NextDeparturesWidgetData.class);
+
+    /**
+     * How long a widget waits for a liveboard before showing the last known liveboard
+     */
+    private static final long TIMEOUT_MS = 10 * 1000;
+    /**
+     * Liveboards loaded within this time are shared with widgets which refresh later
+     */
+    private static final long MAX_AGE_MS = 60 * 1000;
+    /**
+     * The last known liveboard is only shown while it's younger than this, as most of its trains will have departed afterwards
+     */
+    private static final long MAX_FALLBACK_AGE_MS = 30 * 60 * 1000;
+    /**
+     * Bounds on the time between refreshes, so delays stay up to date without refreshing too often
+     */
+    private static final long MIN_REFRESH_INTERVAL_MS = 60 * 1000;
+    private static final long MAX_REFRESH_INTERVAL_MS = 15 * 60 * 1000;
+
+    private static NextDeparturesWidgetData sInstance;
+
+    // Pending requests and loaded liveboards, by the semantic id of their station
+    private final Map<String, TransportDataFuture<Liveboard>> mPending = new HashMap<>();
+    private final Map<String, Liveboard> mLiveboards = new HashMap<>();
+    private final Map<String, Long> mLoadedAt = new HashMap<>();
+    // Occupancy drawables, by resource id, as bitmaps
+    private final SparseArray<Bitmap> mBitmaps = new SparseArray<>();
+
+    static synchronized NextDeparturesWidgetData getInstance() {
+        if (sInstance == null) {
+            sInstance = new NextDeparturesWidgetData();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Get the liveboard for a station, waiting until it's loaded. This should not be called on the main thread.
+     *
+     * @return The liveboard, the last known liveboard if loading fails or takes too long, or null if no recent liveboard is known
+     */
+    @Nullable
+    Liveboard getLiveboard(StopLocation station) {
+        String id = station.getSemanticId();
+        TransportDataFuture<Liveboard> future;
+        synchronized (this) {
+            Long loadedAt = mLoadedAt.get(id);
+            if (loadedAt != null && System.currentTimeMillis() - loadedAt < MAX_AGE_MS) {
+                return mLiveboards.get(id);
+            }
+            future = mPending.get(id);
+            if (future == null) {
+                future = load(station);
+                mPending.put(id, future);
+            }
+        }
+
+        try {
+            return future.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // The request continues, so widgets which refresh later can still use its result
+            log.warning("Timed out loading the liveboard for widgets: " + id);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warning("Failed to load the liveboard for widgets: " + id, e);
+        }
+        synchronized (this) {
+            Long loadedAt = mLoadedAt.get(id);
+            if (loadedAt == null || System.currentTimeMillis() - loadedAt > MAX_FALLBACK_AGE_MS) {
+                mLiveboards.remove(id);
+                mLoadedAt.remove(id);
+                return null;
+            }
+            return mLiveboards.get(id);
+        }
+    }
+
+    private TransportDataFuture<Liveboard> load(StopLocation station) {
+        final String id = station.getSemanticId();
+        LiveboardRequest request = new LiveboardRequest(station, QueryTimeDefinition.EQUAL_OR_LATER, LiveboardType.DEPARTURES, null);
+        TransportDataFuture<Liveboard> future = new AsyncTransportDataSource(OpenTransportApi.getDataProviderInstance()).getLiveboard(request);
+        future.addListener(completed -> {
+            synchronized (NextDeparturesWidgetData.this) {
+                mPending.remove(id);
+                if (completed.getResult() != null) {
+                    mLiveboards.put(id, completed.getResult());
+                    mLoadedAt.put(id, System.currentTimeMillis());
+                }
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Get an occupancy drawable as a bitmap. Bitmaps are created once and shared by all rows and widgets.
+     */
+    Bitmap getBitmap(Context context, int drawableResource) {
+        synchronized (mBitmaps) {
+            Bitmap bitmap = mBitmaps.get(drawableResource);
+            if (bitmap == null) {
+                bitmap = ((BitmapDrawable) ContextCompat.getDrawable(context, drawableResource)).getBitmap();
+                mBitmaps.put(drawableResource, bitmap);
+            }
+            return bitmap;
+        }
+    }
+
+    /**
+     * Schedule the next refresh of all next departure widgets, shortly after the first departure in any of the known liveboards.
+     */
+    void scheduleRefresh(Context context) {
+        long now = System.currentTimeMillis();
+        long next = now + MAX_REFRESH_INTERVAL_MS;
+        synchronized (this) {
+            for (Liveboard liveboard : mLiveboards.values()) {
+                long departure = getNextDeparture(liveboard, now);
+                if (departure > 0) {
+                    next = Math.min(next, departure);
+                }
+            }
+        }
+        next = Math.max(next, now + MIN_REFRESH_INTERVAL_MS);
+
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        if (alarmManager != null) {
+            // Not a wakeup alarm, widgets only need to be up to date when the screen is on
+            alarmManager.set(AlarmManager.RTC, next, getRefreshIntent(context));
+        }
+    }
+
+    void cancelRefresh(Context context) {
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        if (alarmManager != null) {
+            alarmManager.cancel(getRefreshIntent(context));
+        }
+    }
+
+    private static PendingIntent getRefreshIntent(Context context) {
+        ComponentName provider = new ComponentName(context, NextDeparturesWidgetProvider.class);
+        Intent intent = new Intent(context, NextDeparturesWidgetProvider.class);
+        intent.setAction(AppWidgetManager.ACTION_APPWIDGET_UPDATE);
+        intent.putExtra(AppWidgetManager.EXTRA_APPWIDGET_IDS, AppWidgetManager.getInstance(context).getAppWidgetIds(provider));
+        int flags = PendingIntent.FLAG_UPDATE_CURRENT;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            // The broadcast is only sent by the alarm manager, which doesn't need to change it
+            flags |= PendingIntent.FLAG_IMMUTABLE;
+        }
+        return PendingIntent.getBroadcast(context, 0, intent, flags);
+    }
+
+    /**
+     * @return The time in milliseconds at which the first train after now departs, including its delay, or 0 if none is known
+     */
+    private static long getNextDeparture(Liveboard liveboard, long now) {
+        long next = 0;
+        for (VehicleStop stop : liveboard.getStops()) {
+            // Delays can change the order of departures
+            DateTime departure = stop.getDelayedDepartureTime();
+            if (departure != null && departure.getMillis() > now && (next == 0 || departure.getMillis() < next)) {
+                next = departure.getMillis();
+            }
+        }
+        return next;
+    }
+}
@@ -115,7 +115,8 @@ public class NextDeparturesWidgetProvider extends AppWidgetProvider {
 
     @Override
     public void onDisabled(Context context) {
-        // Enter relevant functionality for when the last widget is disabled
+        // Refreshes are scheduled by the widgets, and aren't needed once the last widget is removed
+        NextDeparturesWidgetData.getInstance().cancelRefresh(context);
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,157 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.android.adapter;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.ListUpdateCallback;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test replacing lists through the differ, with tasks which are run by the test instead of the main thread and a background thread
+ */
+public class ListDifferTest {
+
+    /**
+     * Items are written as "id:contents"
+     */
+    private static final ListDiffer.ItemComparator<String> COMPARATOR = new ListDiffer.ItemComparator<String>() {
+        @Override
+        public boolean isSameItem(@NonNull String oldItem, @NonNull String newItem) {
+            return oldItem.split(":")[0].equals(newItem.split(":")[0]);
+        }
+
+        @Override
+        public boolean hasSameContents(@NonNull String oldItem, @NonNull String newItem) {
+            return oldItem.equals(newItem);
+        }
+    };
+
+    private final List<Runnable> mMainThreadTasks = new ArrayList<>();
+    private final List<Runnable> mDiffTasks = new ArrayList<>();
+    private final List<String> mUpdates = new ArrayList<>();
+
+    private final ListDiffer<String> mDiffer = new ListDiffer<>(COMPARATOR, new ListUpdateCallback() {
+        @Override
+        public void onInserted(int position, int count) {
+            mUpdates.add("inserted " + position + " " + count);
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            mUpdates.add("removed " + position + " " + count);
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            mUpdates.add("moved " + fromPosition + " " + toPosition);
+        }
+
+        @Override
+        public void onChanged(int position, int count, Object payload) {
+            mUpdates.add("changed " + position + " " + count);
+        }
+    }, () -> mUpdates.add("replaced"), mMainThreadTasks::add, mDiffTasks::add);
+
+    private List<String> mShownList;
+    private int mApplyCount;
+
+    @Test
+    public void testChangedItemsAreNotified() {
+        mShownList = Arrays.asList("a:1", "b:1", "c:1");
+        List<String> newList = Arrays.asList("a:1", "b:2", "c:1");
+
+        submit(newList);
+        assertTrue(mDiffer.isPending());
+        runTasks();
+
+        assertFalse(mDiffer.isPending());
+        assertEquals(newList, mShownList);
+        assertEquals(Collections.singletonList("changed 1 1"), mUpdates);
+    }
+
+    @Test
+    public void testShownListIsKeptUntilApplied() {
+        List<String> shownList = Arrays.asList("a:1", "b:1");
+        mShownList = shownList;
+
+        submit(Arrays.asList("a:1"));
+        runDiffTasks();
+
+        // The comparison is done, but the new list is only applied on the main thread
+        assertEquals(shownList, mShownList);
+        assertTrue(mUpdates.isEmpty());
+
+        runTasks();
+        assertEquals(Arrays.asList("a:1"), mShownList);
+        assertEquals(Collections.singletonList("removed 1 1"), mUpdates);
+    }
+
+    @Test
+    public void testNewerListSupersedesPendingList() {
+        mShownList = Arrays.asList("a:1", "b:1");
+        List<String> newerList = Arrays.asList("a:1", "b:1", "c:1");
+
+        submit(Arrays.asList("a:2", "b:1"));
+        submit(newerList);
+        runTasks();
+
+        assertFalse(mDiffer.isPending());
+        assertEquals(1, mApplyCount);
+        assertEquals(newerList, mShownList);
+        assertEquals(Collections.singletonList("inserted 2 1"), mUpdates);
+    }
+
+    @Test
+    public void testEmptyListReplacesShownList() {
+        mShownList = Arrays.asList("a:1", "b:1");
+
+        submit(null);
+        assertTrue(mDiffTasks.isEmpty());
+        runTasks();
+
+        assertNull(mShownList);
+        assertEquals(Collections.singletonList("replaced"), mUpdates);
+    }
+
+    private void submit(List<String> newList) {
+        mDiffer.submit(mShownList, newList, list -> {
+            mShownList = list;
+            mApplyCount++;
+        });
+    }
+
+    /**
+     * Run all comparisons, followed by the tasks they posted to the main thread
+     */
+    private void runTasks() {
+        runDiffTasks();
+        List<Runnable> tasks = new ArrayList<>(mMainThreadTasks);
+        mMainThreadTasks.clear();
+        for (Runnable task : tasks) {
+            task.run();
+        }
+    }
+
+    private void runDiffTasks() {
+        List<Runnable> tasks = new ArrayList<>(mDiffTasks);
+        mDiffTasks.clear();
+        for (Runnable task : tasks) {
+            task.run();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.android.adapter;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * Test the recyclerview ids derived from semantic ids
+ */
+public class StableIdsTest {
+
+    @Test
+    public void testSameParts() {
+        assertEquals(StableIds.of("stop", "http://irail.be/connections/8814001/20200615/IC1234"),
+                StableIds.of("stop", "http://irail.be/connections/8814001/20200615/IC1234"));
+    }
+
+    @Test
+    public void testPartBoundaries() {
+        assertNotEquals(StableIds.of("ab", "c"), StableIds.of("a", "bc"));
+        assertNotEquals(StableIds.of("a", null), StableIds.of("a"));
+    }
+
+    @Test
+    public void testNullParts() {
+        assertEquals(StableIds.of("disturbance", null, "title"), StableIds.of("disturbance", null, "title"));
+        assertNotEquals(StableIds.of("disturbance", null, "title"), StableIds.of("disturbance", "null", "title"));
+        assertNotEquals(StableIds.of("disturbance", null, "title"), StableIds.of("disturbance", "", "title"));
+        assertNotEquals(StableIds.of(null, "title"), StableIds.of("title", null));
+    }
+
+    @Test
+    public void testKindsDiffer() {
+        assertNotEquals(StableIds.of("station", "http://irail.be/stations/NMBS/008814001"),
+                StableIds.of("suggestion", "http://irail.be/stations/NMBS/008814001"));
+    }
+
+    @Test
+    public void testNoCollisionsInList() {
+        Set<Long> ids = new HashSet<>();
+        for (int i = 0; i < 10000; i++) {
+            ids.add(StableIds.of("stop", "http://irail.be/connections/" + (8800000 + i) + "/20200615/IC" + (i % 100)));
+        }
+        assertEquals(10000, ids.size());
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.android.persistence;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test the ranking of suggestions by frequency, recency and time of day
+ */
+public class FrecencyTest {
+
+    private static final DateTimeZone ZONE = DateTimeZone.forID("Europe/Brussels");
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+    private static final long NOW = new DateTime(2020, 6, 15, 8, 0, ZONE).getMillis();
+
+    @Test
+    public void testUnused() {
+        assertEquals(0, Frecency.score(0, new long[0], NOW, ZONE), 0);
+    }
+
+    @Test
+    public void testRecentOverOld() {
+        double recent = Frecency.score(1, new long[]{NOW - DAY - 6 * 60 * 60 * 1000L}, NOW, ZONE);
+        double old = Frecency.score(1, new long[]{NOW - 60 * DAY - 6 * 60 * 60 * 1000L}, NOW, ZONE);
+        assertTrue(recent > old);
+    }
+
+    @Test
+    public void testFrequentOverRare() {
+        long use = NOW - 20 * DAY;
+        assertTrue(Frecency.score(5, new long[]{use}, NOW, ZONE) > Frecency.score(1, new long[]{use}, NOW, ZONE));
+    }
+
+    @Test
+    public void testSameTimeOfDay() {
+        // Both used a week ago, but only one around this time of day
+        double morning = Frecency.score(1, new long[]{NOW - 7 * DAY + 30 * 60 * 1000L}, NOW, ZONE);
+        double evening = Frecency.score(1, new long[]{NOW - 7 * DAY + 10 * 60 * 60 * 1000L}, NOW, ZONE);
+        assertEquals(2 * evening, morning, 0.0001);
+    }
+
+    @Test
+    public void testTimeOfDayAroundMidnight() {
+        long lateEvening = new DateTime(2020, 6, 10, 23, 45, ZONE).getMillis();
+        long justAfterMidnight = new DateTime(2020, 6, 15, 0, 30, ZONE).getMillis();
+        long noon = new DateTime(2020, 6, 10, 12, 0, ZONE).getMillis();
+        assertTrue(Frecency.score(1, new long[]{lateEvening}, justAfterMidnight, ZONE) > Frecency.score(1, new long[]{noon}, justAfterMidnight, ZONE));
+    }
+
+    @Test
+    public void testAddUse() {
+        long[] uses = new long[0];
+        for (int i = 1; i <= Frecency.MAX_SAMPLES + 2; i++) {
+            uses = Frecency.addUse(uses, i);
+        }
+        assertEquals(Frecency.MAX_SAMPLES, uses.length);
+        assertArrayEquals(new long[]{3, 4, 5, 6, 7, 8, 9, 10, 11, 12}, uses);
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.android.persistence;
+
+import android.content.SharedPreferences;
+
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import be.hyperrail.android.logging.HyperRailLog;
+import be.hyperrail.android.logging.HyperRailLogWriter;
+import be.hyperrail.opentransportdata.common.requests.VehicleRequest;
+
+import static be.hyperrail.android.persistence.SuggestionType.FAVORITE;
+import static be.hyperrail.android.persistence.SuggestionType.HISTORY;
+import static be.hyperrail.android.persistence.SuggestionsDataContract.KIND_VEHICLE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test storing, loading and importing suggestions, with a write executor which is run by the test
+ */
+public class PersistentQueryProviderTest {
+
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+
+    private final List<Runnable> mWriteTasks = new ArrayList<>();
+    private final SuggestionsDatabase mDatabase = mock(SuggestionsDatabase.class);
+    private final SharedPreferences mPreferences = mock(SharedPreferences.class);
+    private final SharedPreferences.Editor mEditor = mock(SharedPreferences.Editor.class);
+
+    @Before
+    public void setUp() {
+        HyperRailLog.initLogWriter(mock(HyperRailLogWriter.class));
+        // Use the default order and history count
+        when(mPreferences.getString(anyString(), anyString())).thenAnswer(invocation -> invocation.getArgument(1));
+        when(mPreferences.edit()).thenReturn(mEditor);
+        when(mDatabase.loadAll()).thenReturn(Collections.emptyList());
+    }
+
+    @Test
+    public void testStoredSuggestionIsLoadedAgain() {
+        PersistentQueryProvider provider = createProvider();
+        runWriteTasks();
+        provider.store(new Suggestion<>(new VehicleRequest("IC538", null), HISTORY));
+        runWriteTasks();
+
+        ArgumentCaptor<StoredSuggestion> written = ArgumentCaptor.forClass(StoredSuggestion.class);
+        verify(mDatabase).write(written.capture());
+        assertEquals(KIND_VEHICLE, written.getValue().kind);
+        assertEquals("IC538", written.getValue().key);
+        assertTrue(written.getValue().history);
+        assertEquals(1, written.getValue().useCount);
+
+        when(mDatabase.loadAll()).thenReturn(Collections.singletonList(written.getValue()));
+        PersistentQueryProvider reloaded = createProvider();
+        runWriteTasks();
+
+        List<Suggestion<VehicleRequest>> trains = reloaded.getAllTrains();
+        assertEquals(1, trains.size());
+        assertEquals("IC538", trains.get(0).getData().getVehicleId());
+        assertEquals(HISTORY, trains.get(0).getType());
+    }
+
+    @Test
+    public void testChangesAreQueuedUntilLoaded() {
+        PersistentQueryProvider provider = createProvider();
+        VehicleRequest request = new VehicleRequest("IC538", null);
+
+        // Nothing waits for the database to be read
+        provider.store(new Suggestion<>(request, FAVORITE));
+        assertTrue(provider.getAllTrains().isEmpty());
+        assertFalse(provider.isFavorite(request));
+        verify(mDatabase, never()).loadAll();
+
+        runWriteTasks();
+        verify(mDatabase).loadAll();
+        verify(mDatabase).write(any(StoredSuggestion.class));
+        assertTrue(provider.isFavorite(request));
+        assertEquals(1, provider.getAllTrains().size());
+
+        // Once loaded, changes are applied right away
+        provider.delete(new Suggestion<>(request, FAVORITE));
+        assertFalse(provider.isFavorite(request));
+        assertTrue(provider.getAllTrains().isEmpty());
+        runWriteTasks();
+        verify(mDatabase).delete(KIND_VEHICLE, "IC538");
+    }
+
+    @Test
+    public void testLegacyPreferencesAreImported() throws Exception {
+        VehicleRequest recent = new VehicleRequest("IC538", new DateTime(2020, 6, 15, 8, 0));
+        VehicleRequest favorite = new VehicleRequest("P7305", null);
+        when(mPreferences.getStringSet(eq("recent_trains"), isNull()))
+                .thenReturn(Collections.singleton(recent.toJson().toString()));
+        when(mPreferences.getStringSet(eq("fav_trains"), isNull()))
+                .thenReturn(Collections.singleton(favorite.toJson().toString()));
+
+        PersistentQueryProvider provider = createProvider();
+        runWriteTasks();
+
+        List<Suggestion<VehicleRequest>> trains = provider.getAllTrains();
+        assertEquals(2, trains.size());
+        assertEquals("IC538", trains.get(0).getData().getVehicleId());
+        assertEquals(HISTORY, trains.get(0).getType());
+        assertEquals("P7305", trains.get(1).getData().getVehicleId());
+        assertEquals(FAVORITE, trains.get(1).getType());
+
+        verify(mDatabase, times(2)).write(any(StoredSuggestion.class));
+        verify(mEditor).remove("recent_trains");
+        verify(mEditor).remove("fav_trains");
+        verify(mEditor).apply();
+    }
+
+    @Test
+    public void testLeastUsedHistoryIsForgottenOnWriteExecutor() {
+        List<StoredSuggestion> stored = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 500; i++) {
+            StoredSuggestion suggestion = new StoredSuggestion(KIND_VEHICLE, "S" + i, "{}");
+            suggestion.history = true;
+            suggestion.useCount = i == 0 ? 1 : 10;
+            suggestion.lastUsed = now - 100 * DAY;
+            suggestion.recentUses = new long[]{suggestion.lastUsed};
+            stored.add(suggestion);
+        }
+        when(mDatabase.loadAll()).thenReturn(stored);
+        PersistentQueryProvider provider = createProvider();
+        runWriteTasks();
+
+        provider.store(new Suggestion<>(new VehicleRequest("IC538", null), HISTORY));
+        verify(mDatabase, never()).delete(anyInt(), anyString());
+
+        runWriteTasks();
+        verify(mDatabase, atLeastOnce()).write(any(StoredSuggestion.class));
+        verify(mDatabase).delete(KIND_VEHICLE, "S0");
+    }
+
+    private PersistentQueryProvider createProvider() {
+        return new PersistentQueryProvider(mPreferences, mDatabase, mWriteTasks::add);
+    }
+
+    /**
+     * Run all queued tasks, including those queued while running them
+     */
+    private void runWriteTasks() {
+        while (!mWriteTasks.isEmpty()) {
+            mWriteTasks.remove(0).run();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.android.util;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test station name completion with accents, aliases and words within names
+ */
+public class StationAutoCompleteIndexTest {
+
+    private final StationAutoCompleteIndex index = new StationAutoCompleteIndex(
+            new String[]{"Brussel-Zuid", "Gent-Sint-Pieters", "Liège-Guillemins", "Brugge", "Zottegem"},
+            new String[][]{
+                    {"Bruxelles-Midi", "Brussels-South"},
+                    {"Gand-Saint-Pierre"},
+                    {"Luik-Guillemins"},
+                    null,
+                    {}
+            });
+
+    @Test
+    public void testPrefix() {
+        assertArrayEquals(new String[]{"Brussel-Zuid", "Brugge"}, index.search("Bru", 10));
+        assertArrayEquals(new String[]{"Brussel-Zuid"}, index.search("brussel z", 10));
+    }
+
+    @Test
+    public void testWordsWithinName() {
+        assertArrayEquals(new String[]{"Brussel-Zuid"}, index.search("zuid", 10));
+        assertArrayEquals(new String[]{"Gent-Sint-Pieters"}, index.search("pieters", 10));
+    }
+
+    @Test
+    public void testAccentsAndPunctuation() {
+        assertArrayEquals(new String[]{"Liège-Guillemins"}, index.search("liege guill", 10));
+        assertArrayEquals(new String[]{"Liège-Guillemins"}, index.search("LIÈGE-", 10));
+    }
+
+    @Test
+    public void testAliases() {
+        assertArrayEquals(new String[]{"Brussel-Zuid"}, index.search("Bruxelles Midi", 10));
+        assertArrayEquals(new String[]{"Liège-Guillemins"}, index.search("luik", 10));
+        // Stations matching several of their names are only returned once
+        assertArrayEquals(new String[]{"Liège-Guillemins"}, index.search("guillemins", 10));
+    }
+
+    @Test
+    public void testOrderAndLimit() {
+        assertArrayEquals(new String[]{"Brussel-Zuid", "Gent-Sint-Pieters"}, index.search("s", 2));
+        assertEquals(0, index.search("  ", 10).length);
+        assertEquals(0, index.search("xyz", 10).length);
+    }
+
+    @Test
+    public void testLocalizedName() {
+        Map<String, String> translations = new HashMap<>();
+        translations.put("nl", "Brussel-Zuid");
+        translations.put("fr", "Bruxelles-Midi");
+        translations.put("en", "Brussels-South");
+        translations.put("de", "");
+
+        assertEquals("Bruxelles-Midi", StationAutoCompleteIndex.getLocalizedName("Brussel-Zuid/Bruxelles-Midi", translations, "fra"));
+        assertEquals("Brussels-South", StationAutoCompleteIndex.getLocalizedName("Brussel-Zuid/Bruxelles-Midi", translations, "ita"));
+        // Missing translations fall back to the name of the station
+        assertEquals("Brussel-Zuid/Bruxelles-Midi", StationAutoCompleteIndex.getLocalizedName("Brussel-Zuid/Bruxelles-Midi", translations, "deu"));
+        assertEquals("Brugge", StationAutoCompleteIndex.getLocalizedName("Brugge", null, "nld"));
+    }
+}
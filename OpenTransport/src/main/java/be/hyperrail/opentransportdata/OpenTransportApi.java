@@ -8,10 +8,16 @@ package be.hyperrail.opentransportdata;
 
 import android.content.Context;
 
+import androidx.annotation.Nullable;
+
+import be.hyperrail.opentransportdata.async.AsyncTransportDataSource;
 import be.hyperrail.opentransportdata.common.contracts.TransportDataProvider;
 import be.hyperrail.opentransportdata.common.contracts.TransportDataSource;
+import be.hyperrail.opentransportdata.common.contracts.TransportDelaysDataSource;
 import be.hyperrail.opentransportdata.common.contracts.TransportStopFacilitiesDataSource;
 import be.hyperrail.opentransportdata.common.contracts.TransportStopsDataSource;
+import be.hyperrail.opentransportdata.composite.CachingTransportDataSource;
+import be.hyperrail.opentransportdata.composite.ResultCacheConfiguration;
 import be.hyperrail.opentransportdata.logging.OpenTransportLog;
 import be.hyperrail.opentransportdata.logging.OpenTransportLogWriter;
 
@@ -19,7 +25,9 @@ public class OpenTransportApi {
 
     private static TransportStopsDataSource stationProviderInstance;
     private static TransportDataSource dataProviderInstance;
+    private static AsyncTransportDataSource asyncDataProviderInstance;
     private static TransportStopFacilitiesDataSource stopFacilitiesDataSource;
+    private static TransportDelaysDataSource delaysDataSourceInstance;
 
     private OpenTransportApi() {
         // No constructor needed
@@ -38,6 +46,9 @@ public class OpenTransportApi {
         stationProviderInstance = dataProvider.getStopsDataSource(appContext);
         stopFacilitiesDataSource = dataProvider.getStopsFacilitiesDataSource(appContext, stationProviderInstance);
         dataProviderInstance = dataProvider.getTransportDataSource(appContext, stationProviderInstance);
+        // Kept separately, as the data source might be wrapped in a cache
+        delaysDataSourceInstance = dataProviderInstance instanceof TransportDelaysDataSource ? (TransportDelaysDataSource) dataProviderInstance : null;
+        asyncDataProviderInstance = null;
     }
 
     public static void init(Context applicationContext, TransportDataProvider dataProvider, OpenTransportLogWriter logger) {
@@ -45,6 +56,24 @@ public class OpenTransportApi {
         init(applicationContext, dataProvider);
     }
 
+    /**
+     * Initialize the api, caching the results of the transport data source in memory.
+     *
+     * @param cacheConfiguration The configuration for the result cache, or null to disable caching
+     */
+    public static void init(Context appContext, TransportDataProvider dataProvider, @Nullable ResultCacheConfiguration cacheConfiguration) {
+        init(appContext, dataProvider);
+        if (cacheConfiguration != null) {
+            dataProviderInstance = new CachingTransportDataSource(dataProviderInstance, cacheConfiguration);
+            asyncDataProviderInstance = null;
+        }
+    }
+
+    public static void init(Context applicationContext, TransportDataProvider dataProvider, OpenTransportLogWriter logger, @Nullable ResultCacheConfiguration cacheConfiguration) {
+        OpenTransportLog.initLogWriter(logger);
+        init(applicationContext, dataProvider, cacheConfiguration);
+    }
+
     private static TransportDataProvider getProviderFromQualifiedNames(String qualifiedName) throws ClassNotFoundException, InstantiationException, IllegalAccessException {
         return
                 (TransportDataProvider) TransportDataProvider.class
@@ -67,10 +96,30 @@ public class OpenTransportApi {
         return dataProviderInstance;
     }
 
+    /**
+     * Get the data provider, returning the results of requests as futures.
+     */
+    public static AsyncTransportDataSource getAsyncDataProviderInstance() {
+        if (asyncDataProviderInstance == null) {
+            asyncDataProviderInstance = new AsyncTransportDataSource(getDataProviderInstance());
+        }
+        return asyncDataProviderInstance;
+    }
+
     public static TransportStopFacilitiesDataSource getFacilitiesProviderInstance() {
         if (stopFacilitiesDataSource == null) {
             throw new IllegalStateException("Initialize OpenTransportApi using initLogWriter() before trying to access the facilities provider!");
         }
         return stopFacilitiesDataSource;
     }
+
+    /**
+     * Get the data source which reports new delays for shown results.
+     *
+     * @return The data source, or null if the data provider can't report delay changes
+     */
+    @Nullable
+    public static TransportDelaysDataSource getDelaysDataSourceInstance() {
+        return delaysDataSourceInstance;
+    }
 }
@@ -0,0 +1,137 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.opentransportdata.async;
+
+import androidx.annotation.NonNull;
+
+import be.hyperrail.opentransportdata.common.contracts.TransportDataRequest;
+import be.hyperrail.opentransportdata.common.contracts.TransportDataSource;
+import be.hyperrail.opentransportdata.common.models.Disturbance;
+import be.hyperrail.opentransportdata.common.models.Liveboard;
+import be.hyperrail.opentransportdata.common.models.Route;
+import be.hyperrail.opentransportdata.common.models.RoutesList;
+import be.hyperrail.opentransportdata.common.models.VehicleComposition;
+import be.hyperrail.opentransportdata.common.models.VehicleJourney;
+import be.hyperrail.opentransportdata.common.models.VehicleStop;
+import be.hyperrail.opentransportdata.common.requests.ActualDisturbancesRequest;
+import be.hyperrail.opentransportdata.common.requests.ExtendLiveboardRequest;
+import be.hyperrail.opentransportdata.common.requests.ExtendRoutePlanningRequest;
+import be.hyperrail.opentransportdata.common.requests.LiveboardRequest;
+import be.hyperrail.opentransportdata.common.requests.OccupancyPostRequest;
+import be.hyperrail.opentransportdata.common.requests.RoutePlanningRequest;
+import be.hyperrail.opentransportdata.common.requests.RouteRefreshRequest;
+import be.hyperrail.opentransportdata.common.requests.VehicleCompositionRequest;
+import be.hyperrail.opentransportdata.common.requests.VehicleRequest;
+import be.hyperrail.opentransportdata.common.requests.VehicleStopRequest;
+
+/**
+ * Make requests to a {@link TransportDataSource} and receive the results as {@link TransportDataFuture}s.
+ * <p>
+ * The callbacks of the requests are replaced by the futures. Cancelling a future cancels its request, which stops the work done by the data source.
+ */
+public class AsyncTransportDataSource {
+
+    private final TransportDataSource mDataSource;
+
+    public AsyncTransportDataSource(@NonNull TransportDataSource dataSource) {
+        mDataSource = dataSource;
+    }
+
+    public TransportDataFuture<Disturbance[]> getActualDisturbances(ActualDisturbancesRequest request) {
+        TransportDataFuture<Disturbance[]> future = toFuture(request);
+        mDataSource.getActualDisturbances(request);
+        return future;
+    }
+
+    public TransportDataFuture<Liveboard> getLiveboard(LiveboardRequest request) {
+        TransportDataFuture<Liveboard> future = toFuture(request);
+        mDataSource.getLiveboard(request);
+        return future;
+    }
+
+    public TransportDataFuture<Liveboard> extendLiveboard(ExtendLiveboardRequest request) {
+        TransportDataFuture<Liveboard> future = toFuture(request);
+        mDataSource.extendLiveboard(request);
+        return future;
+    }
+
+    public TransportDataFuture<RoutesList> getRoutePlanning(RoutePlanningRequest request) {
+        TransportDataFuture<RoutesList> future = toFuture(request);
+        mDataSource.getRoutePlanning(request);
+        return future;
+    }
+
+    public TransportDataFuture<RoutesList> extendRoutePlanning(ExtendRoutePlanningRequest request) {
+        TransportDataFuture<RoutesList> future = toFuture(request);
+        mDataSource.extendRoutePlanning(request);
+        return future;
+    }
+
+    public TransportDataFuture<Route> getRoute(RouteRefreshRequest request) {
+        TransportDataFuture<Route> future = toFuture(request);
+        mDataSource.getRoute(request);
+        return future;
+    }
+
+    public TransportDataFuture<VehicleStop> getStop(VehicleStopRequest request) {
+        TransportDataFuture<VehicleStop> future = toFuture(request);
+        mDataSource.getStop(request);
+        return future;
+    }
+
+    public TransportDataFuture<VehicleJourney> getVehicleJourney(VehicleRequest request) {
+        TransportDataFuture<VehicleJourney> future = toFuture(request);
+        mDataSource.getVehicleJourney(request);
+        return future;
+    }
+
+    public TransportDataFuture<VehicleComposition> getVehicleComposition(VehicleCompositionRequest request) {
+        TransportDataFuture<VehicleComposition> future = toFuture(request);
+        mDataSource.getVehicleComposition(request);
+        return future;
+    }
+
+    public TransportDataFuture<Boolean> postOccupancy(OccupancyPostRequest request) {
+        TransportDataFuture<Boolean> future = toFuture(request);
+        mDataSource.postOccupancy(request);
+        return future;
+    }
+
+    /**
+     * Create a future which is completed by the callbacks of a request, before the request is made.
+     * This allows data sources to use futures for the requests they make internally.
+     *
+     * @param request The request, of which the callbacks will be replaced
+     * @return A future which is completed when the request is answered, and which cancels the request when it's cancelled
+     */
+    public static <T> TransportDataFuture<T> toFuture(TransportDataRequest<T> request) {
+        final TransportDataFuture<T> future = new TransportDataFuture<>();
+        request.setCallback((data, tag) -> future.complete(data), (e, tag) -> future.completeExceptionally(e), request.getTag());
+        future.addOnCancelListener(request::cancel);
+        return future;
+    }
+
+    /**
+     * Answer a request with the result of a future. Cancelling the request cancels the future.
+     *
+     * @param future  The future which will provide the result
+     * @param request The request to notify
+     */
+    public static <T> void forward(TransportDataFuture<T> future, final TransportDataRequest<T> request) {
+        request.addOnCancelListener(() -> future.cancel(false));
+        future.addListener(completed -> {
+            if (completed.isCancelled()) {
+                return;
+            }
+            if (completed.getException() != null) {
+                request.notifyErrorListeners(completed.getException());
+            } else {
+                request.notifySuccessListeners(completed.getResult());
+            }
+        });
+    }
+}
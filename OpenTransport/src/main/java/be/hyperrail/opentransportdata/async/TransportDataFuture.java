@@ -0,0 +1,353 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.opentransportdata.async;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import be.hyperrail.opentransportdata.common.contracts.TransportDataCancelListener;
+
+/**
+ * The result of an asynchronous request, which can be composed with other requests and cancelled.
+ * <p>
+ * This offers a subset of CompletableFuture, which isn't available on all supported Android versions.
+ * Listeners and transformations run on the thread which completes the future, or immediately when the future has already completed.
+ * Cancelling a future cancels the request or future it's waiting on.
+ *
+ * @param <T> The type of the result
+ */
+public class TransportDataFuture<T> implements Future<T> {
+
+    /**
+     * Called when a future is completed, failed or cancelled.
+     */
+    public interface Listener<T> {
+        void onComplete(TransportDataFuture<T> future);
+    }
+
+    /**
+     * Transform the result of a future into another result.
+     */
+    public interface Transformation<T, R> {
+        R apply(T result) throws Exception;
+    }
+
+    /**
+     * Start a new asynchronous operation with the result of a future.
+     */
+    public interface Continuation<T, R> {
+        TransportDataFuture<R> then(T result) throws Exception;
+    }
+
+    private static final int STATE_PENDING = 0;
+    private static final int STATE_COMPLETED = 1;
+    private static final int STATE_FAILED = 2;
+    private static final int STATE_CANCELLED = 3;
+
+    private static ScheduledExecutorService sTimeoutScheduler;
+
+    private int mState = STATE_PENDING;
+    private T mResult;
+    private Exception mException;
+
+    private List<Listener<T>> mListeners = new ArrayList<>();
+    private List<TransportDataCancelListener> mCancelListeners = new ArrayList<>();
+    // Whether the work this future was waiting on has been cancelled, either by cancelling this future or by a timeout
+    private boolean mWorkCancelled;
+
+    public static <T> TransportDataFuture<T> completed(@Nullable T result) {
+        TransportDataFuture<T> future = new TransportDataFuture<>();
+        future.complete(result);
+        return future;
+    }
+
+    public static <T> TransportDataFuture<T> failed(@NonNull Exception exception) {
+        TransportDataFuture<T> future = new TransportDataFuture<>();
+        future.completeExceptionally(exception);
+        return future;
+    }
+
+    /**
+     * Wait for all futures to complete.
+     * When one of the futures fails, the returned future fails and the other futures are cancelled.
+     * Cancelling the returned future cancels all futures.
+     *
+     * @param futures The futures to wait for
+     * @param <T>     The type of the results
+     * @return A future with the results, in the same order as the futures
+     */
+    public static <T> TransportDataFuture<List<T>> allOf(final List<TransportDataFuture<T>> futures) {
+        final TransportDataFuture<List<T>> result = new TransportDataFuture<>();
+        if (futures.isEmpty()) {
+            result.complete(new ArrayList<T>());
+            return result;
+        }
+
+        final AtomicInteger remaining = new AtomicInteger(futures.size());
+        for (TransportDataFuture<T> future : futures) {
+            future.addListener(completed -> {
+                if (completed.isCancelled()) {
+                    result.cancel(false);
+                } else if (completed.getException() != null) {
+                    result.completeExceptionally(completed.getException());
+                } else if (remaining.decrementAndGet() == 0) {
+                    List<T> results = new ArrayList<>(futures.size());
+                    for (TransportDataFuture<T> f : futures) {
+                        results.add(f.getResult());
+                    }
+                    result.complete(results);
+                }
+            });
+        }
+        result.addListener(completed -> {
+            for (TransportDataFuture<T> future : futures) {
+                future.cancel(false);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * @return true if the result was set, false if this future was already done
+     */
+    public boolean complete(@Nullable T result) {
+        return finish(STATE_COMPLETED, result, null, false);
+    }
+
+    /**
+     * @return true if the exception was set, false if this future was already done
+     */
+    public boolean completeExceptionally(@NonNull Exception exception) {
+        return finish(STATE_FAILED, null, exception, false);
+    }
+
+    /**
+     * Cancel this future, and the work it's waiting on.
+     *
+     * @param mayInterruptIfRunning Ignored, running work is stopped through the cancel listeners
+     * @return true if this future was cancelled, false if it was already done
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return finish(STATE_CANCELLED, null, new CancellationException(), true);
+    }
+
+    /**
+     * Add a listener which is called when this future is cancelled, to stop the work this future is waiting on.
+     * The listener is called immediately if this future has already been cancelled.
+     */
+    public void addOnCancelListener(TransportDataCancelListener listener) {
+        synchronized (this) {
+            if (mState == STATE_PENDING) {
+                mCancelListeners.add(listener);
+                return;
+            }
+            if (!mWorkCancelled) {
+                return;
+            }
+        }
+        listener.onCancel();
+    }
+
+    /**
+     * Add a listener which is called once this future is done. The listener is called immediately if this future is already done.
+     */
+    public void addListener(Listener<T> listener) {
+        synchronized (this) {
+            if (mState == STATE_PENDING) {
+                mListeners.add(listener);
+                return;
+            }
+        }
+        listener.onComplete(this);
+    }
+
+    /**
+     * Create a future with the transformed result of this future.
+     * Exceptions thrown by the transformation fail the returned future. Cancelling the returned future cancels this future.
+     */
+    public <R> TransportDataFuture<R> thenApply(final Transformation<? super T, ? extends R> transformation) {
+        final TransportDataFuture<R> result = new TransportDataFuture<>();
+        result.addOnCancelListener(() -> cancel(false));
+        addListener(completed -> {
+            if (!result.propagateFailure(completed)) {
+                try {
+                    result.complete(transformation.apply(completed.getResult()));
+                } catch (Exception e) {
+                    result.completeExceptionally(e);
+                }
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Create a future with the result of the future which is started with the result of this future.
+     * Cancelling the returned future cancels this future, or the started future once it has been started.
+     */
+    public <R> TransportDataFuture<R> thenCompose(final Continuation<? super T, R> continuation) {
+        final TransportDataFuture<R> result = new TransportDataFuture<>();
+        result.addOnCancelListener(() -> cancel(false));
+        addListener(completed -> {
+            if (result.propagateFailure(completed)) {
+                return;
+            }
+            TransportDataFuture<R> next;
+            try {
+                next = continuation.then(completed.getResult());
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+                return;
+            }
+            result.addOnCancelListener(() -> next.cancel(false));
+            next.addListener(nextCompleted -> {
+                if (!result.propagateFailure(nextCompleted)) {
+                    result.complete(nextCompleted.getResult());
+                }
+            });
+        });
+        return result;
+    }
+
+    /**
+     * Fail this future with a {@link TimeoutException}, and cancel the work it's waiting on, if it isn't done within the given time.
+     *
+     * @return This future
+     */
+    public TransportDataFuture<T> withTimeout(long timeout, TimeUnit unit) {
+        final ScheduledFuture<?> timer = getTimeoutScheduler().schedule(
+                () -> finish(STATE_FAILED, null, new TimeoutException(), true), timeout, unit);
+        addListener(completed -> timer.cancel(false));
+        return this;
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return mState == STATE_CANCELLED;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return mState != STATE_PENDING;
+    }
+
+    /**
+     * @return The result of this future, or null if it isn't completed (yet)
+     */
+    @Nullable
+    public synchronized T getResult() {
+        return mResult;
+    }
+
+    /**
+     * @return The exception which failed this future, a {@link CancellationException} if it was cancelled, or null otherwise
+     */
+    @Nullable
+    public synchronized Exception getException() {
+        return mException;
+    }
+
+    @Override
+    public synchronized T get() throws InterruptedException, ExecutionException {
+        while (mState == STATE_PENDING) {
+            wait();
+        }
+        return getOrThrow();
+    }
+
+    @Override
+    public synchronized T get(long timeout, @NonNull TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (mState == STATE_PENDING) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                throw new TimeoutException();
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return getOrThrow();
+    }
+
+    private T getOrThrow() throws ExecutionException {
+        if (mState == STATE_CANCELLED) {
+            throw new CancellationException();
+        }
+        if (mState == STATE_FAILED) {
+            throw new ExecutionException(mException);
+        }
+        return mResult;
+    }
+
+    /**
+     * Fail or cancel this future if the given future failed or was cancelled.
+     *
+     * @return true if the given future didn't complete successfully
+     */
+    private boolean propagateFailure(TransportDataFuture<?> completed) {
+        if (completed.isCancelled()) {
+            cancel(false);
+            return true;
+        }
+        if (completed.getException() != null) {
+            completeExceptionally(completed.getException());
+            return true;
+        }
+        return false;
+    }
+
+    private boolean finish(int state, T result, Exception exception, boolean cancelWork) {
+        List<Listener<T>> listeners;
+        List<TransportDataCancelListener> cancelListeners;
+        synchronized (this) {
+            if (mState != STATE_PENDING) {
+                return false;
+            }
+            mState = state;
+            mResult = result;
+            mException = exception;
+            mWorkCancelled = cancelWork;
+            listeners = mListeners;
+            cancelListeners = mCancelListeners;
+            mListeners = null;
+            mCancelListeners = null;
+            notifyAll();
+        }
+
+        if (cancelWork) {
+            for (TransportDataCancelListener listener : cancelListeners) {
+                listener.onCancel();
+            }
+        }
+        for (Listener<T> listener : listeners) {
+            listener.onComplete(this);
+        }
+        return true;
+    }
+
+    private static synchronized ScheduledExecutorService getTimeoutScheduler() {
+        if (sTimeoutScheduler == null) {
+            sTimeoutScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "TransportDataFuture timeout");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return sTimeoutScheduler;
+    }
+}
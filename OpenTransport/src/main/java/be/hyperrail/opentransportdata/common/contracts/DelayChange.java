@@ -0,0 +1,59 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.opentransportdata.common.contracts;
+
+import androidx.annotation.NonNull;
+
+import org.joda.time.Duration;
+
+/**
+ * A change in the real-time delays of a single connection, detected when data which is already in use is refreshed.
+ * The semantic id is the id which is used for departures and arrivals in liveboards and routes, see {@link be.hyperrail.opentransportdata.common.models.VehicleStop#getDepartureUri()}
+ * and {@link be.hyperrail.opentransportdata.common.models.RouteLegEnd#getSemanticId()}.
+ */
+public class DelayChange {
+
+    private final String mSemanticId;
+    private final Duration mPreviousDepartureDelay;
+    private final Duration mPreviousArrivalDelay;
+    private final Duration mDepartureDelay;
+    private final Duration mArrivalDelay;
+
+    public DelayChange(@NonNull String semanticId, @NonNull Duration previousDepartureDelay, @NonNull Duration previousArrivalDelay,
+                       @NonNull Duration departureDelay, @NonNull Duration arrivalDelay) {
+        mSemanticId = semanticId;
+        mPreviousDepartureDelay = previousDepartureDelay;
+        mPreviousArrivalDelay = previousArrivalDelay;
+        mDepartureDelay = departureDelay;
+        mArrivalDelay = arrivalDelay;
+    }
+
+    @NonNull
+    public String getSemanticId() {
+        return mSemanticId;
+    }
+
+    @NonNull
+    public Duration getPreviousDepartureDelay() {
+        return mPreviousDepartureDelay;
+    }
+
+    @NonNull
+    public Duration getPreviousArrivalDelay() {
+        return mPreviousArrivalDelay;
+    }
+
+    @NonNull
+    public Duration getDepartureDelay() {
+        return mDepartureDelay;
+    }
+
+    @NonNull
+    public Duration getArrivalDelay() {
+        return mArrivalDelay;
+    }
+}
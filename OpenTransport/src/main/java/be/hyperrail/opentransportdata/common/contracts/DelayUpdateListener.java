@@ -0,0 +1,25 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.opentransportdata.common.contracts;
+
+import androidx.annotation.NonNull;
+
+import java.util.List;
+
+/**
+ * Listener for delay changes in data which is already in use.
+ * Open liveboards and routes use this to update only the rows of which the delay changed.
+ */
+public interface DelayUpdateListener {
+
+    /**
+     * Called on a background thread when refreshed data contains new delays.
+     *
+     * @param changes The connections of which the delay changed
+     */
+    void onDelaysUpdated(@NonNull List<DelayChange> changes);
+}
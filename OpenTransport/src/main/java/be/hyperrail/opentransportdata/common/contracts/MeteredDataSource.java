@@ -6,9 +6,18 @@
 
 package be.hyperrail.opentransportdata.common.contracts;
 
-import android.net.TrafficStats;
-
 import androidx.annotation.IntDef;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import be.hyperrail.opentransportdata.common.requests.RequestType;
+import be.hyperrail.opentransportdata.metrics.OpenTransportMetrics;
+import be.hyperrail.opentransportdata.tracing.Span;
 
 /**
  * A metered API allows to get details on network usage
@@ -25,16 +34,33 @@ public interface MeteredDataSource {
     @interface responseType {
     }
 
+    /**
+     * Where a page was loaded from: the pages in memory, the offline cache, the HTTP cache or the network.
+     */
+    int CACHE_TIER_MEMORY = 0;
+    int CACHE_TIER_OFFLINE = 1;
+    int CACHE_TIER_HTTP = 2;
+    int CACHE_TIER_NETWORK = 3;
+
+    @IntDef({CACHE_TIER_MEMORY, CACHE_TIER_OFFLINE, CACHE_TIER_HTTP, CACHE_TIER_NETWORK})
+    @interface cacheTier {
+    }
+
     class MeteredRequest {
         private String mTag;
-        private long mBytesSent = 0;
-        private long mBytesReceived = 0;
         private long mMsecStart = 0;
         private long mMsecUsableResult = 0;
         private long mMsecParsed = 0;
         private int mResponseType;
-        private long rxBbytesAtStart = 0;
-        private long txBbytesAtStart = 0;
+        private RequestType mRequestType;
+        private final AtomicInteger mPagesFetched = new AtomicInteger();
+        private final AtomicIntegerArray mCacheTierHits = new AtomicIntegerArray(4);
+        private final AtomicBoolean mRecorded = new AtomicBoolean();
+        private volatile OpenTransportMetrics mMetrics = OpenTransportMetrics.getInstance();
+        private final AtomicLong mBytesSent = new AtomicLong();
+        private final AtomicLong mBytesReceived = new AtomicLong();
+        private final AtomicLong mBytesDecompressed = new AtomicLong();
+        private volatile Span mSpan = Span.DISABLED;
 
         public String getTag() {
             return mTag;
@@ -44,12 +70,88 @@ public interface MeteredDataSource {
             mTag = tag;
         }
 
+        @Nullable
+        public RequestType getRequestType() {
+            return mRequestType;
+        }
+
+        public void setRequestType(@Nullable RequestType requestType) {
+            mRequestType = requestType;
+        }
+
+        /**
+         * Get the span which covers this request, from the moment it's tracked until it's recorded. Work for this request can be traced as its children.
+         */
+        @NonNull
+        public Span getSpan() {
+            return mSpan;
+        }
+
+        public void setSpan(@NonNull Span span) {
+            mSpan = span;
+        }
+
+        /**
+         * Set the metrics in which this request is recorded once it's parsed. By default, requests are recorded in the shared metrics.
+         */
+        public void setMetrics(@NonNull OpenTransportMetrics metrics) {
+            mMetrics = metrics;
+        }
+
+        public int getPagesFetched() {
+            return mPagesFetched.get();
+        }
+
+        /**
+         * Count a page or response which was loaded for this request, either from the network or from a cache.
+         */
+        public void addPageFetched() {
+            mPagesFetched.incrementAndGet();
+        }
+
+        public int getCacheTierHits(@cacheTier int tier) {
+            return mCacheTierHits.get(tier);
+        }
+
+        /**
+         * Count a page which was loaded from a cache tier, or from the network.
+         */
+        public void addCacheTierHit(@cacheTier int tier) {
+            mCacheTierHits.incrementAndGet(tier);
+        }
+
+        /**
+         * Get the number of bytes which were sent for this request, including HTTP headers.
+         */
         public long getBytesSent() {
-            return mBytesSent;
+            return mBytesSent.get();
         }
 
+        /**
+         * Get the number of bytes which were received for this request as they went over the wire, so before decompression. This includes HTTP headers.
+         */
         public long getBytesReceived() {
-            return mBytesReceived;
+            return mBytesReceived.get();
+        }
+
+        /**
+         * Get the number of bytes which were received for this request after decompression. This includes HTTP headers.
+         */
+        public long getBytesDecompressed() {
+            return mBytesDecompressed.get();
+        }
+
+        /**
+         * Attribute a network call to this request. Every call which is made on behalf of this request, e.g. every page, should be added.
+         *
+         * @param sent         The number of bytes which were sent
+         * @param received     The number of bytes which were received, before decompression
+         * @param decompressed The number of bytes which were received, after decompression
+         */
+        public void addTransfer(long sent, long received, long decompressed) {
+            mBytesSent.addAndGet(sent);
+            mBytesReceived.addAndGet(received);
+            mBytesDecompressed.addAndGet(decompressed);
         }
 
         public long getMsecStart() {
@@ -58,8 +160,6 @@ public interface MeteredDataSource {
 
         public void setMsecStart(long msecStart) {
             mMsecStart = msecStart;
-            rxBbytesAtStart = TrafficStats.getTotalRxBytes();
-            txBbytesAtStart = TrafficStats.getTotalTxBytes();
         }
 
         public long getMsecUsableResult() {
@@ -74,8 +174,35 @@ public interface MeteredDataSource {
             if (mMsecParsed == 0) {
                 mMsecParsed = msecParsed;
             }
-            mBytesReceived = TrafficStats.getTotalRxBytes() - rxBbytesAtStart;
-            mBytesSent = TrafficStats.getTotalTxBytes() - txBbytesAtStart;
+
+            // The first time a request is parsed, it's finished and can be added to the metrics
+            if (mRecorded.compareAndSet(false, true)) {
+                mMetrics.record(this);
+                endSpan(false);
+            }
+        }
+
+        /**
+         * Record a request which failed. This has no effect when the request was already recorded, so it can be called on every path on which a request ends.
+         */
+        public void setFailed(long msecFailed) {
+            if (mRecorded.compareAndSet(false, true)) {
+                mResponseType |= RESPONSE_FAILED;
+                if (mMsecParsed == 0) {
+                    mMsecParsed = msecFailed;
+                }
+                mMetrics.record(this);
+                endSpan(true);
+            }
+        }
+
+        /**
+         * End a request which was cancelled before it finished. It isn't added to the metrics, and its span ends as failed.
+         */
+        public void setCanceled() {
+            if (mRecorded.compareAndSet(false, true)) {
+                endSpan(true);
+            }
         }
 
         public void setMsecUsableNetworkResponse(long msecFirstByte) {
@@ -84,6 +211,21 @@ public interface MeteredDataSource {
             }
         }
 
+        private void endSpan(boolean failed) {
+            Span span = mSpan;
+            if (span.isRecording()) {
+                span.setAttribute("tag", mTag);
+                span.setAttribute("response", getResponseTypeList());
+                span.setAttribute("pages", mPagesFetched.get());
+                span.setAttribute("bytesReceived", mBytesReceived.get());
+            }
+            if (failed || (mResponseType & RESPONSE_FAILED) != 0) {
+                span.endFailed();
+            } else {
+                span.end();
+            }
+        }
+
         public int getResponseType() {
             return mResponseType;
         }
@@ -114,7 +256,7 @@ public interface MeteredDataSource {
 
         @Override
         public String toString() {
-            return mTag + "," + mMsecStart + "," + mMsecUsableResult + "," + mMsecParsed + "," + mBytesReceived + "," + mBytesSent + "," + getResponseTypeList();
+            return mTag + "," + mMsecStart + "," + mMsecUsableResult + "," + mMsecParsed + "," + mBytesReceived + "," + mBytesSent + "," + getResponseTypeList() + "," + mBytesDecompressed;
         }
     }
 }
@@ -0,0 +1,16 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.opentransportdata.common.contracts;
+
+/**
+ * Listener which is called when a request is cancelled, so the work for this request can be stopped.
+ */
+public interface TransportDataCancelListener {
+
+    void onCancel();
+
+}
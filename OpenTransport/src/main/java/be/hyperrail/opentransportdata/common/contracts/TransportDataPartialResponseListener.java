@@ -0,0 +1,17 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.opentransportdata.common.contracts;
+
+/**
+ * Receives the results which have been found so far, while a data source is still searching for more results.
+ * The complete result is passed to the {@link TransportDataSuccessResponseListener} once the search has finished.
+ */
+public interface TransportDataPartialResponseListener<T> {
+
+    void onPartialResponse(T data, Object tag);
+
+}
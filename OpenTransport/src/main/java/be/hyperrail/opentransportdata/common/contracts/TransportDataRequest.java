@@ -49,6 +49,24 @@ public interface TransportDataRequest<T> extends Serializable, Comparable<Transp
      */
     void notifySuccessListeners(T data);
 
+    @Nullable
+    TransportDataPartialResponseListener<T> getOnPartialResponseListener();
+
+    /**
+     * Set a listener for partial results. Data sources which support it will pass the results found so far to this listener,
+     * before passing the complete result to the success listener. Data sources which don't support it only notify the success listener.
+     *
+     * @param partialResponseListener Listener for partial results
+     */
+    void setOnPartialResponseListener(@Nullable TransportDataPartialResponseListener<T> partialResponseListener);
+
+    /**
+     * Notify possible listeners of the results which have been found so far
+     *
+     * @param data The results found so far
+     */
+    void notifyPartialResponseListeners(T data);
+
     @Nullable
     TransportDataErrorResponseListener getOnErrorListener();
 
@@ -71,6 +89,30 @@ public interface TransportDataRequest<T> extends Serializable, Comparable<Transp
     @Nullable
     Object getTag();
 
+    /**
+     * Cancel this request. Listeners won't be notified of results anymore, and data sources stop the work they're doing for this request.
+     */
+    void cancel();
+
+    boolean isCanceled();
+
+    /**
+     * Add a listener which is called once when this request is cancelled, for example to stop network requests or page walking.
+     * The listener is called immediately if this request has already been cancelled.
+     *
+     * @param listener The listener to call when this request is cancelled
+     */
+    void addOnCancelListener(TransportDataCancelListener listener);
+
+    /**
+     * Skip cached results, for example when the user asked for the latest data by refreshing. The result can still be cached for later requests.
+     *
+     * @param bypassed True to skip cached results
+     */
+    void setCacheBypassed(boolean bypassed);
+
+    boolean isCacheBypassed();
+
     /**
      * Check if this object equals another when ignoring all extra and time related fields
      *
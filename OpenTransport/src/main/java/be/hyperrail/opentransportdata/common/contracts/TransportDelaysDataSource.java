@@ -0,0 +1,27 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.opentransportdata.common.contracts;
+
+import androidx.annotation.NonNull;
+
+/**
+ * A data source which can report new delays for results which are already shown, without loading these results again.
+ */
+public interface TransportDelaysDataSource {
+
+    void addDelayUpdateListener(@NonNull DelayUpdateListener listener);
+
+    void removeDelayUpdateListener(@NonNull DelayUpdateListener listener);
+
+    /**
+     * Check for new delays of connections which are in use, e.g. by an open liveboard or route.
+     * Listeners are only notified of the connections of which the delay changed.
+     *
+     * @param semanticIds The semantic ids of the connections to refresh
+     */
+    void refreshDelays(@NonNull String... semanticIds);
+}
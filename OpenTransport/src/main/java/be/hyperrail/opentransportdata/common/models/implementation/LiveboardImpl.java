@@ -21,11 +21,7 @@ package be.hyperrail.opentransportdata.common.models.implementation;
 import org.joda.time.DateTime;
 
 import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.util.Comparator;
 
 import be.hyperrail.opentransportdata.common.contracts.NextDataPointer;
 import be.hyperrail.opentransportdata.common.contracts.QueryTimeDefinition;
@@ -33,6 +29,7 @@ import be.hyperrail.opentransportdata.common.models.Liveboard;
 import be.hyperrail.opentransportdata.common.models.LiveboardType;
 import be.hyperrail.opentransportdata.common.models.StopLocation;
 import be.hyperrail.opentransportdata.common.models.VehicleStop;
+import be.hyperrail.opentransportdata.util.SortedChunkList;
 
 /**
  * This class represents a liveboard entity, containing departures or arrivals.
@@ -40,7 +37,12 @@ import be.hyperrail.opentransportdata.common.models.VehicleStop;
  */
 public class LiveboardImpl extends StopLocationImpl implements Liveboard, Serializable {
 
-    private VehicleStop[] mStops;
+    private static final VehicleStop[] STOP_ARRAY_TYPE = new VehicleStop[0];
+    private static final Comparator<VehicleStop> DEPARTURE_ORDER = (o1, o2) -> o1.getDepartureTime().compareTo(o2.getDepartureTime());
+    private static final Comparator<VehicleStop> ARRIVAL_ORDER = (o1, o2) -> o1.getArrivalTime().compareTo(o2.getArrivalTime());
+    private static final SortedChunkList.KeyFunction<VehicleStop> DEPARTURE_URI_KEY = VehicleStop::getDepartureUri;
+
+    private final SortedChunkList<VehicleStop> mStops;
     private DateTime mSearchTime;
     private final QueryTimeDefinition mTimeDefinition;
     LiveboardType mType;
@@ -52,18 +54,34 @@ public class LiveboardImpl extends StopLocationImpl implements Liveboard, Serial
     public LiveboardImpl(StopLocation station, VehicleStop[] stops, DateTime searchTime, LiveboardType type, QueryTimeDefinition timeDefinition) {
         super(station);
 
-        mStops = stops;
-        if (mStops == null) {
-            mStops = new VehicleStopImpl[0];
+        if (stops == null) {
+            stops = new VehicleStopImpl[0];
         }
+        mStops = new SortedChunkList<>(stops);
 
         mSearchTime = searchTime;
         mTimeDefinition = timeDefinition;
         mType = type;
     }
 
+    private LiveboardImpl(LiveboardImpl liveboard, SortedChunkList<VehicleStop> stops) {
+        super(liveboard);
+
+        mStops = stops;
+        mSearchTime = liveboard.mSearchTime;
+        mTimeDefinition = liveboard.mTimeDefinition;
+        mType = liveboard.mType;
+    }
+
 
     public VehicleStop[] getStops() {
+        return mStops.toArray(STOP_ARRAY_TYPE);
+    }
+
+    /**
+     * Get the stops as the chunks in which they were loaded, e.g. to find out which stops were added when this liveboard was extended.
+     */
+    public SortedChunkList<VehicleStop> getStopList() {
         return mStops;
     }
 
@@ -80,39 +98,19 @@ public class LiveboardImpl extends StopLocationImpl implements Liveboard, Serial
     }
 
     /**
-     * Append this liveboard with stops from another liveboard
+     * Append this liveboard with stops from another liveboard.
+     * Stops which are already present are skipped, and the stops remain sorted by their departure or arrival time.
+     * Only the new stops are processed, this liveboard remains unchanged and shares its stops with the returned liveboard.
      *
      * @param other the other liveboards to merge into this one
      */
     public LiveboardImpl withStopsAppended(LiveboardImpl... other) {
-        Set<String> knownUris = new HashSet<>();
-        List<VehicleStop> combinedStops = new ArrayList<>();
-        for (VehicleStop stop : mStops) {
-            knownUris.add(stop.getDepartureUri());
-            combinedStops.add(stop);
-        }
-
+        Comparator<VehicleStop> order = mType == LiveboardType.DEPARTURES ? DEPARTURE_ORDER : ARRIVAL_ORDER;
+        SortedChunkList<VehicleStop> stops = mStops;
         for (LiveboardImpl liveboard : other) {
-            for (VehicleStop stop : liveboard.getStops()) {
-                if (!knownUris.contains(stop.getDepartureUri())) {
-                    knownUris.add(stop.getDepartureUri());
-                    combinedStops.add(stop);
-                }
-            }
+            stops = stops.withMerged(liveboard.getStops(), order, DEPARTURE_URI_KEY);
         }
-
-        VehicleStop[] stops = new VehicleStopImpl[knownUris.size()];
-        stops = combinedStops.toArray(stops);
-
-        Arrays.sort(stops, (o1, o2) -> {
-            if (LiveboardImpl.this.mType == LiveboardType.DEPARTURES) {
-                return o1.getDepartureTime().compareTo(o2.getDepartureTime());
-            } else {
-                return o1.getArrivalTime().compareTo(o2.getArrivalTime());
-            }
-        });
-
-        return new LiveboardImpl(this, stops, this.getSearchTime(), this.getLiveboardType(), this.getTimeDefinition());
+        return new LiveboardImpl(this, stops);
     }
 
     public void setPageInfo(NextDataPointer previous,
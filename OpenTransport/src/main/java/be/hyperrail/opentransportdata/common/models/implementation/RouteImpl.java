@@ -11,10 +11,13 @@ import org.joda.time.Duration;
 import org.joda.time.Period;
 
 import java.io.Serializable;
+import java.util.Map;
 
+import be.hyperrail.opentransportdata.common.contracts.DelayChange;
 import be.hyperrail.opentransportdata.common.models.Message;
 import be.hyperrail.opentransportdata.common.models.Route;
 import be.hyperrail.opentransportdata.common.models.RouteLeg;
+import be.hyperrail.opentransportdata.common.models.RouteLegEnd;
 import be.hyperrail.opentransportdata.common.models.StopLocation;
 import be.hyperrail.opentransportdata.common.models.Transfer;
 
@@ -143,4 +146,42 @@ public class RouteImpl implements Route, Serializable {
     public void setRemarks(Message[] remarks) {
         this.remarks = remarks;
     }
+
+    /**
+     * Copy this route with new delays for the leg ends of which the connection changed.
+     *
+     * @param changes The changes, by the semantic id of their connection
+     * @return A route with the new delays, or this route if none of its leg ends changed
+     */
+    public RouteImpl withDelays(Map<String, DelayChange> changes) {
+        RouteLeg[] updatedLegs = new RouteLeg[legs.length];
+        boolean changed = false;
+        for (int i = 0; i < legs.length; i++) {
+            RouteLeg leg = legs[i];
+            DelayChange departureChange = changes.get(leg.getDeparture().getSemanticId());
+            DelayChange arrivalChange = changes.get(leg.getArrival().getSemanticId());
+            if (departureChange == null && arrivalChange == null) {
+                updatedLegs[i] = leg;
+                continue;
+            }
+            RouteLegEnd departure = departureChange == null ? leg.getDeparture() : withDelay(leg.getDeparture(), departureChange.getDepartureDelay());
+            RouteLegEnd arrival = arrivalChange == null ? leg.getArrival() : withDelay(leg.getArrival(), arrivalChange.getArrivalDelay());
+            updatedLegs[i] = new RouteLegImpl(leg.getType(), leg.getVehicleInformation(), departure, arrival, leg.getintermediateStops());
+            changed = true;
+        }
+        if (!changed) {
+            return this;
+        }
+
+        RouteImpl route = new RouteImpl(updatedLegs);
+        route.alerts = alerts;
+        route.vehicleAlerts = vehicleAlerts;
+        route.remarks = remarks;
+        return route;
+    }
+
+    private static RouteLegEnd withDelay(RouteLegEnd end, Duration delay) {
+        return new RouteLegEndImpl(end.getStation(), end.getTime(), end.getPlatform(), end.isPlatformNormal(), delay,
+                end.isCanceled(), end.isCompletedByVehicle(), end.getSemanticId(), end.getOccupancyLevel());
+    }
 }
@@ -10,13 +10,16 @@ package be.hyperrail.opentransportdata.common.models.implementation;
 import org.joda.time.DateTime;
 
 import java.io.Serializable;
+import java.util.Comparator;
 
 import be.hyperrail.opentransportdata.common.contracts.NextDataPointer;
 import be.hyperrail.opentransportdata.common.contracts.PagedDataResource;
 import be.hyperrail.opentransportdata.common.contracts.QueryTimeDefinition;
 import be.hyperrail.opentransportdata.common.models.Route;
+import be.hyperrail.opentransportdata.common.models.RouteLeg;
 import be.hyperrail.opentransportdata.common.models.RoutesList;
 import be.hyperrail.opentransportdata.common.models.StopLocation;
+import be.hyperrail.opentransportdata.util.SortedChunkList;
 
 /**
  * Result of a route query. Includes the query, as parsed server-side.
@@ -25,11 +28,36 @@ import be.hyperrail.opentransportdata.common.models.StopLocation;
  */
 public class RoutesListImpl implements RoutesList, Serializable, PagedDataResource {
 
+    /**
+     * The order in which routes are shown: by departure time, and by arrival time for routes departing at the same time.
+     */
+    public static final Comparator<Route> ROUTE_ORDER = (o1, o2) -> {
+        int result = o1.getDepartureTime().compareTo(o2.getDepartureTime());
+        if (result != 0) {
+            return result;
+        }
+        return o1.getArrivalTime().compareTo(o2.getArrivalTime());
+    };
+
+    /**
+     * Routes departing and arriving at the same time with the same first vehicle are considered duplicates.
+     */
+    public static final SortedChunkList.KeyFunction<Route> ROUTE_KEY = route -> {
+        String vehicle = null;
+        RouteLeg[] legs = route.getLegs();
+        if (legs != null && legs.length > 0 && legs[0].getVehicleInformation() != null) {
+            vehicle = legs[0].getVehicleInformation().getSemanticId();
+        }
+        return route.getDepartureTime().getMillis() + "/" + route.getArrivalTime().getMillis() + "/" + vehicle;
+    };
+
+    private static final Route[] ROUTE_ARRAY_TYPE = new Route[0];
+
     private final StopLocation origin;
     private final StopLocation destination;
     private final QueryTimeDefinition timeDefinition;
     private final DateTime mLastSearchTime;
-    private Route[] routes;
+    private final SortedChunkList<Route> routes;
 
     private NextDataPointer previousPagePointer;
     private NextDataPointer currentPagePointer;
@@ -39,10 +67,18 @@ public class RoutesListImpl implements RoutesList, Serializable, PagedDataResour
         this.destination = destination;
         this.mLastSearchTime = searchTime;
         this.origin = origin;
-        this.routes = routes;
+        this.routes = new SortedChunkList<>(routes);
         this.timeDefinition = timeDefinition;
     }
 
+    private RoutesListImpl(RoutesListImpl routesList, SortedChunkList<Route> routes) {
+        this.destination = routesList.destination;
+        this.mLastSearchTime = routesList.mLastSearchTime;
+        this.origin = routesList.origin;
+        this.routes = routes;
+        this.timeDefinition = routesList.timeDefinition;
+    }
+
     public StopLocation getOrigin() {
         return origin;
     }
@@ -60,9 +96,27 @@ public class RoutesListImpl implements RoutesList, Serializable, PagedDataResour
     }
 
     public Route[] getRoutes() {
+        return routes.toArray(ROUTE_ARRAY_TYPE);
+    }
+
+    /**
+     * Get the routes as the chunks in which they were loaded, e.g. to find out which routes were added when this list was extended.
+     */
+    public SortedChunkList<Route> getRouteList() {
         return routes;
     }
 
+    /**
+     * Create a list containing both these routes and the routes from another list, sorted by departure time.
+     * Routes which are already present are skipped. This list remains unchanged and shares its routes with the returned list.
+     *
+     * @param other The routes to add, which may depart before or after the routes in this list
+     * @return The combined list, without page information
+     */
+    public RoutesListImpl withRoutesAppended(RoutesList other) {
+        return new RoutesListImpl(this, routes.withMerged(other.getRoutes(), ROUTE_ORDER, ROUTE_KEY));
+    }
+
     public void setPageInfo(NextDataPointer previous,
                             NextDataPointer current,
                             NextDataPointer next) {
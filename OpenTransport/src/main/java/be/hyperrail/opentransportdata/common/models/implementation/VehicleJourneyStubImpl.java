@@ -0,0 +1,63 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.opentransportdata.common.models.implementation;
+
+import java.io.Serializable;
+
+import be.hyperrail.opentransportdata.common.models.VehicleJourneyStub;
+
+/**
+ * Vehicle information which is known up front, independent of the data source which created it.
+ */
+public class VehicleJourneyStubImpl implements VehicleJourneyStub, Serializable {
+
+    private final String id;
+    private final String headsign;
+    private final String name;
+    private final String semanticId;
+    private final String type;
+    private final String number;
+
+    public VehicleJourneyStubImpl(String id, String headsign, String name, String semanticId, String type, String number) {
+        this.id = id;
+        this.headsign = headsign;
+        this.name = name;
+        this.semanticId = semanticId;
+        this.type = type;
+        this.number = number;
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public String getHeadsign() {
+        return headsign;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getSemanticId() {
+        return semanticId;
+    }
+
+    @Override
+    public String getType() {
+        return type;
+    }
+
+    @Override
+    public String getNumber() {
+        return number;
+    }
+}
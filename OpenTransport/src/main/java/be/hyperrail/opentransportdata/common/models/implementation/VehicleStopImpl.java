@@ -25,6 +25,7 @@ import org.joda.time.Duration;
 
 import java.io.Serializable;
 
+import be.hyperrail.opentransportdata.common.contracts.DelayChange;
 import be.hyperrail.opentransportdata.common.contracts.TransportOccupancyLevel;
 import be.hyperrail.opentransportdata.common.models.StopLocation;
 import be.hyperrail.opentransportdata.common.models.VehicleJourneyStub;
@@ -102,6 +103,24 @@ public class VehicleStopImpl implements VehicleStop, Serializable {
                 arrivalCanceled, arrivalCanceled, hasArrived, false, semanticDepartureConnection, occupancyLevel, VehicleStopType.ARRIVAL);
     }
 
+    /**
+     * Copy a stop with the new delays of its connection, which is identified by {@link #getDepartureUri()}.
+     * For arrivals this is the arriving connection, otherwise it's the departing connection.
+     *
+     * @param stop   The stop to copy
+     * @param change The new delays of the connection
+     * @return A stop with the new delays
+     */
+    public static VehicleStopImpl withDelays(VehicleStop stop, DelayChange change) {
+        boolean arrival = stop.getType() == VehicleStopType.ARRIVAL;
+        return new VehicleStopImpl(stop.getStopLocation(), stop.getVehicle(), stop.getPlatform(), stop.isPlatformNormal(),
+                stop.getDepartureTime(), stop.getArrivalTime(),
+                arrival ? stop.getDepartureDelay() : change.getDepartureDelay(),
+                arrival ? change.getArrivalDelay() : stop.getArrivalDelay(),
+                stop.isDepartureCanceled(), stop.isArrivalCanceled(), stop.hasArrived(), stop.hasLeft(),
+                stop.getDepartureUri(), stop.getOccupancyLevel(), stop.getType());
+    }
+
 
     @Override
     public VehicleJourneyStub getVehicle() {
@@ -18,7 +18,12 @@ import org.joda.time.DateTime;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import be.hyperrail.opentransportdata.common.contracts.TransportDataCancelListener;
 import be.hyperrail.opentransportdata.common.contracts.TransportDataErrorResponseListener;
+import be.hyperrail.opentransportdata.common.contracts.TransportDataPartialResponseListener;
 import be.hyperrail.opentransportdata.common.contracts.TransportDataRequest;
 import be.hyperrail.opentransportdata.common.contracts.TransportDataSuccessResponseListener;
 
@@ -33,6 +38,10 @@ public abstract class OpenTransportBaseRequest<T> implements TransportDataReques
     protected transient Object tag;
     protected transient TransportDataErrorResponseListener errorResponseListener;
     protected transient TransportDataSuccessResponseListener<T> successResponseListener;
+    protected transient TransportDataPartialResponseListener<T> partialResponseListener;
+    private transient volatile boolean canceled;
+    private transient List<TransportDataCancelListener> cancelListeners;
+    private transient boolean cacheBypassed;
 
     protected OpenTransportBaseRequest() {
         this.createdAt = new DateTime();
@@ -74,17 +83,34 @@ public abstract class OpenTransportBaseRequest<T> implements TransportDataReques
      */
     @Override
     public void notifySuccessListeners( T data) {
-        if (successResponseListener != null) {
+        if (successResponseListener != null && !canceled) {
             successResponseListener.onSuccessResponse(data, this.tag);
         }
     }
 
+    @Override
+    public TransportDataPartialResponseListener<T> getOnPartialResponseListener() {
+        return partialResponseListener;
+    }
+
+    @Override
+    public void setOnPartialResponseListener(@Nullable TransportDataPartialResponseListener<T> partialResponseListener) {
+        this.partialResponseListener = partialResponseListener;
+    }
+
+    @Override
+    public void notifyPartialResponseListeners(T data) {
+        if (partialResponseListener != null && !canceled) {
+            partialResponseListener.onPartialResponse(data, this.tag);
+        }
+    }
+
     /**
      * This is a safe way to broadcast an exception without risking NullPointerExceptions
      */
     @Override
     public void notifyErrorListeners( Exception e) {
-        if (errorResponseListener != null) {
+        if (errorResponseListener != null && !canceled) {
             errorResponseListener.onErrorResponse(e, this.tag);
         }
     }
@@ -92,4 +118,51 @@ public abstract class OpenTransportBaseRequest<T> implements TransportDataReques
     public Object getTag() {
         return tag;
     }
+
+    @Override
+    public void cancel() {
+        List<TransportDataCancelListener> listeners;
+        synchronized (this) {
+            if (canceled) {
+                return;
+            }
+            canceled = true;
+            listeners = cancelListeners;
+            cancelListeners = null;
+        }
+        if (listeners != null) {
+            for (TransportDataCancelListener listener : listeners) {
+                listener.onCancel();
+            }
+        }
+    }
+
+    @Override
+    public boolean isCanceled() {
+        return canceled;
+    }
+
+    @Override
+    public void addOnCancelListener(TransportDataCancelListener listener) {
+        synchronized (this) {
+            if (!canceled) {
+                if (cancelListeners == null) {
+                    cancelListeners = new ArrayList<>();
+                }
+                cancelListeners.add(listener);
+                return;
+            }
+        }
+        listener.onCancel();
+    }
+
+    @Override
+    public void setCacheBypassed(boolean bypassed) {
+        this.cacheBypassed = bypassed;
+    }
+
+    @Override
+    public boolean isCacheBypassed() {
+        return cacheBypassed;
+    }
 }
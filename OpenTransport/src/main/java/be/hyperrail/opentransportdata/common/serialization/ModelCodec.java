@@ -0,0 +1,477 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.opentransportdata.common.serialization;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.joda.time.DateTime;
+
+import java.io.IOException;
+
+import be.hyperrail.opentransportdata.OpenTransportApi;
+import be.hyperrail.opentransportdata.common.contracts.NextDataPointer;
+import be.hyperrail.opentransportdata.common.contracts.PagedDataResource;
+import be.hyperrail.opentransportdata.common.contracts.QueryTimeDefinition;
+import be.hyperrail.opentransportdata.common.contracts.TransportOccupancyLevel;
+import be.hyperrail.opentransportdata.common.contracts.TransportStopsDataSource;
+import be.hyperrail.opentransportdata.common.models.Liveboard;
+import be.hyperrail.opentransportdata.common.models.LiveboardType;
+import be.hyperrail.opentransportdata.common.models.Message;
+import be.hyperrail.opentransportdata.common.models.Route;
+import be.hyperrail.opentransportdata.common.models.RouteLeg;
+import be.hyperrail.opentransportdata.common.models.RouteLegEnd;
+import be.hyperrail.opentransportdata.common.models.RouteLegType;
+import be.hyperrail.opentransportdata.common.models.RoutesList;
+import be.hyperrail.opentransportdata.common.models.StopLocation;
+import be.hyperrail.opentransportdata.common.models.VehicleJourneyStub;
+import be.hyperrail.opentransportdata.common.models.VehicleStop;
+import be.hyperrail.opentransportdata.common.models.VehicleStopType;
+import be.hyperrail.opentransportdata.common.models.implementation.LiveboardImpl;
+import be.hyperrail.opentransportdata.common.models.implementation.MessageImpl;
+import be.hyperrail.opentransportdata.common.models.implementation.RouteImpl;
+import be.hyperrail.opentransportdata.common.models.implementation.RouteLegEndImpl;
+import be.hyperrail.opentransportdata.common.models.implementation.RouteLegImpl;
+import be.hyperrail.opentransportdata.common.models.implementation.RoutesListImpl;
+import be.hyperrail.opentransportdata.common.models.implementation.StringPagePointer;
+import be.hyperrail.opentransportdata.common.models.implementation.VehicleJourneyStubImpl;
+import be.hyperrail.opentransportdata.common.models.implementation.VehicleStopImpl;
+import be.hyperrail.opentransportdata.common.requests.LiveboardRequest;
+import be.hyperrail.opentransportdata.common.requests.RoutePlanningRequest;
+import be.hyperrail.opentransportdata.common.requests.VehicleRequest;
+
+/**
+ * A compact binary format for models and requests which are passed between screens or stored in the saved instance state.
+ * <p>
+ * Unlike java serialization, stop locations are stored by their id and resolved from the stops data source when decoding, instead of copying their
+ * names, translations and facilities. Decoded models use the implementations from this library.
+ * Results are decoded without callbacks, and decoded requests get a new creation time.
+ * Encoding null returns null, and decoding null returns null, so optional values can be stored directly.
+ */
+public class ModelCodec {
+
+    static final byte FORMAT_VERSION = 1;
+    static final int HAFAS_ID_LENGTH = 9;
+
+    private static final int TYPE_STOP_LOCATION = 1;
+    private static final int TYPE_LIVEBOARD = 2;
+    private static final int TYPE_ROUTE = 3;
+    private static final int TYPE_ROUTES_LIST = 4;
+    private static final int TYPE_LIVEBOARD_REQUEST = 5;
+    private static final int TYPE_ROUTE_PLANNING_REQUEST = 6;
+    private static final int TYPE_VEHICLE_REQUEST = 7;
+
+    @Nullable
+    private final TransportStopsDataSource mStops;
+
+    /**
+     * Create a codec which resolves stop locations through {@link OpenTransportApi#getStopLocationProviderInstance()}.
+     */
+    public ModelCodec() {
+        mStops = null;
+    }
+
+    /**
+     * @param stops The data source used to resolve stop locations while decoding
+     */
+    public ModelCodec(@NonNull TransportStopsDataSource stops) {
+        mStops = stops;
+    }
+
+    private TransportStopsDataSource getStops() {
+        return mStops != null ? mStops : OpenTransportApi.getStopLocationProviderInstance();
+    }
+
+    @Nullable
+    public byte[] encodeStopLocation(@Nullable StopLocation stopLocation) {
+        if (stopLocation == null) {
+            return null;
+        }
+        ModelWriter writer = new ModelWriter();
+        writer.writeStopLocation(stopLocation);
+        return writer.toByteArray(TYPE_STOP_LOCATION);
+    }
+
+    @Nullable
+    public StopLocation decodeStopLocation(@Nullable byte[] data) throws IOException {
+        if (data == null) {
+            return null;
+        }
+        ModelReader reader = new ModelReader(data, TYPE_STOP_LOCATION, getStops());
+        StopLocation stopLocation = reader.readStopLocation();
+        reader.finish();
+        return stopLocation;
+    }
+
+    @Nullable
+    public byte[] encodeLiveboard(@Nullable Liveboard liveboard) {
+        if (liveboard == null) {
+            return null;
+        }
+        ModelWriter writer = new ModelWriter();
+        writer.writeStopLocation(liveboard);
+        writer.writeDateTime(liveboard.getSearchTime());
+        writer.writeEnum(liveboard.getLiveboardType());
+        writer.writeEnum(liveboard.getTimeDefinition());
+        writeVehicleStops(writer, liveboard.getStops());
+        writePagePointers(writer, liveboard);
+        return writer.toByteArray(TYPE_LIVEBOARD);
+    }
+
+    @Nullable
+    public Liveboard decodeLiveboard(@Nullable byte[] data) throws IOException {
+        if (data == null) {
+            return null;
+        }
+        ModelReader reader = new ModelReader(data, TYPE_LIVEBOARD, getStops());
+        StopLocation station = reader.readStopLocation();
+        DateTime searchTime = reader.readDateTime();
+        LiveboardType type = reader.readEnum(LiveboardType.values());
+        QueryTimeDefinition timeDefinition = reader.readEnum(QueryTimeDefinition.values());
+        LiveboardImpl liveboard = new LiveboardImpl(station, readVehicleStops(reader), searchTime, type, timeDefinition);
+        liveboard.setPageInfo(readPagePointer(reader), readPagePointer(reader), readPagePointer(reader));
+        reader.finish();
+        return liveboard;
+    }
+
+    @Nullable
+    public byte[] encodeRoute(@Nullable Route route) {
+        if (route == null) {
+            return null;
+        }
+        ModelWriter writer = new ModelWriter();
+        writeRoute(writer, route);
+        return writer.toByteArray(TYPE_ROUTE);
+    }
+
+    @Nullable
+    public Route decodeRoute(@Nullable byte[] data) throws IOException {
+        if (data == null) {
+            return null;
+        }
+        ModelReader reader = new ModelReader(data, TYPE_ROUTE, getStops());
+        Route route = readRoute(reader);
+        reader.finish();
+        return route;
+    }
+
+    /**
+     * Whether a routes list can be encoded without losing its type. Provider specific lists, which carry state to
+     * extend them, should be stored through java serialization instead.
+     */
+    public static boolean canEncode(@Nullable RoutesList routesList) {
+        return routesList == null || routesList.getClass() == RoutesListImpl.class;
+    }
+
+    /**
+     * Encode a routes list.
+     *
+     * @throws IllegalArgumentException when the routes list can't be encoded, see {@link #canEncode(RoutesList)}
+     */
+    @Nullable
+    public byte[] encodeRoutesList(@Nullable RoutesList routesList) {
+        if (routesList == null) {
+            return null;
+        }
+        if (!canEncode(routesList)) {
+            throw new IllegalArgumentException("Can't encode routes list of type " + routesList.getClass().getName());
+        }
+        ModelWriter writer = new ModelWriter();
+        writer.writeStopLocation(routesList.getOrigin());
+        writer.writeStopLocation(routesList.getDestination());
+        writer.writeDateTime(routesList.getSearchTime());
+        writer.writeEnum(routesList.getTimeDefinition());
+        Route[] routes = routesList.getRoutes();
+        writer.writeLength(routes);
+        if (routes != null) {
+            for (Route route : routes) {
+                writeRoute(writer, route);
+            }
+        }
+        writePagePointers(writer, routesList);
+        return writer.toByteArray(TYPE_ROUTES_LIST);
+    }
+
+    @Nullable
+    public RoutesList decodeRoutesList(@Nullable byte[] data) throws IOException {
+        if (data == null) {
+            return null;
+        }
+        ModelReader reader = new ModelReader(data, TYPE_ROUTES_LIST, getStops());
+        StopLocation origin = reader.readStopLocation();
+        StopLocation destination = reader.readStopLocation();
+        DateTime searchTime = reader.readDateTime();
+        QueryTimeDefinition timeDefinition = reader.readEnum(QueryTimeDefinition.values());
+        int length = reader.readLength();
+        Route[] routes = length < 0 ? null : new Route[length];
+        for (int i = 0; i < length; i++) {
+            routes[i] = readRoute(reader);
+        }
+        RoutesListImpl routesList = new RoutesListImpl(origin, destination, searchTime, timeDefinition, routes);
+        routesList.setPageInfo(readPagePointer(reader), readPagePointer(reader), readPagePointer(reader));
+        reader.finish();
+        return routesList;
+    }
+
+    private static void writeRoute(ModelWriter writer, Route route) {
+        RouteLeg[] legs = route.getLegs();
+        writer.writeLength(legs);
+        for (RouteLeg leg : legs) {
+            writer.writeEnum(leg.getType());
+            writeVehicle(writer, leg.getVehicleInformation());
+            writeRouteLegEnd(writer, leg.getDeparture());
+            writeRouteLegEnd(writer, leg.getArrival());
+            writeVehicleStops(writer, leg.getintermediateStops());
+        }
+        writeMessages(writer, route.getAlerts());
+        writeMessages(writer, route.getRemarks());
+        Message[][] vehicleAlerts = route.getVehicleAlerts();
+        writer.writeLength(vehicleAlerts);
+        if (vehicleAlerts != null) {
+            for (Message[] alerts : vehicleAlerts) {
+                writeMessages(writer, alerts);
+            }
+        }
+    }
+
+    private static Route readRoute(ModelReader reader) throws IOException {
+        int length = reader.readLength();
+        if (length < 1) {
+            throw new IOException("A route needs at least one leg");
+        }
+        RouteLeg[] legs = new RouteLeg[length];
+        for (int i = 0; i < length; i++) {
+            RouteLegType type = reader.readEnum(RouteLegType.values());
+            VehicleJourneyStub vehicle = readVehicle(reader);
+            RouteLegEnd departure = readRouteLegEnd(reader);
+            RouteLegEnd arrival = readRouteLegEnd(reader);
+            legs[i] = new RouteLegImpl(type, vehicle, departure, arrival, readVehicleStops(reader));
+        }
+        RouteImpl route = new RouteImpl(legs);
+        route.setAlerts(readMessages(reader));
+        route.setRemarks(readMessages(reader));
+        int vehicleAlertsLength = reader.readLength();
+        if (vehicleAlertsLength >= 0) {
+            Message[][] vehicleAlerts = new Message[vehicleAlertsLength][];
+            for (int i = 0; i < vehicleAlertsLength; i++) {
+                vehicleAlerts[i] = readMessages(reader);
+            }
+            route.setVehicleAlerts(vehicleAlerts);
+        }
+        return route;
+    }
+
+    private static void writeRouteLegEnd(ModelWriter writer, RouteLegEnd end) {
+        writer.writeStopLocation(end.getStation());
+        writer.writeDateTime(end.getTime());
+        writer.writeString(end.getPlatform());
+        writer.writeFlags(end.isPlatformNormal(), end.isCanceled(), end.isCompletedByVehicle());
+        writer.writeDuration(end.getDelay());
+        writer.writeString(end.getSemanticId());
+        writer.writeEnum(end.getOccupancyLevel());
+    }
+
+    private static RouteLegEnd readRouteLegEnd(ModelReader reader) throws IOException {
+        StopLocation station = reader.readStopLocation();
+        DateTime time = reader.readDateTime();
+        String platform = reader.readString();
+        long flags = reader.readFlags();
+        return new RouteLegEndImpl(station, time, platform, ModelReader.isSet(flags, 0), reader.readDuration(),
+                ModelReader.isSet(flags, 1), ModelReader.isSet(flags, 2), reader.readString(),
+                reader.readEnum(TransportOccupancyLevel.values()));
+    }
+
+    private static void writeMessages(ModelWriter writer, @Nullable Message[] messages) {
+        writer.writeLength(messages);
+        if (messages == null) {
+            return;
+        }
+        for (Message message : messages) {
+            writer.writeString(message.getHeader());
+            writer.writeString(message.getDescription());
+            writer.writeString(message.getLink());
+        }
+    }
+
+    @Nullable
+    private static Message[] readMessages(ModelReader reader) throws IOException {
+        int length = reader.readLength();
+        if (length < 0) {
+            return null;
+        }
+        Message[] messages = new Message[length];
+        for (int i = 0; i < length; i++) {
+            messages[i] = new MessageImpl(reader.readString(), reader.readString(), reader.readString());
+        }
+        return messages;
+    }
+
+    private static void writeVehicle(ModelWriter writer, @Nullable VehicleJourneyStub vehicle) {
+        writer.writeFlags(vehicle != null);
+        if (vehicle == null) {
+            return;
+        }
+        writer.writeString(vehicle.getId());
+        writer.writeString(vehicle.getHeadsign());
+        writer.writeString(vehicle.getName());
+        writer.writeString(vehicle.getSemanticId());
+        writer.writeString(vehicle.getType());
+        writer.writeString(vehicle.getNumber());
+    }
+
+    @Nullable
+    private static VehicleJourneyStub readVehicle(ModelReader reader) throws IOException {
+        if (!ModelReader.isSet(reader.readFlags(), 0)) {
+            return null;
+        }
+        return new VehicleJourneyStubImpl(reader.readString(), reader.readString(), reader.readString(),
+                reader.readString(), reader.readString(), reader.readString());
+    }
+
+    private static void writeVehicleStops(ModelWriter writer, @Nullable VehicleStop[] stops) {
+        writer.writeLength(stops);
+        if (stops == null) {
+            return;
+        }
+        for (VehicleStop stop : stops) {
+            writer.writeStopLocation(stop.getStopLocation());
+            writeVehicle(writer, stop.getVehicle());
+            writer.writeString(stop.getPlatform());
+            writer.writeFlags(stop.isPlatformNormal(), stop.hasArrived(), stop.hasLeft(), stop.isDepartureCanceled(), stop.isArrivalCanceled());
+            writer.writeDateTime(stop.getDepartureTime());
+            writer.writeDateTime(stop.getArrivalTime());
+            writer.writeDuration(stop.getDepartureDelay());
+            writer.writeDuration(stop.getArrivalDelay());
+            writer.writeString(stop.getDepartureUri());
+            writer.writeEnum(stop.getOccupancyLevel());
+            writer.writeEnum(stop.getType());
+        }
+    }
+
+    @Nullable
+    private static VehicleStopImpl[] readVehicleStops(ModelReader reader) throws IOException {
+        int length = reader.readLength();
+        if (length < 0) {
+            return null;
+        }
+        VehicleStopImpl[] stops = new VehicleStopImpl[length];
+        for (int i = 0; i < length; i++) {
+            StopLocation station = reader.readStopLocation();
+            VehicleJourneyStub vehicle = readVehicle(reader);
+            String platform = reader.readString();
+            long flags = reader.readFlags();
+            DateTime departureTime = reader.readDateTime();
+            DateTime arrivalTime = reader.readDateTime();
+            stops[i] = new VehicleStopImpl(station, vehicle, platform, ModelReader.isSet(flags, 0), departureTime, arrivalTime,
+                    reader.readDuration(), reader.readDuration(), ModelReader.isSet(flags, 3), ModelReader.isSet(flags, 4),
+                    ModelReader.isSet(flags, 1), ModelReader.isSet(flags, 2), reader.readString(),
+                    reader.readEnum(TransportOccupancyLevel.values()), reader.readEnum(VehicleStopType.values()));
+        }
+        return stops;
+    }
+
+    private static void writePagePointers(ModelWriter writer, PagedDataResource resource) {
+        writePagePointer(writer, resource.getPreviousResultsPointer());
+        writePagePointer(writer, resource.getCurrentResultsPointer());
+        writePagePointer(writer, resource.getNextResultsPointer());
+    }
+
+    private static void writePagePointer(ModelWriter writer, @Nullable NextDataPointer pointer) {
+        Object value = pointer == null ? null : pointer.getPointer();
+        if (value != null && !(value instanceof String)) {
+            // The result couldn't be extended after decoding it
+            throw new IllegalArgumentException("Can't encode page pointer of type " + value.getClass().getName());
+        }
+        writer.writeString((String) value);
+    }
+
+    @Nullable
+    private static NextDataPointer readPagePointer(ModelReader reader) throws IOException {
+        String pointer = reader.readString();
+        return pointer == null ? null : new StringPagePointer(pointer);
+    }
+
+    @Nullable
+    public byte[] encodeLiveboardRequest(@Nullable LiveboardRequest request) {
+        if (request == null) {
+            return null;
+        }
+        ModelWriter writer = new ModelWriter();
+        writer.writeStopLocation(request.getStation());
+        writer.writeEnum(request.getTimeDefinition());
+        writer.writeEnum(request.getType());
+        writer.writeDateTime(request.isNow() ? null : request.getSearchTime());
+        return writer.toByteArray(TYPE_LIVEBOARD_REQUEST);
+    }
+
+    @Nullable
+    public LiveboardRequest decodeLiveboardRequest(@Nullable byte[] data) throws IOException {
+        if (data == null) {
+            return null;
+        }
+        ModelReader reader = new ModelReader(data, TYPE_LIVEBOARD_REQUEST, getStops());
+        LiveboardRequest request = new LiveboardRequest(reader.readStopLocation(),
+                reader.readEnum(QueryTimeDefinition.values()),
+                reader.readEnum(LiveboardType.values()),
+                reader.readDateTime());
+        reader.finish();
+        return request;
+    }
+
+    @Nullable
+    public byte[] encodeRoutePlanningRequest(@Nullable RoutePlanningRequest request) {
+        if (request == null) {
+            return null;
+        }
+        ModelWriter writer = new ModelWriter();
+        writer.writeStopLocation(request.getOrigin());
+        writer.writeStopLocation(request.getDestination());
+        writer.writeEnum(request.getTimeDefinition());
+        writer.writeDateTime(request.isNow() ? null : request.getSearchTime());
+        return writer.toByteArray(TYPE_ROUTE_PLANNING_REQUEST);
+    }
+
+    @Nullable
+    public RoutePlanningRequest decodeRoutePlanningRequest(@Nullable byte[] data) throws IOException {
+        if (data == null) {
+            return null;
+        }
+        ModelReader reader = new ModelReader(data, TYPE_ROUTE_PLANNING_REQUEST, getStops());
+        RoutePlanningRequest request = new RoutePlanningRequest(reader.readStopLocation(), reader.readStopLocation(),
+                reader.readEnum(QueryTimeDefinition.values()), reader.readDateTime());
+        reader.finish();
+        return request;
+    }
+
+    @Nullable
+    public byte[] encodeVehicleRequest(@Nullable VehicleRequest request) {
+        if (request == null) {
+            return null;
+        }
+        ModelWriter writer = new ModelWriter();
+        writer.writeString(request.getVehicleId());
+        writer.writeDateTime(request.isNow() ? null : request.getSearchTime());
+        writer.writeStopLocation(request.getOrigin());
+        writer.writeDateTime(request.getDepartureTime());
+        writer.writeStopLocation(request.getDirection());
+        return writer.toByteArray(TYPE_VEHICLE_REQUEST);
+    }
+
+    @Nullable
+    public VehicleRequest decodeVehicleRequest(@Nullable byte[] data) throws IOException {
+        if (data == null) {
+            return null;
+        }
+        ModelReader reader = new ModelReader(data, TYPE_VEHICLE_REQUEST, getStops());
+        VehicleRequest request = new VehicleRequest(reader.readString(), reader.readDateTime());
+        request.setOrigin(reader.readStopLocation());
+        request.setDepartureTime(reader.readDateTime());
+        request.setDirection(reader.readStopLocation());
+        reader.finish();
+        return request;
+    }
+}
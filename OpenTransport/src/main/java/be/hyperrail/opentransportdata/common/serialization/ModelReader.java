@@ -0,0 +1,194 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.opentransportdata.common.serialization;
+
+import androidx.annotation.Nullable;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Duration;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+import be.hyperrail.opentransportdata.common.contracts.TransportStopsDataSource;
+import be.hyperrail.opentransportdata.common.exceptions.StopLocationNotResolvedException;
+import be.hyperrail.opentransportdata.common.models.StopLocation;
+
+/**
+ * Reads the primitive values written by a {@link ModelWriter}.
+ */
+class ModelReader {
+
+    private final byte[] mData;
+    private int mPosition;
+
+    private final String[] mStrings;
+    private final StopLocation[] mStopLocations;
+
+    private long mLastTime = 0;
+
+    /**
+     * @param data         The encoded object
+     * @param expectedType The type of object which should be encoded in the data
+     * @param stops        The data source used to resolve stop locations
+     * @throws IOException When the data is corrupt, of another type, or references stop locations which can't be resolved
+     */
+    ModelReader(byte[] data, int expectedType, TransportStopsDataSource stops) throws IOException {
+        mData = data;
+        if (data.length < 2 || data[0] != ModelCodec.FORMAT_VERSION) {
+            throw new IOException("Unsupported model format");
+        }
+        if (data[1] != expectedType) {
+            throw new IOException("Expected model type " + expectedType + " but found " + data[1]);
+        }
+        mPosition = 2;
+
+        mStrings = new String[readCount()];
+        for (int i = 0; i < mStrings.length; i++) {
+            mStrings[i] = readUtf8();
+        }
+
+        mStopLocations = new StopLocation[readCount()];
+        for (int i = 0; i < mStopLocations.length; i++) {
+            mStopLocations[i] = resolveStopLocation(stops);
+        }
+    }
+
+    long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (mPosition >= mData.length) {
+                throw new IOException("Unexpected end of data");
+            }
+            byte b = mData[mPosition++];
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed number");
+    }
+
+    long readSignedVarLong() throws IOException {
+        long value = readVarLong();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Read a bitfield written by {@link ModelWriter#writeFlags(boolean...)}.
+     */
+    long readFlags() throws IOException {
+        return readVarLong();
+    }
+
+    static boolean isSet(long flags, int index) {
+        return (flags & (1L << index)) != 0;
+    }
+
+    @Nullable
+    String readString() throws IOException {
+        int index = readIndex(mStrings.length);
+        return index < 0 ? null : mStrings[index];
+    }
+
+    @Nullable
+    StopLocation readStopLocation() throws IOException {
+        int index = readIndex(mStopLocations.length);
+        return index < 0 ? null : mStopLocations[index];
+    }
+
+    @Nullable
+    <E extends Enum<E>> E readEnum(E[] values) throws IOException {
+        int index = readIndex(values.length);
+        return index < 0 ? null : values[index];
+    }
+
+    @Nullable
+    DateTime readDateTime() throws IOException {
+        String zone = readString();
+        if (zone == null) {
+            return null;
+        }
+        mLastTime += readSignedVarLong();
+        try {
+            return new DateTime(mLastTime, DateTimeZone.forID(zone));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Unknown time zone " + zone, e);
+        }
+    }
+
+    @Nullable
+    Duration readDuration() throws IOException {
+        if (!isSet(readFlags(), 0)) {
+            return null;
+        }
+        return new Duration(readSignedVarLong());
+    }
+
+    /**
+     * @return The length of an array, or -1 if the array is null
+     */
+    int readLength() throws IOException {
+        // Every element takes at least one byte, which limits the length of a valid array
+        return readIndex(mData.length - mPosition + 1);
+    }
+
+    /**
+     * Check that the entire body has been read.
+     */
+    void finish() throws IOException {
+        if (mPosition != mData.length) {
+            throw new IOException("Unexpected data after the end of the model");
+        }
+    }
+
+    private int readIndex(int size) throws IOException {
+        long value = readVarLong();
+        if (value > size) {
+            throw new IOException("Reference out of range");
+        }
+        return (int) value - 1;
+    }
+
+    private int readCount() throws IOException {
+        long count = readVarLong();
+        if (count > mData.length - mPosition) {
+            throw new IOException("Table size out of range");
+        }
+        return (int) count;
+    }
+
+    private String readUtf8() throws IOException {
+        int length = readCount();
+        String value = new String(mData, mPosition, length, StandardCharsets.UTF_8);
+        mPosition += length;
+        return value;
+    }
+
+    private StopLocation resolveStopLocation(TransportStopsDataSource stops) throws IOException {
+        long numericId = readVarLong();
+        String id = null;
+        try {
+            StopLocation stopLocation;
+            if (numericId > 0) {
+                id = String.format(Locale.ROOT, "%0" + ModelCodec.HAFAS_ID_LENGTH + "d", numericId - 1);
+                stopLocation = stops.getStoplocationByHafasId(id);
+            } else {
+                id = readUtf8();
+                stopLocation = stops.getStoplocationBySemanticId(id);
+            }
+            if (stopLocation == null) {
+                throw new IOException("Stop location " + id + " could not be resolved");
+            }
+            return stopLocation;
+        } catch (StopLocationNotResolvedException e) {
+            throw new IOException("Stop location " + id + " could not be resolved", e);
+        }
+    }
+}
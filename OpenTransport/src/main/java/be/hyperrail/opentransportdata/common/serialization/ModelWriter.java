@@ -0,0 +1,177 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.opentransportdata.common.serialization;
+
+import androidx.annotation.Nullable;
+
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import be.hyperrail.opentransportdata.common.models.StopLocation;
+
+/**
+ * Writes the primitive values of the binary model format.
+ * <p>
+ * Strings and stop locations are written once, in tables in front of the body, and referenced by their index in the body.
+ * Stop locations are stored by their numeric id when they have one, so they can be resolved from the stops data source again instead of being copied.
+ * Times are stored as the difference with the previously written time, as most times in a result are close to each other.
+ */
+class ModelWriter {
+
+    private final ByteArrayOutputStream mBody = new ByteArrayOutputStream();
+
+    private final Map<String, Integer> mStringIndexes = new HashMap<>();
+    private final List<String> mStrings = new ArrayList<>();
+    private final Map<String, Integer> mStopLocationIndexes = new HashMap<>();
+    private final List<StopLocation> mStopLocations = new ArrayList<>();
+
+    private long mLastTime = 0;
+
+    void writeVarLong(long value) {
+        writeVarLong(mBody, value);
+    }
+
+    void writeSignedVarLong(long value) {
+        writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    /**
+     * Write a number of booleans as a single bitfield.
+     */
+    void writeFlags(boolean... flags) {
+        long value = 0;
+        for (int i = 0; i < flags.length; i++) {
+            if (flags[i]) {
+                value |= 1L << i;
+            }
+        }
+        writeVarLong(value);
+    }
+
+    void writeString(@Nullable String value) {
+        if (value == null) {
+            writeVarLong(0);
+            return;
+        }
+        Integer index = mStringIndexes.get(value);
+        if (index == null) {
+            index = mStrings.size();
+            mStrings.add(value);
+            mStringIndexes.put(value, index);
+        }
+        writeVarLong(index + 1);
+    }
+
+    void writeStopLocation(@Nullable StopLocation stopLocation) {
+        if (stopLocation == null) {
+            writeVarLong(0);
+            return;
+        }
+        Integer index = mStopLocationIndexes.get(stopLocation.getSemanticId());
+        if (index == null) {
+            index = mStopLocations.size();
+            mStopLocations.add(stopLocation);
+            mStopLocationIndexes.put(stopLocation.getSemanticId(), index);
+        }
+        writeVarLong(index + 1);
+    }
+
+    void writeEnum(@Nullable Enum<?> value) {
+        writeVarLong(value == null ? 0 : value.ordinal() + 1);
+    }
+
+    void writeDateTime(@Nullable DateTime time) {
+        if (time == null) {
+            writeString(null);
+            return;
+        }
+        writeString(time.getZone().getID());
+        writeSignedVarLong(time.getMillis() - mLastTime);
+        mLastTime = time.getMillis();
+    }
+
+    void writeDuration(@Nullable Duration duration) {
+        writeFlags(duration != null);
+        if (duration != null) {
+            writeSignedVarLong(duration.getMillis());
+        }
+    }
+
+    /**
+     * Write the length of an array, or that the array is null.
+     */
+    void writeLength(@Nullable Object[] array) {
+        writeVarLong(array == null ? 0 : array.length + 1);
+    }
+
+    /**
+     * Combine the tables and the body.
+     *
+     * @param type The type of the object which was written
+     * @return The encoded object
+     */
+    byte[] toByteArray(int type) {
+        ByteArrayOutputStream result = new ByteArrayOutputStream(mBody.size() + 16 * mStrings.size() + 8 * mStopLocations.size() + 8);
+        result.write(ModelCodec.FORMAT_VERSION);
+        result.write(type);
+
+        writeVarLong(result, mStrings.size());
+        for (String value : mStrings) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(result, bytes.length);
+            result.write(bytes, 0, bytes.length);
+        }
+
+        writeVarLong(result, mStopLocations.size());
+        for (StopLocation stopLocation : mStopLocations) {
+            int numericId = getNumericId(stopLocation);
+            if (numericId >= 0) {
+                writeVarLong(result, numericId + 1);
+            } else {
+                writeVarLong(result, 0);
+                byte[] bytes = stopLocation.getSemanticId().getBytes(StandardCharsets.UTF_8);
+                writeVarLong(result, bytes.length);
+                result.write(bytes, 0, bytes.length);
+            }
+        }
+
+        byte[] body = mBody.toByteArray();
+        result.write(body, 0, body.length);
+        return result.toByteArray();
+    }
+
+    /**
+     * @return The numeric HAFAS id of a stop location, or -1 if it doesn't have a 9-digit numeric id.
+     */
+    private static int getNumericId(StopLocation stopLocation) {
+        String hafasId = stopLocation.getHafasId();
+        if (hafasId == null || hafasId.length() != ModelCodec.HAFAS_ID_LENGTH) {
+            return -1;
+        }
+        for (int i = 0; i < hafasId.length(); i++) {
+            if (hafasId.charAt(i) < '0' || hafasId.charAt(i) > '9') {
+                return -1;
+            }
+        }
+        return Integer.parseInt(hafasId);
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+}
@@ -0,0 +1,429 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.opentransportdata.composite;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+
+import be.hyperrail.opentransportdata.common.contracts.MeteredDataSource;
+import be.hyperrail.opentransportdata.common.contracts.TransportDataRequest;
+import be.hyperrail.opentransportdata.common.contracts.TransportDataSource;
+import be.hyperrail.opentransportdata.common.models.Disturbance;
+import be.hyperrail.opentransportdata.common.models.Liveboard;
+import be.hyperrail.opentransportdata.common.models.Route;
+import be.hyperrail.opentransportdata.common.models.RoutesList;
+import be.hyperrail.opentransportdata.common.models.VehicleJourney;
+import be.hyperrail.opentransportdata.common.requests.ActualDisturbancesRequest;
+import be.hyperrail.opentransportdata.common.requests.ExtendLiveboardRequest;
+import be.hyperrail.opentransportdata.common.requests.ExtendRoutePlanningRequest;
+import be.hyperrail.opentransportdata.common.requests.LiveboardRequest;
+import be.hyperrail.opentransportdata.common.requests.OccupancyPostRequest;
+import be.hyperrail.opentransportdata.common.requests.RequestType;
+import be.hyperrail.opentransportdata.common.requests.RoutePlanningRequest;
+import be.hyperrail.opentransportdata.common.requests.RouteRefreshRequest;
+import be.hyperrail.opentransportdata.common.requests.VehicleCompositionRequest;
+import be.hyperrail.opentransportdata.common.requests.VehicleRequest;
+import be.hyperrail.opentransportdata.common.requests.VehicleStopRequest;
+import be.hyperrail.opentransportdata.metrics.OpenTransportMetrics;
+
+/**
+ * A data source which caches the results of another data source in memory.
+ * <p>
+ * Requests for the same data, with search times in the same time bucket, share one result for as long as the time to live of their type.
+ * While a request is being answered, identical requests wait for its result instead of querying the wrapped source again.
+ * The query to the wrapped source is cancelled once all requests waiting for it have been cancelled, or when its type is aborted.
+ * Requests which bypass the cache never get a cached result, but their result is cached for later requests.
+ * Cached results are evicted least recently used first once their estimated size exceeds the configured budget.
+ * Extending results, refreshing routes, stops and posting feedback aren't cached.
+ */
+public class CachingTransportDataSource implements TransportDataSource, MeteredDataSource {
+
+    // Disturbances and compositions don't depend on a search time
+    private static final long NO_TIME_BUCKET = -1;
+
+    private final TransportDataSource mDataSource;
+    private final ResultCacheConfiguration mConfiguration;
+
+    private final Object mLock = new Object();
+    private final LinkedHashMap<CacheKey, CacheEntry> mCache = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<CacheKey, InFlightQuery> mInFlight = new HashMap<>();
+    private long mCachedBytes = 0;
+
+    public CachingTransportDataSource(@NonNull TransportDataSource dataSource) {
+        this(dataSource, new ResultCacheConfiguration());
+    }
+
+    /**
+     * @param dataSource    The data source to cache
+     * @param configuration The size budget and times to live to use
+     */
+    public CachingTransportDataSource(@NonNull TransportDataSource dataSource, @NonNull ResultCacheConfiguration configuration) {
+        mDataSource = dataSource;
+        mConfiguration = configuration;
+    }
+
+    @Override
+    public void getActualDisturbances(ActualDisturbancesRequest... requests) {
+        for (ActualDisturbancesRequest request : requests) {
+            get(RequestType.DISTURBANCES, request, "", NO_TIME_BUCKET,
+                    original -> new ActualDisturbancesRequest(),
+                    TransportDataSource::getActualDisturbances);
+        }
+    }
+
+    @Override
+    public void getLiveboard(LiveboardRequest... requests) {
+        for (LiveboardRequest request : requests) {
+            String identity = request.getStation().getSemanticId() + "|" + request.getType() + "|" + request.getTimeDefinition();
+            get(RequestType.LIVEBOARD, request, identity, getTimeBucket(request.getSearchTime()), LiveboardRequest::new, TransportDataSource::getLiveboard);
+        }
+    }
+
+    @Override
+    public void extendLiveboard(ExtendLiveboardRequest... requests) {
+        mDataSource.extendLiveboard(requests);
+    }
+
+    @Override
+    public void getRoutePlanning(RoutePlanningRequest... requests) {
+        for (RoutePlanningRequest request : requests) {
+            String identity = request.getOrigin().getSemanticId() + "|" + request.getDestination().getSemanticId() + "|" + request.getTimeDefinition();
+            get(RequestType.ROUTEPLANNING, request, identity, getTimeBucket(request.getSearchTime()),
+                    original -> new RoutePlanningRequest(original.getOrigin(), original.getDestination(), original.getTimeDefinition(), original.getSearchTime()),
+                    TransportDataSource::getRoutePlanning);
+        }
+    }
+
+    @Override
+    public void extendRoutePlanning(ExtendRoutePlanningRequest... requests) {
+        mDataSource.extendRoutePlanning(requests);
+    }
+
+    @Override
+    public void getRoute(RouteRefreshRequest... requests) {
+        mDataSource.getRoute(requests);
+    }
+
+    @Override
+    public void getStop(VehicleStopRequest... requests) {
+        mDataSource.getStop(requests);
+    }
+
+    @Override
+    public void getVehicleJourney(VehicleRequest... requests) {
+        for (VehicleRequest request : requests) {
+            get(RequestType.VEHICLEJOURNEY, request, request.getVehicleId(), getTimeBucket(request.getSearchTime()), original -> {
+                VehicleRequest copy = new VehicleRequest(original.getVehicleId(), original.getSearchTime());
+                copy.setOrigin(original.getOrigin());
+                copy.setDepartureTime(original.getDepartureTime());
+                copy.setDirection(original.getDirection());
+                return copy;
+            }, TransportDataSource::getVehicleJourney);
+        }
+    }
+
+    @Override
+    public void getVehicleComposition(VehicleCompositionRequest... requests) {
+        for (VehicleCompositionRequest request : requests) {
+            get(RequestType.VEHICLECOMPOSITION, request, request.getVehicleId(), NO_TIME_BUCKET,
+                    original -> new VehicleCompositionRequest(original.getVehicleId()),
+                    TransportDataSource::getVehicleComposition);
+        }
+    }
+
+    @Override
+    public void postOccupancy(OccupancyPostRequest... requests) {
+        mDataSource.postOccupancy(requests);
+    }
+
+    @Override
+    public void abortQueries(RequestType type) {
+        // The wrapped source doesn't answer aborted queries, so the requests waiting for them are answered here
+        List<InFlightQuery> aborted = new ArrayList<>();
+        synchronized (mLock) {
+            Iterator<InFlightQuery> iterator = mInFlight.values().iterator();
+            while (iterator.hasNext()) {
+                InFlightQuery inFlight = iterator.next();
+                if (inFlight.mType == type) {
+                    iterator.remove();
+                    aborted.add(inFlight);
+                }
+            }
+        }
+
+        mDataSource.abortQueries(type);
+        for (InFlightQuery inFlight : aborted) {
+            inFlight.mQuery.cancel();
+            CancellationException e = new CancellationException("The query was aborted");
+            for (TransportDataRequest<?> waitingRequest : inFlight.mWaiting) {
+                waitingRequest.notifyErrorListeners(e);
+            }
+        }
+    }
+
+    @Override
+    public MeteredRequest[] getMeteredRequests() {
+        return OpenTransportMetrics.getInstance().getRecentRequests();
+    }
+
+    /**
+     * Remove all cached results. Requests which are being answered aren't affected.
+     */
+    public void clear() {
+        synchronized (mLock) {
+            mCache.clear();
+            mCachedBytes = 0;
+        }
+    }
+
+    /**
+     * @return The estimated size of all cached results, in bytes
+     */
+    public long getCachedBytes() {
+        synchronized (mLock) {
+            return mCachedBytes;
+        }
+    }
+
+    private <T, R extends TransportDataRequest<T>> void get(final RequestType type, R request, String identity, long timeBucket,
+                                                            RequestCopier<R> copier, RequestDispatcher<R> dispatcher) {
+        final long ttl = mConfiguration.getTimeToLive(type);
+        if (ttl <= 0) {
+            dispatcher.dispatch(mDataSource, request);
+            return;
+        }
+
+        final CacheKey key = new CacheKey(request.getClass(), identity, timeBucket);
+        final InFlightQuery inFlight;
+        R query = null;
+        T cached = null;
+        synchronized (mLock) {
+            if (!request.isCacheBypassed()) {
+                cached = getCached(key);
+            }
+            if (cached != null) {
+                inFlight = null;
+            } else if (mInFlight.containsKey(key)) {
+                // An identical request is already being answered
+                inFlight = mInFlight.get(key);
+                inFlight.mWaiting.add(request);
+            } else {
+                query = copier.copy(request);
+                inFlight = new InFlightQuery(type, query);
+                inFlight.mWaiting.add(request);
+                mInFlight.put(key, inFlight);
+            }
+        }
+
+        if (cached != null) {
+            request.notifySuccessListeners(cached);
+            return;
+        }
+
+        request.addOnCancelListener(() -> onWaitingRequestCanceled(key, inFlight));
+        if (query == null || query.isCanceled()) {
+            // Either another request started the query, or this request was cancelled before it started
+            return;
+        }
+
+        query.setCallback((data, tag) -> {
+            List<TransportDataRequest<T>> waiting;
+            synchronized (mLock) {
+                if (data != null) {
+                    put(key, new CacheEntry(data, estimateSize(data), DateTimeUtils.currentTimeMillis() + ttl));
+                }
+                waiting = removeInFlight(key, inFlight);
+            }
+            for (TransportDataRequest<T> waitingRequest : waiting) {
+                waitingRequest.notifySuccessListeners(data);
+            }
+        }, (e, tag) -> {
+            List<TransportDataRequest<T>> waiting;
+            synchronized (mLock) {
+                waiting = removeInFlight(key, inFlight);
+            }
+            for (TransportDataRequest<T> waitingRequest : waiting) {
+                waitingRequest.notifyErrorListeners(e);
+            }
+        }, request.getTag());
+        if (request.getOnPartialResponseListener() != null) {
+            query.setOnPartialResponseListener((data, tag) -> {
+                List<TransportDataRequest<T>> waiting;
+                synchronized (mLock) {
+                    waiting = getInFlight(key, inFlight);
+                }
+                for (TransportDataRequest<T> waitingRequest : waiting) {
+                    waitingRequest.notifyPartialResponseListeners(data);
+                }
+            });
+        }
+        dispatcher.dispatch(mDataSource, query);
+    }
+
+    /**
+     * Cancel the query to the wrapped source once no request is waiting for its result anymore.
+     */
+    private void onWaitingRequestCanceled(CacheKey key, InFlightQuery inFlight) {
+        synchronized (mLock) {
+            if (mInFlight.get(key) != inFlight) {
+                // Already answered or aborted
+                return;
+            }
+            for (TransportDataRequest<?> waitingRequest : inFlight.mWaiting) {
+                if (!waitingRequest.isCanceled()) {
+                    return;
+                }
+            }
+            mInFlight.remove(key);
+        }
+        inFlight.mQuery.cancel();
+    }
+
+    private long getTimeBucket(@Nullable DateTime searchTime) {
+        long time = searchTime != null ? searchTime.getMillis() : DateTimeUtils.currentTimeMillis();
+        return time / mConfiguration.getTimeBucketMsecs();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T getCached(CacheKey key) {
+        CacheEntry entry = mCache.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.mExpiresAt <= DateTimeUtils.currentTimeMillis()) {
+            mCache.remove(key);
+            mCachedBytes -= entry.mSize;
+            return null;
+        }
+        return (T) entry.mData;
+    }
+
+    private void put(CacheKey key, CacheEntry entry) {
+        CacheEntry previous = mCache.put(key, entry);
+        if (previous != null) {
+            mCachedBytes -= previous.mSize;
+        }
+        mCachedBytes += entry.mSize;
+
+        // The map is in access order, so the iterator starts at the least recently used result
+        Iterator<CacheEntry> iterator = mCache.values().iterator();
+        while (mCachedBytes > mConfiguration.getMaxBytes() && iterator.hasNext()) {
+            CacheEntry eldest = iterator.next();
+            iterator.remove();
+            mCachedBytes -= eldest.mSize;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> List<TransportDataRequest<T>> getInFlight(CacheKey key, InFlightQuery inFlight) {
+        if (mInFlight.get(key) != inFlight) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>((List<TransportDataRequest<T>>) (List<?>) inFlight.mWaiting);
+    }
+
+    /**
+     * @return The requests waiting for the given query, or none if the query was cancelled or aborted in the meantime
+     */
+    @SuppressWarnings("unchecked")
+    private <T> List<TransportDataRequest<T>> removeInFlight(CacheKey key, InFlightQuery inFlight) {
+        if (mInFlight.get(key) != inFlight) {
+            return new ArrayList<>();
+        }
+        mInFlight.remove(key);
+        return (List<TransportDataRequest<T>>) (List<?>) inFlight.mWaiting;
+    }
+
+    /**
+     * Estimate the memory used by a result. This only needs to be accurate enough to compare results against each other and the budget.
+     */
+    static long estimateSize(Object data) {
+        if (data instanceof Liveboard) {
+            return 256 + 512L * ((Liveboard) data).getStops().length;
+        }
+        if (data instanceof RoutesList) {
+            long size = 256;
+            for (Route route : ((RoutesList) data).getRoutes()) {
+                size += 256 + 1024L * route.getLegs().length;
+            }
+            return size;
+        }
+        if (data instanceof VehicleJourney) {
+            return 256 + 512L * ((VehicleJourney) data).getStops().length;
+        }
+        if (data instanceof Disturbance[]) {
+            return 256 + 1024L * ((Disturbance[]) data).length;
+        }
+        return 1024;
+    }
+
+    /**
+     * The identity of a request: its type, the parameters which define which data it asks for, and the time bucket of its search time.
+     */
+    private static class CacheKey {
+        private final Class<?> mRequestClass;
+        private final String mIdentity;
+        private final long mTimeBucket;
+
+        CacheKey(Class<?> requestClass, String identity, long timeBucket) {
+            mRequestClass = requestClass;
+            mIdentity = identity;
+            mTimeBucket = timeBucket;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof CacheKey)) {
+                return false;
+            }
+            CacheKey other = (CacheKey) o;
+            return mRequestClass == other.mRequestClass && mTimeBucket == other.mTimeBucket && mIdentity.equals(other.mIdentity);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * mRequestClass.hashCode() + mIdentity.hashCode()) + (int) (mTimeBucket ^ (mTimeBucket >>> 32));
+        }
+    }
+
+    private static class CacheEntry {
+        private final Object mData;
+        private final long mSize;
+        private final long mExpiresAt;
+
+        CacheEntry(Object data, long size, long expiresAt) {
+            mData = data;
+            mSize = size;
+            mExpiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * A query to the wrapped source, and the requests waiting for its result.
+     */
+    private static class InFlightQuery {
+        private final RequestType mType;
+        private final TransportDataRequest<?> mQuery;
+        private final List<TransportDataRequest<?>> mWaiting = new ArrayList<>();
+
+        InFlightQuery(RequestType type, TransportDataRequest<?> query) {
+            mType = type;
+            mQuery = query;
+        }
+    }
+}
@@ -0,0 +1,381 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.opentransportdata.composite;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import be.hyperrail.opentransportdata.common.contracts.MeteredDataSource;
+import be.hyperrail.opentransportdata.common.contracts.TransportDataErrorResponseListener;
+import be.hyperrail.opentransportdata.common.contracts.TransportDataRequest;
+import be.hyperrail.opentransportdata.common.contracts.TransportDataSource;
+import be.hyperrail.opentransportdata.common.contracts.TransportDataSuccessResponseListener;
+import be.hyperrail.opentransportdata.common.requests.ActualDisturbancesRequest;
+import be.hyperrail.opentransportdata.common.requests.ExtendLiveboardRequest;
+import be.hyperrail.opentransportdata.common.requests.ExtendRoutePlanningRequest;
+import be.hyperrail.opentransportdata.common.requests.LiveboardRequest;
+import be.hyperrail.opentransportdata.common.requests.OccupancyPostRequest;
+import be.hyperrail.opentransportdata.common.requests.RequestType;
+import be.hyperrail.opentransportdata.common.requests.RoutePlanningRequest;
+import be.hyperrail.opentransportdata.common.requests.RouteRefreshRequest;
+import be.hyperrail.opentransportdata.common.requests.VehicleCompositionRequest;
+import be.hyperrail.opentransportdata.common.requests.VehicleRequest;
+import be.hyperrail.opentransportdata.common.requests.VehicleStopRequest;
+import be.hyperrail.opentransportdata.metrics.OpenTransportMetrics;
+
+/**
+ * A data source which combines two long-lived data sources, and decides per request type which one answers.
+ * <p>
+ * Liveboards, routeplanning and vehicle journeys can be raced over both sources, or sent to the primary source with a fallback to the secondary source when
+ * the primary source doesn't answer within a deadline. Other request types are sent to one of both sources.
+ * Extending a result is always done by the source which created it, as paging information is specific to a source.
+ */
+public class RacingTransportDataSource implements TransportDataSource, MeteredDataSource {
+
+    public enum Strategy {
+        /**
+         * Only use the primary source.
+         */
+        PRIMARY,
+        /**
+         * Only use the secondary source.
+         */
+        SECONDARY,
+        /**
+         * Query both sources at the same time, and use the first successful response.
+         */
+        RACE,
+        /**
+         * Query the primary source, and query the secondary source as well when the primary source fails or doesn't answer before the deadline.
+         */
+        FALLBACK
+    }
+
+    private static final long DEFAULT_DEADLINE_MSEC = 2500;
+
+    private final TransportDataSource mPrimary;
+    private final TransportDataSource mSecondary;
+    private final ScheduledExecutorService mScheduler;
+    private final OpenTransportMetrics mMetrics;
+
+    private final Map<RequestType, Strategy> mStrategies = Collections.synchronizedMap(new EnumMap<RequestType, Strategy>(RequestType.class));
+    private final Map<RequestType, Long> mDeadlines = Collections.synchronizedMap(new EnumMap<RequestType, Long>(RequestType.class));
+
+    // The source which created every result which is still in use, so extending it uses the same source
+    private final Map<Object, TransportDataSource> mResultSources = Collections.synchronizedMap(new WeakHashMap<Object, TransportDataSource>());
+
+    public RacingTransportDataSource(@NonNull TransportDataSource primary, @NonNull TransportDataSource secondary) {
+        this(primary, secondary, Executors.newSingleThreadScheduledExecutor());
+    }
+
+    /**
+     * @param primary   The preferred data source
+     * @param secondary The data source to race against or fall back to
+     * @param scheduler The scheduler on which fallback deadlines run
+     */
+    public RacingTransportDataSource(@NonNull TransportDataSource primary, @NonNull TransportDataSource secondary, @NonNull ScheduledExecutorService scheduler) {
+        this(primary, secondary, scheduler, OpenTransportMetrics.getInstance());
+    }
+
+    RacingTransportDataSource(@NonNull TransportDataSource primary, @NonNull TransportDataSource secondary, @NonNull ScheduledExecutorService scheduler, @NonNull OpenTransportMetrics metrics) {
+        mPrimary = primary;
+        mSecondary = secondary;
+        mScheduler = scheduler;
+        mMetrics = metrics;
+    }
+
+    /**
+     * Set how requests of a certain type are handled. By default, all requests go to the primary source.
+     * Racing and falling back are only supported for liveboards, routeplanning and vehicle journeys. Other types use the primary source for these strategies.
+     *
+     * @param type     The type of request
+     * @param strategy The strategy to use
+     */
+    public void setStrategy(@NonNull RequestType type, @NonNull Strategy strategy) {
+        setStrategy(type, strategy, DEFAULT_DEADLINE_MSEC);
+    }
+
+    /**
+     * Set how requests of a certain type are handled.
+     *
+     * @param type          The type of request
+     * @param strategy      The strategy to use
+     * @param deadlineMsecs For {@link Strategy#FALLBACK}, the time after which the secondary source is queried as well
+     */
+    public void setStrategy(@NonNull RequestType type, @NonNull Strategy strategy, long deadlineMsecs) {
+        mStrategies.put(type, strategy);
+        mDeadlines.put(type, deadlineMsecs);
+    }
+
+    @NonNull
+    public Strategy getStrategy(@NonNull RequestType type) {
+        Strategy strategy = mStrategies.get(type);
+        return strategy == null ? Strategy.PRIMARY : strategy;
+    }
+
+    private long getDeadline(RequestType type) {
+        Long deadline = mDeadlines.get(type);
+        return deadline == null ? DEFAULT_DEADLINE_MSEC : deadline;
+    }
+
+    /**
+     * Get the source for request types which can't be raced.
+     */
+    private TransportDataSource getSingleSource(RequestType type) {
+        return getStrategy(type) == Strategy.SECONDARY ? mSecondary : mPrimary;
+    }
+
+    @Override
+    public void getActualDisturbances(ActualDisturbancesRequest... requests) {
+        getSingleSource(RequestType.DISTURBANCES).getActualDisturbances(requests);
+    }
+
+    @Override
+    public void getLiveboard(LiveboardRequest... requests) {
+        for (LiveboardRequest request : requests) {
+            start(RequestType.LIVEBOARD, request, LiveboardRequest::new, TransportDataSource::getLiveboard);
+        }
+    }
+
+    @Override
+    public void extendLiveboard(ExtendLiveboardRequest... requests) {
+        for (ExtendLiveboardRequest request : requests) {
+            TransportDataSource source = getResultSource(request.getLiveboard(), RequestType.LIVEBOARD);
+            rememberResultSource(request, source);
+            source.extendLiveboard(request);
+        }
+    }
+
+    @Override
+    public void getRoutePlanning(RoutePlanningRequest... requests) {
+        for (RoutePlanningRequest request : requests) {
+            start(RequestType.ROUTEPLANNING, request,
+                    original -> new RoutePlanningRequest(original.getOrigin(), original.getDestination(), original.getTimeDefinition(), original.getSearchTime()),
+                    TransportDataSource::getRoutePlanning);
+        }
+    }
+
+    @Override
+    public void extendRoutePlanning(ExtendRoutePlanningRequest... requests) {
+        for (ExtendRoutePlanningRequest request : requests) {
+            TransportDataSource source = getResultSource(request.getRoutes(), RequestType.ROUTEPLANNING);
+            rememberResultSource(request, source);
+            source.extendRoutePlanning(request);
+        }
+    }
+
+    @Override
+    public void getRoute(RouteRefreshRequest... requests) {
+        getSingleSource(RequestType.ROUTEDETAIL).getRoute(requests);
+    }
+
+    @Override
+    public void getStop(VehicleStopRequest... requests) {
+        getSingleSource(RequestType.VEHICLEJOURNEY).getStop(requests);
+    }
+
+    @Override
+    public void getVehicleJourney(VehicleRequest... requests) {
+        for (VehicleRequest request : requests) {
+            start(RequestType.VEHICLEJOURNEY, request, original -> {
+                VehicleRequest copy = new VehicleRequest(original.getVehicleId(), original.getSearchTime());
+                copy.setOrigin(original.getOrigin());
+                copy.setDepartureTime(original.getDepartureTime());
+                copy.setDirection(original.getDirection());
+                return copy;
+            }, TransportDataSource::getVehicleJourney);
+        }
+    }
+
+    @Override
+    public void getVehicleComposition(VehicleCompositionRequest... requests) {
+        getSingleSource(RequestType.VEHICLECOMPOSITION).getVehicleComposition(requests);
+    }
+
+    @Override
+    public void postOccupancy(OccupancyPostRequest... requests) {
+        getSingleSource(RequestType.POSTFEEDBACK).postOccupancy(requests);
+    }
+
+    @Override
+    public void abortQueries(RequestType type) {
+        mPrimary.abortQueries(type);
+        mSecondary.abortQueries(type);
+    }
+
+    @Override
+    public MeteredRequest[] getMeteredRequests() {
+        return mMetrics.getRecentRequests();
+    }
+
+    private TransportDataSource getResultSource(Object result, RequestType type) {
+        TransportDataSource source = mResultSources.get(result);
+        return source != null ? source : getSingleSource(type);
+    }
+
+    /**
+     * Remember the source of the result of an extend request, so the extended result can be extended again.
+     */
+    private <T> void rememberResultSource(final TransportDataRequest<T> request, final TransportDataSource source) {
+        final TransportDataSuccessResponseListener<T> successListener = request.getOnSuccessListener();
+        request.setCallback((data, tag) -> {
+            if (data != null) {
+                mResultSources.put(data, source);
+            }
+            if (successListener != null) {
+                successListener.onSuccessResponse(data, tag);
+            }
+        }, request.getOnErrorListener(), request.getTag());
+    }
+
+    private <T, R extends TransportDataRequest<T>> void start(RequestType type, R request, RequestCopier<R> copier, RequestDispatcher<R> dispatcher) {
+        Strategy strategy = getStrategy(type);
+        if (strategy == Strategy.PRIMARY || strategy == Strategy.SECONDARY) {
+            TransportDataSource source = getSingleSource(type);
+            rememberResultSource(request, source);
+            dispatcher.dispatch(source, request);
+            return;
+        }
+
+        Race<T, R> race = new Race<>(type, request, copier, dispatcher);
+        if (strategy == Strategy.RACE) {
+            race.startAttempt(mPrimary);
+            race.startAttempt(mSecondary);
+        } else {
+            race.startAttempt(mPrimary);
+            race.scheduleFallback(getDeadline(type));
+        }
+    }
+
+    /**
+     * A request which is sent to one or both sources. The first successful response is passed to the original request.
+     * The original request only fails once all attempts have failed.
+     */
+    private class Race<T, R extends TransportDataRequest<T>> {
+        private final RequestType mType;
+        private final R mOriginal;
+        private final RequestCopier<R> mCopier;
+        private final RequestDispatcher<R> mDispatcher;
+
+        private final AtomicBoolean mFinished = new AtomicBoolean();
+        private final AtomicBoolean mSecondaryStarted = new AtomicBoolean();
+        private final AtomicInteger mRunningAttempts = new AtomicInteger();
+        private volatile ScheduledFuture<?> mFallback;
+        private final List<R> mAttempts = new ArrayList<>();
+        private final AtomicReference<TransportDataSource> mPartialSource = new AtomicReference<>();
+
+        Race(RequestType type, R original, RequestCopier<R> copier, RequestDispatcher<R> dispatcher) {
+            mType = type;
+            mOriginal = original;
+            mCopier = copier;
+            mDispatcher = dispatcher;
+            mOriginal.addOnCancelListener(() -> {
+                mFinished.set(true);
+                cancelFallback();
+                cancelAttempts();
+            });
+        }
+
+        void startAttempt(final TransportDataSource source) {
+            if (source == mSecondary && !mSecondaryStarted.compareAndSet(false, true)) {
+                return;
+            }
+            mRunningAttempts.incrementAndGet();
+
+            R attempt = mCopier.copy(mOriginal);
+            TransportDataSuccessResponseListener<T> successListener = (data, tag) -> onSuccess(source, data);
+            TransportDataErrorResponseListener errorListener = (e, tag) -> onError(source, e);
+            attempt.setCallback(successListener, errorListener, mOriginal.getTag());
+            if (mOriginal.getOnPartialResponseListener() != null) {
+                attempt.setOnPartialResponseListener((data, tag) -> onPartialResponse(source, data));
+            }
+            synchronized (mAttempts) {
+                mAttempts.add(attempt);
+            }
+            if (mOriginal.isCanceled()) {
+                attempt.cancel();
+                return;
+            }
+            mDispatcher.dispatch(source, attempt);
+        }
+
+        void scheduleFallback(long deadlineMsecs) {
+            mFallback = mScheduler.schedule(() -> {
+                if (!mFinished.get()) {
+                    startAttempt(mSecondary);
+                }
+            }, deadlineMsecs, TimeUnit.MILLISECONDS);
+        }
+
+        private void onSuccess(TransportDataSource source, T data) {
+            if (data == null) {
+                onError(source, new NullPointerException("Data source returned an empty response"));
+                return;
+            }
+            if (!mFinished.compareAndSet(false, true)) {
+                return;
+            }
+            cancelFallback();
+            // The other attempt can't win anymore, stop its work
+            cancelAttempts();
+            mResultSources.put(data, source);
+            mMetrics.recordRaceWin(mType, source == mPrimary);
+            mOriginal.notifySuccessListeners(data);
+        }
+
+        private void onPartialResponse(TransportDataSource source, T data) {
+            // Only show the partial results of one source, mixing snapshots of both sources would make results jump around
+            if (!mFinished.get() && (mPartialSource.compareAndSet(null, source) || mPartialSource.get() == source)) {
+                mOriginal.notifyPartialResponseListeners(data);
+            }
+        }
+
+        private void onError(TransportDataSource source, Exception e) {
+            if (mFinished.get()) {
+                return;
+            }
+            if (source == mPrimary) {
+                // Don't wait for the deadline when the primary source has already failed
+                cancelFallback();
+                startAttempt(mSecondary);
+            }
+            if (mRunningAttempts.decrementAndGet() == 0 && mFinished.compareAndSet(false, true)) {
+                mOriginal.notifyErrorListeners(e);
+            }
+        }
+
+        private void cancelAttempts() {
+            List<R> attempts;
+            synchronized (mAttempts) {
+                attempts = new ArrayList<>(mAttempts);
+            }
+            for (R attempt : attempts) {
+                attempt.cancel();
+            }
+        }
+
+        private void cancelFallback() {
+            ScheduledFuture<?> fallback = mFallback;
+            if (fallback != null) {
+                fallback.cancel(false);
+            }
+        }
+    }
+}
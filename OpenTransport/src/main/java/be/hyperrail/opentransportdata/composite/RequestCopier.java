@@ -0,0 +1,14 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.opentransportdata.composite;
+
+/**
+ * Create a copy of a request without callbacks, so a composite data source can give the copy its own callbacks.
+ */
+interface RequestCopier<R> {
+    R copy(R request);
+}
@@ -0,0 +1,16 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.opentransportdata.composite;
+
+import be.hyperrail.opentransportdata.common.contracts.TransportDataSource;
+
+/**
+ * Pass a request to the method of a source which handles it.
+ */
+interface RequestDispatcher<R> {
+    void dispatch(TransportDataSource source, R request);
+}
@@ -0,0 +1,74 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.opentransportdata.composite;
+
+import androidx.annotation.NonNull;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import be.hyperrail.opentransportdata.common.requests.RequestType;
+
+/**
+ * Settings for the {@link CachingTransportDataSource}. Request types without a time to live aren't cached.
+ */
+public class ResultCacheConfiguration {
+
+    private long mMaxBytes = 2 * 1024 * 1024;
+    private long mTimeBucketMsecs = 60 * 1000;
+    private final Map<RequestType, Long> mTimeToLive = new EnumMap<>(RequestType.class);
+
+    /**
+     * Create a configuration with the default times to live: one minute for realtime data, five minutes for disturbances and one hour for compositions.
+     */
+    public ResultCacheConfiguration() {
+        mTimeToLive.put(RequestType.LIVEBOARD, 60 * 1000L);
+        mTimeToLive.put(RequestType.ROUTEPLANNING, 60 * 1000L);
+        mTimeToLive.put(RequestType.VEHICLEJOURNEY, 60 * 1000L);
+        mTimeToLive.put(RequestType.DISTURBANCES, 5 * 60 * 1000L);
+        mTimeToLive.put(RequestType.VEHICLECOMPOSITION, 60 * 60 * 1000L);
+    }
+
+    public long getMaxBytes() {
+        return mMaxBytes;
+    }
+
+    /**
+     * @param maxBytes The estimated size of all cached results, above which the least recently used results are evicted
+     */
+    public void setMaxBytes(long maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    public long getTimeBucketMsecs() {
+        return mTimeBucketMsecs;
+    }
+
+    /**
+     * @param timeBucketMsecs Requests for the same data with search times in the same bucket share their result
+     */
+    public void setTimeBucketMsecs(long timeBucketMsecs) {
+        mTimeBucketMsecs = timeBucketMsecs;
+    }
+
+    /**
+     * @param type The request type
+     * @return The time to live in milliseconds, or 0 if this type isn't cached
+     */
+    public long getTimeToLive(@NonNull RequestType type) {
+        Long ttl = mTimeToLive.get(type);
+        return ttl == null ? 0 : ttl;
+    }
+
+    /**
+     * @param type           The request type
+     * @param timeToLiveMsec The time to live in milliseconds, 0 to disable caching for this type
+     */
+    public void setTimeToLive(@NonNull RequestType type, long timeToLiveMsec) {
+        mTimeToLive.put(type, timeToLiveMsec);
+    }
+}
@@ -2,10 +2,35 @@ package be.hyperrail.opentransportdata.logging;
 
 import android.util.Log;
 
+import androidx.annotation.NonNull;
+
 import java.util.logging.Level;
 
+import be.hyperrail.opentransportdata.BuildConfig;
+
 class OpenTransportConsoleLogWriter implements OpenTransportLogWriter {
 
+    private final Level mMinimumLevel;
+
+    /**
+     * Write all messages in debug builds, and skip debug messages in release builds.
+     */
+    OpenTransportConsoleLogWriter() {
+        this(BuildConfig.DEBUG ? Level.ALL : Level.INFO);
+    }
+
+    /**
+     * @param minimumLevel The lowest priority which is written. Messages with a lower priority are not built.
+     */
+    OpenTransportConsoleLogWriter(@NonNull Level minimumLevel) {
+        mMinimumLevel = minimumLevel;
+    }
+
+    @Override
+    public boolean isLoggable(Level priority, String tag) {
+        return priority.intValue() >= mMinimumLevel.intValue();
+    }
+
     @Override
     public void logException(String tag, Throwable throwable) {
         Log.e(tag, "An exception was logged", throwable);
@@ -13,6 +38,9 @@ class OpenTransportConsoleLogWriter implements OpenTransportLogWriter {
 
     @Override
     public void log(Level priority, String tag, String msg) {
+        if (!isLoggable(priority, tag)) {
+            return;
+        }
         Log.println(priority.intValue(), tag, msg);
     }
 
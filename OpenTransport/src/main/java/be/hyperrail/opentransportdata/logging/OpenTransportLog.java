@@ -4,11 +4,18 @@ import java.util.logging.Level;
 
 public class OpenTransportLog {
 
+    /**
+     * Build a log message, only when the message will be written.
+     */
+    public interface MessageSupplier {
+        String get();
+    }
+
     private static OpenTransportLogWriter loggerInstance;
-    private final Class callingClass;
+    private final String tag;
 
     private OpenTransportLog(Class c) {
-        this.callingClass = c;
+        this.tag = c.getSimpleName();
     }
 
     public static void initLogWriter(OpenTransportLogWriter logger) {
@@ -27,20 +34,44 @@ public class OpenTransportLog {
         return new OpenTransportLog(c);
     }
 
+    /**
+     * Check if messages with the given priority are written, to skip work which is only needed to build a message.
+     */
+    public boolean isLoggable(Level priority) {
+        return getLogWriter().isLoggable(priority, tag);
+    }
+
+    public boolean isDebugEnabled() {
+        return isLoggable(Level.FINE);
+    }
+
     public void logException(Throwable throwable) {
-        getLogWriter().logException(callingClass.getSimpleName(), throwable);
+        getLogWriter().logException(tag, throwable);
     }
 
     public void log(Level priority, String msg) {
-        getLogWriter().log(priority, callingClass.getSimpleName(), msg);
+        OpenTransportLogWriter writer = getLogWriter();
+        if (writer.isLoggable(priority, tag)) {
+            writer.log(priority, tag, msg);
+        }
+    }
+
+    /**
+     * Log a message which is only built when the given priority is enabled.
+     */
+    public void log(Level priority, MessageSupplier message) {
+        OpenTransportLogWriter writer = getLogWriter();
+        if (writer.isLoggable(priority, tag)) {
+            writer.log(priority, tag, message.get());
+        }
     }
 
     public void setDebugVariable(String key, String value) {
-        getLogWriter().setDebugVariable(callingClass.getSimpleName(), key, value);
+        getLogWriter().setDebugVariable(tag, key, value);
     }
 
     public void setDebugVariable(String key, int value) {
-        getLogWriter().setDebugVariable(callingClass.getSimpleName(), key, value);
+        getLogWriter().setDebugVariable(tag, key, value);
     }
 
     public void info(String message) {
@@ -59,6 +90,22 @@ public class OpenTransportLog {
         log(Level.FINE, message);
     }
 
+    public void info(MessageSupplier message) {
+        log(Level.INFO, message);
+    }
+
+    public void warning(MessageSupplier message) {
+        log(Level.WARNING, message);
+    }
+
+    public void severe(MessageSupplier message) {
+        log(Level.SEVERE, message);
+    }
+
+    public void debug(MessageSupplier message) {
+        log(Level.FINE, message);
+    }
+
     public void info(String message, Throwable throwable) {
         info(message);
         logException(throwable);
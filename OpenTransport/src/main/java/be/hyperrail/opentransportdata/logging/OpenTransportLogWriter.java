@@ -4,6 +4,15 @@ import java.util.logging.Level;
 
 public interface OpenTransportLogWriter {
 
+    /**
+     * Check if messages with the given priority are written. Messages which aren't written are not built by {@link OpenTransportLog}.
+     *
+     * @param priority The priority of the message
+     * @param tag      The tag of the message
+     * @return true if a message with the given priority and tag would be written
+     */
+    boolean isLoggable(Level priority, String tag);
+
     void logException(String tag, Throwable throwable);
 
     void log(Level priority, String tag, String msg);
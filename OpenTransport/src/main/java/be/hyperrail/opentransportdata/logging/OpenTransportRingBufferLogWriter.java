@@ -0,0 +1,169 @@
+package be.hyperrail.opentransportdata.logging;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+
+/**
+ * Keep the most recent log messages in memory, without any I/O. Older messages are overwritten once the buffer is full.
+ * <p>
+ * This is meant for release builds, where the recent messages are only read when something went wrong, for example to attach them to a crash report.
+ */
+public class OpenTransportRingBufferLogWriter implements OpenTransportLogWriter {
+
+    /**
+     * A message in the buffer. Exceptions are kept as they are, and only formatted when the entry is read.
+     */
+    public static class Entry {
+        private final long mTimestamp;
+        private final Level mPriority;
+        private final String mTag;
+        private final String mMessage;
+        private final Throwable mThrowable;
+
+        Entry(long timestamp, Level priority, String tag, @Nullable String message, @Nullable Throwable throwable) {
+            mTimestamp = timestamp;
+            mPriority = priority;
+            mTag = tag;
+            mMessage = message;
+            mThrowable = throwable;
+        }
+
+        public long getTimestamp() {
+            return mTimestamp;
+        }
+
+        public Level getPriority() {
+            return mPriority;
+        }
+
+        public String getTag() {
+            return mTag;
+        }
+
+        @Nullable
+        public String getMessage() {
+            return mMessage;
+        }
+
+        @Nullable
+        public Throwable getThrowable() {
+            return mThrowable;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return "[" + mPriority.getName() + "] [" + mTag + "] " + (mThrowable != null ? mThrowable.toString() : mMessage);
+        }
+    }
+
+    private final Entry[] mEntries;
+    private final Level mMinimumLevel;
+    private final Map<String, String> mDebugVariables = new LinkedHashMap<>();
+    // The position where the next entry will be written
+    private int mNext;
+    private int mSize;
+
+    /**
+     * @param capacity     The number of messages to keep
+     * @param minimumLevel The lowest priority which is kept. Messages with a lower priority are not built.
+     */
+    public OpenTransportRingBufferLogWriter(int capacity, @NonNull Level minimumLevel) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The capacity should be at least 1");
+        }
+        mEntries = new Entry[capacity];
+        mMinimumLevel = minimumLevel;
+    }
+
+    @Override
+    public boolean isLoggable(Level priority, String tag) {
+        return priority.intValue() >= mMinimumLevel.intValue();
+    }
+
+    @Override
+    public void logException(String tag, Throwable throwable) {
+        add(new Entry(System.currentTimeMillis(), Level.SEVERE, tag, null, throwable));
+    }
+
+    @Override
+    public void log(Level priority, String tag, String msg) {
+        // Callers which don't check isLoggable first can still log messages with a lower priority
+        if (isLoggable(priority, tag)) {
+            add(new Entry(System.currentTimeMillis(), priority, tag, msg, null));
+        }
+    }
+
+    @Override
+    public synchronized void setDebugVariable(String tag, String key, String value) {
+        mDebugVariables.put(key, value);
+    }
+
+    @Override
+    public void setDebugVariable(String tag, String key, int value) {
+        setDebugVariable(tag, key, String.valueOf(value));
+    }
+
+    @Override
+    public void info(String tag, String message) {
+        log(Level.INFO, tag, message);
+    }
+
+    @Override
+    public void warning(String tag, String message) {
+        log(Level.WARNING, tag, message);
+    }
+
+    @Override
+    public void severe(String tag, String message) {
+        log(Level.SEVERE, tag, message);
+    }
+
+    @Override
+    public void debug(String tag, String message) {
+        log(Level.FINE, tag, message);
+    }
+
+    private synchronized void add(Entry entry) {
+        mEntries[mNext] = entry;
+        mNext = (mNext + 1) % mEntries.length;
+        if (mSize < mEntries.length) {
+            mSize++;
+        }
+    }
+
+    /**
+     * @return The messages in the buffer, oldest first
+     */
+    public synchronized List<Entry> getEntries() {
+        List<Entry> entries = new ArrayList<>(mSize);
+        int first = (mNext - mSize + mEntries.length) % mEntries.length;
+        for (int i = 0; i < mSize; i++) {
+            entries.add(mEntries[(first + i) % mEntries.length]);
+        }
+        return entries;
+    }
+
+    /**
+     * @return The last value of every debug variable
+     */
+    public synchronized Map<String, String> getDebugVariables() {
+        return new LinkedHashMap<>(mDebugVariables);
+    }
+
+    /**
+     * Remove all messages from the buffer. Debug variables are kept.
+     */
+    public synchronized void clear() {
+        Arrays.fill(mEntries, null);
+        mNext = 0;
+        mSize = 0;
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.opentransportdata.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram with exponential buckets, for non-negative values such as durations in milliseconds.
+ * Bucket 0 contains 0, bucket i contains the values in [2^(i-1), 2^i).
+ */
+public class Histogram {
+
+    static final int BUCKETS = 40;
+
+    private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong mCount = new AtomicLong();
+    private final AtomicLong mSum = new AtomicLong();
+    private final AtomicLong mMax = new AtomicLong();
+
+    /**
+     * Record a value. Negative values, e.g. for timestamps which were never set, are ignored.
+     *
+     * @param value The value to record
+     */
+    public void record(long value) {
+        if (value < 0) {
+            return;
+        }
+        mBuckets.incrementAndGet(getBucket(value));
+        mCount.incrementAndGet();
+        mSum.addAndGet(value);
+
+        long max = mMax.get();
+        while (value > max && !mMax.compareAndSet(max, value)) {
+            max = mMax.get();
+        }
+    }
+
+    public Snapshot snapshot() {
+        long[] buckets = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = mBuckets.get(i);
+        }
+        return new Snapshot(buckets, mCount.get(), mSum.get(), mMax.get());
+    }
+
+    static int getBucket(long value) {
+        if (value == 0) {
+            return 0;
+        }
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value));
+    }
+
+    /**
+     * A copy of a histogram at a certain moment. As buckets are read one by one, the snapshot may include some values which were recorded while it was taken.
+     */
+    public static class Snapshot {
+        private final long[] mBuckets;
+        private final long mCount;
+        private final long mSum;
+        private final long mMax;
+
+        Snapshot(long[] buckets, long count, long sum, long max) {
+            mBuckets = buckets;
+            mCount = count;
+            mSum = sum;
+            mMax = max;
+        }
+
+        public long getCount() {
+            return mCount;
+        }
+
+        public long getSum() {
+            return mSum;
+        }
+
+        public long getMax() {
+            return mMax;
+        }
+
+        public double getMean() {
+            return mCount == 0 ? 0 : (double) mSum / mCount;
+        }
+
+        /**
+         * Estimate a percentile. The result is the upper bound of the bucket which contains the percentile, limited to the largest recorded value.
+         *
+         * @param percentile The percentile, between 0 and 100
+         * @return The estimated value, or 0 if no values have been recorded
+         */
+        public long getPercentile(double percentile) {
+            long total = 0;
+            for (long bucket : mBuckets) {
+                total += bucket;
+            }
+            if (total == 0) {
+                return 0;
+            }
+
+            long rank = (long) Math.ceil(percentile / 100 * total);
+            long seen = 0;
+            for (int i = 0; i < mBuckets.length; i++) {
+                seen += mBuckets[i];
+                if (seen >= rank && seen > 0) {
+                    long upperBound = i == 0 ? 0 : (1L << i) - 1;
+                    return Math.min(upperBound, mMax);
+                }
+            }
+            return mMax;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.opentransportdata.metrics;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import be.hyperrail.opentransportdata.common.contracts.MeteredDataSource.MeteredRequest;
+
+/**
+ * A copy of all metrics at a certain moment, which can be exported as CSV or JSON, e.g. for a debug screen or a test.
+ */
+public class MetricsSnapshot {
+
+    private static final String[] HISTOGRAM_NAMES = {"time_to_first_byte", "time_to_usable_result", "parse_time", "pages_fetched", "bytes_sent", "bytes_received", "bytes_decompressed"};
+
+    private final Map<String, Histogram.Snapshot[]> mHistograms = new LinkedHashMap<>();
+    private final Map<String, long[]> mResponseTypes = new LinkedHashMap<>();
+    private final Map<String, long[]> mCacheTierHits = new LinkedHashMap<>();
+    private final Map<String, long[]> mRaceWins = new LinkedHashMap<>();
+    private final MeteredRequest[] mRecentRequests;
+
+    MetricsSnapshot(Map<String, RequestTypeMetrics> metrics, MeteredRequest[] recentRequests) {
+        for (Map.Entry<String, RequestTypeMetrics> entry : metrics.entrySet()) {
+            RequestTypeMetrics typeMetrics = entry.getValue();
+            mHistograms.put(entry.getKey(), new Histogram.Snapshot[]{
+                    typeMetrics.getTimeToFirstByte().snapshot(),
+                    typeMetrics.getTimeToUsableResult().snapshot(),
+                    typeMetrics.getParseTime().snapshot(),
+                    typeMetrics.getPagesFetched().snapshot(),
+                    typeMetrics.getBytesSent().snapshot(),
+                    typeMetrics.getBytesReceived().snapshot(),
+                    typeMetrics.getBytesDecompressed().snapshot()
+            });
+            long[] responseTypes = new long[RequestTypeMetrics.RESPONSE_TYPES.length];
+            for (int i = 0; i < responseTypes.length; i++) {
+                responseTypes[i] = typeMetrics.getResponseTypeCount(RequestTypeMetrics.RESPONSE_TYPES[i]);
+            }
+            mResponseTypes.put(entry.getKey(), responseTypes);
+            long[] cacheTierHits = new long[RequestTypeMetrics.CACHE_TIERS.length];
+            for (int i = 0; i < cacheTierHits.length; i++) {
+                cacheTierHits[i] = typeMetrics.getCacheTierHits(RequestTypeMetrics.CACHE_TIERS[i]);
+            }
+            mCacheTierHits.put(entry.getKey(), cacheTierHits);
+            mRaceWins.put(entry.getKey(), new long[]{typeMetrics.getPrimaryWins(), typeMetrics.getSecondaryWins()});
+        }
+        mRecentRequests = recentRequests;
+    }
+
+    public MeteredRequest[] getRecentRequests() {
+        return mRecentRequests;
+    }
+
+    /**
+     * Export the histograms as CSV, one line per request type and metric, followed by the recent requests.
+     *
+     * @return The CSV data
+     */
+    public String toCsv() {
+        StringBuilder csv = new StringBuilder();
+        csv.append("type,metric,count,sum,mean,p50,p90,p99,max\n");
+        for (Map.Entry<String, Histogram.Snapshot[]> entry : mHistograms.entrySet()) {
+            for (int i = 0; i < HISTOGRAM_NAMES.length; i++) {
+                Histogram.Snapshot histogram = entry.getValue()[i];
+                csv.append(entry.getKey()).append(',')
+                        .append(HISTOGRAM_NAMES[i]).append(',')
+                        .append(histogram.getCount()).append(',')
+                        .append(histogram.getSum()).append(',')
+                        .append(String.format(Locale.US, "%.1f", histogram.getMean())).append(',')
+                        .append(histogram.getPercentile(50)).append(',')
+                        .append(histogram.getPercentile(90)).append(',')
+                        .append(histogram.getPercentile(99)).append(',')
+                        .append(histogram.getMax()).append('\n');
+            }
+        }
+
+        csv.append('\n').append("type,response_type,count\n");
+        for (Map.Entry<String, long[]> entry : mResponseTypes.entrySet()) {
+            for (int i = 0; i < RequestTypeMetrics.RESPONSE_TYPE_NAMES.length; i++) {
+                csv.append(entry.getKey()).append(',')
+                        .append(RequestTypeMetrics.RESPONSE_TYPE_NAMES[i]).append(',')
+                        .append(entry.getValue()[i]).append('\n');
+            }
+        }
+
+        csv.append('\n').append("type,cache_tier,hits\n");
+        for (Map.Entry<String, long[]> entry : mCacheTierHits.entrySet()) {
+            for (int i = 0; i < RequestTypeMetrics.CACHE_TIER_NAMES.length; i++) {
+                csv.append(entry.getKey()).append(',')
+                        .append(RequestTypeMetrics.CACHE_TIER_NAMES[i]).append(',')
+                        .append(entry.getValue()[i]).append('\n');
+            }
+        }
+
+        csv.append('\n').append("type,primary_wins,secondary_wins\n");
+        for (Map.Entry<String, long[]> entry : mRaceWins.entrySet()) {
+            csv.append(entry.getKey()).append(',')
+                    .append(entry.getValue()[0]).append(',')
+                    .append(entry.getValue()[1]).append('\n');
+        }
+
+        csv.append('\n').append("tag,start,usable,parsed,received,sent,response,decompressed\n");
+        for (MeteredRequest request : mRecentRequests) {
+            csv.append(request.toString()).append('\n');
+        }
+        return csv.toString();
+    }
+
+    /**
+     * Export the histograms and recent requests as JSON.
+     *
+     * @return The JSON data
+     * @throws JSONException If the data can't be converted
+     */
+    public JSONObject toJson() throws JSONException {
+        JSONObject json = new JSONObject();
+
+        JSONObject types = new JSONObject();
+        for (Map.Entry<String, Histogram.Snapshot[]> entry : mHistograms.entrySet()) {
+            JSONObject type = new JSONObject();
+            for (int i = 0; i < HISTOGRAM_NAMES.length; i++) {
+                Histogram.Snapshot histogram = entry.getValue()[i];
+                JSONObject metric = new JSONObject();
+                metric.put("count", histogram.getCount());
+                metric.put("sum", histogram.getSum());
+                metric.put("mean", histogram.getMean());
+                metric.put("p50", histogram.getPercentile(50));
+                metric.put("p90", histogram.getPercentile(90));
+                metric.put("p99", histogram.getPercentile(99));
+                metric.put("max", histogram.getMax());
+                type.put(HISTOGRAM_NAMES[i], metric);
+            }
+            JSONObject responseTypes = new JSONObject();
+            for (int i = 0; i < RequestTypeMetrics.RESPONSE_TYPE_NAMES.length; i++) {
+                responseTypes.put(RequestTypeMetrics.RESPONSE_TYPE_NAMES[i], mResponseTypes.get(entry.getKey())[i]);
+            }
+            type.put("response_types", responseTypes);
+            JSONObject cacheTiers = new JSONObject();
+            for (int i = 0; i < RequestTypeMetrics.CACHE_TIER_NAMES.length; i++) {
+                cacheTiers.put(RequestTypeMetrics.CACHE_TIER_NAMES[i], mCacheTierHits.get(entry.getKey())[i]);
+            }
+            type.put("cache_tiers", cacheTiers);
+            JSONObject raceWins = new JSONObject();
+            raceWins.put("primary", mRaceWins.get(entry.getKey())[0]);
+            raceWins.put("secondary", mRaceWins.get(entry.getKey())[1]);
+            type.put("race_wins", raceWins);
+            types.put(entry.getKey(), type);
+        }
+        json.put("types", types);
+
+        JSONArray recent = new JSONArray();
+        for (MeteredRequest request : mRecentRequests) {
+            JSONObject item = new JSONObject();
+            item.put("tag", request.getTag());
+            item.put("type", request.getRequestType() == null ? "OTHER" : request.getRequestType().name());
+            item.put("start", request.getMsecStart());
+            item.put("usable", request.getMsecUsableResult());
+            item.put("parsed", request.getMsecParsed());
+            item.put("pages", request.getPagesFetched());
+            item.put("received", request.getBytesReceived());
+            item.put("sent", request.getBytesSent());
+            item.put("decompressed", request.getBytesDecompressed());
+            item.put("response_type", request.getResponseType());
+            recent.put(item);
+        }
+        json.put("recent", recent);
+        return json;
+    }
+}
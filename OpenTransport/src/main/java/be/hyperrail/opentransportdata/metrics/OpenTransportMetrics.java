@@ -0,0 +1,154 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.opentransportdata.metrics;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import be.hyperrail.opentransportdata.common.contracts.MeteredDataSource.MeteredRequest;
+import be.hyperrail.opentransportdata.common.requests.RequestType;
+import be.hyperrail.opentransportdata.tracing.OpenTransportTracing;
+
+/**
+ * Collects metrics for metered requests: histograms per request type, and a bounded ring of the most recent requests.
+ * The data sources share one instance, while tests can create their own to stay isolated. All methods can be called from any thread without locking.
+ */
+public class OpenTransportMetrics {
+
+    /**
+     * The number of recent requests which are kept.
+     */
+    static final int RECENT_REQUESTS = 128;
+
+    private static final OpenTransportMetrics sInstance = new OpenTransportMetrics();
+
+    private final Map<RequestType, RequestTypeMetrics> mMetrics = new EnumMap<>(RequestType.class);
+    // Requests without a type, e.g. preloading pages
+    private final RequestTypeMetrics mOtherMetrics = new RequestTypeMetrics();
+
+    private final AtomicReferenceArray<MeteredRequest> mRecentRequests = new AtomicReferenceArray<>(RECENT_REQUESTS);
+    private final AtomicLong mRecentRequestsCount = new AtomicLong();
+
+    /**
+     * Create metrics which are separate from the shared instance.
+     */
+    public OpenTransportMetrics() {
+        for (RequestType type : RequestType.values()) {
+            mMetrics.put(type, new RequestTypeMetrics());
+        }
+    }
+
+    /**
+     * Get the metrics which are shared by all data sources.
+     *
+     * @return The shared instance
+     */
+    public static OpenTransportMetrics getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Keep track of a request which has just been started. Once the ring is full, the oldest request is dropped.
+     * This also starts the span of the request, which ends when the request is recorded. The request will be recorded in these metrics.
+     *
+     * @param request The request
+     */
+    public void track(MeteredRequest request) {
+        request.setMetrics(this);
+        request.setSpan(OpenTransportTracing.startSpan(getSpanName(request.getRequestType())));
+        long index = mRecentRequestsCount.getAndIncrement();
+        mRecentRequests.set((int) (index % RECENT_REQUESTS), request);
+    }
+
+    /**
+     * Get the most recent requests, oldest first.
+     *
+     * @return At most {@link #RECENT_REQUESTS} requests
+     */
+    public MeteredRequest[] getRecentRequests() {
+        long count = mRecentRequestsCount.get();
+        long first = Math.max(0, count - RECENT_REQUESTS);
+        List<MeteredRequest> result = new ArrayList<>();
+        for (long i = first; i < count; i++) {
+            MeteredRequest request = mRecentRequests.get((int) (i % RECENT_REQUESTS));
+            if (request != null) {
+                result.add(request);
+            }
+        }
+        return result.toArray(new MeteredRequest[0]);
+    }
+
+    /**
+     * Record the metrics of a finished request. Times which weren't set are not recorded.
+     *
+     * @param request The request, which should have been parsed
+     */
+    public void record(MeteredRequest request) {
+        long start = request.getMsecStart();
+        long usable = request.getMsecUsableResult();
+        long parsed = request.getMsecParsed();
+        RequestTypeMetrics metrics = getMetrics(request.getRequestType());
+        for (int tier : RequestTypeMetrics.CACHE_TIERS) {
+            metrics.recordCacheTierHits(tier, request.getCacheTierHits(tier));
+        }
+        metrics.record(
+                usable == 0 ? -1 : usable - start,
+                parsed - start,
+                usable == 0 ? -1 : parsed - usable,
+                request.getPagesFetched(),
+                request.getBytesSent(),
+                request.getBytesReceived(),
+                request.getBytesDecompressed(),
+                request.getResponseType());
+    }
+
+    /**
+     * Record which source answered first, when a request was sent to two data sources.
+     *
+     * @param type    The type of request
+     * @param primary True if the primary source won, false if the secondary source won
+     */
+    public void recordRaceWin(@Nullable RequestType type, boolean primary) {
+        getMetrics(type).recordRaceWin(primary);
+    }
+
+    /**
+     * Get the live metrics for a request type.
+     *
+     * @param type The request type, or null for requests without a type
+     * @return The metrics
+     */
+    public RequestTypeMetrics getMetrics(@Nullable RequestType type) {
+        return type == null ? mOtherMetrics : mMetrics.get(type);
+    }
+
+    /**
+     * Take a snapshot of all metrics, which can be exported.
+     *
+     * @return The snapshot
+     */
+    public MetricsSnapshot snapshot() {
+        Map<String, RequestTypeMetrics> metrics = new LinkedHashMap<>();
+        for (RequestType type : RequestType.values()) {
+            metrics.put(type.name(), mMetrics.get(type));
+        }
+        metrics.put("OTHER", mOtherMetrics);
+        return new MetricsSnapshot(metrics, getRecentRequests());
+    }
+
+    private static String getSpanName(@Nullable RequestType type) {
+        return type == null ? "request" : "request " + type.name().toLowerCase(Locale.US);
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.opentransportdata.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import be.hyperrail.opentransportdata.common.contracts.MeteredDataSource;
+
+/**
+ * The histograms for all requests of one type.
+ */
+public class RequestTypeMetrics {
+
+    /**
+     * The response types which are counted, in the order in which they are stored.
+     */
+    static final int[] RESPONSE_TYPES = {
+            MeteredDataSource.RESPONSE_ONLINE, MeteredDataSource.RESPONSE_CACHED,
+            MeteredDataSource.RESPONSE_OFFLINE, MeteredDataSource.RESPONSE_FAILED
+    };
+    static final String[] RESPONSE_TYPE_NAMES = {"online", "cached", "offline", "failed"};
+
+    /**
+     * The cache tiers which are counted, in the order in which they are stored.
+     */
+    static final int[] CACHE_TIERS = {
+            MeteredDataSource.CACHE_TIER_MEMORY, MeteredDataSource.CACHE_TIER_OFFLINE,
+            MeteredDataSource.CACHE_TIER_HTTP, MeteredDataSource.CACHE_TIER_NETWORK
+    };
+    static final String[] CACHE_TIER_NAMES = {"memory", "offline", "http", "network"};
+
+    private final Histogram mTimeToFirstByte = new Histogram();
+    private final Histogram mTimeToUsableResult = new Histogram();
+    private final Histogram mParseTime = new Histogram();
+    private final Histogram mPagesFetched = new Histogram();
+    private final Histogram mBytesSent = new Histogram();
+    private final Histogram mBytesReceived = new Histogram();
+    private final Histogram mBytesDecompressed = new Histogram();
+    private final AtomicLongArray mResponseTypes = new AtomicLongArray(RESPONSE_TYPES.length);
+    private final AtomicLongArray mCacheTierHits = new AtomicLongArray(CACHE_TIERS.length);
+    private final AtomicLong mPrimaryWins = new AtomicLong();
+    private final AtomicLong mSecondaryWins = new AtomicLong();
+
+    void record(long timeToFirstByte, long timeToUsableResult, long parseTime, int pagesFetched,
+                long bytesSent, long bytesReceived, long bytesDecompressed, int responseType) {
+        mTimeToFirstByte.record(timeToFirstByte);
+        mTimeToUsableResult.record(timeToUsableResult);
+        mParseTime.record(parseTime);
+        mPagesFetched.record(pagesFetched);
+        mBytesSent.record(bytesSent);
+        mBytesReceived.record(bytesReceived);
+        mBytesDecompressed.record(bytesDecompressed);
+        for (int i = 0; i < RESPONSE_TYPES.length; i++) {
+            if ((responseType & RESPONSE_TYPES[i]) != 0) {
+                mResponseTypes.incrementAndGet(i);
+            }
+        }
+    }
+
+    void recordCacheTierHits(@MeteredDataSource.cacheTier int tier, int hits) {
+        mCacheTierHits.addAndGet(tier, hits);
+    }
+
+    void recordRaceWin(boolean primary) {
+        (primary ? mPrimaryWins : mSecondaryWins).incrementAndGet();
+    }
+
+    public Histogram getTimeToFirstByte() {
+        return mTimeToFirstByte;
+    }
+
+    public Histogram getTimeToUsableResult() {
+        return mTimeToUsableResult;
+    }
+
+    public Histogram getParseTime() {
+        return mParseTime;
+    }
+
+    public Histogram getPagesFetched() {
+        return mPagesFetched;
+    }
+
+    public Histogram getBytesSent() {
+        return mBytesSent;
+    }
+
+    /**
+     * Get the bytes which were received per request, before decompression.
+     * Together with {@link #getBytesDecompressed()}, this gives the compression ratio for this request type.
+     */
+    public Histogram getBytesReceived() {
+        return mBytesReceived;
+    }
+
+    public Histogram getBytesDecompressed() {
+        return mBytesDecompressed;
+    }
+
+    /**
+     * Get the number of requests which had a certain response type, e.g. the number of cache hits.
+     *
+     * @param responseType One of the MeteredDataSource.RESPONSE_ constants
+     * @return The number of requests with this response type
+     */
+    public long getResponseTypeCount(@MeteredDataSource.responseType int responseType) {
+        for (int i = 0; i < RESPONSE_TYPES.length; i++) {
+            if (RESPONSE_TYPES[i] == responseType) {
+                return mResponseTypes.get(i);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Get the number of pages which were loaded from a cache tier, or from the network, by all requests of this type.
+     *
+     * @param tier One of the MeteredDataSource.CACHE_TIER_ constants
+     * @return The number of pages loaded from this tier
+     */
+    public long getCacheTierHits(@MeteredDataSource.cacheTier int tier) {
+        return mCacheTierHits.get(tier);
+    }
+
+    /**
+     * Get the number of raced requests which were answered first by the primary source.
+     */
+    public long getPrimaryWins() {
+        return mPrimaryWins.get();
+    }
+
+    /**
+     * Get the number of raced requests which were answered first by the secondary source.
+     */
+    public long getSecondaryWins() {
+        return mSecondaryWins.get();
+    }
+}
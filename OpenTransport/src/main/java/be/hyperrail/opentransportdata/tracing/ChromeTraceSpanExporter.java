@@ -0,0 +1,139 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.opentransportdata.tracing;
+
+import androidx.annotation.NonNull;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Map;
+
+/**
+ * Writes ended spans to a file in the Chrome trace event format, which can be opened in chrome://tracing or Perfetto.
+ * <p>
+ * Every trace is shown as one track of nested async events, as the spans of a request can run on different threads.
+ * The file is a JSON array which is only closed by {@link #close()}, but the viewers also accept files which were never closed.
+ */
+public class ChromeTraceSpanExporter implements SpanExporter, Closeable {
+
+    private static final String CATEGORY = "opentransport";
+
+    private final Writer mWriter;
+    private boolean mFirstEvent = true;
+    private boolean mClosed;
+
+    public ChromeTraceSpanExporter(@NonNull File file) throws IOException {
+        this(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), Charset.forName("UTF-8"))));
+    }
+
+    ChromeTraceSpanExporter(@NonNull Writer writer) throws IOException {
+        mWriter = writer;
+        mWriter.write("[");
+    }
+
+    @Override
+    public void onStart(@NonNull Span span) {
+        // Both events are written when the span ends, so unfinished spans don't end up in the file
+    }
+
+    @Override
+    public synchronized void onEnd(@NonNull Span span) {
+        if (mClosed) {
+            return;
+        }
+        try {
+            writeEvent(span, "b", span.getStartNanos(), true);
+            writeEvent(span, "e", span.getEndNanos(), false);
+        } catch (IOException e) {
+            // Tracing should never break the traced code, stop writing instead
+            mClosed = true;
+            try {
+                mWriter.close();
+            } catch (IOException ignored) {
+                // Already failed
+            }
+        }
+    }
+
+    private void writeEvent(Span span, String phase, long nanos, boolean withArgs) throws IOException {
+        StringBuilder event = new StringBuilder(128);
+        event.append(mFirstEvent ? "\n" : ",\n");
+        mFirstEvent = false;
+        event.append("{\"name\":");
+        appendString(event, span.getName());
+        event.append(",\"cat\":\"").append(CATEGORY)
+                .append("\",\"ph\":\"").append(phase)
+                .append("\",\"id\":").append(span.getTraceId())
+                .append(",\"ts\":").append(nanos / 1000)
+                .append(",\"pid\":1,\"tid\":").append(span.getThreadId());
+        if (withArgs) {
+            event.append(",\"args\":{\"span\":").append(span.getId());
+            if (span.getParent() != null) {
+                event.append(",\"parent\":").append(span.getParent().getId());
+            }
+            for (Map.Entry<String, String> attribute : span.getAttributes().entrySet()) {
+                event.append(',');
+                appendString(event, attribute.getKey());
+                event.append(':');
+                appendString(event, attribute.getValue());
+            }
+            event.append('}');
+        }
+        event.append('}');
+        mWriter.write(event.toString());
+    }
+
+    private static void appendString(StringBuilder builder, String value) {
+        if (value == null) {
+            builder.append("null");
+            return;
+        }
+        builder.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                builder.append('\\').append(c);
+            } else if (c < 0x20) {
+                builder.append(String.format("\\u%04x", (int) c));
+            } else {
+                builder.append(c);
+            }
+        }
+        builder.append('"');
+    }
+
+    /**
+     * Write all buffered events to the file.
+     */
+    public synchronized void flush() throws IOException {
+        if (!mClosed) {
+            mWriter.flush();
+        }
+    }
+
+    /**
+     * Close the JSON array and the file. Spans which end later are ignored.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (mClosed) {
+            return;
+        }
+        mClosed = true;
+        try {
+            mWriter.write("\n]\n");
+        } finally {
+            mWriter.close();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.opentransportdata.tracing;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps all ended spans in memory, in the order in which they ended. Meant for tests and for inspecting a single request.
+ */
+public class InMemorySpanExporter implements SpanExporter {
+
+    private final List<Span> mSpans = new ArrayList<>();
+
+    @Override
+    public void onStart(@NonNull Span span) {
+        // Only ended spans are kept
+    }
+
+    @Override
+    public synchronized void onEnd(@NonNull Span span) {
+        mSpans.add(span);
+    }
+
+    public synchronized List<Span> getSpans() {
+        return new ArrayList<>(mSpans);
+    }
+
+    /**
+     * @return The ended spans with the given name
+     */
+    public synchronized List<Span> getSpans(@NonNull String name) {
+        List<Span> result = new ArrayList<>();
+        for (Span span : mSpans) {
+            if (span.getName().equals(name)) {
+                result.add(span);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return The ended spans which have the given span as their parent
+     */
+    public synchronized List<Span> getChildren(@NonNull Span parent) {
+        List<Span> result = new ArrayList<>();
+        for (Span span : mSpans) {
+            if (span.getParent() == parent) {
+                result.add(span);
+            }
+        }
+        return result;
+    }
+
+    public synchronized void clear() {
+        mSpans.clear();
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.opentransportdata.tracing;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import be.hyperrail.opentransportdata.common.contracts.MeteredDataSource.MeteredRequest;
+
+/**
+ * Starts spans and passes them to the registered exporters.
+ * When no exporter is registered, tracing is disabled and {@link Span#DISABLED} is returned, so spans cost next to nothing.
+ */
+public class OpenTransportTracing {
+
+    private static final CopyOnWriteArrayList<SpanExporter> sExporters = new CopyOnWriteArrayList<>();
+
+    private OpenTransportTracing() {
+        // No instances
+    }
+
+    public static void addExporter(@NonNull SpanExporter exporter) {
+        sExporters.addIfAbsent(exporter);
+    }
+
+    public static void removeExporter(@NonNull SpanExporter exporter) {
+        sExporters.remove(exporter);
+    }
+
+    public static boolean isEnabled() {
+        return !sExporters.isEmpty();
+    }
+
+    /**
+     * Start a root span, for example for a request.
+     */
+    @NonNull
+    public static Span startSpan(@NonNull String name) {
+        return startSpan(name, null);
+    }
+
+    /**
+     * Start a span.
+     *
+     * @param name   The name of the operation
+     * @param parent The span of which this operation is a part, or null to start a new trace
+     * @return The started span, or {@link Span#DISABLED} when tracing is disabled or the parent is disabled
+     */
+    @NonNull
+    public static Span startSpan(@NonNull String name, @Nullable Span parent) {
+        if (parent == Span.DISABLED || sExporters.isEmpty()) {
+            return Span.DISABLED;
+        }
+        Span span = new Span(name, parent);
+        for (SpanExporter exporter : sExporters) {
+            exporter.onStart(span);
+        }
+        return span;
+    }
+
+    /**
+     * Get the span of a request from the tag which is passed along with its callbacks.
+     *
+     * @param tag The tag, which is a {@link MeteredRequest} for metered requests
+     * @return The span of the request, or null if the tag has no span
+     */
+    @Nullable
+    public static Span getRequestSpan(@Nullable Object tag) {
+        if (tag instanceof MeteredRequest) {
+            return ((MeteredRequest) tag).getSpan();
+        }
+        return null;
+    }
+
+    static void onEnd(Span span) {
+        for (SpanExporter exporter : sExporters) {
+            exporter.onEnd(span);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.opentransportdata.tracing;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A timed operation, such as a request or fetching a page. Spans can be nested, and every span belongs to the trace of its root span.
+ * <p>
+ * Spans are passed along explicitly, as the work for one request moves between threads. A span is exported when it ends.
+ * When tracing is disabled, {@link #DISABLED} is used instead, which ignores all calls.
+ */
+public class Span {
+
+    /**
+     * The span used when tracing is disabled. Its children are disabled too.
+     */
+    public static final Span DISABLED = new Span();
+
+    private static final AtomicLong sNextId = new AtomicLong(1);
+
+    private final String mName;
+    private final Span mParent;
+    private final long mId;
+    private final long mTraceId;
+    private final long mThreadId;
+    private final long mStartNanos;
+    private volatile long mEndNanos;
+    private final AtomicBoolean mEnded = new AtomicBoolean();
+    private volatile boolean mFailed;
+    private Map<String, String> mAttributes;
+
+    private Span() {
+        mName = "disabled";
+        mParent = null;
+        mId = 0;
+        mTraceId = 0;
+        mThreadId = 0;
+        mStartNanos = 0;
+        mEnded.set(true);
+    }
+
+    Span(@NonNull String name, @Nullable Span parent) {
+        mName = name;
+        mParent = parent;
+        mId = sNextId.getAndIncrement();
+        mTraceId = parent != null ? parent.mTraceId : mId;
+        mThreadId = Thread.currentThread().getId();
+        mStartNanos = System.nanoTime();
+    }
+
+    /**
+     * Start a span for an operation which is part of this span.
+     */
+    public Span startChild(@NonNull String name) {
+        if (this == DISABLED) {
+            return DISABLED;
+        }
+        return OpenTransportTracing.startSpan(name, this);
+    }
+
+    /**
+     * @return true if this span will be exported. Use this to skip building attributes for disabled spans.
+     */
+    public boolean isRecording() {
+        return this != DISABLED;
+    }
+
+    public void setAttribute(@NonNull String key, @Nullable String value) {
+        if (this == DISABLED) {
+            return;
+        }
+        synchronized (this) {
+            if (mAttributes == null) {
+                mAttributes = new LinkedHashMap<>();
+            }
+            mAttributes.put(key, value);
+        }
+    }
+
+    public void setAttribute(@NonNull String key, long value) {
+        if (this != DISABLED) {
+            setAttribute(key, String.valueOf(value));
+        }
+    }
+
+    /**
+     * End this span and export it. Only the first call has an effect.
+     */
+    public void end() {
+        end(false);
+    }
+
+    /**
+     * End this span for an operation which failed or was cancelled. Only the first call to end a span has an effect.
+     */
+    public void endFailed() {
+        end(true);
+    }
+
+    private void end(boolean failed) {
+        if (mEnded.compareAndSet(false, true)) {
+            mFailed = failed;
+            mEndNanos = System.nanoTime();
+            OpenTransportTracing.onEnd(this);
+        }
+    }
+
+    @NonNull
+    public String getName() {
+        return mName;
+    }
+
+    @Nullable
+    public Span getParent() {
+        return mParent;
+    }
+
+    public long getId() {
+        return mId;
+    }
+
+    /**
+     * @return The id of the root span of this span
+     */
+    public long getTraceId() {
+        return mTraceId;
+    }
+
+    /**
+     * @return The id of the thread on which this span was started
+     */
+    public long getThreadId() {
+        return mThreadId;
+    }
+
+    /**
+     * @return The start time, in nanoseconds from {@link System#nanoTime()}
+     */
+    public long getStartNanos() {
+        return mStartNanos;
+    }
+
+    /**
+     * @return The end time, in nanoseconds from {@link System#nanoTime()}, or 0 if this span hasn't ended yet
+     */
+    public long getEndNanos() {
+        return mEndNanos;
+    }
+
+    /**
+     * @return true if this span ended because its operation failed or was cancelled
+     */
+    public boolean isFailed() {
+        return mFailed;
+    }
+
+    public long getDurationNanos() {
+        return mEndNanos == 0 ? 0 : mEndNanos - mStartNanos;
+    }
+
+    @NonNull
+    public synchronized Map<String, String> getAttributes() {
+        if (mAttributes == null) {
+            return Collections.emptyMap();
+        }
+        return new LinkedHashMap<>(mAttributes);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return mName + "#" + mId;
+    }
+}
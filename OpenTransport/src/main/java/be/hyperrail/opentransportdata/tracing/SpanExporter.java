@@ -0,0 +1,19 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.opentransportdata.tracing;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Receives spans from {@link OpenTransportTracing}. Exporters are called on the thread which starts or ends a span, and should return quickly.
+ */
+public interface SpanExporter {
+
+    void onStart(@NonNull Span span);
+
+    void onEnd(@NonNull Span span);
+}
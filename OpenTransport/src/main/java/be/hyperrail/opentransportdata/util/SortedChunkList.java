@@ -0,0 +1,293 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.opentransportdata.util;
+
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * A sorted list of results, stored as the chunks (pages) in which the results were added.
+ * <p>
+ * Adding a page creates a new list which shares the chunks and the deduplication index of this list, so adding k items costs O(k)
+ * instead of copying, deduplicating and sorting every known item again. A list remains unchanged after it has been extended.
+ * Only the most recently created list can add its chunks to the shared storage; extending an older list copies its items first.
+ *
+ * @param <T> The type of the items in the list
+ */
+public class SortedChunkList<T> implements Serializable {
+
+    /**
+     * Get the key on which items are deduplicated.
+     *
+     * @param <T> The type of the items
+     */
+    public interface KeyFunction<T> {
+        /**
+         * @return The key of the item, or null if the item should never be considered a duplicate
+         */
+        @Nullable
+        String getKey(T item);
+    }
+
+    /**
+     * The chunks shared between all lists which were extended from the same list.
+     * Chunks are only ever added, so every list can keep reading its own chunks while newer lists add chunks.
+     */
+    private static class Storage {
+        // Chunks added in front of the list, the most recently added chunk last
+        private final List<Object[]> mHead = new ArrayList<>();
+        private final List<Object[]> mTail = new ArrayList<>();
+        // Keys of all items in the chunks of the owner. Only built when the first chunk is added.
+        private HashSet<String> mKeys;
+        // The list which contains all chunks in this storage, and which may add new chunks
+        private SortedChunkList<?> mOwner;
+    }
+
+    private transient Storage mStorage;
+    private transient int mHeadChunks;
+    private transient int mTailChunks;
+    private transient int mSize;
+
+    private transient Object[] mArray;
+
+    /**
+     * @param items The initial items. These are kept in the given order and are not deduplicated.
+     */
+    public SortedChunkList(@Nullable T[] items) {
+        initialize(items);
+    }
+
+    private SortedChunkList(Storage storage, int headChunks, int tailChunks, int size) {
+        mStorage = storage;
+        mHeadChunks = headChunks;
+        mTailChunks = tailChunks;
+        mSize = size;
+    }
+
+    private void initialize(@Nullable Object[] items) {
+        mStorage = new Storage();
+        mStorage.mOwner = this;
+        if (items != null && items.length > 0) {
+            mStorage.mTail.add(items);
+            mTailChunks = 1;
+            mSize = items.length;
+        }
+        mArray = items;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Get all items in this list. The array is created once and shared between all callers, and should not be modified.
+     *
+     * @param type An array of the type which should be returned
+     * @return The items in this list
+     */
+    @SuppressWarnings("unchecked")
+    public T[] toArray(T[] type) {
+        if (mArray == null) {
+            mArray = flatten(type.getClass().getComponentType());
+        }
+        return (T[]) mArray;
+    }
+
+    private Object[] getItems() {
+        return mArray != null ? mArray : flatten(Object.class);
+    }
+
+    private Object[] flatten(Class<?> componentType) {
+        Object[] result = (Object[]) Array.newInstance(componentType, mSize);
+        int position = 0;
+        synchronized (mStorage) {
+            for (int i = mHeadChunks - 1; i >= 0; i--) {
+                Object[] chunk = mStorage.mHead.get(i);
+                System.arraycopy(chunk, 0, result, position, chunk.length);
+                position += chunk.length;
+            }
+            for (int i = 0; i < mTailChunks; i++) {
+                Object[] chunk = mStorage.mTail.get(i);
+                System.arraycopy(chunk, 0, result, position, chunk.length);
+                position += chunk.length;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Create a list containing the items of this list and the given items which aren't known yet.
+     * <p>
+     * The new items are sorted and added as a single chunk in front of or after the known items. When the new items fall in between
+     * the known items, all items are sorted again and the new list no longer shares chunks with this list.
+     *
+     * @param items       The items to add, or null if there are no items to add
+     * @param comparator  The order of the items. Known items come first when items are equal.
+     * @param keyFunction The key on which items are deduplicated
+     * @return The extended list
+     */
+    @SuppressWarnings("unchecked")
+    public SortedChunkList<T> withMerged(@Nullable T[] items, Comparator<? super T> comparator, KeyFunction<? super T> keyFunction) {
+        Storage storage = claimStorage();
+
+        if (storage.mKeys == null) {
+            storage.mKeys = new HashSet<>();
+            for (Object item : getItems()) {
+                String key = keyFunction.getKey((T) item);
+                if (key != null) {
+                    storage.mKeys.add(key);
+                }
+            }
+        }
+
+        List<T> newItems = new ArrayList<>();
+        if (items != null) {
+            for (T item : items) {
+                String key = keyFunction.getKey(item);
+                if (key == null || storage.mKeys.add(key)) {
+                    newItems.add(item);
+                }
+            }
+        }
+
+        int headChunks = storage == mStorage ? mHeadChunks : 0;
+        int tailChunks = storage == mStorage ? mTailChunks : storage.mTail.size();
+
+        SortedChunkList<T> result;
+        if (newItems.isEmpty()) {
+            result = new SortedChunkList<>(storage, headChunks, tailChunks, mSize);
+        } else {
+            Collections.sort(newItems, comparator);
+            Object[] chunk = newItems.toArray();
+
+            if (mSize == 0 || comparator.compare((T) chunk[0], (T) getLast(storage, headChunks, tailChunks)) >= 0) {
+                synchronized (storage) {
+                    storage.mTail.add(chunk);
+                }
+                result = new SortedChunkList<>(storage, headChunks, tailChunks + 1, mSize + chunk.length);
+            } else if (comparator.compare((T) chunk[chunk.length - 1], (T) getFirst(storage, headChunks, tailChunks)) < 0) {
+                synchronized (storage) {
+                    storage.mHead.add(chunk);
+                }
+                result = new SortedChunkList<>(storage, headChunks + 1, tailChunks, mSize + chunk.length);
+            } else {
+                // The new items are mixed with the known items, sort everything again in a new storage
+                Object[] merged = Arrays.copyOf(getItems(), mSize + chunk.length, Object[].class);
+                System.arraycopy(chunk, 0, merged, mSize, chunk.length);
+                Arrays.sort(merged, (o1, o2) -> comparator.compare((T) o1, (T) o2));
+
+                Storage sorted = new Storage();
+                sorted.mKeys = storage.mKeys;
+                sorted.mTail.add(merged);
+                storage = sorted;
+                result = new SortedChunkList<>(sorted, 0, 1, merged.length);
+            }
+        }
+
+        synchronized (storage) {
+            storage.mOwner = result;
+        }
+        return result;
+    }
+
+    /**
+     * Check if this list was created by extending the given list, and still shares its chunks.
+     * In this case the items of the given list form a contiguous range in this list.
+     *
+     * @param other The list which might have been extended
+     * @return true if this list is the given list with items added in front of it and/or after it
+     */
+    public boolean isExtensionOf(@Nullable SortedChunkList<?> other) {
+        return other != null
+                && other.mStorage == mStorage
+                && other.mHeadChunks <= mHeadChunks
+                && other.mTailChunks <= mTailChunks;
+    }
+
+    /**
+     * @param other A list of which this list is an extension
+     * @return The number of items which were added in front of the items of the other list
+     */
+    public int countPrependedSince(SortedChunkList<?> other) {
+        int count = 0;
+        synchronized (mStorage) {
+            for (int i = other.mHeadChunks; i < mHeadChunks; i++) {
+                count += mStorage.mHead.get(i).length;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @param other A list of which this list is an extension
+     * @return The number of items which were added after the items of the other list
+     */
+    public int countAppendedSince(SortedChunkList<?> other) {
+        int count = 0;
+        synchronized (mStorage) {
+            for (int i = other.mTailChunks; i < mTailChunks; i++) {
+                count += mStorage.mTail.get(i).length;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Get a storage to which this list can add chunks. This is the shared storage if this list is its owner, or a copy otherwise.
+     */
+    private Storage claimStorage() {
+        synchronized (mStorage) {
+            if (mStorage.mOwner == this) {
+                // Nobody else may add chunks until the extended list becomes the new owner
+                mStorage.mOwner = null;
+                return mStorage;
+            }
+        }
+        Storage copy = new Storage();
+        if (mSize > 0) {
+            copy.mTail.add(getItems());
+        }
+        return copy;
+    }
+
+    private static Object getFirst(Storage storage, int headChunks, int tailChunks) {
+        synchronized (storage) {
+            if (headChunks > 0) {
+                return storage.mHead.get(headChunks - 1)[0];
+            }
+            return storage.mTail.get(0)[0];
+        }
+    }
+
+    private static Object getLast(Storage storage, int headChunks, int tailChunks) {
+        synchronized (storage) {
+            Object[] chunk = tailChunks > 0 ? storage.mTail.get(tailChunks - 1) : storage.mHead.get(0);
+            return chunk[chunk.length - 1];
+        }
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeObject(getItems());
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        initialize((Object[]) in.readObject());
+    }
+}
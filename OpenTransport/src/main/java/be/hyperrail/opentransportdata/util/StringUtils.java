@@ -22,4 +22,11 @@ public class StringUtils {
                 .replaceAll("[Ü]", "U")
                 .replaceAll("[ü]", "u");
     }
+
+    /**
+     * Get the last path segment of a url, for example the vehicle id in a vehicle uri.
+     */
+    public static String basename(String url) {
+        return url.substring(url.lastIndexOf('/') + 1);
+    }
 }
@@ -0,0 +1,166 @@
+package be.hyperrail.opentransportdata.async;
+
+import org.joda.time.DateTime;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import be.hyperrail.opentransportdata.common.contracts.QueryTimeDefinition;
+import be.hyperrail.opentransportdata.common.contracts.TransportDataSource;
+import be.hyperrail.opentransportdata.common.models.Liveboard;
+import be.hyperrail.opentransportdata.common.models.LiveboardType;
+import be.hyperrail.opentransportdata.common.models.StopLocation;
+import be.hyperrail.opentransportdata.common.requests.LiveboardRequest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TransportDataFutureTest {
+
+    @Test
+    void thenApply_shouldTransformResult() throws Exception {
+        TransportDataFuture<Integer> future = new TransportDataFuture<>();
+        TransportDataFuture<String> transformed = future.thenApply(i -> "#" + i);
+
+        assertFalse(transformed.isDone());
+        future.complete(4);
+        assertEquals("#4", transformed.get());
+    }
+
+    @Test
+    void thenApply_exception_shouldFailResult() {
+        TransportDataFuture<String> transformed = TransportDataFuture.completed(1).thenApply(i -> {
+            throw new IllegalStateException();
+        });
+
+        ExecutionException e = assertThrows(ExecutionException.class, transformed::get);
+        assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+
+    @Test
+    void thenCompose_shouldChainFutures() throws Exception {
+        TransportDataFuture<Integer> first = new TransportDataFuture<>();
+        TransportDataFuture<Integer> second = new TransportDataFuture<>();
+        TransportDataFuture<Integer> chained = first.thenCompose(i -> second.thenApply(j -> i + j));
+
+        first.complete(1);
+        assertFalse(chained.isDone());
+        second.complete(2);
+        assertEquals(3, (int) chained.get());
+    }
+
+    @Test
+    void cancel_shouldReachStartedContinuation() {
+        TransportDataFuture<Integer> first = new TransportDataFuture<>();
+        TransportDataFuture<Integer> second = new TransportDataFuture<>();
+        TransportDataFuture<Integer> chained = first.thenCompose(i -> second);
+
+        first.complete(1);
+        chained.cancel(false);
+
+        assertTrue(second.isCancelled());
+        assertThrows(CancellationException.class, chained::get);
+    }
+
+    @Test
+    void cancel_shouldCancelRequest() {
+        TransportDataSource source = Mockito.mock(TransportDataSource.class);
+        TransportDataFuture<Liveboard> future = new AsyncTransportDataSource(source).getLiveboard(createRequest());
+        TransportDataFuture<Integer> count = future.thenApply(liveboard -> liveboard.getStops().length);
+
+        count.cancel(false);
+
+        assertTrue(future.isCancelled());
+        assertTrue(captureLiveboardRequest(source).isCanceled());
+    }
+
+    @Test
+    void request_shouldCompleteFuture() throws Exception {
+        TransportDataSource source = Mockito.mock(TransportDataSource.class);
+        TransportDataFuture<Liveboard> future = new AsyncTransportDataSource(source).getLiveboard(createRequest());
+        Liveboard liveboard = Mockito.mock(Liveboard.class);
+
+        captureLiveboardRequest(source).notifySuccessListeners(liveboard);
+
+        assertSame(liveboard, future.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void forward_cancelledRequest_shouldCancelFuture() {
+        TransportDataFuture<Liveboard> future = new TransportDataFuture<>();
+        List<Liveboard> results = new ArrayList<>();
+        LiveboardRequest request = createRequest();
+        request.setCallback((data, tag) -> results.add(data), null, null);
+        AsyncTransportDataSource.forward(future, request);
+
+        request.cancel();
+        future.complete(Mockito.mock(Liveboard.class));
+
+        assertTrue(future.isCancelled());
+        assertTrue(results.isEmpty());
+    }
+
+    @Test
+    void allOf_shouldKeepOrder() throws Exception {
+        TransportDataFuture<String> a = new TransportDataFuture<>();
+        TransportDataFuture<String> b = new TransportDataFuture<>();
+        TransportDataFuture<List<String>> all = TransportDataFuture.allOf(Arrays.asList(a, b));
+
+        b.complete("b");
+        assertFalse(all.isDone());
+        a.complete("a");
+        assertEquals(Arrays.asList("a", "b"), all.get());
+    }
+
+    @Test
+    void allOf_failure_shouldCancelOthers() {
+        TransportDataFuture<String> a = new TransportDataFuture<>();
+        TransportDataFuture<String> b = new TransportDataFuture<>();
+        TransportDataFuture<List<String>> all = TransportDataFuture.allOf(Arrays.asList(a, b));
+
+        a.completeExceptionally(new IllegalStateException());
+
+        assertTrue(all.getException() instanceof IllegalStateException);
+        assertTrue(b.isCancelled());
+    }
+
+    @Test
+    void withTimeout_shouldFailAndCancelWork() throws InterruptedException {
+        TransportDataFuture<String> future = new TransportDataFuture<>();
+        // Cancel listeners run on the timeout thread, after waiting threads have been woken up
+        CountDownLatch cancelledLatch = new CountDownLatch(1);
+        List<Boolean> cancelled = Collections.synchronizedList(new ArrayList<>());
+        future.addOnCancelListener(() -> {
+            cancelled.add(true);
+            cancelledLatch.countDown();
+        });
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> future.withTimeout(10, TimeUnit.MILLISECONDS).get(1, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof TimeoutException);
+        assertTrue(cancelledLatch.await(1, TimeUnit.SECONDS));
+        assertEquals(1, cancelled.size());
+    }
+
+    private static LiveboardRequest createRequest() {
+        return new LiveboardRequest(Mockito.mock(StopLocation.class), QueryTimeDefinition.EQUAL_OR_LATER, LiveboardType.DEPARTURES, new DateTime());
+    }
+
+    private static LiveboardRequest captureLiveboardRequest(TransportDataSource source) {
+        ArgumentCaptor<LiveboardRequest> captor = ArgumentCaptor.forClass(LiveboardRequest.class);
+        Mockito.verify(source).getLiveboard(captor.capture());
+        return captor.getValue();
+    }
+}
@@ -5,6 +5,11 @@ import org.joda.time.Duration;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import be.hyperrail.opentransportdata.common.contracts.DelayChange;
 import be.hyperrail.opentransportdata.common.contracts.TransportOccupancyLevel;
 import be.hyperrail.opentransportdata.common.models.Message;
 import be.hyperrail.opentransportdata.common.models.Route;
@@ -19,6 +24,7 @@ import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class RouteImplTest {
@@ -172,4 +178,36 @@ class RouteImplTest {
         assertArrayEquals(vehicleAlerts, route.getVehicleAlerts());
     }
 
-}
\ No newline at end of file
+    @Test
+    void withDelays_changedConnections_shouldOnlyUpdateTheirLegEnds() {
+        VehicleJourneyStub vehicle = Mockito.mock(VehicleJourneyStub.class);
+        StopLocation firstStation = Mockito.mock(StopLocation.class);
+        StopLocation secondStation = Mockito.mock(StopLocation.class);
+        StopLocation thirdStation = Mockito.mock(StopLocation.class);
+
+        RouteLeg firstLeg = new RouteLegImpl(RouteLegType.TRAIN, vehicle,
+                new RouteLegEndImpl(firstStation, new DateTime(0), "2", true, Duration.ZERO, false, false, "c1", TransportOccupancyLevel.UNKNOWN),
+                new RouteLegEndImpl(secondStation, new DateTime(100 * 1000), "4", true, Duration.ZERO, false, false, "c2", TransportOccupancyLevel.UNKNOWN),
+                null);
+        RouteLeg secondLeg = new RouteLegImpl(RouteLegType.TRAIN, vehicle,
+                new RouteLegEndImpl(secondStation, new DateTime(300 * 1000), "B", true, Duration.ZERO, false, false, "c3", TransportOccupancyLevel.UNKNOWN),
+                new RouteLegEndImpl(thirdStation, new DateTime(900 * 1000), "2A", true, Duration.ZERO, false, false, "c4", TransportOccupancyLevel.UNKNOWN),
+                null);
+        RouteImpl route = new RouteImpl(new RouteLeg[]{firstLeg, secondLeg});
+        Message[] alerts = new Message[]{Mockito.mock(Message.class)};
+        route.setAlerts(alerts);
+
+        Map<String, DelayChange> changes = new HashMap<>();
+        changes.put("c4", new DelayChange("c4", Duration.ZERO, Duration.ZERO, Duration.standardMinutes(1), Duration.standardMinutes(3)));
+        RouteImpl updated = route.withDelays(changes);
+
+        assertSame(firstLeg, updated.getLegs()[0]);
+        assertEquals(Duration.ZERO, updated.getLegs()[1].getDeparture().getDelay());
+        assertEquals(Duration.standardMinutes(3), updated.getArrivalDelay());
+        assertEquals("2A", updated.getArrivalPlatform());
+        assertArrayEquals(alerts, updated.getAlerts());
+        assertEquals(Duration.ZERO, route.getArrivalDelay());
+
+        assertSame(route, route.withDelays(Collections.<String, DelayChange>emptyMap()));
+    }
+}
@@ -0,0 +1,322 @@
+package be.hyperrail.opentransportdata.common.serialization;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Duration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import be.hyperrail.opentransportdata.common.contracts.QueryTimeDefinition;
+import be.hyperrail.opentransportdata.common.contracts.TransportOccupancyLevel;
+import be.hyperrail.opentransportdata.common.contracts.TransportStopsDataSource;
+import be.hyperrail.opentransportdata.common.exceptions.StopLocationNotResolvedException;
+import be.hyperrail.opentransportdata.common.models.Liveboard;
+import be.hyperrail.opentransportdata.common.models.LiveboardType;
+import be.hyperrail.opentransportdata.common.models.Message;
+import be.hyperrail.opentransportdata.common.models.Route;
+import be.hyperrail.opentransportdata.common.models.RouteLeg;
+import be.hyperrail.opentransportdata.common.models.RouteLegEnd;
+import be.hyperrail.opentransportdata.common.models.RouteLegType;
+import be.hyperrail.opentransportdata.common.models.RoutesList;
+import be.hyperrail.opentransportdata.common.models.StopLocation;
+import be.hyperrail.opentransportdata.common.models.VehicleJourneyStub;
+import be.hyperrail.opentransportdata.common.models.VehicleStop;
+import be.hyperrail.opentransportdata.common.models.VehicleStopType;
+import be.hyperrail.opentransportdata.common.models.implementation.LiveboardImpl;
+import be.hyperrail.opentransportdata.common.models.implementation.MessageImpl;
+import be.hyperrail.opentransportdata.common.models.implementation.RouteImpl;
+import be.hyperrail.opentransportdata.common.models.implementation.RouteLegEndImpl;
+import be.hyperrail.opentransportdata.common.models.implementation.RouteLegImpl;
+import be.hyperrail.opentransportdata.common.models.implementation.RoutesListImpl;
+import be.hyperrail.opentransportdata.common.models.implementation.StopLocationImpl;
+import be.hyperrail.opentransportdata.common.models.implementation.StringPagePointer;
+import be.hyperrail.opentransportdata.common.models.implementation.VehicleJourneyStubImpl;
+import be.hyperrail.opentransportdata.common.models.implementation.VehicleStopImpl;
+import be.hyperrail.opentransportdata.common.requests.LiveboardRequest;
+import be.hyperrail.opentransportdata.common.requests.RoutePlanningRequest;
+import be.hyperrail.opentransportdata.common.requests.VehicleRequest;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ModelCodecTest {
+
+    private static final DateTimeZone BRUSSELS = DateTimeZone.forID("Europe/Brussels");
+    private static final DateTime DEPARTURE = new DateTime(2018, 10, 18, 12, 4, BRUSSELS);
+
+    private StopLocation mBrussels;
+    private StopLocation mGhent;
+    private StopLocation mForeign;
+    private TransportStopsDataSource mStops;
+    private ModelCodec mCodec;
+
+    @BeforeEach
+    void setUp() throws StopLocationNotResolvedException {
+        mBrussels = createStation("008814001", "http://irail.be/stations/NMBS/008814001", "Brussel-Zuid");
+        mGhent = createStation("008892007", "http://irail.be/stations/NMBS/008892007", "Gent-Sint-Pieters");
+        mForeign = createStation("NL-ASD", "http://example.org/stations/NL-ASD", "Amsterdam Centraal");
+
+        mStops = Mockito.mock(TransportStopsDataSource.class);
+        Mockito.when(mStops.getStoplocationByHafasId("008814001")).thenReturn(mBrussels);
+        Mockito.when(mStops.getStoplocationByHafasId("008892007")).thenReturn(mGhent);
+        Mockito.when(mStops.getStoplocationBySemanticId("http://example.org/stations/NL-ASD")).thenReturn(mForeign);
+        mCodec = new ModelCodec(mStops);
+    }
+
+    @Test
+    void stopLocation_roundTrip_shouldResolveSameInstance() throws IOException {
+        assertSame(mBrussels, mCodec.decodeStopLocation(mCodec.encodeStopLocation(mBrussels)));
+        assertSame(mForeign, mCodec.decodeStopLocation(mCodec.encodeStopLocation(mForeign)));
+    }
+
+    @Test
+    void null_roundTrip_shouldReturnNull() throws IOException {
+        assertNull(mCodec.encodeLiveboard(null));
+        assertNull(mCodec.decodeLiveboard(null));
+        assertNull(mCodec.decodeRoute(mCodec.encodeRoute(null)));
+    }
+
+    @Test
+    void liveboard_roundTrip_shouldKeepAllValues() throws IOException {
+        LiveboardImpl liveboard = new LiveboardImpl(mBrussels, new VehicleStop[]{
+                createStop(mBrussels, "IC538", DEPARTURE, Duration.ZERO, false),
+                createStop(mBrussels, "S11786", DEPARTURE.plusMinutes(3), Duration.standardMinutes(4), true)
+        }, DEPARTURE.minusMinutes(1), LiveboardType.DEPARTURES, QueryTimeDefinition.EQUAL_OR_LATER);
+        liveboard.setPageInfo(new StringPagePointer("previous"), new StringPagePointer("current"), null);
+
+        Liveboard decoded = mCodec.decodeLiveboard(mCodec.encodeLiveboard(liveboard));
+
+        assertEquals(mBrussels, decoded);
+        assertEquals(liveboard.getSearchTime(), decoded.getSearchTime());
+        assertEquals(LiveboardType.DEPARTURES, decoded.getLiveboardType());
+        assertEquals(QueryTimeDefinition.EQUAL_OR_LATER, decoded.getTimeDefinition());
+        assertEquals("previous", decoded.getPreviousResultsPointer().getPointer());
+        assertEquals("current", decoded.getCurrentResultsPointer().getPointer());
+        assertNull(decoded.getNextResultsPointer());
+        assertEquals(2, decoded.getStops().length);
+        for (int i = 0; i < 2; i++) {
+            assertStopEquals(liveboard.getStops()[i], decoded.getStops()[i]);
+        }
+    }
+
+    @Test
+    void route_roundTrip_shouldKeepAllValues() throws IOException {
+        Route route = createRoute();
+
+        Route decoded = mCodec.decodeRoute(mCodec.encodeRoute(route));
+
+        assertEquals(route.getLegs().length, decoded.getLegs().length);
+        for (int i = 0; i < route.getLegs().length; i++) {
+            RouteLeg leg = route.getLegs()[i];
+            RouteLeg decodedLeg = decoded.getLegs()[i];
+            assertEquals(leg.getType(), decodedLeg.getType());
+            assertVehicleEquals(leg.getVehicleInformation(), decodedLeg.getVehicleInformation());
+            assertLegEndEquals(leg.getDeparture(), decodedLeg.getDeparture());
+            assertLegEndEquals(leg.getArrival(), decodedLeg.getArrival());
+        }
+        assertStopEquals(route.getLegs()[0].getintermediateStops()[0], decoded.getLegs()[0].getintermediateStops()[0]);
+        assertEquals(route.getDuration(), decoded.getDuration());
+        assertEquals(route.getTransferCount(), decoded.getTransferCount());
+        assertMessagesEqual(route.getAlerts(), decoded.getAlerts());
+        assertNull(decoded.getRemarks());
+        assertEquals(2, decoded.getVehicleAlerts().length);
+        assertNull(decoded.getVehicleAlerts()[0]);
+        assertMessagesEqual(route.getVehicleAlerts()[1], decoded.getVehicleAlerts()[1]);
+    }
+
+    @Test
+    void routesList_roundTrip_shouldKeepAllRoutes() throws IOException {
+        RoutesListImpl routes = new RoutesListImpl(mBrussels, mForeign, DEPARTURE, QueryTimeDefinition.EQUAL_OR_EARLIER, new Route[]{createRoute(), createRoute()});
+        routes.setPageInfo(null, null, new StringPagePointer("next"));
+
+        RoutesList decoded = mCodec.decodeRoutesList(mCodec.encodeRoutesList(routes));
+
+        assertSame(mBrussels, decoded.getOrigin());
+        assertSame(mForeign, decoded.getDestination());
+        assertEquals(DEPARTURE, decoded.getSearchTime());
+        assertEquals(QueryTimeDefinition.EQUAL_OR_EARLIER, decoded.getTimeDefinition());
+        assertEquals(2, decoded.getRoutes().length);
+        assertEquals("next", decoded.getNextResultsPointer().getPointer());
+    }
+
+    @Test
+    void routesList_otherType_shouldFail() {
+        RoutesList routes = new RoutesListImpl(mBrussels, mForeign, DEPARTURE, QueryTimeDefinition.EQUAL_OR_LATER, new Route[0]) {
+        };
+
+        assertFalse(ModelCodec.canEncode(routes));
+        assertThrows(IllegalArgumentException.class, () -> mCodec.encodeRoutesList(routes));
+    }
+
+    @Test
+    void routesList_otherPagePointer_shouldFail() {
+        RoutesListImpl routes = new RoutesListImpl(mBrussels, mForeign, DEPARTURE, QueryTimeDefinition.EQUAL_OR_LATER, new Route[0]);
+        routes.setPageInfo(null, null, () -> 42);
+
+        assertTrue(ModelCodec.canEncode(routes));
+        assertThrows(IllegalArgumentException.class, () -> mCodec.encodeRoutesList(routes));
+    }
+
+    @Test
+    void requests_roundTrip_shouldKeepParameters() throws IOException {
+        LiveboardRequest liveboardRequest = new LiveboardRequest(mGhent, QueryTimeDefinition.EQUAL_OR_EARLIER, LiveboardType.ARRIVALS, null);
+        LiveboardRequest decodedLiveboardRequest = mCodec.decodeLiveboardRequest(mCodec.encodeLiveboardRequest(liveboardRequest));
+        assertSame(mGhent, decodedLiveboardRequest.getStation());
+        assertEquals(QueryTimeDefinition.EQUAL_OR_EARLIER, decodedLiveboardRequest.getTimeDefinition());
+        assertEquals(LiveboardType.ARRIVALS, decodedLiveboardRequest.getType());
+        assertTrue(decodedLiveboardRequest.isNow());
+
+        RoutePlanningRequest routeRequest = new RoutePlanningRequest(mBrussels, mGhent, QueryTimeDefinition.EQUAL_OR_LATER, DEPARTURE);
+        RoutePlanningRequest decodedRouteRequest = mCodec.decodeRoutePlanningRequest(mCodec.encodeRoutePlanningRequest(routeRequest));
+        assertSame(mBrussels, decodedRouteRequest.getOrigin());
+        assertSame(mGhent, decodedRouteRequest.getDestination());
+        assertEquals(DEPARTURE, decodedRouteRequest.getSearchTime());
+
+        VehicleRequest vehicleRequest = new VehicleRequest("IC538", DEPARTURE);
+        vehicleRequest.setOrigin(mBrussels);
+        vehicleRequest.setDirection(mForeign);
+        VehicleRequest decodedVehicleRequest = mCodec.decodeVehicleRequest(mCodec.encodeVehicleRequest(vehicleRequest));
+        assertEquals("IC538", decodedVehicleRequest.getVehicleId());
+        assertEquals(DEPARTURE, decodedVehicleRequest.getSearchTime());
+        assertSame(mBrussels, decodedVehicleRequest.getOrigin());
+        assertNull(decodedVehicleRequest.getDepartureTime());
+        assertSame(mForeign, decodedVehicleRequest.getDirection());
+    }
+
+    @Test
+    void encodedLiveboard_shouldBeSmallerThanJavaSerialization() throws IOException {
+        VehicleStop[] stops = new VehicleStop[50];
+        for (int i = 0; i < stops.length; i++) {
+            stops[i] = createStop(mBrussels, "IC" + (500 + i), DEPARTURE.plusMinutes(i), Duration.ZERO, false);
+        }
+        LiveboardImpl liveboard = new LiveboardImpl(mBrussels, stops, DEPARTURE, LiveboardType.DEPARTURES, QueryTimeDefinition.EQUAL_OR_LATER);
+
+        // Most of the remaining size are the unique connection and vehicle URIs
+        int encoded = mCodec.encodeLiveboard(liveboard).length;
+        int serialized = javaSerializedSize(liveboard);
+        assertTrue(encoded * 2 < serialized, "Encoded liveboard takes " + encoded + " bytes, java serialization " + serialized + " bytes");
+    }
+
+    @Test
+    void decode_wrongType_shouldFail() throws IOException {
+        byte[] data = mCodec.encodeStopLocation(mBrussels);
+        assertThrows(IOException.class, () -> mCodec.decodeLiveboard(data));
+    }
+
+    @Test
+    void decode_truncatedData_shouldFail() throws IOException {
+        byte[] data = mCodec.encodeRoute(createRoute());
+        for (int length = 0; length < data.length; length++) {
+            byte[] truncated = Arrays.copyOf(data, length);
+            assertThrows(IOException.class, () -> mCodec.decodeRoute(truncated));
+        }
+    }
+
+    @Test
+    void decode_unknownStation_shouldFail() throws IOException, StopLocationNotResolvedException {
+        byte[] data = mCodec.encodeStopLocation(mGhent);
+        Mockito.when(mStops.getStoplocationByHafasId("008892007")).thenThrow(new StopLocationNotResolvedException("008892007"));
+        assertThrows(IOException.class, () -> mCodec.decodeStopLocation(data));
+    }
+
+    private Route createRoute() {
+        VehicleJourneyStub ic = createVehicle("IC538");
+        RouteLegEnd departure = new RouteLegEndImpl(mBrussels, DEPARTURE, "12", true, Duration.standardMinutes(2), false, true,
+                "http://irail.be/connections/8814001/20181018/IC538", TransportOccupancyLevel.MEDIUM);
+        RouteLegEnd transferArrival = new RouteLegEndImpl(mGhent, DEPARTURE.plusMinutes(30), "3", false, null, false, false, null, null);
+        RouteLegEnd transferDeparture = new RouteLegEndImpl(mGhent, DEPARTURE.plusMinutes(41), "4", true, Duration.ZERO, true, false, null, TransportOccupancyLevel.UNKNOWN);
+        RouteLegEnd arrival = new RouteLegEndImpl(mForeign, DEPARTURE.plusHours(3), null, true, Duration.ZERO, false, false, null, null);
+        RouteLeg first = new RouteLegImpl(RouteLegType.TRAIN, ic, departure, transferArrival,
+                new VehicleStop[]{createStop(mGhent, "IC538", DEPARTURE.plusMinutes(15), Duration.ZERO, false)});
+        RouteLeg second = new RouteLegImpl(RouteLegType.TRAIN, createVehicle("EUR9317"), transferDeparture, arrival, null);
+        RouteImpl route = new RouteImpl(new RouteLeg[]{first, second});
+        route.setAlerts(new Message[]{new MessageImpl("Works", "Works between Brussels and Ghent", "https://www.belgiantrain.be/")});
+        route.setVehicleAlerts(new Message[][]{null, {new MessageImpl("Delay", "Expect delays", null)}});
+        return route;
+    }
+
+    private static VehicleStop createStop(StopLocation station, String vehicleId, DateTime time, Duration delay, boolean canceled) {
+        return new VehicleStopImpl(station, createVehicle(vehicleId), "7", !canceled, time, time.minusMinutes(1), delay, delay,
+                canceled, false, true, false, "http://irail.be/connections/8814001/20181018/" + vehicleId,
+                TransportOccupancyLevel.LOW, VehicleStopType.STOP);
+    }
+
+    private static VehicleJourneyStub createVehicle(String id) {
+        return new VehicleJourneyStubImpl(id, "Oostende", id.substring(0, 2) + " " + id.substring(2), "http://irail.be/vehicle/" + id, id.substring(0, 2), id.substring(2));
+    }
+
+    private static StopLocation createStation(String hafasId, String uri, String name) {
+        HashMap<String, String> translations = new HashMap<>();
+        translations.put("en", name);
+        translations.put("fr", name);
+        return new StopLocationImpl(hafasId, uri, name, translations, name, "be", 50.8, 4.3, 3);
+    }
+
+    private static void assertStopEquals(VehicleStop expected, VehicleStop actual) {
+        assertSame(expected.getStopLocation(), actual.getStopLocation());
+        assertVehicleEquals(expected.getVehicle(), actual.getVehicle());
+        assertEquals(expected.getPlatform(), actual.getPlatform());
+        assertEquals(expected.isPlatformNormal(), actual.isPlatformNormal());
+        assertEquals(expected.getDepartureTime(), actual.getDepartureTime());
+        assertEquals(expected.getArrivalTime(), actual.getArrivalTime());
+        assertEquals(expected.getDepartureDelay(), actual.getDepartureDelay());
+        assertEquals(expected.getArrivalDelay(), actual.getArrivalDelay());
+        assertEquals(expected.isDepartureCanceled(), actual.isDepartureCanceled());
+        assertEquals(expected.isArrivalCanceled(), actual.isArrivalCanceled());
+        assertEquals(expected.hasArrived(), actual.hasArrived());
+        assertEquals(expected.hasLeft(), actual.hasLeft());
+        assertEquals(expected.getDepartureUri(), actual.getDepartureUri());
+        assertEquals(expected.getOccupancyLevel(), actual.getOccupancyLevel());
+        assertEquals(expected.getType(), actual.getType());
+    }
+
+    private static void assertLegEndEquals(RouteLegEnd expected, RouteLegEnd actual) {
+        assertSame(expected.getStation(), actual.getStation());
+        assertEquals(expected.getTime(), actual.getTime());
+        assertEquals(expected.getPlatform(), actual.getPlatform());
+        assertEquals(expected.isPlatformNormal(), actual.isPlatformNormal());
+        assertEquals(expected.getDelay(), actual.getDelay());
+        assertEquals(expected.isCanceled(), actual.isCanceled());
+        assertEquals(expected.isCompletedByVehicle(), actual.isCompletedByVehicle());
+        assertEquals(expected.getSemanticId(), actual.getSemanticId());
+        assertEquals(expected.getOccupancyLevel(), actual.getOccupancyLevel());
+    }
+
+    private static void assertVehicleEquals(VehicleJourneyStub expected, VehicleJourneyStub actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getHeadsign(), actual.getHeadsign());
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getSemanticId(), actual.getSemanticId());
+        assertEquals(expected.getType(), actual.getType());
+        assertEquals(expected.getNumber(), actual.getNumber());
+    }
+
+    private static void assertMessagesEqual(Message[] expected, Message[] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertArrayEquals(new String[]{expected[i].getHeader(), expected[i].getDescription(), expected[i].getLink()},
+                    new String[]{actual[i].getHeader(), actual[i].getDescription(), actual[i].getLink()});
+        }
+    }
+
+    private static int javaSerializedSize(Serializable object) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ObjectOutputStream objectOut = new ObjectOutputStream(out);
+        objectOut.writeObject(object);
+        objectOut.close();
+        return out.size();
+    }
+}
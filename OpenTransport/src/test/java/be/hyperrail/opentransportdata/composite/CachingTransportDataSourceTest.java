@@ -0,0 +1,247 @@
+package be.hyperrail.opentransportdata.composite;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import be.hyperrail.opentransportdata.common.contracts.QueryTimeDefinition;
+import be.hyperrail.opentransportdata.common.contracts.TransportDataSource;
+import be.hyperrail.opentransportdata.common.models.Liveboard;
+import be.hyperrail.opentransportdata.common.models.LiveboardType;
+import be.hyperrail.opentransportdata.common.models.StopLocation;
+import be.hyperrail.opentransportdata.common.models.VehicleStop;
+import be.hyperrail.opentransportdata.common.requests.LiveboardRequest;
+import be.hyperrail.opentransportdata.common.requests.RequestType;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CachingTransportDataSourceTest {
+
+    private static final long NOW = new DateTime(2018, 10, 18, 12, 0).getMillis();
+
+    private TransportDataSource mSource;
+    private ResultCacheConfiguration mConfiguration;
+    private CachingTransportDataSource mDataSource;
+    private StopLocation mStation;
+
+    private final List<Liveboard> mResults = new ArrayList<>();
+    private final List<Exception> mErrors = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        DateTimeUtils.setCurrentMillisFixed(NOW);
+        mSource = Mockito.mock(TransportDataSource.class);
+        mStation = createStation("008814001");
+        mConfiguration = new ResultCacheConfiguration();
+        mDataSource = new CachingTransportDataSource(mSource, mConfiguration);
+    }
+
+    @AfterEach
+    void tearDown() {
+        DateTimeUtils.setCurrentMillisSystem();
+    }
+
+    @Test
+    void identicalRequest_shouldBeAnsweredFromCache() {
+        mDataSource.getLiveboard(createRequest(mStation, NOW));
+        Liveboard result = createLiveboard(10);
+        captureLiveboardRequests(1).get(0).notifySuccessListeners(result);
+
+        mDataSource.getLiveboard(createRequest(mStation, NOW + 10 * 1000));
+
+        captureLiveboardRequests(1);
+        assertEquals(2, mResults.size());
+        assertSame(result, mResults.get(1));
+    }
+
+    @Test
+    void differentTimeBucket_shouldQuerySource() {
+        mDataSource.getLiveboard(createRequest(mStation, NOW));
+        captureLiveboardRequests(1).get(0).notifySuccessListeners(createLiveboard(10));
+
+        mDataSource.getLiveboard(createRequest(mStation, NOW + 2 * 60 * 1000));
+        captureLiveboardRequests(2);
+    }
+
+    @Test
+    void differentStation_shouldQuerySource() {
+        mDataSource.getLiveboard(createRequest(mStation, NOW));
+        captureLiveboardRequests(1).get(0).notifySuccessListeners(createLiveboard(10));
+
+        mDataSource.getLiveboard(createRequest(createStation("008892007"), NOW));
+        captureLiveboardRequests(2);
+    }
+
+    @Test
+    void expiredResult_shouldQuerySource() {
+        mConfiguration.setTimeToLive(RequestType.LIVEBOARD, 1000);
+        mDataSource.getLiveboard(createRequest(mStation, NOW));
+        captureLiveboardRequests(1).get(0).notifySuccessListeners(createLiveboard(10));
+
+        DateTimeUtils.setCurrentMillisFixed(NOW + 1000);
+        mDataSource.getLiveboard(createRequest(mStation, NOW));
+        captureLiveboardRequests(2);
+        assertEquals(0, mDataSource.getCachedBytes());
+    }
+
+    @Test
+    void disabledType_shouldPassRequestThrough() {
+        mConfiguration.setTimeToLive(RequestType.LIVEBOARD, 0);
+        LiveboardRequest request = createRequest(mStation, NOW);
+        mDataSource.getLiveboard(request);
+
+        assertSame(request, captureLiveboardRequests(1).get(0));
+    }
+
+    @Test
+    void concurrentIdenticalRequests_shouldShareOneQuery() {
+        mDataSource.getLiveboard(createRequest(mStation, NOW));
+        mDataSource.getLiveboard(createRequest(mStation, NOW));
+        mDataSource.getLiveboard(createRequest(mStation, NOW));
+
+        Liveboard result = createLiveboard(10);
+        captureLiveboardRequests(1).get(0).notifySuccessListeners(result);
+
+        assertEquals(3, mResults.size());
+        for (Liveboard liveboard : mResults) {
+            assertSame(result, liveboard);
+        }
+    }
+
+    @Test
+    void concurrentIdenticalRequests_errorIsPassedToAllAndNotCached() {
+        mDataSource.getLiveboard(createRequest(mStation, NOW));
+        mDataSource.getLiveboard(createRequest(mStation, NOW));
+
+        Exception error = new Exception("Network error");
+        captureLiveboardRequests(1).get(0).notifyErrorListeners(error);
+        assertEquals(2, mErrors.size());
+        assertTrue(mResults.isEmpty());
+
+        mDataSource.getLiveboard(createRequest(mStation, NOW));
+        captureLiveboardRequests(2);
+    }
+
+    @Test
+    void budgetExceeded_shouldEvictLeastRecentlyUsed() {
+        long size = CachingTransportDataSource.estimateSize(createLiveboard(10));
+        mConfiguration.setMaxBytes(2 * size);
+        StopLocation second = createStation("008892007");
+        StopLocation third = createStation("008821006");
+
+        mDataSource.getLiveboard(createRequest(mStation, NOW));
+        captureLiveboardRequests(1).get(0).notifySuccessListeners(createLiveboard(10));
+        mDataSource.getLiveboard(createRequest(second, NOW));
+        captureLiveboardRequests(2).get(1).notifySuccessListeners(createLiveboard(10));
+
+        // Use the first result, so the second one is the least recently used
+        mDataSource.getLiveboard(createRequest(mStation, NOW));
+        mDataSource.getLiveboard(createRequest(third, NOW));
+        captureLiveboardRequests(3).get(2).notifySuccessListeners(createLiveboard(10));
+        assertEquals(2 * size, mDataSource.getCachedBytes());
+
+        mDataSource.getLiveboard(createRequest(mStation, NOW));
+        captureLiveboardRequests(3);
+        mDataSource.getLiveboard(createRequest(second, NOW));
+        captureLiveboardRequests(4);
+    }
+
+    @Test
+    void abortedQuery_shouldNotifyWaitingRequestsAndQueryAgain() {
+        mDataSource.getLiveboard(createRequest(mStation, NOW));
+        LiveboardRequest query = captureLiveboardRequests(1).get(0);
+
+        mDataSource.abortQueries(RequestType.LIVEBOARD);
+        Mockito.verify(mSource).abortQueries(RequestType.LIVEBOARD);
+        assertTrue(query.isCanceled());
+        assertEquals(1, mErrors.size());
+        assertTrue(mErrors.get(0) instanceof CancellationException);
+
+        // The same request is sent to the source again instead of waiting for the aborted query
+        mDataSource.getLiveboard(createRequest(mStation, NOW));
+        Liveboard result = createLiveboard(10);
+        captureLiveboardRequests(2).get(1).notifySuccessListeners(result);
+        assertEquals(1, mResults.size());
+        assertSame(result, mResults.get(0));
+    }
+
+    @Test
+    void abortedOtherType_shouldKeepWaiting() {
+        mDataSource.getLiveboard(createRequest(mStation, NOW));
+        mDataSource.abortQueries(RequestType.ROUTEPLANNING);
+
+        captureLiveboardRequests(1).get(0).notifySuccessListeners(createLiveboard(10));
+        assertEquals(1, mResults.size());
+        assertTrue(mErrors.isEmpty());
+    }
+
+    @Test
+    void allWaitingRequestsCanceled_shouldCancelQuery() {
+        LiveboardRequest first = createRequest(mStation, NOW);
+        LiveboardRequest second = createRequest(mStation, NOW);
+        mDataSource.getLiveboard(first);
+        mDataSource.getLiveboard(second);
+        LiveboardRequest query = captureLiveboardRequests(1).get(0);
+
+        first.cancel();
+        assertFalse(query.isCanceled());
+        second.cancel();
+        assertTrue(query.isCanceled());
+
+        // A new identical request doesn't wait for the cancelled query
+        mDataSource.getLiveboard(createRequest(mStation, NOW));
+        captureLiveboardRequests(2);
+    }
+
+    @Test
+    void bypassedCache_shouldQuerySourceAndCacheResult() {
+        mDataSource.getLiveboard(createRequest(mStation, NOW));
+        captureLiveboardRequests(1).get(0).notifySuccessListeners(createLiveboard(10));
+
+        LiveboardRequest refresh = createRequest(mStation, NOW);
+        refresh.setCacheBypassed(true);
+        mDataSource.getLiveboard(refresh);
+        Liveboard refreshed = createLiveboard(12);
+        captureLiveboardRequests(2).get(1).notifySuccessListeners(refreshed);
+        assertSame(refreshed, mResults.get(1));
+
+        mDataSource.getLiveboard(createRequest(mStation, NOW));
+        captureLiveboardRequests(2);
+        assertSame(refreshed, mResults.get(2));
+    }
+
+    private LiveboardRequest createRequest(StopLocation station, long searchTime) {
+        LiveboardRequest request = new LiveboardRequest(station, QueryTimeDefinition.EQUAL_OR_LATER, LiveboardType.DEPARTURES, new DateTime(searchTime));
+        request.setCallback((data, tag) -> mResults.add(data), (e, tag) -> mErrors.add(e), null);
+        return request;
+    }
+
+    private static StopLocation createStation(String id) {
+        StopLocation station = Mockito.mock(StopLocation.class);
+        Mockito.when(station.getSemanticId()).thenReturn("http://irail.be/stations/NMBS/" + id);
+        return station;
+    }
+
+    private static Liveboard createLiveboard(int stops) {
+        Liveboard liveboard = Mockito.mock(Liveboard.class);
+        Mockito.when(liveboard.getStops()).thenReturn(new VehicleStop[stops]);
+        return liveboard;
+    }
+
+    private List<LiveboardRequest> captureLiveboardRequests(int expectedCount) {
+        ArgumentCaptor<LiveboardRequest> captor = ArgumentCaptor.forClass(LiveboardRequest.class);
+        Mockito.verify(mSource, Mockito.times(expectedCount)).getLiveboard(captor.capture());
+        return captor.getAllValues();
+    }
+}
@@ -0,0 +1,193 @@
+package be.hyperrail.opentransportdata.composite;
+
+import org.joda.time.DateTime;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import be.hyperrail.opentransportdata.common.contracts.QueryTimeDefinition;
+import be.hyperrail.opentransportdata.common.contracts.TransportDataSource;
+import be.hyperrail.opentransportdata.common.models.Liveboard;
+import be.hyperrail.opentransportdata.common.models.LiveboardType;
+import be.hyperrail.opentransportdata.common.models.StopLocation;
+import be.hyperrail.opentransportdata.common.requests.ActualDisturbancesRequest;
+import be.hyperrail.opentransportdata.common.requests.ExtendLiveboardRequest;
+import be.hyperrail.opentransportdata.common.requests.LiveboardRequest;
+import be.hyperrail.opentransportdata.common.requests.RequestType;
+import be.hyperrail.opentransportdata.common.requests.ResultExtensionType;
+import be.hyperrail.opentransportdata.metrics.OpenTransportMetrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RacingTransportDataSourceTest {
+
+    private TransportDataSource mPrimary;
+    private TransportDataSource mSecondary;
+    private ScheduledExecutorService mScheduler;
+    private RacingTransportDataSource mDataSource;
+    private final OpenTransportMetrics mMetrics = new OpenTransportMetrics();
+
+    private final List<Liveboard> mResults = new ArrayList<>();
+    private final List<Exception> mErrors = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        mPrimary = Mockito.mock(TransportDataSource.class);
+        mSecondary = Mockito.mock(TransportDataSource.class);
+        mScheduler = Executors.newSingleThreadScheduledExecutor();
+        mDataSource = new RacingTransportDataSource(mPrimary, mSecondary, mScheduler, mMetrics);
+    }
+
+    @AfterEach
+    void tearDown() {
+        mScheduler.shutdownNow();
+    }
+
+    @Test
+    void defaultStrategy_shouldOnlyUsePrimary() {
+        LiveboardRequest request = createRequest();
+        mDataSource.getLiveboard(request);
+
+        Mockito.verify(mPrimary).getLiveboard(request);
+        Mockito.verifyZeroInteractions(mSecondary);
+    }
+
+    @Test
+    void secondaryStrategy_shouldOnlyUseSecondary() {
+        mDataSource.setStrategy(RequestType.DISTURBANCES, RacingTransportDataSource.Strategy.SECONDARY);
+        ActualDisturbancesRequest request = new ActualDisturbancesRequest();
+        mDataSource.getActualDisturbances(request);
+
+        Mockito.verify(mSecondary).getActualDisturbances(request);
+        Mockito.verifyZeroInteractions(mPrimary);
+    }
+
+    @Test
+    void race_firstSuccessWins_laterResponsesAreIgnored() {
+        mDataSource.setStrategy(RequestType.LIVEBOARD, RacingTransportDataSource.Strategy.RACE);
+
+        mDataSource.getLiveboard(createRequest());
+        LiveboardRequest primaryAttempt = captureLiveboardRequest(mPrimary);
+        LiveboardRequest secondaryAttempt = captureLiveboardRequest(mSecondary);
+        assertNotSame(primaryAttempt, secondaryAttempt);
+
+        Liveboard secondaryResult = Mockito.mock(Liveboard.class);
+        secondaryAttempt.notifySuccessListeners(secondaryResult);
+        primaryAttempt.notifySuccessListeners(Mockito.mock(Liveboard.class));
+
+        assertEquals(1, mResults.size());
+        assertSame(secondaryResult, mResults.get(0));
+        assertEquals(1, mMetrics.getMetrics(RequestType.LIVEBOARD).getSecondaryWins());
+    }
+
+    @Test
+    void race_partialResults_shouldOnlyComeFromFirstSource() {
+        mDataSource.setStrategy(RequestType.LIVEBOARD, RacingTransportDataSource.Strategy.RACE);
+        List<Liveboard> partialResults = new ArrayList<>();
+        LiveboardRequest request = createRequest();
+        request.setOnPartialResponseListener((data, tag) -> partialResults.add(data));
+
+        mDataSource.getLiveboard(request);
+        LiveboardRequest primaryAttempt = captureLiveboardRequest(mPrimary);
+        LiveboardRequest secondaryAttempt = captureLiveboardRequest(mSecondary);
+
+        Liveboard partial = Mockito.mock(Liveboard.class);
+        secondaryAttempt.notifyPartialResponseListeners(partial);
+        primaryAttempt.notifyPartialResponseListeners(Mockito.mock(Liveboard.class));
+        primaryAttempt.notifySuccessListeners(Mockito.mock(Liveboard.class));
+        secondaryAttempt.notifyPartialResponseListeners(Mockito.mock(Liveboard.class));
+
+        assertEquals(1, partialResults.size());
+        assertSame(partial, partialResults.get(0));
+        assertEquals(1, mResults.size());
+    }
+
+    @Test
+    void race_oneFails_shouldWaitForOther() {
+        mDataSource.setStrategy(RequestType.LIVEBOARD, RacingTransportDataSource.Strategy.RACE);
+
+        mDataSource.getLiveboard(createRequest());
+        captureLiveboardRequest(mPrimary).notifyErrorListeners(new Exception("primary"));
+        assertTrue(mErrors.isEmpty());
+
+        Exception secondaryError = new Exception("secondary");
+        captureLiveboardRequest(mSecondary).notifyErrorListeners(secondaryError);
+        assertEquals(1, mErrors.size());
+        assertSame(secondaryError, mErrors.get(0));
+        assertTrue(mResults.isEmpty());
+    }
+
+    @Test
+    void fallback_primaryFails_shouldStartSecondaryImmediately() {
+        mDataSource.setStrategy(RequestType.LIVEBOARD, RacingTransportDataSource.Strategy.FALLBACK, 60000);
+
+        mDataSource.getLiveboard(createRequest());
+        Mockito.verifyZeroInteractions(mSecondary);
+
+        captureLiveboardRequest(mPrimary).notifyErrorListeners(new Exception("primary"));
+        Liveboard result = Mockito.mock(Liveboard.class);
+        captureLiveboardRequest(mSecondary).notifySuccessListeners(result);
+
+        assertEquals(1, mResults.size());
+        assertSame(result, mResults.get(0));
+        assertTrue(mErrors.isEmpty());
+    }
+
+    @Test
+    void fallback_deadlinePassed_shouldStartSecondary() {
+        mDataSource.setStrategy(RequestType.LIVEBOARD, RacingTransportDataSource.Strategy.FALLBACK, 10);
+
+        mDataSource.getLiveboard(createRequest());
+        Mockito.verify(mSecondary, Mockito.timeout(2000)).getLiveboard(Mockito.any(LiveboardRequest.class));
+    }
+
+    @Test
+    void fallback_primaryAnswersInTime_shouldNotStartSecondary() throws InterruptedException {
+        mDataSource.setStrategy(RequestType.LIVEBOARD, RacingTransportDataSource.Strategy.FALLBACK, 300);
+        Liveboard result = Mockito.mock(Liveboard.class);
+
+        mDataSource.getLiveboard(createRequest());
+        captureLiveboardRequest(mPrimary).notifySuccessListeners(result);
+
+        // Wait until the deadline has passed
+        mScheduler.awaitTermination(600, TimeUnit.MILLISECONDS);
+        Mockito.verifyZeroInteractions(mSecondary);
+        assertEquals(1, mResults.size());
+    }
+
+    @Test
+    void extend_shouldUseSourceWhichCreatedResult() {
+        mDataSource.setStrategy(RequestType.LIVEBOARD, RacingTransportDataSource.Strategy.RACE);
+        mDataSource.getLiveboard(createRequest());
+        captureLiveboardRequest(mSecondary).notifySuccessListeners(Mockito.mock(Liveboard.class));
+
+        ExtendLiveboardRequest extendRequest = new ExtendLiveboardRequest(mResults.get(0), ResultExtensionType.APPEND);
+        mDataSource.extendLiveboard(extendRequest);
+
+        Mockito.verify(mSecondary).extendLiveboard(extendRequest);
+        Mockito.verify(mPrimary, Mockito.never()).extendLiveboard(Mockito.any(ExtendLiveboardRequest.class));
+    }
+
+    private LiveboardRequest createRequest() {
+        LiveboardRequest request = new LiveboardRequest(Mockito.mock(StopLocation.class), QueryTimeDefinition.EQUAL_OR_LATER, LiveboardType.DEPARTURES, new DateTime());
+        request.setCallback((data, tag) -> mResults.add(data), (e, tag) -> mErrors.add(e), null);
+        return request;
+    }
+
+    private static LiveboardRequest captureLiveboardRequest(TransportDataSource source) {
+        ArgumentCaptor<LiveboardRequest> captor = ArgumentCaptor.forClass(LiveboardRequest.class);
+        Mockito.verify(source).getLiveboard(captor.capture());
+        return captor.getValue();
+    }
+}
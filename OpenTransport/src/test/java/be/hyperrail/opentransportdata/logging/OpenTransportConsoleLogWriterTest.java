@@ -0,0 +1,40 @@
+package be.hyperrail.opentransportdata.logging;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.logging.Level;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OpenTransportConsoleLogWriterTest {
+
+    @AfterEach
+    void tearDown() {
+        OpenTransportLog.initLogWriter(null);
+    }
+
+    @Test
+    void isLoggable_belowMinimumLevel_shouldBeFalse() {
+        OpenTransportConsoleLogWriter writer = new OpenTransportConsoleLogWriter(Level.INFO);
+
+        assertFalse(writer.isLoggable(Level.FINE, "Test"));
+        assertTrue(writer.isLoggable(Level.INFO, "Test"));
+        assertTrue(writer.isLoggable(Level.SEVERE, "Test"));
+    }
+
+    @Test
+    void isDebugEnabled_minimumLevelAll_shouldBeTrue() {
+        OpenTransportLog.initLogWriter(new OpenTransportConsoleLogWriter(Level.ALL));
+
+        assertTrue(OpenTransportLog.getLogger(OpenTransportConsoleLogWriterTest.class).isDebugEnabled());
+    }
+
+    @Test
+    void isDebugEnabled_minimumLevelInfo_shouldBeFalse() {
+        OpenTransportLog.initLogWriter(new OpenTransportConsoleLogWriter(Level.INFO));
+
+        assertFalse(OpenTransportLog.getLogger(OpenTransportConsoleLogWriterTest.class).isDebugEnabled());
+    }
+}
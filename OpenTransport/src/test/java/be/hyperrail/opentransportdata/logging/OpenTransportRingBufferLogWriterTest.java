@@ -0,0 +1,75 @@
+package be.hyperrail.opentransportdata.logging;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.logging.Level;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+class OpenTransportRingBufferLogWriterTest {
+
+    @AfterEach
+    void tearDown() {
+        OpenTransportLog.initLogWriter(null);
+    }
+
+    @Test
+    void log_fullBuffer_shouldKeepMostRecentMessages() {
+        OpenTransportRingBufferLogWriter writer = new OpenTransportRingBufferLogWriter(3, Level.ALL);
+        for (int i = 0; i < 5; i++) {
+            writer.info("Test", "message " + i);
+        }
+
+        List<OpenTransportRingBufferLogWriter.Entry> entries = writer.getEntries();
+        assertEquals(3, entries.size());
+        assertEquals("message 2", entries.get(0).getMessage());
+        assertEquals("message 4", entries.get(2).getMessage());
+        assertEquals("[INFO] [Test] message 4", entries.get(2).toString());
+    }
+
+    @Test
+    void log_belowMinimumLevel_shouldBeDropped() {
+        OpenTransportRingBufferLogWriter writer = new OpenTransportRingBufferLogWriter(10, Level.INFO);
+        writer.debug("Test", "debug");
+        writer.warning("Test", "warning");
+
+        assertFalse(writer.isLoggable(Level.FINE, "Test"));
+        assertTrue(writer.isLoggable(Level.SEVERE, "Test"));
+        assertEquals(1, writer.getEntries().size());
+        assertEquals(Level.WARNING, writer.getEntries().get(0).getPriority());
+    }
+
+    @Test
+    void logException_shouldKeepThrowable() {
+        OpenTransportRingBufferLogWriter writer = new OpenTransportRingBufferLogWriter(10, Level.WARNING);
+        IllegalStateException exception = new IllegalStateException("failed");
+        writer.logException("Test", exception);
+
+        assertSame(exception, writer.getEntries().get(0).getThrowable());
+        writer.clear();
+        assertTrue(writer.getEntries().isEmpty());
+    }
+
+    @Test
+    void openTransportLog_disabledLevel_shouldNotBuildMessage() {
+        OpenTransportRingBufferLogWriter writer = new OpenTransportRingBufferLogWriter(10, Level.INFO);
+        OpenTransportLog.initLogWriter(writer);
+        OpenTransportLog log = OpenTransportLog.getLogger(OpenTransportRingBufferLogWriterTest.class);
+
+        log.debug(() -> {
+            fail("Disabled messages should not be built");
+            return null;
+        });
+        log.info(() -> "enabled");
+
+        assertFalse(log.isDebugEnabled());
+        assertEquals(1, writer.getEntries().size());
+        assertEquals("OpenTransportRingBufferLogWriterTest", writer.getEntries().get(0).getTag());
+    }
+}
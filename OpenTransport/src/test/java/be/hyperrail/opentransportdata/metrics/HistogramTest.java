@@ -0,0 +1,46 @@
+package be.hyperrail.opentransportdata.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HistogramTest {
+
+    @Test
+    void getBucket_powersOfTwo_shouldStartNewBucket() {
+        assertEquals(0, Histogram.getBucket(0));
+        assertEquals(1, Histogram.getBucket(1));
+        assertEquals(2, Histogram.getBucket(2));
+        assertEquals(2, Histogram.getBucket(3));
+        assertEquals(3, Histogram.getBucket(4));
+        assertEquals(Histogram.BUCKETS - 1, Histogram.getBucket(Long.MAX_VALUE));
+    }
+
+    @Test
+    void record_negativeValue_shouldBeIgnored() {
+        Histogram histogram = new Histogram();
+        histogram.record(-1);
+        assertEquals(0, histogram.snapshot().getCount());
+        assertEquals(0, histogram.snapshot().getPercentile(50));
+    }
+
+    @Test
+    void snapshot_afterRecording_shouldReturnCorrectValues() {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(100, snapshot.getCount());
+        assertEquals(5050, snapshot.getSum());
+        assertEquals(100, snapshot.getMax());
+        assertEquals(50.5, snapshot.getMean(), 0.001);
+
+        // Percentiles are estimated by the upper bound of their bucket
+        long p50 = snapshot.getPercentile(50);
+        assertTrue(p50 >= 50 && p50 <= 63);
+        assertEquals(100, snapshot.getPercentile(99));
+    }
+}
@@ -0,0 +1,131 @@
+package be.hyperrail.opentransportdata.metrics;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import be.hyperrail.opentransportdata.common.contracts.MeteredDataSource;
+import be.hyperrail.opentransportdata.common.contracts.MeteredDataSource.MeteredRequest;
+import be.hyperrail.opentransportdata.common.requests.RequestType;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OpenTransportMetricsTest {
+
+    private final OpenTransportMetrics mMetrics = new OpenTransportMetrics();
+
+    @Test
+    void track_moreThanRingSize_shouldKeepMostRecentRequests() {
+        MeteredRequest last = null;
+        for (int i = 0; i < OpenTransportMetrics.RECENT_REQUESTS + 10; i++) {
+            last = new MeteredRequest();
+            last.setTag("request " + i);
+            mMetrics.track(last);
+        }
+
+        MeteredRequest[] recent = mMetrics.getRecentRequests();
+        assertEquals(OpenTransportMetrics.RECENT_REQUESTS, recent.length);
+        assertSame(last, recent[recent.length - 1]);
+    }
+
+    @Test
+    void record_requestType_shouldUpdateMetricsForThatType() {
+        RequestTypeMetrics metrics = mMetrics.getMetrics(RequestType.VEHICLECOMPOSITION);
+        MeteredRequest request = new MeteredRequest();
+        request.setMetrics(mMetrics);
+        request.setRequestType(RequestType.VEHICLECOMPOSITION);
+        request.setMsecStart(1000);
+        request.setResponseType(MeteredDataSource.RESPONSE_CACHED);
+        request.setResponseType(MeteredDataSource.RESPONSE_ONLINE);
+        request.addPageFetched();
+        request.addPageFetched();
+        request.addPageFetched();
+        request.setMsecUsableNetworkResponse(1020);
+        request.setMsecParsed(1120);
+        // A request is only recorded once
+        request.setMsecParsed(1200);
+
+        assertEquals(1, metrics.getTimeToUsableResult().snapshot().getCount());
+        assertEquals(1, metrics.getResponseTypeCount(MeteredDataSource.RESPONSE_CACHED));
+        assertEquals(1, metrics.getResponseTypeCount(MeteredDataSource.RESPONSE_ONLINE));
+        assertEquals(3, metrics.getPagesFetched().snapshot().getMax());
+    }
+
+    @Test
+    void addTransfer_multipleCalls_shouldSumBytesPerRequest() {
+        RequestTypeMetrics metrics = mMetrics.getMetrics(RequestType.DISTURBANCES);
+        MeteredRequest request = new MeteredRequest();
+        request.setMetrics(mMetrics);
+        request.setRequestType(RequestType.DISTURBANCES);
+        request.setMsecStart(1000);
+        request.addTransfer(200, 1000, 8000);
+        request.addTransfer(250, 1500, 12000);
+        request.setMsecParsed(1100);
+
+        assertEquals(450, request.getBytesSent());
+        assertEquals(2500, request.getBytesReceived());
+        assertEquals(20000, request.getBytesDecompressed());
+        assertEquals(2500, metrics.getBytesReceived().snapshot().getSum());
+        assertEquals(20000, metrics.getBytesDecompressed().snapshot().getSum());
+    }
+
+    @Test
+    void snapshot_export_shouldContainAllTypes() throws Exception {
+        MeteredRequest liveboard = new MeteredRequest();
+        mMetrics.track(liveboard);
+        liveboard.setRequestType(RequestType.LIVEBOARD);
+        liveboard.setMsecStart(1000);
+        liveboard.setResponseType(MeteredDataSource.RESPONSE_ONLINE);
+        liveboard.addCacheTierHit(MeteredDataSource.CACHE_TIER_MEMORY);
+        liveboard.addCacheTierHit(MeteredDataSource.CACHE_TIER_MEMORY);
+        liveboard.setMsecUsableNetworkResponse(1010);
+        liveboard.setMsecParsed(1050);
+
+        MeteredRequest other = new MeteredRequest();
+        mMetrics.track(other);
+        other.setMsecStart(1000);
+        other.setResponseType(MeteredDataSource.RESPONSE_FAILED);
+        other.setMsecParsed(1030);
+
+        MetricsSnapshot snapshot = mMetrics.snapshot();
+
+        String csv = snapshot.toCsv();
+        assertTrue(csv.startsWith("type,metric,count,sum,mean,p50,p90,p99,max\n"));
+        assertTrue(csv.contains("LIVEBOARD,time_to_usable_result,"));
+        assertTrue(csv.contains("OTHER,pages_fetched,"));
+        assertTrue(csv.contains("LIVEBOARD,bytes_received,"));
+        assertTrue(csv.contains("type,response_type,count\n"));
+        assertTrue(csv.contains("LIVEBOARD,memory,2\n"));
+
+        JSONObject json = snapshot.toJson();
+        JSONObject types = json.getJSONObject("types");
+        for (RequestType type : RequestType.values()) {
+            assertTrue(types.has(type.name()));
+        }
+        assertEquals(1, types.getJSONObject("LIVEBOARD").getJSONObject("time_to_usable_result").getLong("count"));
+        assertEquals(1, types.getJSONObject("OTHER").getJSONObject("response_types").getLong("failed"));
+        assertEquals(2, types.getJSONObject("LIVEBOARD").getJSONObject("cache_tiers").getLong("memory"));
+        assertEquals(2, json.getJSONArray("recent").length());
+    }
+
+    @Test
+    void record_cacheTierHits_shouldBeCountedPerTier() {
+        MeteredRequest request = new MeteredRequest();
+        request.setMetrics(mMetrics);
+        request.setRequestType(RequestType.ROUTEPLANNING);
+        request.addCacheTierHit(MeteredDataSource.CACHE_TIER_MEMORY);
+        request.addCacheTierHit(MeteredDataSource.CACHE_TIER_OFFLINE);
+        request.addCacheTierHit(MeteredDataSource.CACHE_TIER_NETWORK);
+        request.addCacheTierHit(MeteredDataSource.CACHE_TIER_NETWORK);
+        request.setMsecParsed(1000);
+
+        RequestTypeMetrics metrics = mMetrics.getMetrics(RequestType.ROUTEPLANNING);
+        assertEquals(1, metrics.getCacheTierHits(MeteredDataSource.CACHE_TIER_MEMORY));
+        assertEquals(1, metrics.getCacheTierHits(MeteredDataSource.CACHE_TIER_OFFLINE));
+        assertEquals(0, metrics.getCacheTierHits(MeteredDataSource.CACHE_TIER_HTTP));
+        assertEquals(2, metrics.getCacheTierHits(MeteredDataSource.CACHE_TIER_NETWORK));
+        // The shared metrics are left untouched
+        assertEquals(0, new OpenTransportMetrics().getMetrics(RequestType.ROUTEPLANNING).getCacheTierHits(MeteredDataSource.CACHE_TIER_NETWORK));
+    }
+}
@@ -0,0 +1,146 @@
+package be.hyperrail.opentransportdata.tracing;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+import java.util.List;
+
+import be.hyperrail.opentransportdata.common.contracts.MeteredDataSource;
+import be.hyperrail.opentransportdata.common.contracts.MeteredDataSource.MeteredRequest;
+import be.hyperrail.opentransportdata.common.requests.RequestType;
+import be.hyperrail.opentransportdata.metrics.OpenTransportMetrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OpenTransportTracingTest {
+
+    private final InMemorySpanExporter mExporter = new InMemorySpanExporter();
+
+    @AfterEach
+    void tearDown() {
+        OpenTransportTracing.removeExporter(mExporter);
+    }
+
+    @Test
+    void startSpan_withoutExporters_shouldBeDisabled() {
+        Span span = OpenTransportTracing.startSpan("request");
+        span.setAttribute("key", "value");
+        span.end();
+
+        assertSame(Span.DISABLED, span);
+        assertSame(Span.DISABLED, span.startChild("page fetch"));
+        assertFalse(span.isRecording());
+        assertTrue(span.getAttributes().isEmpty());
+    }
+
+    @Test
+    void startChild_nestedSpans_shouldShareTrace() {
+        OpenTransportTracing.addExporter(mExporter);
+        Span request = OpenTransportTracing.startSpan("request");
+        Span page = request.startChild("page fetch");
+        Span parse = page.startChild("parse");
+        parse.end();
+        page.setAttribute("url", "https://example.com/page");
+        page.end();
+        request.end();
+        request.end();
+
+        List<Span> spans = mExporter.getSpans();
+        assertEquals(3, spans.size());
+        assertSame(parse, spans.get(0));
+        assertSame(request, spans.get(2));
+        assertSame(page, mExporter.getChildren(request).get(0));
+        assertSame(page, parse.getParent());
+        assertNull(request.getParent());
+        assertEquals(request.getId(), parse.getTraceId());
+        assertEquals("https://example.com/page", page.getAttributes().get("url"));
+        assertTrue(request.getDurationNanos() >= page.getDurationNanos());
+    }
+
+    @Test
+    void meteredRequest_recorded_shouldEndRequestSpan() {
+        OpenTransportTracing.addExporter(mExporter);
+        MeteredRequest request = new MeteredRequest();
+        request.setRequestType(RequestType.LIVEBOARD);
+        request.setTag("liveboard Brussels");
+        new OpenTransportMetrics().track(request);
+
+        OpenTransportTracing.startSpan("page fetch", OpenTransportTracing.getRequestSpan(request)).end();
+        request.setResponseType(MeteredDataSource.RESPONSE_CACHED);
+        request.setMsecParsed(1000);
+
+        List<Span> spans = mExporter.getSpans("request liveboard");
+        assertEquals(1, spans.size());
+        assertEquals("liveboard Brussels", spans.get(0).getAttributes().get("tag"));
+        assertEquals("Cached", spans.get(0).getAttributes().get("response"));
+        assertEquals(1, mExporter.getChildren(spans.get(0)).size());
+    }
+
+    @Test
+    void meteredRequest_failed_shouldEndRequestSpanOnce() {
+        OpenTransportTracing.addExporter(mExporter);
+        MeteredRequest request = new MeteredRequest();
+        request.setRequestType(RequestType.ROUTEPLANNING);
+        new OpenTransportMetrics().track(request);
+
+        request.setFailed(1000);
+        request.setMsecParsed(2000);
+
+        List<Span> spans = mExporter.getSpans("request routeplanning");
+        assertEquals(1, spans.size());
+        assertTrue(spans.get(0).isFailed());
+        assertEquals("Failed", spans.get(0).getAttributes().get("response"));
+        assertEquals(1000, request.getMsecParsed());
+    }
+
+    @Test
+    void meteredRequest_canceled_shouldEndRequestSpanWithoutRecording() {
+        OpenTransportTracing.addExporter(mExporter);
+        OpenTransportMetrics metrics = new OpenTransportMetrics();
+        MeteredRequest request = new MeteredRequest();
+        request.setRequestType(RequestType.LIVEBOARD);
+        metrics.track(request);
+
+        request.setCanceled();
+        request.setMsecParsed(1000);
+
+        List<Span> spans = mExporter.getSpans("request liveboard");
+        assertEquals(1, spans.size());
+        assertTrue(spans.get(0).isFailed());
+        assertEquals(0, metrics.getMetrics(RequestType.LIVEBOARD).getPagesFetched().snapshot().getCount());
+    }
+
+    @Test
+    void chromeTraceExporter_shouldWriteNestedAsyncEvents() throws Exception {
+        StringWriter output = new StringWriter();
+        ChromeTraceSpanExporter chromeExporter = new ChromeTraceSpanExporter(output);
+        OpenTransportTracing.addExporter(chromeExporter);
+        try {
+            Span request = OpenTransportTracing.startSpan("request");
+            Span page = request.startChild("page \"fetch\"");
+            page.setAttribute("url", "a\\b");
+            page.end();
+            request.end();
+        } finally {
+            OpenTransportTracing.removeExporter(chromeExporter);
+            chromeExporter.close();
+        }
+
+        JSONArray events = new JSONArray(output.toString());
+        assertEquals(4, events.length());
+        JSONObject begin = events.getJSONObject(0);
+        assertEquals("page \"fetch\"", begin.getString("name"));
+        assertEquals("b", begin.getString("ph"));
+        assertEquals("a\\b", begin.getJSONObject("args").getString("url"));
+        assertEquals("e", events.getJSONObject(1).getString("ph"));
+        assertEquals(begin.getLong("id"), events.getJSONObject(3).getLong("id"));
+        assertTrue(events.getJSONObject(1).getLong("ts") >= begin.getLong("ts"));
+    }
+}
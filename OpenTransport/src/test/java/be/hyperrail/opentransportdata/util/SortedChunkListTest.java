@@ -0,0 +1,115 @@
+package be.hyperrail.opentransportdata.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Comparator;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SortedChunkListTest {
+
+    private static final Comparator<String> ORDER = (o1, o2) -> Integer.compare(getTime(o1), getTime(o2));
+    // Items are "time:id", and are deduplicated on their id
+    private static final SortedChunkList.KeyFunction<String> KEY = item -> item.substring(item.indexOf(':') + 1);
+
+    private static int getTime(String item) {
+        return Integer.parseInt(item.substring(0, item.indexOf(':')));
+    }
+
+    @Test
+    void withMerged_laterItems_shouldAppend() {
+        SortedChunkList<String> original = new SortedChunkList<>(new String[]{"10:a", "20:b"});
+        SortedChunkList<String> extended = original.withMerged(new String[]{"40:d", "20:c"}, ORDER, KEY);
+
+        assertArrayEquals(new String[]{"10:a", "20:b", "20:c", "40:d"}, extended.toArray(new String[0]));
+        assertTrue(extended.isExtensionOf(original));
+        assertEquals(0, extended.countPrependedSince(original));
+        assertEquals(2, extended.countAppendedSince(original));
+    }
+
+    @Test
+    void withMerged_earlierItems_shouldPrepend() {
+        SortedChunkList<String> original = new SortedChunkList<>(new String[]{"10:a", "20:b"});
+        SortedChunkList<String> extended = original.withMerged(new String[]{"5:d", "1:c"}, ORDER, KEY);
+
+        assertArrayEquals(new String[]{"1:c", "5:d", "10:a", "20:b"}, extended.toArray(new String[0]));
+        assertTrue(extended.isExtensionOf(original));
+        assertEquals(2, extended.countPrependedSince(original));
+        assertEquals(0, extended.countAppendedSince(original));
+    }
+
+    @Test
+    void withMerged_knownItems_shouldBeSkipped() {
+        SortedChunkList<String> original = new SortedChunkList<>(new String[]{"10:a", "20:b"});
+        SortedChunkList<String> extended = original.withMerged(new String[]{"20:b", "30:c", "30:c"}, ORDER, KEY)
+                .withMerged(new String[]{"30:c", "40:d"}, ORDER, KEY);
+
+        assertArrayEquals(new String[]{"10:a", "20:b", "30:c", "40:d"}, extended.toArray(new String[0]));
+        assertEquals(2, extended.countAppendedSince(original));
+    }
+
+    @Test
+    void withMerged_interleavedItems_shouldSortAll() {
+        SortedChunkList<String> original = new SortedChunkList<>(new String[]{"10:a", "20:b"});
+        SortedChunkList<String> extended = original.withMerged(new String[]{"15:c", "25:d"}, ORDER, KEY);
+
+        assertArrayEquals(new String[]{"10:a", "15:c", "20:b", "25:d"}, extended.toArray(new String[0]));
+        assertFalse(extended.isExtensionOf(original));
+    }
+
+    @Test
+    void withMerged_olderList_shouldNotAffectNewerLists() {
+        SortedChunkList<String> original = new SortedChunkList<>(new String[]{"10:a"});
+        SortedChunkList<String> first = original.withMerged(new String[]{"20:b"}, ORDER, KEY);
+        SortedChunkList<String> second = original.withMerged(new String[]{"30:c"}, ORDER, KEY);
+        SortedChunkList<String> third = first.withMerged(new String[]{"30:c"}, ORDER, KEY);
+
+        assertArrayEquals(new String[]{"10:a"}, original.toArray(new String[0]));
+        assertArrayEquals(new String[]{"10:a", "20:b"}, first.toArray(new String[0]));
+        assertArrayEquals(new String[]{"10:a", "30:c"}, second.toArray(new String[0]));
+        assertArrayEquals(new String[]{"10:a", "20:b", "30:c"}, third.toArray(new String[0]));
+        assertTrue(third.isExtensionOf(first));
+        assertFalse(second.isExtensionOf(first));
+    }
+
+    @Test
+    void withMerged_manyPages_shouldKeepAllItemsInOrder() {
+        SortedChunkList<String> list = new SortedChunkList<>(new String[]{"1000:after0"});
+        for (int page = 1; page <= 100; page++) {
+            list = list.withMerged(new String[]{(1000 + page) + ":after" + page, (1000 + page - 1) + ":after" + (page - 1)}, ORDER, KEY);
+            list = list.withMerged(new String[]{(1000 - page) + ":before" + page}, ORDER, KEY);
+        }
+
+        String[] items = list.toArray(new String[0]);
+        assertEquals(201, list.size());
+        assertEquals(201, items.length);
+        for (int i = 1; i < items.length; i++) {
+            assertTrue(getTime(items[i - 1]) <= getTime(items[i]));
+        }
+    }
+
+    @Test
+    void serialization_extendedList_shouldKeepItems() throws Exception {
+        SortedChunkList<String> list = new SortedChunkList<>(new String[]{"10:a"})
+                .withMerged(new String[]{"5:b"}, ORDER, KEY)
+                .withMerged(new String[]{"20:c"}, ORDER, KEY);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(list);
+        }
+        @SuppressWarnings("unchecked")
+        SortedChunkList<String> copy = (SortedChunkList<String>) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+
+        assertArrayEquals(new String[]{"5:b", "10:a", "20:c"}, copy.toArray(new String[0]));
+        assertArrayEquals(new String[]{"5:b", "10:a", "20:c", "30:d"},
+                copy.withMerged(new String[]{"10:a", "30:d"}, ORDER, KEY).toArray(new String[0]));
+    }
+}
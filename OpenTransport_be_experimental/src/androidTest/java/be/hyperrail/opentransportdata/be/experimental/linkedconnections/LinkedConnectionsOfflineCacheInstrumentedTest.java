@@ -0,0 +1,165 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.opentransportdata.be.experimental.linkedconnections;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+@RunWith(AndroidJUnit4.class)
+public class LinkedConnectionsOfflineCacheInstrumentedTest {
+
+    private static final String DATABASE_NAME = "linkedconnections-test.db";
+    // Every page is 100 bytes, so two pages fit in the cache
+    private static final int PAGE_SIZE = 100;
+    private static final long MAX_SIZE = 2 * PAGE_SIZE + PAGE_SIZE / 2;
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+    private LinkedConnectionsOfflineCache mCache;
+
+    @Before
+    public void setUp() {
+        mContext.deleteDatabase(DATABASE_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        if (mCache != null) {
+            mCache.close();
+        }
+        mContext.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedPagesAreEvictedFirst() {
+        mCache = new LinkedConnectionsOfflineCache(mContext, DATABASE_NAME, MAX_SIZE);
+        long now = DateTime.now().getMillis();
+        mCache.store(page("page-a", now), data('a'), now - 3000);
+        mCache.store(page("page-b", now), data('b'), now - 2000);
+        mCache.runMaintenance();
+
+        // Reading the oldest page makes it the most recently used one
+        assertNotNull(mCache.load("page-a"));
+        mCache.store(page("page-c", now), data('c'), now - 1000);
+        mCache.runMaintenance();
+
+        assertNotNull(mCache.load("page-a"));
+        assertNull(mCache.load("page-b"));
+        assertNotNull(mCache.load("page-c"));
+    }
+
+    @Test
+    public void testPagesOfPastServiceDaysExpire() {
+        mCache = new LinkedConnectionsOfflineCache(mContext, DATABASE_NAME, MAX_SIZE);
+        DateTime now = DateTime.now();
+        mCache.store(page("page-a", now.minusDays(3).getMillis()), data('a'), now.getMillis());
+        mCache.store(page("page-b", now.getMillis()), data('b'), now.getMillis());
+        mCache.runMaintenance();
+
+        assertNull(mCache.load("page-a"));
+        assertNotNull(mCache.load("page-b"));
+    }
+
+    @Test
+    public void testUnchangedPageIsOnlyTouched() {
+        mCache = new LinkedConnectionsOfflineCache(mContext, DATABASE_NAME, MAX_SIZE);
+        long now = DateTime.now().getMillis();
+        mCache.store(page("page-a", now), data('a'), now - 2000);
+        mCache.runMaintenance();
+        long id = getId("page-a");
+
+        mCache.store(page("page-a", now), data('a'), now - 1000);
+        mCache.runMaintenance();
+
+        // The row wasn't replaced, but its time was updated
+        assertEquals(id, getId("page-a"));
+        assertEquals(now - 1000, mCache.load("page-a").createdAt.getMillis());
+
+        mCache.store(page("page-a", now), data('b'), now);
+        mCache.runMaintenance();
+        assertEquals(data('b'), mCache.load("page-a").data);
+    }
+
+    @Test
+    public void testApproximateLoadUsesGreatestPage() {
+        mCache = new LinkedConnectionsOfflineCache(mContext, DATABASE_NAME, 10 * MAX_SIZE);
+        long now = DateTime.now().getMillis();
+        mCache.store(page("page-1000", "page-1300", now), data('a'), now);
+        mCache.runMaintenance();
+        mCache.store(page("page-1100", "page-1200", now), data('b'), now);
+
+        // Whether or not the second page has been written yet
+        assertEquals("page-1100", mCache.load("page-1150").url);
+        mCache.runMaintenance();
+        assertEquals("page-1100", mCache.load("page-1150").url);
+        assertEquals("page-1000", mCache.load("page-1250").url);
+    }
+
+    @Test
+    public void testUpgradedDatabaseUsesIncrementalVacuum() {
+        // A database created by an older version, without incremental vacuum
+        File path = mContext.getDatabasePath(DATABASE_NAME);
+        path.getParentFile().mkdirs();
+        SQLiteDatabase old = SQLiteDatabase.openOrCreateDatabase(path, null);
+        old.execSQL("CREATE TABLE cache (_id INTEGER PRIMARY KEY AUTOINCREMENT, url TEXT NOT NULL UNIQUE, data TEXT NOT NULL)");
+        old.setVersion(1);
+        old.close();
+
+        mCache = new LinkedConnectionsOfflineCache(mContext, DATABASE_NAME, MAX_SIZE);
+        Cursor c = mCache.getWritableDatabase().rawQuery("PRAGMA auto_vacuum;", null);
+        c.moveToFirst();
+        // 2 is incremental
+        assertEquals(2, c.getInt(0));
+        c.close();
+    }
+
+    private long getId(String url) {
+        Cursor c = mCache.getReadableDatabase().rawQuery("SELECT _id FROM cache WHERE url=?", new String[]{url});
+        c.moveToFirst();
+        long id = c.getLong(0);
+        c.close();
+        return id;
+    }
+
+    private static LinkedConnections page(String url, long departure) {
+        return page(url, url + "-next", departure);
+    }
+
+    private static LinkedConnections page(String url, String next, long departure) {
+        LinkedConnection connection = new LinkedConnection();
+        connection.departureTime = new DateTime(departure);
+
+        LinkedConnections page = new LinkedConnections();
+        page.current = url;
+        page.next = next;
+        page.connections = new LinkedConnection[]{connection};
+        return page;
+    }
+
+    private static String data(char c) {
+        StringBuilder data = new StringBuilder();
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            data.append(c);
+        }
+        return data.toString();
+    }
+}
@@ -0,0 +1,47 @@
+package be.hyperrail.opentransportdata.be;
+
+import android.content.Context;
+
+import be.hyperrail.opentransportdata.be.experimental.linkedconnections.LinkedConnectionsDataSource;
+import be.hyperrail.opentransportdata.be.irail.IrailApi;
+import be.hyperrail.opentransportdata.be.irail.IrailFacilitiesDataProvider;
+import be.hyperrail.opentransportdata.be.irail.IrailStationsDataProvider;
+import be.hyperrail.opentransportdata.common.contracts.TransportDataProvider;
+import be.hyperrail.opentransportdata.common.contracts.TransportDataSource;
+import be.hyperrail.opentransportdata.common.contracts.TransportStopFacilitiesDataSource;
+import be.hyperrail.opentransportdata.common.contracts.TransportStopsDataSource;
+import be.hyperrail.opentransportdata.common.requests.RequestType;
+import be.hyperrail.opentransportdata.composite.RacingTransportDataSource;
+
+/**
+ * Use linked connections for liveboards, routes and vehicles, and fall back to the iRail API when linked connections don't answer in time.
+ * Requests which aren't supported by linked connections go to the iRail API directly.
+ */
+public class LinkedConnectionsFallbackDataProvider implements TransportDataProvider {
+
+    private static final long FALLBACK_DEADLINE_MSEC = 3000;
+
+    @Override
+    public TransportStopsDataSource getStopsDataSource(Context applicationContext) {
+        return new IrailStationsDataProvider(applicationContext);
+    }
+
+    @Override
+    public TransportDataSource getTransportDataSource(Context applicationContext, TransportStopsDataSource stationProviderInstance) {
+        RacingTransportDataSource dataSource = new RacingTransportDataSource(
+                new LinkedConnectionsDataSource(applicationContext, stationProviderInstance),
+                new IrailApi(applicationContext, stationProviderInstance));
+        dataSource.setStrategy(RequestType.LIVEBOARD, RacingTransportDataSource.Strategy.FALLBACK, FALLBACK_DEADLINE_MSEC);
+        dataSource.setStrategy(RequestType.ROUTEPLANNING, RacingTransportDataSource.Strategy.FALLBACK, FALLBACK_DEADLINE_MSEC);
+        dataSource.setStrategy(RequestType.VEHICLEJOURNEY, RacingTransportDataSource.Strategy.FALLBACK, FALLBACK_DEADLINE_MSEC);
+        dataSource.setStrategy(RequestType.DISTURBANCES, RacingTransportDataSource.Strategy.SECONDARY);
+        dataSource.setStrategy(RequestType.VEHICLECOMPOSITION, RacingTransportDataSource.Strategy.SECONDARY);
+        dataSource.setStrategy(RequestType.POSTFEEDBACK, RacingTransportDataSource.Strategy.SECONDARY);
+        return dataSource;
+    }
+
+    @Override
+    public TransportStopFacilitiesDataSource getStopsFacilitiesDataSource(Context applicationContext, TransportStopsDataSource stationProviderInstance) {
+        return new IrailFacilitiesDataProvider(applicationContext);
+    }
+}
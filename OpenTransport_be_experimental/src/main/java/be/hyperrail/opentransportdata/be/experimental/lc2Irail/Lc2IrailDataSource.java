@@ -22,8 +22,6 @@ import com.android.volley.toolbox.BasicNetwork;
 import com.android.volley.toolbox.DiskBasedCache;
 import com.android.volley.toolbox.HurlStack;
 import com.android.volley.toolbox.JsonObjectRequest;
-import com.google.firebase.perf.FirebasePerformance;
-import com.google.firebase.perf.metrics.Trace;
 
 import org.joda.time.DateTime;
 import org.joda.time.format.DateTimeFormat;
@@ -33,11 +31,11 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.File;
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
+import be.hyperrail.opentransportdata.be.experimental.linkedconnections.FirebasePerformanceSpanExporter;
+import be.hyperrail.opentransportdata.be.experimental.linkedconnections.MeteredHttpStack;
 import be.hyperrail.opentransportdata.be.irail.IrailApi;
 import be.hyperrail.opentransportdata.be.irail.IrailLiveboardExtendHelper;
 import be.hyperrail.opentransportdata.be.irail.IrailRouteExtendHelper;
@@ -66,13 +64,15 @@ import be.hyperrail.opentransportdata.common.requests.VehicleCompositionRequest;
 import be.hyperrail.opentransportdata.common.requests.VehicleRequest;
 import be.hyperrail.opentransportdata.common.requests.VehicleStopRequest;
 import be.hyperrail.opentransportdata.logging.OpenTransportLog;
+import be.hyperrail.opentransportdata.metrics.OpenTransportMetrics;
+import be.hyperrail.opentransportdata.tracing.OpenTransportTracing;
+import be.hyperrail.opentransportdata.tracing.Span;
 
 /**
  * Created in be.hyperrail.android.irail.implementation on 13/04/2018.
  */
 public class Lc2IrailDataSource implements TransportDataSource, MeteredDataSource {
 
-    private final static String TAG_IRAIL_API_GET = "LC2IRAIL_GET";
     private static final String UA = "OpenTransport-be-experimental for Android";
     private static final OpenTransportLog log = OpenTransportLog.getLogger(Lc2IrailDataSource.class);
     private final Context mContext;
@@ -81,15 +81,17 @@ public class Lc2IrailDataSource implements TransportDataSource, MeteredDataSourc
     private final RequestQueue requestQueue;
     private final DefaultRetryPolicy requestPolicy;
     private final ConnectivityManager mConnectivityManager;
-    private final List<MeteredRequest> mMeteredRequests = new ArrayList<>();
+    // The legacy API, for requests which aren't supported by lc2irail. Created when it's first needed.
+    private IrailApi mIrailApi;
 
     public Lc2IrailDataSource(Context context, TransportStopsDataSource stopsProvider) {
         this.mContext = context;
         stationsProvider = stopsProvider;
         this.parser = new Lc2IrailParser(stationsProvider);
+        OpenTransportTracing.addExporter(FirebasePerformanceSpanExporter.getInstance());
 
         BasicNetwork network;
-        network = new BasicNetwork(new HurlStack());
+        network = new BasicNetwork(new MeteredHttpStack(new HurlStack()));
         File cacheDir = new File(mContext.getCacheDir(), "volley");
         this.requestQueue = new RequestQueue(new DiskBasedCache(cacheDir, 48 * 1024 * 1024), network);
         requestQueue.start();
@@ -104,9 +106,16 @@ public class Lc2IrailDataSource implements TransportDataSource, MeteredDataSourc
 
     }
 
+    private synchronized IrailApi getIrailApi() {
+        if (mIrailApi == null) {
+            mIrailApi = new IrailApi(mContext, stationsProvider);
+        }
+        return mIrailApi;
+    }
+
     @Override
     public void getActualDisturbances(@NonNull ActualDisturbancesRequest... requests) {
-        (new IrailApi(mContext, stationsProvider)).getActualDisturbances(requests);
+        getIrailApi().getActualDisturbances(requests);
     }
 
     @Override
@@ -119,10 +128,9 @@ public class Lc2IrailDataSource implements TransportDataSource, MeteredDataSourc
     private void getLiveboard(@NonNull final LiveboardRequest request) {
         // https://api.irail.be/connections/?to=Halle&from=Brussels-south&date={dmy}&time=2359&timeSel=arrive or depart&format=json
         final MeteredRequest mMeteredRequest = new MeteredRequest();
+        mMeteredRequest.setRequestType(RequestType.LIVEBOARD);
         mMeteredRequest.setMsecStart(DateTime.now().getMillis());
-
-        final Trace tracing = FirebasePerformance.getInstance().newTrace("lc2irail.getLiveboard");
-        tracing.start();
+        OpenTransportMetrics.getInstance().track(mMeteredRequest);
 
         DateTimeFormatter fmt = ISODateTimeFormat.dateTimeNoMillis();
         String url;
@@ -144,29 +152,31 @@ public class Lc2IrailDataSource implements TransportDataSource, MeteredDataSourc
             public void onResponse(JSONObject response) {
                 mMeteredRequest.setMsecUsableNetworkResponse(DateTime.now().getMillis());
                 LiveboardImpl liveboard;
+                Span parseSpan = mMeteredRequest.getSpan().startChild("parse");
                 try {
                     liveboard = parser.parseLiveboard(request, response);
-                    tracing.stop();
                 } catch (Exception e) {
                     log.severe("Failed to parse liveboard", e);
-                    tracing.stop();
                     log.logException(e);
+                    mMeteredRequest.setFailed(DateTime.now().getMillis());
                     request.notifyErrorListeners(e);
                     return;
+                } finally {
+                    parseSpan.end();
                 }
                 request.notifySuccessListeners(liveboard);
 
                 mMeteredRequest.setMsecParsed(DateTime.now().getMillis());
-                mMeteredRequests.add(mMeteredRequest);
             }
         };
 
         Response.ErrorListener errorListener = new Response.ErrorListener() {
             @Override
             public void onErrorResponse(VolleyError e) {
-                tracing.stop();
                 log.warning("Failed to get liveboard", e);
                 request.notifyErrorListeners(e);
+                mMeteredRequest.setResponseType(MeteredDataSource.RESPONSE_FAILED);
+                mMeteredRequest.setMsecParsed(DateTime.now().getMillis());
             }
         };
 
@@ -192,9 +202,9 @@ public class Lc2IrailDataSource implements TransportDataSource, MeteredDataSourc
 
     public void getRoutes(@NonNull final RoutePlanningRequest request) {
         final MeteredRequest mMeteredRequest = new MeteredRequest();
+        mMeteredRequest.setRequestType(RequestType.ROUTEPLANNING);
         mMeteredRequest.setMsecStart(DateTime.now().getMillis());
-        final Trace tracing = FirebasePerformance.getInstance().newTrace("lc2irail.getRoutePlanning");
-        tracing.start();
+        OpenTransportMetrics.getInstance().track(mMeteredRequest);
         // https://api.irail.be/connections/?to=Halle&from=Brussels-south&date={dmy}&time=2359&timeSel=arrive or depart&format=json
         DateTimeFormatter fmt = ISODateTimeFormat.dateTimeNoMillis();
 
@@ -216,17 +226,19 @@ public class Lc2IrailDataSource implements TransportDataSource, MeteredDataSourc
             public void onResponse(JSONObject response) {
                 mMeteredRequest.setMsecUsableNetworkResponse(DateTime.now().getMillis());
                 RoutesListImpl routeResult;
+                Span parseSpan = mMeteredRequest.getSpan().startChild("parse");
                 try {
                     routeResult = parser.parseRoutes(request, response);
                 } catch (Exception e) {
                     log.warning("Failed to parse routes", e);
+                    mMeteredRequest.setFailed(DateTime.now().getMillis());
                     request.notifyErrorListeners(e);
                     return;
+                } finally {
+                    parseSpan.end();
                 }
-                tracing.stop();
                 request.notifySuccessListeners(routeResult);
                 mMeteredRequest.setMsecParsed(DateTime.now().getMillis());
-                mMeteredRequests.add(mMeteredRequest);
             }
         };
 
@@ -234,8 +246,9 @@ public class Lc2IrailDataSource implements TransportDataSource, MeteredDataSourc
             @Override
             public void onErrorResponse(VolleyError e) {
                 log.warning("Failed to get routes", e);
-                tracing.stop();
                 request.notifyErrorListeners(e);
+                mMeteredRequest.setResponseType(MeteredDataSource.RESPONSE_FAILED);
+                mMeteredRequest.setMsecParsed(DateTime.now().getMillis());
             }
         };
 
@@ -327,12 +340,11 @@ public class Lc2IrailDataSource implements TransportDataSource, MeteredDataSourc
 
     public void getVehicle(@NonNull final VehicleRequest request) {
         final MeteredRequest mMeteredRequest = new MeteredRequest();
+        mMeteredRequest.setRequestType(RequestType.VEHICLEJOURNEY);
         mMeteredRequest.setMsecStart(DateTime.now().getMillis());
+        OpenTransportMetrics.getInstance().track(mMeteredRequest);
         DateTimeFormatter fmt = DateTimeFormat.forPattern("YYYYMMdd");
 
-        final Trace tracing = FirebasePerformance.getInstance().newTrace("lc2irail.getVehicleJourney");
-        tracing.start();
-
         // https://lc2irail.thesis.bertmarcelis.be/vehicle/IC538/20180413
         String url = "https://lc2irail.thesis.bertmarcelis.be/vehicle/"
                 + request.getVehicleId() + "/"
@@ -344,18 +356,20 @@ public class Lc2IrailDataSource implements TransportDataSource, MeteredDataSourc
             @Override
             public void onResponse(JSONObject response) {
                 IrailVehicleJourney vehicle;
+                Span parseSpan = mMeteredRequest.getSpan().startChild("parse");
                 try {
                     vehicle = parser.parseVehicleJourney(request, response);
                 } catch (Exception e) {
                     log.warning("Failed to parse vehicle", e);
+                    mMeteredRequest.setFailed(DateTime.now().getMillis());
                     request.notifyErrorListeners(e);
                     return;
+                } finally {
+                    parseSpan.end();
                 }
-                tracing.stop();
                 request.notifySuccessListeners(vehicle);
 
                 mMeteredRequest.setMsecParsed(DateTime.now().getMillis());
-                mMeteredRequests.add(mMeteredRequest);
             }
         };
 
@@ -363,8 +377,9 @@ public class Lc2IrailDataSource implements TransportDataSource, MeteredDataSourc
             @Override
             public void onErrorResponse(VolleyError e) {
                 log.warning("Failed to get vehicle", e);
-                tracing.stop();
                 request.notifyErrorListeners(e);
+                mMeteredRequest.setResponseType(MeteredDataSource.RESPONSE_FAILED);
+                mMeteredRequest.setMsecParsed(DateTime.now().getMillis());
             }
         };
 
@@ -373,7 +388,7 @@ public class Lc2IrailDataSource implements TransportDataSource, MeteredDataSourc
 
     @Override
     public void postOccupancy(@NonNull OccupancyPostRequest... requests) {
-        new IrailApi(mContext, stationsProvider).postOccupancy(requests);
+        getIrailApi().postOccupancy(requests);
     }
 
     @Override
@@ -407,7 +422,8 @@ public class Lc2IrailDataSource implements TransportDataSource, MeteredDataSourc
         };
 
         jsObjRequest.setRetryPolicy(requestPolicy);
-        jsObjRequest.setTag(TAG_IRAIL_API_GET);
+        // The tag is used by the http stack to attribute the transferred bytes
+        jsObjRequest.setTag(meteredRequest);
 
         if (isInternetAvailable()) {
             makeInternetRequest(successListener, meteredRequest, jsObjRequest);
@@ -426,13 +442,13 @@ public class Lc2IrailDataSource implements TransportDataSource, MeteredDataSourc
                 successListener.onResponse(cache);
             } catch (JSONException e) {
                 log.warning("Failed to get result from cache", e);
-                errorListener.onErrorResponse(new NoConnectionError());
                 meteredRequest.setResponseType(MeteredDataSource.RESPONSE_FAILED);
+                errorListener.onErrorResponse(new NoConnectionError());
             }
         } else {
             log.debug("No cache available");
-            errorListener.onErrorResponse(new NoConnectionError());
             meteredRequest.setResponseType(MeteredDataSource.RESPONSE_FAILED);
+            errorListener.onErrorResponse(new NoConnectionError());
         }
     }
 
@@ -454,7 +470,6 @@ public class Lc2IrailDataSource implements TransportDataSource, MeteredDataSourc
 
     @Override
     public MeteredRequest[] getMeteredRequests() {
-        MeteredRequest[] meteredRequests = new MeteredRequest[mMeteredRequests.size()];
-        return mMeteredRequests.toArray(meteredRequests);
+        return OpenTransportMetrics.getInstance().getRecentRequests();
     }
 }
@@ -0,0 +1,57 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.opentransportdata.be.experimental.linkedconnections;
+
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.Executor;
+
+import be.hyperrail.opentransportdata.common.contracts.TransportDataErrorResponseListener;
+import be.hyperrail.opentransportdata.common.contracts.TransportDataPartialResponseListener;
+import be.hyperrail.opentransportdata.common.contracts.TransportDataRequest;
+import be.hyperrail.opentransportdata.common.contracts.TransportDataSuccessResponseListener;
+
+/**
+ * Posts the results of a request to the thread which made the request, as requests are processed on the compute executor.
+ */
+final class CallbackDelivery {
+
+    private CallbackDelivery() {
+        // No instances
+    }
+
+    /**
+     * Replace the callbacks of a request by callbacks which post the result to an executor.
+     *
+     * @param poster  The executor for the thread which made the request, e.g. a handler for the main looper. When null, the callbacks are not changed.
+     * @param request The request
+     * @param <T>     The type of the result
+     */
+    static <T> void deliverOn(@Nullable final Executor poster, TransportDataRequest<T> request) {
+        if (poster == null) {
+            return;
+        }
+
+        final TransportDataSuccessResponseListener<T> successListener = request.getOnSuccessListener();
+        final TransportDataErrorResponseListener errorListener = request.getOnErrorListener();
+
+        TransportDataSuccessResponseListener<T> postedSuccessListener = null;
+        if (successListener != null) {
+            postedSuccessListener = (data, tag) -> poster.execute(() -> successListener.onSuccessResponse(data, tag));
+        }
+        TransportDataErrorResponseListener postedErrorListener = null;
+        if (errorListener != null) {
+            postedErrorListener = (e, tag) -> poster.execute(() -> errorListener.onErrorResponse(e, tag));
+        }
+        request.setCallback(postedSuccessListener, postedErrorListener, request.getTag());
+
+        final TransportDataPartialResponseListener<T> partialListener = request.getOnPartialResponseListener();
+        if (partialListener != null) {
+            request.setOnPartialResponseListener((data, tag) -> poster.execute(() -> partialListener.onPartialResponse(data, tag)));
+        }
+    }
+}
@@ -9,6 +9,7 @@ package be.hyperrail.opentransportdata.be.experimental.linkedconnections;
 import com.bluelinelabs.logansquare.typeconverters.TypeConverter;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
@@ -19,13 +20,16 @@ import java.io.IOException;
 
 public class DateTimeConverter implements TypeConverter<DateTime> {
     private static final DateTimeZone TZ_BRUSSELS = DateTimeZone.forID("Europe/Brussels");
-    private static final DateTimeFormatter formatter = DateTimeFormat.forPattern("yyyy-MM-ddd'T'HH:mm:ss.SSSZ");
+    private static final DateTimeFormatter formatter = DateTimeFormat.forPattern("yyyy-MM-dd'T'HH:mm:ss.SSSZZ");
 
     @Override
     public DateTime parse(JsonParser jsonParser) throws IOException {
-        String dateString = jsonParser.getValueAsString(null);
+        if (jsonParser.getCurrentToken() != JsonToken.VALUE_STRING) {
+            return null;
+        }
         try {
-            return formatter.parseDateTime(dateString).withZone(TZ_BRUSSELS);
+            long epochSeconds = IsoDateTimeDecoder.parseEpochSeconds(jsonParser.getTextCharacters(), jsonParser.getTextOffset(), jsonParser.getTextLength());
+            return new DateTime(epochSeconds * 1000, TZ_BRUSSELS);
         } catch (RuntimeException runtimeException) {
             runtimeException.printStackTrace();
             return null;
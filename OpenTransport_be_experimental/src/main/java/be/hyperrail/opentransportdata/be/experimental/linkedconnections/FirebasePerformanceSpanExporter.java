@@ -0,0 +1,64 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.opentransportdata.be.experimental.linkedconnections;
+
+import androidx.annotation.NonNull;
+
+import com.google.firebase.perf.FirebasePerformance;
+import com.google.firebase.perf.metrics.Trace;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import be.hyperrail.opentransportdata.tracing.Span;
+import be.hyperrail.opentransportdata.tracing.SpanExporter;
+
+/**
+ * Reports spans as Firebase Performance traces, so production timings keep being collected.
+ * Firebase traces can't be created afterwards, so a trace is started with every span and stopped when the span ends.
+ * Traces of failed or cancelled spans are dropped, so they don't skew the timings.
+ */
+public class FirebasePerformanceSpanExporter implements SpanExporter {
+
+    private static final FirebasePerformanceSpanExporter sInstance = new FirebasePerformanceSpanExporter();
+
+    private final Map<Span, Trace> mTraces = new ConcurrentHashMap<>();
+
+    private FirebasePerformanceSpanExporter() {
+        // Singleton, so registering it more than once has no effect
+    }
+
+    public static FirebasePerformanceSpanExporter getInstance() {
+        return sInstance;
+    }
+
+    @Override
+    public void onStart(@NonNull Span span) {
+        Trace trace = FirebasePerformance.getInstance().newTrace(span.getName());
+        trace.start();
+        mTraces.put(span, trace);
+    }
+
+    @Override
+    public void onEnd(@NonNull Span span) {
+        Trace trace = mTraces.remove(span);
+        if (span.isFailed()) {
+            // Traces which aren't stopped are never reported. Children which are still running won't end either, so drop the whole trace.
+            Iterator<Span> running = mTraces.keySet().iterator();
+            while (running.hasNext()) {
+                if (running.next().getTraceId() == span.getTraceId()) {
+                    running.remove();
+                }
+            }
+            return;
+        }
+        if (trace != null) {
+            trace.stop();
+        }
+    }
+}
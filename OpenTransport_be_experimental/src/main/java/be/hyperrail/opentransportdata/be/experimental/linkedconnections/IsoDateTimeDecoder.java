@@ -0,0 +1,147 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.opentransportdata.be.experimental.linkedconnections;
+
+/**
+ * Decoder for the ISO8601 timestamps in linked connections pages, e.g. 2018-04-10T12:34:00.000Z.
+ * This avoids the overhead of a pattern based formatter, which is significant when parsing two timestamps for every connection.
+ * <p>
+ * Supported format: yyyy-MM-dd'T'HH:mm[:ss[.SSS]][Z|+HH[:]mm|-HH[:]mm]. Timestamps without an offset are considered UTC.
+ */
+final class IsoDateTimeDecoder {
+
+    private IsoDateTimeDecoder() {
+        // No instances
+    }
+
+    /**
+     * Decode a timestamp.
+     *
+     * @param value The timestamp
+     * @return The number of seconds since the epoch
+     */
+    static long parseEpochSeconds(String value) {
+        return parseEpochSeconds(value.toCharArray(), 0, value.length());
+    }
+
+    /**
+     * Decode a timestamp from a character buffer, without copying it.
+     *
+     * @param buffer The buffer which contains the timestamp
+     * @param offset The index of the first character of the timestamp
+     * @param length The number of characters in the timestamp
+     * @return The number of seconds since the epoch
+     */
+    static long parseEpochSeconds(char[] buffer, int offset, int length) {
+        final int end = offset + length;
+        int pos = offset;
+
+        int year = 0;
+        int digits = 0;
+        while (pos < end && buffer[pos] != '-') {
+            year = year * 10 + digit(buffer, pos++);
+            digits++;
+        }
+        if (digits != 4) {
+            throw invalid(buffer, offset, length);
+        }
+        pos = expect(buffer, pos, end, '-');
+        int month = twoDigits(buffer, pos, end);
+        pos = expect(buffer, pos + 2, end, '-');
+
+        // Some serializers wrote the day with three digits (e.g. 2018-04-010), accept any number of digits
+        int day = 0;
+        digits = 0;
+        while (pos < end && buffer[pos] != 'T') {
+            day = day * 10 + digit(buffer, pos++);
+            digits++;
+        }
+        if (digits < 2) {
+            throw invalid(buffer, offset, length);
+        }
+        pos = expect(buffer, pos, end, 'T');
+
+        int hour = twoDigits(buffer, pos, end);
+        pos = expect(buffer, pos + 2, end, ':');
+        int minute = twoDigits(buffer, pos, end);
+        pos += 2;
+
+        int second = 0;
+        if (pos < end && buffer[pos] == ':') {
+            second = twoDigits(buffer, pos + 1, end);
+            pos += 3;
+            if (pos < end && buffer[pos] == '.') {
+                // Connections are planned per minute, fractions of seconds are ignored
+                pos++;
+                while (pos < end && buffer[pos] >= '0' && buffer[pos] <= '9') {
+                    pos++;
+                }
+            }
+        }
+
+        int offsetSeconds = 0;
+        if (pos < end) {
+            char zone = buffer[pos];
+            if (zone == 'Z') {
+                pos++;
+            } else if (zone == '+' || zone == '-') {
+                int offsetHours = twoDigits(buffer, pos + 1, end);
+                pos += 3;
+                if (pos < end && buffer[pos] == ':') {
+                    pos++;
+                }
+                int offsetMinutes = twoDigits(buffer, pos, end);
+                pos += 2;
+                offsetSeconds = (offsetHours * 3600 + offsetMinutes * 60) * (zone == '-' ? -1 : 1);
+            }
+        }
+        if (pos != end || month < 1 || month > 12 || day < 1 || day > 31 || hour > 23 || minute > 59 || second > 60) {
+            throw invalid(buffer, offset, length);
+        }
+
+        return daysFromCivil(year, month, day) * 86400L + hour * 3600 + minute * 60 + second - offsetSeconds;
+    }
+
+    /**
+     * Get the number of days since 1970-01-01 for a date in the proleptic Gregorian calendar.
+     */
+    static long daysFromCivil(int year, int month, int day) {
+        // Shift the year so it starts in March, which puts the leap day at the end of the year
+        year -= month <= 2 ? 1 : 0;
+        final int era = (year >= 0 ? year : year - 399) / 400;
+        final int yearOfEra = year - era * 400;
+        final int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        final int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+
+    private static int twoDigits(char[] buffer, int pos, int end) {
+        if (pos + 2 > end) {
+            throw new IllegalArgumentException("Unexpected end of timestamp");
+        }
+        return digit(buffer, pos) * 10 + digit(buffer, pos + 1);
+    }
+
+    private static int digit(char[] buffer, int pos) {
+        char c = buffer[pos];
+        if (c < '0' || c > '9') {
+            throw new IllegalArgumentException("Unexpected character '" + c + "' in timestamp");
+        }
+        return c - '0';
+    }
+
+    private static int expect(char[] buffer, int pos, int end, char expected) {
+        if (pos >= end || buffer[pos] != expected) {
+            throw new IllegalArgumentException("Expected '" + expected + "' in timestamp");
+        }
+        return pos + 1;
+    }
+
+    private static IllegalArgumentException invalid(char[] buffer, int offset, int length) {
+        return new IllegalArgumentException("Invalid timestamp: " + new String(buffer, offset, length));
+    }
+}
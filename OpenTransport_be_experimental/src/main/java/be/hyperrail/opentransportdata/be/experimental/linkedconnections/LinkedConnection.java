@@ -42,6 +42,11 @@ class LinkedConnection {
     @JsonField(name = "gtfs:dropOffType")
     String dropoffType;
 
+    // Cached result of isNormal(), as it's called for every connection in every scan. 0 when not determined yet.
+    private static final byte NORMAL = 1;
+    private static final byte NOT_NORMAL = 2;
+    private byte mNormal = 0;
+
 
     DateTime getDelayedDepartureTime() {
         return getDepartureTime().plusSeconds(getDepartureDelay());
@@ -100,7 +105,11 @@ class LinkedConnection {
     }
 
     boolean isNormal() {
-        return pickupType != null && dropoffType != null && pickupType.equals("gtfs:Regular") && dropoffType.equals("gtfs:Regular");
+        if (mNormal == 0) {
+            boolean normal = pickupType != null && dropoffType != null && pickupType.equals("gtfs:Regular") && dropoffType.equals("gtfs:Regular");
+            mNormal = normal ? NORMAL : NOT_NORMAL;
+        }
+        return mNormal == NORMAL;
     }
 }
 
@@ -8,19 +8,328 @@ package be.hyperrail.opentransportdata.be.experimental.linkedconnections;
 
 import com.bluelinelabs.logansquare.annotation.JsonField;
 import com.bluelinelabs.logansquare.annotation.JsonObject;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import org.joda.time.DateTimeZone;
+import org.joda.time.Duration;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import be.hyperrail.opentransportdata.common.contracts.DelayChange;
 
 /**
- * A list of LinkedConnection objects, which can be parsed using the LoganSquare parser.
+ * A page of linked connections, which can be parsed using the LoganSquare parser.
+ * <p>
+ * Pages from the {@link LinkedConnectionsStreamParser} only store primitive columns, and create LinkedConnection objects when they are requested.
+ * Pages which are combined from other pages contain LinkedConnection objects, and create columns when they are scanned.
  */
-
 @JsonObject
 public class LinkedConnections {
+    private static final int[] NO_POSTINGS = new int[0];
+
+    // The format of stored pages, which is the same as the format written by DateTimeConverter
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormat.forPattern("yyyy-MM-dd'T'HH:mm:ss.SSSZZ").withZone(DateTimeZone.forID("Europe/Brussels"));
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
     @JsonField(name = "@id")
     String current;
     @JsonField(name = "hydra:previous")
     String previous;
     @JsonField(name = "hydra:next")
     String next;
+    // Only set for pages which are parsed by LoganSquare or combined from other pages, use getConnection() to read the connections of any page.
     @JsonField(name = "@graph")
     LinkedConnection[] connections;
+
+    private LinkedConnectionsColumns mColumns;
+    // The objects which have been created from the columns, by index
+    private LinkedConnection[] mCreatedConnections;
+
+    // Per-station posting lists: for every stop id in the columns, the indices of the regular connections departing or arriving there, in chronological order.
+    // These are not part of the JSON data, and are built once when a page is ingested.
+    private int[][] mDeparturePostings;
+    private int[][] mArrivalPostings;
+
+    synchronized void setColumns(LinkedConnectionsColumns columns) {
+        mColumns = columns;
+    }
+
+    /**
+     * Get the columns of this page, storing the connection objects as columns first if needed.
+     * The URI ids in the columns are only valid for this page.
+     */
+    synchronized LinkedConnectionsColumns getColumns() {
+        if (mColumns == null) {
+            mColumns = LinkedConnectionsColumns.of(connections == null ? new LinkedConnection[0] : connections);
+        }
+        return mColumns;
+    }
+
+    /**
+     * @return The number of connections in this page
+     */
+    synchronized int size() {
+        if (mColumns != null) {
+            return mColumns.size;
+        }
+        return connections == null ? 0 : connections.length;
+    }
+
+    /**
+     * Get the departure time of a connection without creating its object.
+     *
+     * @param index The index of the connection
+     * @return The departure time in milliseconds since the epoch
+     */
+    long getDepartureMillis(int index) {
+        return getColumns().departureTimes[index] * 1000;
+    }
+
+    /**
+     * Get a connection. For pages which only store columns, the object is created on first use and reused afterwards.
+     *
+     * @param index The index of the connection
+     * @return The connection
+     */
+    synchronized LinkedConnection getConnection(int index) {
+        if (connections != null) {
+            return connections[index];
+        }
+        if (mCreatedConnections == null) {
+            mCreatedConnections = new LinkedConnection[mColumns.size];
+        }
+        if (mCreatedConnections[index] == null) {
+            mCreatedConnections[index] = mColumns.toConnection(index);
+        }
+        return mCreatedConnections[index];
+    }
+
+    /**
+     * Get all connections as objects. Scans should read the columns instead, as this creates an object for every connection.
+     *
+     * @return The connections, in the order of this page
+     */
+    synchronized LinkedConnection[] getConnections() {
+        if (connections != null) {
+            return connections;
+        }
+        LinkedConnection[] result = new LinkedConnection[size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = getConnection(i);
+        }
+        return result;
+    }
+
+    /**
+     * Build the per-station departure and arrival posting lists for this page.
+     * Only regular connections, on which passengers can board and alight, are included.
+     */
+    synchronized void buildStationPostings() {
+        if (mDeparturePostings != null) {
+            return;
+        }
+
+        LinkedConnectionsColumns columns = getColumns();
+        int stops = columns.pool.size();
+        // First count, so every posting list can be allocated at its exact size
+        int[] departureCounts = new int[stops];
+        int[] arrivalCounts = new int[stops];
+        for (int i = 0; i < columns.size; i++) {
+            if (isIndexed(columns, i)) {
+                departureCounts[columns.departureStops[i]]++;
+                arrivalCounts[columns.arrivalStops[i]]++;
+            }
+        }
+
+        int[][] departures = new int[stops][];
+        int[][] arrivals = new int[stops][];
+        for (int stop = 0; stop < stops; stop++) {
+            departures[stop] = departureCounts[stop] == 0 ? NO_POSTINGS : new int[departureCounts[stop]];
+            arrivals[stop] = arrivalCounts[stop] == 0 ? NO_POSTINGS : new int[arrivalCounts[stop]];
+            departureCounts[stop] = 0;
+            arrivalCounts[stop] = 0;
+        }
+        for (int i = 0; i < columns.size; i++) {
+            if (isIndexed(columns, i)) {
+                int departureStop = columns.departureStops[i];
+                int arrivalStop = columns.arrivalStops[i];
+                departures[departureStop][departureCounts[departureStop]++] = i;
+                arrivals[arrivalStop][arrivalCounts[arrivalStop]++] = i;
+            }
+        }
+
+        mArrivalPostings = arrivals;
+        mDeparturePostings = departures;
+    }
+
+    private static boolean isIndexed(LinkedConnectionsColumns columns, int index) {
+        return columns.isNormal(index) && columns.departureStops[index] >= 0 && columns.arrivalStops[index] >= 0;
+    }
+
+    /**
+     * Get the regular connections departing in a station.
+     *
+     * @param stationUri The semantic id of the station
+     * @return The indices of the connections, in chronological order
+     */
+    int[] getDeparturePostings(String stationUri) {
+        buildStationPostings();
+        int stop = mColumns.getStringId(stationUri);
+        return stop < 0 ? NO_POSTINGS : mDeparturePostings[stop];
+    }
+
+    /**
+     * Get the regular connections arriving in a station.
+     *
+     * @param stationUri The semantic id of the station
+     * @return The indices of the connections, in the order in which they appear in this page
+     */
+    int[] getArrivalPostings(String stationUri) {
+        buildStationPostings();
+        int stop = mColumns.getStringId(stationUri);
+        return stop < 0 ? NO_POSTINGS : mArrivalPostings[stop];
+    }
+
+    /**
+     * @param semanticIds The semantic ids of connections
+     * @return True if this page contains at least one of the connections
+     */
+    boolean containsAny(Set<String> semanticIds) {
+        LinkedConnectionsColumns columns = getColumns();
+        for (int i = 0; i < columns.size; i++) {
+            if (semanticIds.contains(columns.semanticIds[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Copy the delays of a newer version of this page into this page, so the page, its postings and its indices stay in use.
+     * Only the delays change, which are never read while scanning: scans only use the scheduled times, stops and trips.
+     * Queries which are creating results while the delays change may still see the previous delay of a connection,
+     * but are notified of the change like any other listener.
+     *
+     * @param newer A newer version of this page
+     * @return The connections of which the delay changed, or null if the newer page contains different connections and should replace this page
+     */
+    synchronized List<DelayChange> updateDelaysFrom(LinkedConnections newer) {
+        LinkedConnectionsColumns columns = getColumns();
+        LinkedConnectionsColumns update = newer.getColumns();
+        if (columns.size != update.size) {
+            return null;
+        }
+        // Pages are generated in a fixed order
+        for (int i = 0; i < columns.size; i++) {
+            if (!columns.semanticIds[i].equals(update.semanticIds[i])
+                    || columns.departureTimes[i] != update.departureTimes[i]
+                    || columns.arrivalTimes[i] != update.arrivalTimes[i]) {
+                return null;
+            }
+        }
+
+        List<DelayChange> changes = new ArrayList<>();
+        for (int i = 0; i < columns.size; i++) {
+            int departureDelay = update.departureDelays[i];
+            int arrivalDelay = update.arrivalDelays[i];
+            if (columns.departureDelays[i] == departureDelay && columns.arrivalDelays[i] == arrivalDelay) {
+                continue;
+            }
+            changes.add(createDelayChange(columns, i, update, i));
+            columns.departureDelays[i] = departureDelay;
+            columns.arrivalDelays[i] = arrivalDelay;
+
+            // Objects which were already handed out get the new delays as well
+            LinkedConnection connection = connections != null ? connections[i] : mCreatedConnections != null ? mCreatedConnections[i] : null;
+            if (connection != null) {
+                connection.departureDelay = departureDelay;
+                connection.arrivalDelay = arrivalDelay;
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Find the connections of which the delay changed in a newer version of this page, which contains other connections and replaces this page.
+     * Neither page is modified.
+     *
+     * @param newer A newer version of this page
+     * @return The connections in both pages of which the delay changed
+     */
+    synchronized List<DelayChange> getDelayChanges(LinkedConnections newer) {
+        LinkedConnectionsColumns columns = getColumns();
+        LinkedConnectionsColumns update = newer.getColumns();
+        Map<String, Integer> indices = new HashMap<>(columns.size * 2);
+        for (int i = 0; i < columns.size; i++) {
+            indices.put(columns.semanticIds[i], i);
+        }
+
+        List<DelayChange> changes = new ArrayList<>();
+        for (int i = 0; i < update.size; i++) {
+            Integer index = indices.get(update.semanticIds[i]);
+            if (index != null && (columns.departureDelays[index] != update.departureDelays[i]
+                    || columns.arrivalDelays[index] != update.arrivalDelays[i])) {
+                changes.add(createDelayChange(columns, index, update, i));
+            }
+        }
+        return changes;
+    }
+
+    private static DelayChange createDelayChange(LinkedConnectionsColumns columns, int index, LinkedConnectionsColumns update, int updateIndex) {
+        return new DelayChange(columns.semanticIds[index],
+                Duration.standardSeconds(columns.departureDelays[index]), Duration.standardSeconds(columns.arrivalDelays[index]),
+                Duration.standardSeconds(update.departureDelays[updateIndex]), Duration.standardSeconds(update.arrivalDelays[updateIndex]));
+    }
+
+    /**
+     * Write this page in the JSON format which is read by the stream parser, with only the fields which are used by this library.
+     *
+     * @return The JSON data
+     * @throws IOException When the page can't be written
+     */
+    String toJson() throws IOException {
+        LinkedConnectionsColumns columns = getColumns();
+        StringWriter writer = new StringWriter(columns.size * 512);
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(writer)) {
+            generator.writeStartObject();
+            writeStringField(generator, "@id", current);
+            writeStringField(generator, "hydra:previous", previous);
+            writeStringField(generator, "hydra:next", next);
+            generator.writeArrayFieldStart("@graph");
+            for (int i = 0; i < columns.size; i++) {
+                generator.writeStartObject();
+                writeStringField(generator, "@id", columns.semanticIds[i]);
+                writeStringField(generator, "departureStop", columns.getString(columns.departureStops[i]));
+                writeStringField(generator, "arrivalStop", columns.getString(columns.arrivalStops[i]));
+                generator.writeStringField("departureTime", TIME_FORMAT.print(columns.departureTimes[i] * 1000));
+                generator.writeStringField("arrivalTime", TIME_FORMAT.print(columns.arrivalTimes[i] * 1000));
+                generator.writeNumberField("departureDelay", columns.departureDelays[i]);
+                generator.writeNumberField("arrivalDelay", columns.arrivalDelays[i]);
+                writeStringField(generator, "direction", columns.getString(columns.directions[i]));
+                writeStringField(generator, "gtfs:route", columns.getString(columns.routes[i]));
+                writeStringField(generator, "gtfs:trip", columns.getString(columns.trips[i]));
+                generator.writeStringField("gtfs:pickupType", LinkedConnectionsColumns.getTypeName(columns.getPickupType(i)));
+                generator.writeStringField("gtfs:dropOffType", LinkedConnectionsColumns.getTypeName(columns.getDropOffType(i)));
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+        return writer.toString();
+    }
+
+    private static void writeStringField(JsonGenerator generator, String name, String value) throws IOException {
+        if (value != null) {
+            generator.writeStringField(name, value);
+        }
+    }
 }
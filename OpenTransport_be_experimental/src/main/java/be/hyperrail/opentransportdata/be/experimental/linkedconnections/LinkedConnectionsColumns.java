@@ -0,0 +1,216 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.opentransportdata.be.experimental.linkedconnections;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import java.util.Arrays;
+
+/**
+ * The connections of a linked connections page stored as primitive columns, with one entry per connection.
+ * Stop, trip, route and direction URIs are stored as ids in the page's {@link StringPool}, times as seconds since the epoch and delays in seconds.
+ * Scans read these columns, and only create {@link LinkedConnection} objects for the connections they keep.
+ */
+final class LinkedConnectionsColumns {
+
+    private static final DateTimeZone TZ_BRUSSELS = DateTimeZone.forID("Europe/Brussels");
+
+    // GTFS pickup and drop-off types, stored as 2 bits each in the flags column
+    static final int TYPE_REGULAR = 0;
+    static final int TYPE_NOT_AVAILABLE = 1;
+    static final int TYPE_MUST_PHONE = 2;
+    static final int TYPE_MUST_COORDINATE_WITH_DRIVER = 3;
+    private static final String[] TYPE_NAMES = {
+            "gtfs:Regular", "gtfs:NotAvailable", "gtfs:MustPhone", "gtfs:MustCoordinateWithDriver"
+    };
+    private static final int DROP_OFF_SHIFT = 2;
+    private static final byte FLAGS_NORMAL = (byte) (TYPE_REGULAR | TYPE_REGULAR << DROP_OFF_SHIFT);
+
+    final StringPool pool;
+
+    int size = 0;
+    String[] semanticIds;
+    int[] departureStops;
+    int[] arrivalStops;
+    long[] departureTimes;
+    long[] arrivalTimes;
+    int[] departureDelays;
+    int[] arrivalDelays;
+    int[] directions;
+    int[] trips;
+    int[] routes;
+    byte[] flags;
+
+    LinkedConnectionsColumns(int capacity) {
+        pool = new StringPool();
+        semanticIds = new String[capacity];
+        departureStops = new int[capacity];
+        arrivalStops = new int[capacity];
+        departureTimes = new long[capacity];
+        arrivalTimes = new long[capacity];
+        departureDelays = new int[capacity];
+        arrivalDelays = new int[capacity];
+        directions = new int[capacity];
+        trips = new int[capacity];
+        routes = new int[capacity];
+        flags = new byte[capacity];
+    }
+
+    /**
+     * Store connection objects as columns, e.g. for pages which were combined from several pages.
+     *
+     * @param connections The connections, in the order in which they should be scanned
+     * @return The columns
+     */
+    static LinkedConnectionsColumns of(LinkedConnection[] connections) {
+        LinkedConnectionsColumns columns = new LinkedConnectionsColumns(connections.length);
+        for (LinkedConnection connection : connections) {
+            int i = columns.add();
+            columns.semanticIds[i] = connection.getSemanticId();
+            columns.departureStops[i] = columns.intern(connection.getDepartureStationUri());
+            columns.arrivalStops[i] = columns.intern(connection.getArrivalStationUri());
+            columns.departureTimes[i] = toEpochSeconds(connection.getDepartureTime());
+            columns.arrivalTimes[i] = toEpochSeconds(connection.getArrivalTime());
+            columns.departureDelays[i] = connection.getDepartureDelay();
+            columns.arrivalDelays[i] = connection.getArrivalDelay();
+            columns.directions[i] = columns.intern(connection.getDirection());
+            columns.trips[i] = columns.intern(connection.getTrip());
+            columns.routes[i] = columns.intern(connection.getRoute());
+            columns.setPickupType(i, getType(connection.pickupType));
+            columns.setDropOffType(i, getType(connection.dropoffType));
+        }
+        return columns;
+    }
+
+    /**
+     * Reserve space for a new connection, with all columns initialized to their default values.
+     *
+     * @return The index of the new connection
+     */
+    int add() {
+        if (size == semanticIds.length) {
+            int capacity = Math.max(16, size * 2);
+            semanticIds = Arrays.copyOf(semanticIds, capacity);
+            departureStops = Arrays.copyOf(departureStops, capacity);
+            arrivalStops = Arrays.copyOf(arrivalStops, capacity);
+            departureTimes = Arrays.copyOf(departureTimes, capacity);
+            arrivalTimes = Arrays.copyOf(arrivalTimes, capacity);
+            departureDelays = Arrays.copyOf(departureDelays, capacity);
+            arrivalDelays = Arrays.copyOf(arrivalDelays, capacity);
+            directions = Arrays.copyOf(directions, capacity);
+            trips = Arrays.copyOf(trips, capacity);
+            routes = Arrays.copyOf(routes, capacity);
+            flags = Arrays.copyOf(flags, capacity);
+        }
+        int index = size++;
+        departureStops[index] = -1;
+        arrivalStops[index] = -1;
+        directions[index] = -1;
+        trips[index] = -1;
+        routes[index] = -1;
+        flags[index] = (byte) (TYPE_NOT_AVAILABLE | TYPE_NOT_AVAILABLE << DROP_OFF_SHIFT);
+        return index;
+    }
+
+    void setPickupType(int index, int type) {
+        flags[index] = (byte) ((flags[index] & ~0x03) | type);
+    }
+
+    void setDropOffType(int index, int type) {
+        flags[index] = (byte) ((flags[index] & ~(0x03 << DROP_OFF_SHIFT)) | type << DROP_OFF_SHIFT);
+    }
+
+    int getPickupType(int index) {
+        return flags[index] & 0x03;
+    }
+
+    int getDropOffType(int index) {
+        return (flags[index] >> DROP_OFF_SHIFT) & 0x03;
+    }
+
+    /**
+     * Check if passengers can board and alight normally, the equivalent of {@link LinkedConnection#isNormal()}.
+     */
+    boolean isNormal(int index) {
+        return flags[index] == FLAGS_NORMAL;
+    }
+
+    /**
+     * Get the string for an id in one of the URI columns.
+     *
+     * @return The string, or null for a missing value
+     */
+    String getString(int id) {
+        return id < 0 ? null : pool.get(id);
+    }
+
+    /**
+     * Get the id which a URI has in this page, so it can be compared with the URI columns.
+     *
+     * @return The id, or -1 if no connection in this page refers to the URI
+     */
+    int getStringId(String value) {
+        return value == null ? -1 : pool.indexOf(value);
+    }
+
+    static String getTypeName(int type) {
+        return TYPE_NAMES[type];
+    }
+
+    /**
+     * Get the type for a GTFS pickup or drop-off type URI.
+     */
+    static int parseType(char[] buffer, int offset, int length) {
+        for (int type = 0; type < TYPE_NAMES.length; type++) {
+            if (StringPool.matches(TYPE_NAMES[type], buffer, offset, length)) {
+                return type;
+            }
+        }
+        return TYPE_NOT_AVAILABLE;
+    }
+
+    /**
+     * Create the object for a single connection.
+     *
+     * @param index The index of the connection
+     * @return A new connection with the values in the columns
+     */
+    LinkedConnection toConnection(int index) {
+        LinkedConnection connection = new LinkedConnection();
+        connection.semanticId = semanticIds[index];
+        connection.departureStationUri = getString(departureStops[index]);
+        connection.arrivalStationUri = getString(arrivalStops[index]);
+        connection.departureTime = new DateTime(departureTimes[index] * 1000, TZ_BRUSSELS);
+        connection.setArrivalTime(new DateTime(arrivalTimes[index] * 1000, TZ_BRUSSELS));
+        connection.departureDelay = departureDelays[index];
+        connection.arrivalDelay = arrivalDelays[index];
+        connection.direction = getString(directions[index]);
+        connection.route = getString(routes[index]);
+        connection.setTrip(getString(trips[index]));
+        connection.pickupType = TYPE_NAMES[getPickupType(index)];
+        connection.dropoffType = TYPE_NAMES[getDropOffType(index)];
+        return connection;
+    }
+
+    private int intern(String value) {
+        return value == null ? -1 : pool.intern(value);
+    }
+
+    private static long toEpochSeconds(DateTime time) {
+        return time == null ? 0 : time.getMillis() / 1000;
+    }
+
+    private static int getType(String name) {
+        for (int type = 0; type < TYPE_NAMES.length; type++) {
+            if (TYPE_NAMES[type].equals(name)) {
+                return type;
+            }
+        }
+        return TYPE_NOT_AVAILABLE;
+    }
+}
@@ -4,6 +4,8 @@ import android.content.Context;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
@@ -11,18 +13,30 @@ import androidx.annotation.NonNull;
 import org.joda.time.DateTime;
 import org.joda.time.format.ISODateTimeFormat;
 
+import java.io.FileNotFoundException;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
 
+import be.hyperrail.opentransportdata.async.AsyncTransportDataSource;
+import be.hyperrail.opentransportdata.async.TransportDataFuture;
 import be.hyperrail.opentransportdata.be.irail.IrailApi;
+import be.hyperrail.opentransportdata.common.contracts.DelayUpdateListener;
 import be.hyperrail.opentransportdata.common.contracts.MeteredDataSource;
 import be.hyperrail.opentransportdata.common.contracts.QueryTimeDefinition;
 import be.hyperrail.opentransportdata.common.contracts.TransportDataErrorResponseListener;
+import be.hyperrail.opentransportdata.common.contracts.TransportDataRequest;
 import be.hyperrail.opentransportdata.common.contracts.TransportDataSource;
+import be.hyperrail.opentransportdata.common.contracts.TransportDelaysDataSource;
 import be.hyperrail.opentransportdata.common.contracts.TransportStopsDataSource;
+import be.hyperrail.opentransportdata.common.models.Liveboard;
 import be.hyperrail.opentransportdata.common.models.LiveboardType;
 import be.hyperrail.opentransportdata.common.models.Route;
+import be.hyperrail.opentransportdata.common.models.RoutesList;
 import be.hyperrail.opentransportdata.common.models.VehicleStop;
 import be.hyperrail.opentransportdata.common.models.VehicleStopType;
 import be.hyperrail.opentransportdata.common.requests.ActualDisturbancesRequest;
@@ -36,47 +50,67 @@ import be.hyperrail.opentransportdata.common.requests.RouteRefreshRequest;
 import be.hyperrail.opentransportdata.common.requests.VehicleCompositionRequest;
 import be.hyperrail.opentransportdata.common.requests.VehicleRequest;
 import be.hyperrail.opentransportdata.common.requests.VehicleStopRequest;
+import be.hyperrail.opentransportdata.metrics.OpenTransportMetrics;
+import be.hyperrail.opentransportdata.tracing.OpenTransportTracing;
 
 /**
  * This API loads linkedConnection data and builds responses based on this data.
  * This API is experimental and limited/hardcoded for Belgium.
  */
-public class LinkedConnectionsDataSource implements TransportDataSource, MeteredDataSource {
+public class LinkedConnectionsDataSource implements TransportDataSource, MeteredDataSource, TransportDelaysDataSource {
 
     private static final String LOGTAG = "LinkedConnectionsDS";
 
     private final TransportStopsDataSource mStationsProvider;
     private final LinkedConnectionsProvider mLinkedConnectionsProvider;
     private final ConnectivityManager mConnectivityManager;
-    private List<MeteredRequest> mMeteredRequests = new ArrayList<>();
 
     private Context mContext;
+    // The legacy API, for requests which aren't supported by linked connections. Created when it's first needed.
+    private IrailApi mIrailApi;
 
     public LinkedConnectionsDataSource(Context context, TransportStopsDataSource stationsProvider) {
         this.mContext = context;
         this.mStationsProvider = stationsProvider;
-        this.mLinkedConnectionsProvider = new LinkedConnectionsProvider(context);
+        this.mLinkedConnectionsProvider = LinkedConnectionsProvider.getInstance(context);
+        OpenTransportTracing.addExporter(FirebasePerformanceSpanExporter.getInstance());
         mConnectivityManager =
                 (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
         new PreloadPagesTask(this).execute();
+        // Keep the rest of the service day available offline. The sync only runs on unmetered networks while charging.
+        LinkedConnectionsSyncJobService.scheduleIfNotPending(context, false, LinkedConnectionsOfflineCache.MAX_SIZE);
     }
 
-    public static String basename(String url) {
-        return url.substring(url.lastIndexOf('/') + 1);
+    private synchronized IrailApi getIrailApi() {
+        if (mIrailApi == null) {
+            mIrailApi = new IrailApi(mContext, mStationsProvider);
+        }
+        return mIrailApi;
     }
 
     @Override
     public void getActualDisturbances(@NonNull ActualDisturbancesRequest... request) {
         // Fallback to the legacy API
-        IrailApi api = new IrailApi(mContext, mStationsProvider);
-        api.getActualDisturbances(request);
+        getIrailApi().getActualDisturbances(request);
     }
 
     @Override
     public void getLiveboard(@NonNull LiveboardRequest... requests) {
+        deliverOnCallerThread(requests);
+        // Liveboards which start on the same page are built together, in a single pass over the pages
+        Map<String, List<LiveboardRequest>> groups = new LinkedHashMap<>();
         for (LiveboardRequest request :
                 requests) {
-            getLiveboard(request);
+            String key = request.getTimeDefinition() + "@" + request.getSearchTime().withSecondOfMinute(0).withMillisOfSecond(0).getMillis();
+            if (!groups.containsKey(key)) {
+                groups.put(key, new ArrayList<>());
+            }
+            groups.get(key).add(request);
+        }
+
+        for (List<LiveboardRequest> group : groups.values()) {
+            StartLiveboardRequestTask task = new StartLiveboardRequestTask(this);
+            task.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, group.toArray(new LiveboardRequest[0]));
         }
     }
 
@@ -87,6 +121,7 @@ public class LinkedConnectionsDataSource implements TransportDataSource, Metered
 
     @Override
     public void extendLiveboard(@NonNull ExtendLiveboardRequest... requests) {
+        deliverOnCallerThread(requests);
         for (final ExtendLiveboardRequest request :
                 requests) {
             new ExtendLiveboardTask(this).execute(request);
@@ -95,6 +130,7 @@ public class LinkedConnectionsDataSource implements TransportDataSource, Metered
 
     @Override
     public void getRoutePlanning(@NonNull RoutePlanningRequest... requests) {
+        deliverOnCallerThread(requests);
         // TODO: switch to API specific code
         for (RoutePlanningRequest request :
                 requests) {
@@ -104,6 +140,7 @@ public class LinkedConnectionsDataSource implements TransportDataSource, Metered
 
     @Override
     public void extendRoutePlanning(@NonNull ExtendRoutePlanningRequest... requests) {
+        deliverOnCallerThread(requests);
         for (ExtendRoutePlanningRequest request :
                 requests) {
             new ExtendRoutesTask(this).execute(request);
@@ -116,6 +153,7 @@ public class LinkedConnectionsDataSource implements TransportDataSource, Metered
 
     @Override
     public void getRoute(@NonNull RouteRefreshRequest... requests) {
+        deliverOnCallerThread(requests);
         for (RouteRefreshRequest request :
                 requests) {
             getRoute(request);
@@ -128,24 +166,23 @@ public class LinkedConnectionsDataSource implements TransportDataSource, Metered
                 request.getSearchTime()
         );
 
-        // Create a new routerequest. A successful response will be iterated to find a matching route. An unsuccessful query will cause the original error handler to be called.
-        routesRequest.setCallback(
-                (data, tag) -> {
-                    for (Route r : data.getRoutes()) {
-                        if (r.getDeparture().getDepartureSemanticId() != null &&
-                                r.getDeparture().getDepartureSemanticId().equals(request.getDepartureSemanticId())) {
-                            request.notifySuccessListeners(r);
-                        }
-                    }
-                },
-                (e, tag) -> request.notifyErrorListeners(e), request.getTag());
-
+        // A successful response will be iterated to find a matching route. An unsuccessful query will cause the original error handler to be called.
+        TransportDataFuture<RoutesList> routes = AsyncTransportDataSource.toFuture(routesRequest);
         getRoutes(routesRequest);
-
+        AsyncTransportDataSource.forward(routes.thenApply(data -> {
+            for (Route r : data.getRoutes()) {
+                if (r.getDeparture().getDepartureSemanticId() != null &&
+                        r.getDeparture().getDepartureSemanticId().equals(request.getDepartureSemanticId())) {
+                    return r;
+                }
+            }
+            throw new FileNotFoundException("Route " + request.getDepartureSemanticId() + " is no longer available");
+        }), request);
     }
 
     @Override
     public void getStop(@NonNull VehicleStopRequest... requests) {
+        deliverOnCallerThread(requests);
         for (VehicleStopRequest request :
                 requests) {
             getStop(request);
@@ -159,20 +196,22 @@ public class LinkedConnectionsDataSource implements TransportDataSource, Metered
         } else {
             liveboardRequest = new LiveboardRequest(request.getStop().getStopLocation(), QueryTimeDefinition.EQUAL_OR_EARLIER, LiveboardType.ARRIVALS, request.getStop().getArrivalTime());
         }
-        liveboardRequest.setCallback((data, tag) -> {
+        TransportDataFuture<Liveboard> liveboard = AsyncTransportDataSource.toFuture(liveboardRequest);
+        getLiveboard(liveboardRequest);
+        AsyncTransportDataSource.forward(liveboard.thenApply(data -> {
             for (VehicleStop stop :
                     data.getStops()) {
                 if (stop.getDepartureUri().equals(request.getStop().getDepartureUri())) {
-                    request.notifySuccessListeners(stop);
-                    return;
+                    return stop;
                 }
             }
-        }, request.getOnErrorListener(), null);
-        getLiveboard(liveboardRequest);
+            throw new FileNotFoundException("Stop " + request.getStop().getDepartureUri() + " is not in the liveboard");
+        }), request);
     }
 
     @Override
     public void getVehicleJourney(@NonNull VehicleRequest... requests) {
+        deliverOnCallerThread(requests);
         for (VehicleRequest request :
                 requests) {
             getVehicle(request);
@@ -192,8 +231,7 @@ public class LinkedConnectionsDataSource implements TransportDataSource, Metered
     @Override
     public void postOccupancy(@NonNull OccupancyPostRequest... request) {
         // Fallback to the legacy API
-        IrailApi api = new IrailApi(mContext, mStationsProvider);
-        api.postOccupancy(request);
+        getIrailApi().postOccupancy(request);
     }
 
     @Override
@@ -203,14 +241,51 @@ public class LinkedConnectionsDataSource implements TransportDataSource, Metered
 
     @Override
     public MeteredRequest[] getMeteredRequests() {
-        MeteredRequest[] meteredRequests = new MeteredRequest[mMeteredRequests.size()];
-        return mMeteredRequests.toArray(meteredRequests);
+        return OpenTransportMetrics.getInstance().getRecentRequests();
     }
 
     public void setCacheEnabled(boolean enabled) {
         mLinkedConnectionsProvider.setCacheEnabled(enabled);
     }
 
+    @Override
+    public void addDelayUpdateListener(@NonNull DelayUpdateListener listener) {
+        mLinkedConnectionsProvider.addDelayUpdateListener(listener);
+    }
+
+    @Override
+    public void removeDelayUpdateListener(@NonNull DelayUpdateListener listener) {
+        mLinkedConnectionsProvider.removeDelayUpdateListener(listener);
+    }
+
+    /**
+     * Download the linked connections pages which contain these connections again, e.g. for an open liveboard or route.
+     * Only the delays of the pages in memory are updated, and listeners are notified of the connections of which the delay changed.
+     *
+     * @param semanticIds The semantic ids of the connections to refresh
+     */
+    @Override
+    public void refreshDelays(@NonNull String... semanticIds) {
+        mLinkedConnectionsProvider.refreshDelays(semanticIds);
+    }
+
+    /**
+     * Requests are processed on background threads. Post their results to the thread which made the request, if it has a looper.
+     *
+     * @param requests The requests made by the current thread
+     */
+    private void deliverOnCallerThread(TransportDataRequest<?>... requests) {
+        Looper looper = Looper.myLooper();
+        if (looper == null) {
+            return;
+        }
+        Handler handler = new Handler(looper);
+        Executor poster = handler::post;
+        for (TransportDataRequest<?> request : requests) {
+            CallbackDelivery.deliverOn(poster, request);
+        }
+    }
+
     private boolean isInternetAvailable() {
         NetworkInfo activeNetwork = mConnectivityManager.getActiveNetworkInfo();
         return activeNetwork != null &&
@@ -238,14 +313,35 @@ public class LinkedConnectionsDataSource implements TransportDataSource, Metered
             MeteredRequest meteredRequest = new MeteredRequest();
             meteredRequest.setTag(request.toString());
             meteredRequest.setMsecStart(DateTime.now().getMillis());
-            api.mMeteredRequests.add(meteredRequest);
+            meteredRequest.setRequestType(RequestType.VEHICLEJOURNEY);
+            OpenTransportMetrics.getInstance().track(meteredRequest);
+            request.addOnCancelListener(meteredRequest::setCanceled);
 
+            String vehicleUri = "http://irail.be/vehicle/" + request.getVehicleId();
             VehicleResponseListener listener = new VehicleResponseListener(request, api.mStationsProvider);
-            VehicleQueryResponseListener query = new VehicleQueryResponseListener("http://irail.be/vehicle/" + request.getVehicleId(), listener, listener, meteredRequest);
+
+            LinkedConnectionsTripIndex tripIndex = api.mLinkedConnectionsProvider.getTripIndex();
+            LinkedConnectionsTripIndex.TripPageRange range = tripIndex.lookup(vehicleUri, request.getSearchTime());
+            if (range != null && tripIndex.coversStart(range)) {
+                if (tripIndex.coversEnd(range)) {
+                    // We know exactly on which pages this vehicle runs
+                    Log.d(LOGTAG, "Pages from index for " + request.getVehicleId() + " are " + range.firstUrl + " to " + range.lastUrl);
+                    api.mLinkedConnectionsProvider.getLinkedConnectionsByUrlSpan(range.firstUrl, range.lastUrl, listener, listener, meteredRequest);
+                } else {
+                    // We know where this vehicle starts, but not where it ends
+                    Log.d(LOGTAG, "First page from index for " + request.getVehicleId() + " is " + range.firstUrl);
+                    VehicleQueryResponseListener query = new VehicleQueryResponseListener(vehicleUri, listener, listener, meteredRequest);
+                    api.mLinkedConnectionsProvider.queryLinkedConnections(range.firstUrl, query, meteredRequest);
+                }
+                return null;
+            }
+
+            // This vehicle hasn't been seen yet, scan the entire service day
+            VehicleQueryResponseListener query = new VehicleQueryResponseListener(vehicleUri, listener, listener, meteredRequest);
 
             DateTime departureTime = request.getSearchTime().withTimeAtStartOfDay().withHourOfDay(3);
 
-            Log.d(LOGTAG, "Departure time from index for " + request.getVehicleId() + " is " + departureTime.toString(ISODateTimeFormat.basicDateTimeNoMillis()));
+            Log.d(LOGTAG, "Departure time for " + request.getVehicleId() + " is " + departureTime.toString(ISODateTimeFormat.basicDateTimeNoMillis()));
 
             api.mLinkedConnectionsProvider.queryLinkedConnections(departureTime, query, meteredRequest);
             return null;
@@ -269,10 +365,32 @@ public class LinkedConnectionsDataSource implements TransportDataSource, Metered
             LinkedConnectionsDataSource api = mApi.get();
             LiveboardRequest request = requests[0];
             MeteredRequest meteredRequest = new MeteredRequest();
-            meteredRequest.setTag(request.toString());
+            meteredRequest.setTag(requests.length == 1 ? request.toString() : Arrays.toString(requests));
             meteredRequest.setMsecStart(DateTime.now().getMillis());
-            api.mMeteredRequests.add(meteredRequest);
+            meteredRequest.setRequestType(RequestType.LIVEBOARD);
+            OpenTransportMetrics.getInstance().track(meteredRequest);
+
+            if (requests.length > 1) {
+                // The liveboards share one request, which is cancelled once all of them have been cancelled
+                for (LiveboardRequest liveboardRequest : requests) {
+                    liveboardRequest.addOnCancelListener(() -> {
+                        for (LiveboardRequest other : requests) {
+                            if (!other.isCanceled()) {
+                                return;
+                            }
+                        }
+                        meteredRequest.setCanceled();
+                    });
+                }
+                MultiLiveboardResponseListener listener = new MultiLiveboardResponseListener(api.mLinkedConnectionsProvider, api.mStationsProvider, requests);
+                api.mLinkedConnectionsProvider.getLinkedConnectionsByDate(request.getSearchTime(),
+                        listener,
+                        listener,
+                        meteredRequest);
+                return null;
+            }
 
+            request.addOnCancelListener(meteredRequest::setCanceled);
             LiveboardResponseListener listener = new LiveboardResponseListener(api.mLinkedConnectionsProvider, api.mStationsProvider, request);
             api.mLinkedConnectionsProvider.getLinkedConnectionsByDate(request.getSearchTime(),
                     listener,
@@ -302,7 +420,9 @@ public class LinkedConnectionsDataSource implements TransportDataSource, Metered
             final MeteredRequest meteredRequest = new MeteredRequest();
             meteredRequest.setTag(request.toString());
             meteredRequest.setMsecStart(DateTime.now().getMillis());
-            api.mMeteredRequests.add(meteredRequest);
+            meteredRequest.setRequestType(RequestType.ROUTEPLANNING);
+            OpenTransportMetrics.getInstance().track(meteredRequest);
+            request.addOnCancelListener(meteredRequest::setCanceled);
 
             DateTime departureLimit;
 
@@ -314,14 +434,27 @@ public class LinkedConnectionsDataSource implements TransportDataSource, Metered
 
             final RouteResponseListener listener = new RouteResponseListener(api.mLinkedConnectionsProvider, api.mStationsProvider, request, departureLimit);
 
+            DateTime end = request.getSearchTime();
             if (request.getTimeDefinition() == QueryTimeDefinition.EQUAL_OR_LATER) {
-                DateTime end = request.getSearchTime();
                 if (end.getHourOfDay() < 18 && end.getHourOfDay() >= 6) {
                     end = request.getSearchTime().plusHours(4);
                 } else {
                     end = request.getSearchTime().plusHours(6);
                 }
+            }
 
+            if (request.getOnPartialResponseListener() != null) {
+                // Walk back from the end of the search window one page at a time, so the latest routes can be shown after the first page
+                if (request.getTimeDefinition() == QueryTimeDefinition.EQUAL_OR_LATER) {
+                    listener.setStreamUntil(request.getSearchTime());
+                } else {
+                    listener.setStreamUntil(request.getSearchTime().minusHours(4));
+                }
+                api.mLinkedConnectionsProvider.getLinkedConnectionsByDate(end, listener, listener, meteredRequest);
+                return null;
+            }
+
+            if (request.getTimeDefinition() == QueryTimeDefinition.EQUAL_OR_LATER) {
                 api.mLinkedConnectionsProvider.getLinkedConnectionsByDateForTimeSpan(request.getSearchTime(), end, listener, new TransportDataErrorResponseListener() {
                     @Override
                     public void onErrorResponse(@NonNull Exception e, Object tag) {
@@ -362,7 +495,9 @@ public class LinkedConnectionsDataSource implements TransportDataSource, Metered
             MeteredRequest meteredRequest = new MeteredRequest();
             meteredRequest.setTag(request.toString());
             meteredRequest.setMsecStart(DateTime.now().getMillis());
-            api.mMeteredRequests.add(meteredRequest);
+            meteredRequest.setRequestType(RequestType.LIVEBOARD);
+            OpenTransportMetrics.getInstance().track(meteredRequest);
+            request.addOnCancelListener(meteredRequest::setCanceled);
 
             LiveboardExtendHelper helper = new LiveboardExtendHelper(api.mLinkedConnectionsProvider, api.mStationsProvider, request, meteredRequest);
             helper.extend();
@@ -390,7 +525,9 @@ public class LinkedConnectionsDataSource implements TransportDataSource, Metered
             MeteredRequest meteredRequest = new MeteredRequest();
             meteredRequest.setTag(request.toString());
             meteredRequest.setMsecStart(DateTime.now().getMillis());
-            api.mMeteredRequests.add(meteredRequest);
+            meteredRequest.setRequestType(RequestType.ROUTEPLANNING);
+            OpenTransportMetrics.getInstance().track(meteredRequest);
+            request.addOnCancelListener(meteredRequest::setCanceled);
 
             RouteExtendHelper helper = new RouteExtendHelper(api.mLinkedConnectionsProvider, api.mStationsProvider, request, meteredRequest);
             helper.extend();
@@ -413,12 +550,16 @@ public class LinkedConnectionsDataSource implements TransportDataSource, Metered
                 return null;
             }
             LinkedConnectionsDataSource api = mApi.get();
-            MeteredRequest meteredRequest = new MeteredRequest();
+            final MeteredRequest meteredRequest = new MeteredRequest();
             meteredRequest.setTag("Pre-load 60");
             meteredRequest.setMsecStart(DateTime.now().getMillis());
-            api.mMeteredRequests.add(meteredRequest);
+            OpenTransportMetrics.getInstance().track(meteredRequest);
 
-            api.mLinkedConnectionsProvider.getLinkedConnectionsByDateForTimeSpan(DateTime.now(), DateTime.now().plusMinutes(60), null, null, meteredRequest);
+            // Nobody waits for the pages, but the request still ends once they are loaded
+            api.mLinkedConnectionsProvider.getLinkedConnectionsByDateForTimeSpan(DateTime.now(), DateTime.now().plusMinutes(60),
+                    (data, tag) -> meteredRequest.setMsecParsed(DateTime.now().getMillis()),
+                    (e, tag) -> meteredRequest.setFailed(DateTime.now().getMillis()),
+                    meteredRequest);
             return null;
         }
     }
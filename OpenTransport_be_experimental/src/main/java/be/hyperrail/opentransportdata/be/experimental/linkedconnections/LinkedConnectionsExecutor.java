@@ -0,0 +1,98 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.opentransportdata.be.experimental.linkedconnections;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The executor on which linked connections pages are parsed, stored and processed by the query listeners.
+ * <p>
+ * Work submitted to this executor never runs on the submitting thread, which might be the main thread or a compute thread.
+ * Network threads submit downloaded pages through a {@link #throttle(Executor, int) throttled} executor instead, which makes them wait
+ * while too many pages are waiting to be processed. This slows down loading new pages while processing falls behind.
+ */
+final class LinkedConnectionsExecutor {
+
+    private static final AtomicInteger sThreadCount = new AtomicInteger();
+
+    private LinkedConnectionsExecutor() {
+        // No instances
+    }
+
+    /**
+     * Create a new compute executor. Idle threads are stopped after 30 seconds.
+     *
+     * @param threads The maximum number of threads
+     * @return The executor
+     */
+    static ThreadPoolExecutor create(int threads) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        return new ComputeThread(runnable);
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Limit the number of tasks which wait for an executor. Submitting a task blocks until less than the maximum number of tasks
+     * submitted through the returned executor are waiting or running. This should only be used by threads which may wait, such as network threads.
+     *
+     * @param executor   The executor to run the tasks on
+     * @param maxPending The maximum number of tasks which are waiting or running
+     * @return An executor which blocks the submitting thread while the maximum number of tasks is pending
+     */
+    static Executor throttle(final Executor executor, int maxPending) {
+        final Semaphore pending = new Semaphore(maxPending);
+        return task -> {
+            if (isComputeThread()) {
+                // Compute threads would wait for themselves
+                executor.execute(task);
+                return;
+            }
+            pending.acquireUninterruptibly();
+            try {
+                executor.execute(() -> {
+                    try {
+                        task.run();
+                    } finally {
+                        pending.release();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                pending.release();
+                throw e;
+            }
+        };
+    }
+
+    /**
+     * @return True if the current thread is a thread of a compute executor
+     */
+    static boolean isComputeThread() {
+        return Thread.currentThread() instanceof ComputeThread;
+    }
+
+    private static class ComputeThread extends Thread {
+        ComputeThread(Runnable runnable) {
+            super(runnable, "LinkedConnections-" + sThreadCount.incrementAndGet());
+            // Stay below the UI thread
+            setPriority(Thread.NORM_PRIORITY - 1);
+        }
+    }
+}
@@ -11,10 +11,21 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
-
-import com.google.firebase.perf.metrics.AddTrace;
+import android.util.Log;
 
 import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Created in be.hyperrail.android.irail.implementation.LinkedConnections on 08/03/2018.
@@ -24,7 +35,7 @@ public class LinkedConnectionsOfflineCache extends SQLiteOpenHelper {
 
     // If you change the database schema, you must increment the database version.
     // year/month/day/increment
-    private static final int DATABASE_VERSION = 18043000;
+    private static final int DATABASE_VERSION = 26101800;
 
     // Name of the database file
     private static final String DATABASE_NAME = "linkedconnections.db";
@@ -32,38 +43,164 @@ public class LinkedConnectionsOfflineCache extends SQLiteOpenHelper {
     // Logtag for logging purpose
     private static final String LOGTAG = "LinkedConnectionsCache";
 
-    private static final String SQL_CREATE_TABLE = "CREATE TABLE cache (_id INTEGER PRIMARY KEY AUTOINCREMENT, url TEXT NOT NULL UNIQUE, next TEXT NOT NULL, data TEXT NOT NULL, datetime INTEGER)";
+    private static final String SQL_CREATE_TABLE = "CREATE TABLE cache (_id INTEGER PRIMARY KEY AUTOINCREMENT, url TEXT NOT NULL UNIQUE, next TEXT NOT NULL, data TEXT NOT NULL, datetime INTEGER, departure INTEGER NOT NULL, size INTEGER NOT NULL, accessed INTEGER NOT NULL)";
     private static final String SQL_CREATE_INDEX = "CREATE INDEX cache_index ON cache (url);";
+    private static final String SQL_CREATE_ACCESSED_INDEX = "CREATE INDEX cache_accessed_index ON cache (accessed);";
+    private static final String SQL_CREATE_DEPARTURE_INDEX = "CREATE INDEX cache_departure_index ON cache (departure);";
     private static final String TABLE = "cache";
 
+    /**
+     * The maximum total size of the cached pages, in bytes. Least recently used pages are evicted above this size.
+     */
+    static final long MAX_SIZE = 32 * 1024 * 1024;
+
+    /**
+     * The number of past service days to keep, in addition to the current service day.
+     */
+    private static final int RETAINED_PAST_SERVICE_DAYS = 1;
+
+    /**
+     * Run maintenance after this number of pages has been stored.
+     */
+    private static final int MAINTENANCE_INTERVAL = 64;
+
+    /**
+     * The maximum number of free database pages to release in one maintenance run.
+     */
+    private static final int MAX_VACUUM_PAGES = 256;
+
+    // Writes and maintenance run on their own low priority thread, so they never block a foreground query
+    private final ExecutorService mBackgroundExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "LinkedConnectionsCache");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+    private final AtomicBoolean mMaintenanceScheduled = new AtomicBoolean();
+    private final AtomicBoolean mFlushScheduled = new AtomicBoolean();
+
+    // Pages which have been stored but not written yet, by url. These are served from memory until they are written.
+    private final Map<String, PendingWrite> mPendingWrites = new ConcurrentHashMap<>();
+    // Pages which have been verified to be up-to-date, but of which the new time hasn't been written yet
+    private final Map<String, Long> mPendingTouches = new ConcurrentHashMap<>();
+    private final AtomicInteger mStoresSinceMaintenance = new AtomicInteger();
+
+    // Last access times which haven't been written yet. Reads don't write to the database, these are written during maintenance.
+    private final Map<String, Long> mPendingAccesses = new ConcurrentHashMap<>();
+
+    private final long mMaxSize;
+    private boolean mVacuumOnOpen;
+
     LinkedConnectionsOfflineCache(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this(context, DATABASE_NAME, MAX_SIZE);
+    }
+
+    /**
+     * @param name    The name of the database file
+     * @param maxSize The maximum total size of the cached pages, in bytes
+     */
+    LinkedConnectionsOfflineCache(Context context, String name, long maxSize) {
+        super(context, name, null, DATABASE_VERSION);
+        mMaxSize = maxSize;
+        // Allow foreground reads while maintenance is writing
+        setWriteAheadLoggingEnabled(true);
+        scheduleMaintenance();
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        // Only has effect on a new database before any table is created, or on an existing database after a VACUUM
+        db.execSQL("PRAGMA auto_vacuum = INCREMENTAL;");
     }
 
     @Override
     public void onCreate(SQLiteDatabase db) {
         db.execSQL(SQL_CREATE_TABLE);
         db.execSQL(SQL_CREATE_INDEX);
+        db.execSQL(SQL_CREATE_ACCESSED_INDEX);
+        db.execSQL(SQL_CREATE_DEPARTURE_INDEX);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
         db.execSQL("DROP TABLE IF EXISTS cache;");
         onCreate(db);
+        // Databases created before incremental vacuum was enabled need to be rebuilt once for it to take effect
+        mVacuumOnOpen = true;
     }
 
-    public void store(LinkedConnections connections, String data) {
-        ContentValues values = new ContentValues();
-        values.put("url", connections.current);
-        values.put("next", connections.next);
-        values.put("data", data);
-        values.put("datetime", DateTime.now().getMillis());
-        SQLiteDatabase db = getWritableDatabase();
-        int id = (int) db.insertWithOnConflict(TABLE, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        // VACUUM can't run inside the upgrade transaction. The table has just been emptied, so this is fast.
+        if (mVacuumOnOpen && !db.isReadOnly()) {
+            mVacuumOnOpen = false;
+            db.execSQL("VACUUM;");
+        }
+    }
+
+    /**
+     * Store a page. The page is written in the background, together with other pages which are stored in the meantime.
+     * Until then, it is served from memory. When the same data is already stored, only its time is updated.
+     *
+     * @param connections The parsed page
+     * @param data        The data to store for this page
+     * @param fetchedAt   The time at which the page was downloaded, in milliseconds. The freshness of the cached page is based on this time.
+     */
+    public void store(LinkedConnections connections, String data, long fetchedAt) {
+        PendingWrite pending = mPendingWrites.get(connections.current);
+        if (pending != null && pending.data.equals(data)) {
+            // Already waiting to be written
+            mPendingWrites.replace(connections.current, pending, pending.touched(fetchedAt));
+            return;
+        }
+
+        mPendingWrites.put(connections.current, new PendingWrite(connections.current, connections.next, data, getDepartureTime(connections, fetchedAt), fetchedAt));
+        mPendingTouches.remove(connections.current);
+        scheduleFlush();
+
+        if (mStoresSinceMaintenance.incrementAndGet() >= MAINTENANCE_INTERVAL) {
+            scheduleMaintenance();
+        }
+    }
+
+    private static long getDepartureTime(LinkedConnections connections, long fallback) {
+        if (connections.size() == 0) {
+            return fallback;
+        }
+        return connections.getDepartureMillis(0);
+    }
+
+    /**
+     * Mark a cached page as downloaded again, without rewriting its data. This should only be called for pages which were downloaded, not for cache hits.
+     *
+     * @param url       The url of the page which was verified to be unchanged
+     * @param fetchedAt The time at which the page was downloaded, in milliseconds
+     */
+    public void touch(String url, long fetchedAt) {
+        PendingWrite pending = mPendingWrites.get(url);
+        if (pending != null && mPendingWrites.replace(url, pending, pending.touched(fetchedAt))) {
+            return;
+        }
+        mPendingTouches.put(url, fetchedAt);
+        scheduleFlush();
+    }
+
+    /**
+     * @return The size of the database file and the pages which haven't been written yet, in bytes
+     */
+    public long getSize() {
+        long size = new File(getReadableDatabase().getPath()).length();
+        for (PendingWrite pending : mPendingWrites.values()) {
+            size += pending.data.length();
+        }
+        return size;
     }
 
-    @AddTrace(name = "LinkedConnectionsOfflineCache.load")
     public CachedLinkedConnections load(String url) {
+        PendingWrite pending = mPendingWrites.get(url);
+        if (pending != null) {
+            return pending.toCachedLinkedConnections();
+        }
+
         SQLiteDatabase db = getReadableDatabase();
         Cursor c = db.query(TABLE, new String[]{"url", "data", "datetime"}, "url=?", new String[]{url}, null, null, null);
 
@@ -78,29 +215,255 @@ public class LinkedConnectionsOfflineCache extends SQLiteOpenHelper {
         result.data = c.getString(c.getColumnIndex("data"));
         result.url = c.getString(c.getColumnIndex("url"));
         c.close();
+        applyPendingTouch(result);
+        mPendingAccesses.put(result.url, DateTime.now().getMillis());
         return result;
     }
 
-    @AddTrace(name = "LinkedConnectionsOfflineCache.loadApproximate")
     private CachedLinkedConnections loadApproximate(String url) {
+        PendingWrite pending = findApproximate(mPendingWrites.values(), url);
+
         SQLiteDatabase db = getReadableDatabase();
         Cursor c = db.query(TABLE, new String[]{"url", "data", "datetime"}, "url<=? AND next>?", new String[]{url,url}, null, null, "url DESC");
 
         if (c.getCount() == 0) {
             c.close();
-            return null;
+            return pending == null ? null : pending.toCachedLinkedConnections();
         }
 
-        CachedLinkedConnections result = new CachedLinkedConnections();
         c.moveToFirst();
+        // A page which hasn't been written yet is at least as recent as the stored page with the same url
+        if (pending != null && pending.url.compareTo(c.getString(c.getColumnIndex("url"))) >= 0) {
+            c.close();
+            return pending.toCachedLinkedConnections();
+        }
+
+        CachedLinkedConnections result = new CachedLinkedConnections();
         result.createdAt = new DateTime(c.getLong(c.getColumnIndex("datetime")));
         result.data = c.getString(c.getColumnIndex("data"));
         result.url = c.getString(c.getColumnIndex("url"));
         c.close();
+        applyPendingTouch(result);
+        mPendingAccesses.put(result.url, DateTime.now().getMillis());
         return result;
     }
 
-    class CachedLinkedConnections {
+    /**
+     * Find the page which hasn't been written yet and contains the given url. Like the query on the stored pages, the page with the greatest url is used.
+     *
+     * @return The pending page, or null if none contains the url
+     */
+    static PendingWrite findApproximate(Iterable<PendingWrite> pendingWrites, String url) {
+        PendingWrite result = null;
+        for (PendingWrite pending : pendingWrites) {
+            if (pending.url.compareTo(url) <= 0 && pending.next != null && pending.next.compareTo(url) > 0
+                    && (result == null || pending.url.compareTo(result.url) > 0)) {
+                result = pending;
+            }
+        }
+        return result;
+    }
+
+    private void applyPendingTouch(CachedLinkedConnections result) {
+        Long touched = mPendingTouches.get(result.url);
+        if (touched != null) {
+            result.createdAt = new DateTime(touched);
+        }
+    }
+
+    private void scheduleFlush() {
+        if (!mFlushScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        mBackgroundExecutor.execute(() -> {
+            // Reset first, so pages which are stored while flushing are picked up by the next flush
+            mFlushScheduled.set(false);
+            try {
+                flushWrites(getWritableDatabase());
+            } catch (Exception e) {
+                Log.w(LOGTAG, "Writing cached pages failed", e);
+            }
+        });
+    }
+
+    /**
+     * Write all pending pages and touches in a single transaction.
+     * Entries are only removed from memory once they are written, and only if they weren't replaced in the meantime.
+     */
+    private void flushWrites(SQLiteDatabase db) {
+        if (mPendingWrites.isEmpty() && mPendingTouches.isEmpty()) {
+            return;
+        }
+        List<PendingWrite> writes = new ArrayList<>(mPendingWrites.values());
+        Map<String, Long> touches = new HashMap<>(mPendingTouches);
+
+        db.beginTransaction();
+        try {
+            for (PendingWrite write : writes) {
+                ContentValues values = new ContentValues();
+                if (isStored(db, write)) {
+                    // Don't rewrite unchanged data, only mark it as fetched again
+                    values.put("datetime", write.createdAt);
+                    values.put("accessed", write.createdAt);
+                    db.update(TABLE, values, "url=?", new String[]{write.url});
+                    continue;
+                }
+                values.put("url", write.url);
+                values.put("next", write.next);
+                values.put("data", write.data);
+                values.put("datetime", write.createdAt);
+                values.put("departure", write.departure);
+                values.put("size", write.data.length());
+                values.put("accessed", write.createdAt);
+                db.insertWithOnConflict(TABLE, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+            }
+            for (Map.Entry<String, Long> touch : touches.entrySet()) {
+                ContentValues values = new ContentValues();
+                values.put("datetime", touch.getValue());
+                values.put("accessed", touch.getValue());
+                db.update(TABLE, values, "url=?", new String[]{touch.getKey()});
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        for (PendingWrite write : writes) {
+            mPendingWrites.remove(write.url, write);
+        }
+        for (Map.Entry<String, Long> touch : touches.entrySet()) {
+            mPendingTouches.remove(touch.getKey(), touch.getValue());
+        }
+    }
+
+    private static boolean isStored(SQLiteDatabase db, PendingWrite write) {
+        Cursor c = db.query(TABLE, new String[]{"data"}, "url=? AND size=?", new String[]{write.url, String.valueOf(write.data.length())}, null, null, null);
+        try {
+            return c.moveToFirst() && write.data.equals(c.getString(0));
+        } finally {
+            c.close();
+        }
+    }
+
+    /**
+     * Run maintenance in the background, unless it's already scheduled.
+     * Maintenance writes the last access times, removes pages of old service days, evicts least recently used pages above the size cap and compacts the database.
+     */
+    void scheduleMaintenance() {
+        if (!mMaintenanceScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        mStoresSinceMaintenance.set(0);
+        mBackgroundExecutor.execute(() -> {
+            mMaintenanceScheduled.set(false);
+            try {
+                runMaintenance();
+            } catch (Exception e) {
+                Log.w(LOGTAG, "Cache maintenance failed", e);
+            }
+        });
+    }
+
+    synchronized void runMaintenance() {
+        SQLiteDatabase db = getWritableDatabase();
+        flushWrites(db);
+        flushAccesses(db);
+
+        LocalDate oldestServiceDay = LinkedConnectionsTripIndex.getServiceDay(DateTime.now()).minusDays(RETAINED_PAST_SERVICE_DAYS);
+        long expiredBefore = oldestServiceDay.toDateTimeAtStartOfDay().plusHours(3).getMillis();
+        int expired = db.delete(TABLE, "departure<?", new String[]{String.valueOf(expiredBefore)});
+        int evicted = evictLeastRecentlyUsed(db);
+
+        if (expired + evicted > 0) {
+            // Release free pages a few at a time, a full VACUUM would lock the database for too long
+            Cursor c = db.rawQuery("PRAGMA incremental_vacuum(" + MAX_VACUUM_PAGES + ");", null);
+            while (c.moveToNext()) {
+                // Every step frees a page
+            }
+            c.close();
+        }
+        Log.d(LOGTAG, "Maintenance removed " + expired + " expired and " + evicted + " least recently used pages");
+    }
+
+    private void flushAccesses(SQLiteDatabase db) {
+        if (mPendingAccesses.isEmpty()) {
+            return;
+        }
+        Map<String, Long> accesses = new HashMap<>(mPendingAccesses);
+        db.beginTransaction();
+        try {
+            ContentValues values = new ContentValues();
+            for (Map.Entry<String, Long> access : accesses.entrySet()) {
+                values.put("accessed", access.getValue());
+                db.update(TABLE, values, "url=? AND accessed<?", new String[]{access.getKey(), String.valueOf(access.getValue())});
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        for (Map.Entry<String, Long> access : accesses.entrySet()) {
+            mPendingAccesses.remove(access.getKey(), access.getValue());
+        }
+    }
+
+    private int evictLeastRecentlyUsed(SQLiteDatabase db) {
+        Cursor total = db.rawQuery("SELECT SUM(size) FROM " + TABLE, null);
+        long size = total.moveToFirst() ? total.getLong(0) : 0;
+        total.close();
+        if (size <= mMaxSize) {
+            return 0;
+        }
+
+        List<Long> evict = new ArrayList<>();
+        Cursor c = db.query(TABLE, new String[]{"_id", "size"}, null, null, null, null, "accessed ASC");
+        while (size > mMaxSize && c.moveToNext()) {
+            evict.add(c.getLong(0));
+            size -= c.getLong(1);
+        }
+        c.close();
+
+        db.beginTransaction();
+        try {
+            for (Long id : evict) {
+                db.delete(TABLE, "_id=?", new String[]{String.valueOf(id)});
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return evict.size();
+    }
+
+    /**
+     * A page which has been stored, but hasn't been written to the database yet.
+     */
+    static class PendingWrite {
+        final String url, next, data;
+        final long departure;
+        final long createdAt;
+
+        PendingWrite(String url, String next, String data, long departure, long createdAt) {
+            this.url = url;
+            this.next = next;
+            this.data = data;
+            this.departure = departure;
+            this.createdAt = createdAt;
+        }
+
+        PendingWrite touched(long time) {
+            return new PendingWrite(url, next, data, departure, time);
+        }
+
+        CachedLinkedConnections toCachedLinkedConnections() {
+            CachedLinkedConnections result = new CachedLinkedConnections();
+            result.url = url;
+            result.data = data;
+            result.createdAt = new DateTime(createdAt);
+            return result;
+        }
+    }
+
+    static class CachedLinkedConnections {
         String url, data;
         DateTime createdAt;
     }
@@ -0,0 +1,147 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.opentransportdata.be.experimental.linkedconnections;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import org.joda.time.DateTime;
+
+import be.hyperrail.opentransportdata.common.contracts.MeteredDataSource;
+
+/**
+ * Downloads all linked connections pages up to a certain time into the offline cache, so route, liveboard and vehicle queries can run without a network connection.
+ * Downloaded pages are stored by the provider, and the sync stops when the offline cache grows beyond its storage budget.
+ */
+public class LinkedConnectionsOfflineSync implements QueryResponseListener.LinkedConnectionsQuery {
+
+    private static final String LOGTAG = "LinkedConnectionsSync";
+
+    /**
+     * Service days start at 03:00, so night trains are part of the day on which they departed.
+     */
+    private static final int SERVICE_DAY_START_HOUR = 3;
+
+    private final LinkedConnectionsProvider mProvider;
+    private final DateTime mSyncUntil;
+    private final long mStorageBudget;
+    private final Listener mListener;
+
+    private int mPages = 0;
+    private volatile boolean mCancelled = false;
+    private boolean mFinished = false;
+
+    /**
+     * @param provider      The provider which is used to load pages, and which stores them in the offline cache
+     * @param syncUntil     The departure time up to which pages should be downloaded
+     * @param storageBudget The maximum size of the offline cache, in bytes
+     * @param listener      The listener which receives progress updates
+     */
+    LinkedConnectionsOfflineSync(@NonNull LinkedConnectionsProvider provider, @NonNull DateTime syncUntil, long storageBudget, @NonNull Listener listener) {
+        mProvider = provider;
+        mSyncUntil = syncUntil;
+        mStorageBudget = storageBudget;
+        mListener = listener;
+    }
+
+    void start() {
+        MeteredDataSource.MeteredRequest meteredRequest = new MeteredDataSource.MeteredRequest();
+        meteredRequest.setTag("Offline sync until " + mSyncUntil);
+        meteredRequest.setMsecStart(DateTime.now().getMillis());
+        mProvider.queryLinkedConnections(DateTime.now(), this, meteredRequest);
+    }
+
+    /**
+     * Stop the sync after the page which is currently being loaded.
+     */
+    void cancel() {
+        mCancelled = true;
+    }
+
+    @Override
+    public int onQueryResult(LinkedConnections data) {
+        if (mCancelled) {
+            finish(false);
+            return 0;
+        }
+
+        mPages++;
+
+        if (data.size() == 0) {
+            // Empty pages, e.g. during the night, don't tell how far we are
+            return 1;
+        }
+
+        DateTime syncedUntil = new DateTime(data.getDepartureMillis(data.size() - 1));
+        mListener.onSyncProgress(mPages, syncedUntil, mSyncUntil);
+
+        if (!syncedUntil.isBefore(mSyncUntil)) {
+            finish(true);
+            return 0;
+        }
+
+        if (mProvider.getOfflineCacheSize() > mStorageBudget) {
+            Log.w(LOGTAG, "Storage budget reached after " + mPages + " pages");
+            finish(false);
+            return 0;
+        }
+
+        return 1;
+    }
+
+    @Override
+    public void onQueryFailed(Exception e, Object tag) {
+        Log.w(LOGTAG, "Sync failed after " + mPages + " pages: " + e.getMessage());
+        finish(false);
+    }
+
+    private void finish(boolean completed) {
+        if (mFinished) {
+            return;
+        }
+        mFinished = true;
+        mListener.onSyncFinished(completed);
+    }
+
+    /**
+     * Get the time at which the service day ends.
+     *
+     * @param time            A time within the service day
+     * @param includeTomorrow Whether the next service day should be included as well
+     * @return The end of the service day (03:00 the next morning), or the end of the next service day
+     */
+    static DateTime getEndOfServiceDay(DateTime time, boolean includeTomorrow) {
+        DateTime end = time.minusHours(SERVICE_DAY_START_HOUR).withTimeAtStartOfDay().plusDays(1).withHourOfDay(SERVICE_DAY_START_HOUR);
+        if (includeTomorrow) {
+            end = end.plusDays(1);
+        }
+        return end;
+    }
+
+    /**
+     * Listener for the progress of an offline sync.
+     */
+    public interface Listener {
+
+        /**
+         * Called after every downloaded page.
+         *
+         * @param pages       The number of pages which have been downloaded
+         * @param syncedUntil The latest departure time which is available offline
+         * @param syncUntil   The departure time up to which pages will be downloaded
+         */
+        void onSyncProgress(int pages, DateTime syncedUntil, DateTime syncUntil);
+
+        /**
+         * Called once the sync has stopped.
+         *
+         * @param completed True if all pages have been downloaded, false if the sync failed, was cancelled, or reached its storage budget
+         */
+        void onSyncFinished(boolean completed);
+    }
+}
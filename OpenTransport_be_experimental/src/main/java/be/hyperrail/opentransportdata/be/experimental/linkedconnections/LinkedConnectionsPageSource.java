@@ -0,0 +1,23 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.opentransportdata.be.experimental.linkedconnections;
+
+import be.hyperrail.opentransportdata.common.contracts.TransportDataErrorResponseListener;
+import be.hyperrail.opentransportdata.common.contracts.TransportDataSuccessResponseListener;
+
+/**
+ * Loads single linked connections pages, which are walked through by the query listeners.
+ */
+interface LinkedConnectionsPageSource {
+
+    /**
+     * Load the page with the given url.
+     *
+     * @param tag The metered request for which the page is loaded
+     */
+    void getLinkedConnectionsByUrl(String url, TransportDataSuccessResponseListener<LinkedConnections> successListener, TransportDataErrorResponseListener errorListener, Object tag);
+}
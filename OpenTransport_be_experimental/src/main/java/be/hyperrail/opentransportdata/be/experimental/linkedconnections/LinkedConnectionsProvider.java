@@ -11,7 +11,11 @@ import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import android.util.Log;
 
+import com.android.volley.Cache;
 import com.android.volley.DefaultRetryPolicy;
+import com.android.volley.ExecutorDelivery;
+import com.android.volley.Network;
+import com.android.volley.NetworkResponse;
 import com.android.volley.NoConnectionError;
 import com.android.volley.Request;
 import com.android.volley.RequestQueue;
@@ -21,10 +25,6 @@ import com.android.volley.toolbox.BasicNetwork;
 import com.android.volley.toolbox.DiskBasedCache;
 import com.android.volley.toolbox.HurlStack;
 import com.android.volley.toolbox.StringRequest;
-import com.bluelinelabs.logansquare.LoganSquare;
-import com.google.firebase.perf.FirebasePerformance;
-import com.google.firebase.perf.metrics.AddTrace;
-import com.google.firebase.perf.metrics.Trace;
 
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
@@ -33,33 +33,64 @@ import org.joda.time.format.ISODateTimeFormat;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
 
 import androidx.annotation.NonNull;
 import be.hyperrail.opentransportdata.be.experimental.BuildConfig;
+import be.hyperrail.opentransportdata.common.contracts.DelayChange;
+import be.hyperrail.opentransportdata.common.contracts.DelayUpdateListener;
 import be.hyperrail.opentransportdata.common.contracts.MeteredDataSource;
 import be.hyperrail.opentransportdata.common.contracts.TransportDataErrorResponseListener;
 import be.hyperrail.opentransportdata.common.contracts.TransportDataSuccessResponseListener;
+import be.hyperrail.opentransportdata.tracing.OpenTransportTracing;
+import be.hyperrail.opentransportdata.tracing.Span;
 
 /**
  * Created in be.hyperrail.android.irail.implementation.linkedconnections on 15/03/2018.
  */
 
-public class LinkedConnectionsProvider {
+public class LinkedConnectionsProvider implements LinkedConnectionsPageSource {
 
     private static final String GTFS_REGULAR = "gtfs:Regular";
     private static final String GTFS_DROP_OFF_TYPE = "gtfs:dropOffType";
     private static final String GTFS_PICKUP_TYPE = "gtfs:pickupType";
 
     private static final String BASE_URL = "https://graph.irail.be/sncb/connections?departureTime=";
+
+    /**
+     * The number of parsed pages to keep in memory, so refreshed pages can be diffed against the version which is already in use.
+     */
+    private static final int MAX_RECENT_PAGES = 32;
     private final LinkedConnectionsOfflineCache mLinkedConnectionsOfflineCache;
+    private final LinkedConnectionsTripIndex mTripIndex = new LinkedConnectionsTripIndex();
+    private final LinkedConnectionsStreamParser mParser = new LinkedConnectionsStreamParser();
+    private final Map<String, LinkedConnections> mRecentPages = new LinkedHashMap<String, LinkedConnections>(MAX_RECENT_PAGES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, LinkedConnections> eldest) {
+            return size() > MAX_RECENT_PAGES;
+        }
+    };
+    private final List<DelayUpdateListener> mDelayUpdateListeners = new CopyOnWriteArrayList<>();
     private final RequestQueue requestQueue;
+    // Parsing, storing and processing pages happens here, never on the main thread
+    private final ThreadPoolExecutor mComputeExecutor = LinkedConnectionsExecutor.create(2);
     private final RetryPolicy requestPolicy;
     private final ConnectivityManager mConnectivityManager;
 
     private boolean mCacheEnabled = true;
 
+    private static LinkedConnectionsProvider sInstance;
+
     private static final String UA = "OpenTransport-be-experimental for Android - " + BuildConfig.VERSION_NAME;
 
     private boolean isInternetAvailable() {
@@ -68,22 +99,41 @@ public class LinkedConnectionsProvider {
                 activeNetwork.isConnectedOrConnecting();
     }
 
-    LinkedConnectionsProvider(Context context) {
-        this.mLinkedConnectionsOfflineCache = new LinkedConnectionsOfflineCache(context);
+    /**
+     * Get the provider which is shared by all linked connections data sources and the offline sync, so there is only one request queue, compute executor and offline cache.
+     *
+     * @param context Any context, the application context is used
+     * @return The shared provider
+     */
+    static synchronized LinkedConnectionsProvider getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new LinkedConnectionsProvider(context.getApplicationContext());
+        }
+        return sInstance;
+    }
 
-        BasicNetwork network;
-        network = new BasicNetwork(new HurlStack());
-        File cacheDir = new File(context.getCacheDir(), "volley");
-        this.requestQueue = new RequestQueue(new DiskBasedCache(cacheDir, 48 * 1024 * 1024), network);
+    private LinkedConnectionsProvider(Context context) {
+        this(new LinkedConnectionsOfflineCache(context),
+                new BasicNetwork(new MeteredHttpStack(new HurlStack())),
+                new DiskBasedCache(new File(context.getCacheDir(), "volley"), 48 * 1024 * 1024),
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE));
         requestQueue.start();
+    }
 
+    /**
+     * Create a provider which doesn't start its request queue yet.
+     */
+    LinkedConnectionsProvider(LinkedConnectionsOfflineCache offlineCache, Network network, Cache httpCache, ConnectivityManager connectivityManager) {
+        this.mLinkedConnectionsOfflineCache = offlineCache;
+        // Volley delivers responses on the main thread by default, deliver them on the compute executor instead.
+        // The network threads wait while 16 responses are waiting to be processed.
+        this.requestQueue = new RequestQueue(httpCache, network, 4, new ExecutorDelivery(LinkedConnectionsExecutor.throttle(mComputeExecutor, 16)));
         this.requestPolicy = new DefaultRetryPolicy(
                 1000,
                 2,
                 DefaultRetryPolicy.DEFAULT_BACKOFF_MULT
         );
-        mConnectivityManager =
-                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        mConnectivityManager = connectivityManager;
     }
 
     void getLinkedConnectionsByDate(DateTime startTime, final TransportDataSuccessResponseListener<LinkedConnections> successListener, final TransportDataErrorResponseListener errorListener, Object tag) {
@@ -105,7 +155,7 @@ public class LinkedConnectionsProvider {
         getLinkedConnectionsByDate(startTime, responseListener, responseListener, tag);
     }
 
-    private void queryLinkedConnections(String startUrl, final QueryResponseListener.LinkedConnectionsQuery query, Object tag) {
+    void queryLinkedConnections(String startUrl, final QueryResponseListener.LinkedConnectionsQuery query, Object tag) {
         QueryResponseListener responseListener = new QueryResponseListener(this, query);
         getLinkedConnectionsByUrl(startUrl, responseListener, responseListener, tag);
     }
@@ -126,33 +176,29 @@ public class LinkedConnectionsProvider {
     }
 
 
-    void getLinkedConnectionsByUrl(final String url, final TransportDataSuccessResponseListener<LinkedConnections> successListener, final TransportDataErrorResponseListener errorListener, final Object tag) {
+    @Override
+    public void getLinkedConnectionsByUrl(final String url, final TransportDataSuccessResponseListener<LinkedConnections> successListener, final TransportDataErrorResponseListener errorListener, final Object tag) {
+        // Cache lookups and cache hits are parsed and processed like downloaded pages, never on the calling thread
+        mComputeExecutor.execute(() -> loadLinkedConnectionsByUrl(url, successListener, errorListener, tag));
+    }
+
+    private void loadLinkedConnectionsByUrl(final String url, final TransportDataSuccessResponseListener<LinkedConnections> successListener, final TransportDataErrorResponseListener errorListener, final Object tag) {
         // https://graph.irail.be/sncb/connections?departureTime={ISO8601}
         if (BuildConfig.DEBUG) {
             Log.i("LCProvider", "Loading " + url);
         }
         // TODO: prevent loading the same URL twice when two requests are made short after each other (locking based on URL)
 
-        final Trace tracing = FirebasePerformance.getInstance().newTrace("LinkedConnectionsProvider.getByUrl");
-        tracing.start();
+        final Span tracing = OpenTransportTracing.startSpan("page fetch", OpenTransportTracing.getRequestSpan(tag));
+        tracing.setAttribute("url", url);
 
-        Response.Listener<String> volleySuccessListener = buildSuccessListener(url, successListener, errorListener, tag, tracing);
+        Response.Listener<String> volleySuccessListener = buildSuccessListener(url, successListener, errorListener, tag, tracing, true);
 
         Response.ErrorListener volleyErrorListener = buildErrorListener(url, successListener, errorListener, tag, tracing);
 
-        StringRequest jsObjRequest = new StringRequest(Request.Method.GET, url,
-                volleySuccessListener,
-                volleyErrorListener) {
-            @Override
-            public Map<String, String> getHeaders() {
-                Map<String, String> headers = new HashMap<>();
-                headers.put("User-agent", UA);
-                return headers;
-            }
-        };
         LinkedConnectionsOfflineCache.CachedLinkedConnections cache = null;
         if (mCacheEnabled) {
-            cache = mLinkedConnectionsOfflineCache.load(url);
+            cache = loadFromCache(url, tracing);
         }
         if (cache != null && mCacheEnabled && cache.createdAt.isAfter(DateTime.now().minusSeconds(60))) {
             try {
@@ -160,11 +206,11 @@ public class LinkedConnectionsProvider {
                 if (BuildConfig.DEBUG) {
                     Log.w("LCProvider", "Fulfilled without network");
                 }
-                volleySuccessListener.onResponse(cache.data);
+                buildSuccessListener(url, successListener, errorListener, tag, tracing, false).onResponse(cache.data);
                 return;
             } catch (Exception e) {
                 e.printStackTrace();
-                tracing.stop();
+                tracing.end();
             }
         } else {
             if (cache == null) {
@@ -180,6 +226,7 @@ public class LinkedConnectionsProvider {
 
         if (isInternetAvailable()) {
             ((MeteredDataSource.MeteredRequest) tag).setResponseType(MeteredDataSource.RESPONSE_ONLINE);
+            StringRequest jsObjRequest = createRequest(url, tag, volleySuccessListener, volleyErrorListener);
             jsObjRequest.setShouldCache(mCacheEnabled);
             jsObjRequest.setRetryPolicy(requestPolicy);
             //Log.i(LOGTAG, "Cached? " + url + ": " + (requestQueue.getCache().get(url) == null ? "empty" : (requestQueue.getCache().get(url).isExpired() ? "expired" : "valid")));
@@ -190,49 +237,184 @@ public class LinkedConnectionsProvider {
         }
     }
 
+    /**
+     * Download the pages which contain the given connections again, without waiting for the cached version to expire.
+     * Only pages which are still in memory are refreshed, the delay update listeners are notified of every changed delay.
+     *
+     * @param semanticIds The semantic ids of the connections to refresh
+     */
+    void refreshDelays(final String... semanticIds) {
+        mComputeExecutor.execute(() -> {
+            Set<String> ids = new HashSet<>(Arrays.asList(semanticIds));
+            List<LinkedConnections> pages;
+            synchronized (mRecentPages) {
+                pages = new ArrayList<>(mRecentPages.values());
+            }
+            for (LinkedConnections page : pages) {
+                if (page.containsAny(ids)) {
+                    refreshPage(page.current);
+                }
+            }
+        });
+    }
+
+    /**
+     * Download a page again, bypassing the HTTP cache.
+     * When the page in memory contains the same connections, only its delays are updated. Otherwise the new page replaces it.
+     *
+     * @param url The url of the page to refresh
+     */
+    private void refreshPage(final String url) {
+        if (!isInternetAvailable()) {
+            return;
+        }
+
+        final Span tracing = OpenTransportTracing.startSpan("refresh delays");
+        tracing.setAttribute("url", url);
+
+        TransportDataSuccessResponseListener<LinkedConnections> ignoreSuccess = (data, tag) -> {
+            // Changed delays are passed to the delay update listeners
+        };
+        TransportDataErrorResponseListener ignoreError = (e, tag) -> {
+            if (BuildConfig.DEBUG) {
+                Log.w("LCProvider", "Refreshing delays for " + url + " failed: " + e.getMessage());
+            }
+        };
+
+        StringRequest request = createRequest(url, null,
+                buildSuccessListener(url, ignoreSuccess, ignoreError, null, tracing, true),
+                error -> {
+                    tracing.end();
+                    ignoreError.onErrorResponse(error, null);
+                });
+        request.setShouldCache(false);
+        request.setRetryPolicy(requestPolicy);
+        requestQueue.add(request);
+    }
+
+    void addDelayUpdateListener(DelayUpdateListener listener) {
+        mDelayUpdateListeners.add(listener);
+    }
+
+    void removeDelayUpdateListener(DelayUpdateListener listener) {
+        mDelayUpdateListeners.remove(listener);
+    }
+
     @NonNull
-    private Response.ErrorListener buildErrorListener(String url, TransportDataSuccessResponseListener<LinkedConnections> successListener, TransportDataErrorResponseListener errorListener, Object tag, Trace tracing) {
+    private StringRequest createRequest(String url, Object tag, Response.Listener<String> successListener, Response.ErrorListener errorListener) {
+        StringRequest request = new StringRequest(Request.Method.GET, url,
+                successListener,
+                errorListener) {
+            @Override
+            public Map<String, String> getHeaders() {
+                Map<String, String> headers = new HashMap<>();
+                headers.put("User-agent", UA);
+                return headers;
+            }
+
+            @Override
+            protected Response<String> parseNetworkResponse(NetworkResponse response) {
+                // Responses from the HTTP cache never went over the network, revalidated responses only returned headers
+                boolean fromHttpCache = response.notModified || response.networkTimeMs == 0;
+                onCacheTierHit(tag, fromHttpCache ? MeteredDataSource.CACHE_TIER_HTTP : MeteredDataSource.CACHE_TIER_NETWORK);
+                return super.parseNetworkResponse(response);
+            }
+        };
+        // The tag is used by the http stack to attribute the transferred bytes
+        request.setTag(tag);
+        return request;
+    }
+
+    @NonNull
+    private Response.ErrorListener buildErrorListener(String url, TransportDataSuccessResponseListener<LinkedConnections> successListener, TransportDataErrorResponseListener errorListener, Object tag, Span tracing) {
         return error -> {
             if (BuildConfig.DEBUG) {
                 Log.w("LCProvider", "Getting LC page " + url + " failed: " + error.getMessage());
             }
-            LinkedConnectionsOfflineCache.CachedLinkedConnections cache = mLinkedConnectionsOfflineCache.load(url);
+            LinkedConnectionsOfflineCache.CachedLinkedConnections cache = loadFromCache(url, tracing);
             if (cache == null) {
                 if (BuildConfig.DEBUG) {
                     Log.w("LCProvider", "Getting LC page " + url + " failed: offline cache missed!");
                 }
-                tracing.stop();
+                tracing.end();
                 errorListener.onErrorResponse(error, tag);
             } else {
                 try {
                     if (BuildConfig.DEBUG) {
                         Log.w("LCProvider", "Getting LC page " + url + " failed: offline cache hit!");
                     }
-                    LinkedConnections result = getLinkedConnectionsFromJson(cache.data);
+                    onPageFetched(tag);
+                    onCacheTierHit(tag, MeteredDataSource.CACHE_TIER_OFFLINE);
+                    LinkedConnections result = getLinkedConnectionsFromJson(cache.data, tracing);
+                    ingest(result);
+                    tracing.end();
                     successListener.onSuccessResponse(result, tag);
                 } catch (Exception e) {
                     e.printStackTrace();
-                    tracing.stop();
+                    tracing.end();
                     errorListener.onErrorResponse(error, tag);
                 }
             }
         };
     }
 
+    /**
+     * Build the listener which parses a page and passes it on.
+     *
+     * @param fromNetwork True if the page was just downloaded. Only downloaded pages are stored, or mark the stored page as fetched, so a page loaded from the cache
+     *                    never looks fresher than it is.
+     */
     @NonNull
-    private Response.Listener<String> buildSuccessListener(String url, TransportDataSuccessResponseListener<LinkedConnections> successListener, TransportDataErrorResponseListener errorListener, Object tag, Trace tracing) {
+    private Response.Listener<String> buildSuccessListener(String url, TransportDataSuccessResponseListener<LinkedConnections> successListener, TransportDataErrorResponseListener errorListener, Object tag, Span tracing, boolean fromNetwork) {
         return response -> {
             if (BuildConfig.DEBUG) {
                 Log.w("LCProvider", "Getting LC page successful: " + url);
             }
+            long fetchedAt = DateTime.now().getMillis();
+            onPageFetched(tag);
             try {
-                LinkedConnections result = getLinkedConnectionsFromJson(response);
-                mLinkedConnectionsOfflineCache.store(result, response.toString());
-                tracing.stop();
+                LinkedConnections known = fromNetwork ? null : getRecentPage(url);
+                if (!fromNetwork) {
+                    onCacheTierHit(tag, known != null ? MeteredDataSource.CACHE_TIER_MEMORY : MeteredDataSource.CACHE_TIER_OFFLINE);
+                }
+                LinkedConnections result = known;
+                if (result == null) {
+                    result = getLinkedConnectionsFromJson(response, tracing);
+                    known = getRecentPage(result.current);
+                }
+                List<DelayChange> changes = fromNetwork && known != null ? known.updateDelaysFrom(result) : null;
+                if (changes != null) {
+                    // Keep using the page in memory, so its indices stay valid
+                    if (changes.isEmpty()) {
+                        mLinkedConnectionsOfflineCache.touch(known.current, fetchedAt);
+                    } else {
+                        mLinkedConnectionsOfflineCache.store(known, toCompactJson(known, response), fetchedAt);
+                    }
+                    result = known;
+                } else if (fromNetwork) {
+                    // The page contains other connections than the page in memory, and replaces it
+                    if (known != null) {
+                        changes = known.getDelayChanges(result);
+                    }
+                    mLinkedConnectionsOfflineCache.store(result, toCompactJson(result, response), fetchedAt);
+                    ingest(result);
+                    rememberPage(result);
+                } else if (known != null) {
+                    result = known;
+                } else {
+                    ingest(result);
+                    rememberPage(result);
+                }
+                tracing.end();
                 successListener.onSuccessResponse(result, tag);
+                if (changes != null && !changes.isEmpty()) {
+                    for (DelayUpdateListener listener : mDelayUpdateListeners) {
+                        listener.onDelaysUpdated(changes);
+                    }
+                }
             } catch (Exception e) {
                 e.printStackTrace();
-                tracing.stop();
+                tracing.end();
                 errorListener.onErrorResponse(e, tag);
             }
 
@@ -240,11 +422,108 @@ public class LinkedConnectionsProvider {
         };
     }
 
+    /**
+     * Update the metrics for a request when one of its pages has been loaded, from the network or from a cache.
+     *
+     * @param tag The tag which was passed with the page request
+     */
+    private static void onPageFetched(Object tag) {
+        if (tag instanceof MeteredDataSource.MeteredRequest) {
+            MeteredDataSource.MeteredRequest meteredRequest = (MeteredDataSource.MeteredRequest) tag;
+            meteredRequest.setMsecUsableNetworkResponse(DateTime.now().getMillis());
+            meteredRequest.addPageFetched();
+        }
+    }
+
+    private static void onCacheTierHit(Object tag, @MeteredDataSource.cacheTier int tier) {
+        if (tag instanceof MeteredDataSource.MeteredRequest) {
+            ((MeteredDataSource.MeteredRequest) tag).addCacheTierHit(tier);
+        }
+    }
+
     @NonNull
-    @AddTrace(name = "LinkedConnectionsProvider.fromJsonLS")
-    private LinkedConnections getLinkedConnectionsFromJson(String response) throws
+    private LinkedConnections getLinkedConnectionsFromJson(String response, Span pageSpan) throws
             IOException {
-        return LoganSquare.parse(response, LinkedConnections.class);
+        Span span = pageSpan.startChild("parse");
+        try {
+            return mParser.parse(response);
+        } finally {
+            span.end();
+        }
+    }
+
+    private LinkedConnectionsOfflineCache.CachedLinkedConnections loadFromCache(String url, Span pageSpan) {
+        Span span = pageSpan.startChild("cache lookup");
+        LinkedConnectionsOfflineCache.CachedLinkedConnections cache = mLinkedConnectionsOfflineCache.load(url);
+        span.setAttribute("hit", String.valueOf(cache != null));
+        span.end();
+        return cache;
+    }
+
+    /**
+     * Build the indices for a page which has just been parsed, so every query can use them.
+     *
+     * @param page The parsed page
+     */
+    private void ingest(LinkedConnections page) {
+        page.buildStationPostings();
+        mTripIndex.index(page);
+    }
+
+    private LinkedConnections getRecentPage(String url) {
+        synchronized (mRecentPages) {
+            return mRecentPages.get(url);
+        }
+    }
+
+    private void rememberPage(LinkedConnections page) {
+        if (page.current == null) {
+            return;
+        }
+        synchronized (mRecentPages) {
+            mRecentPages.put(page.current, page);
+        }
+    }
+
+    /**
+     * Serialize a page in a compact form, which only contains the fields used by this library. This keeps a full day of pages within the offline storage budget.
+     *
+     * @param page     The parsed page
+     * @param response The downloaded JSON, which is stored when the page can't be serialized
+     * @return The JSON to store
+     */
+    private static String toCompactJson(LinkedConnections page, String response) {
+        try {
+            return page.toJson();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return response;
+        }
+    }
+
+    /**
+     * @return The size of the offline cache, in bytes
+     */
+    long getOfflineCacheSize() {
+        return mLinkedConnectionsOfflineCache.getSize();
+    }
+
+    /**
+     * Get the executor on which pages are processed. Query listeners run on this executor.
+     *
+     * @return The compute executor
+     */
+    Executor getComputeExecutor() {
+        return mComputeExecutor;
+    }
+
+    /**
+     * Get the index of trips in all pages which have been loaded by this provider.
+     *
+     * @return The trip index
+     */
+    LinkedConnectionsTripIndex getTripIndex() {
+        return mTripIndex;
     }
 
     void setCacheEnabled(boolean cacheEnabled) {
@@ -16,7 +16,8 @@ import be.hyperrail.opentransportdata.common.contracts.QueryTimeDefinition;
 import be.hyperrail.opentransportdata.common.models.Route;
 import be.hyperrail.opentransportdata.common.models.RoutesList;
 import be.hyperrail.opentransportdata.common.models.StopLocation;
-import be.hyperrail.opentransportdata.util.ArrayUtils;
+import be.hyperrail.opentransportdata.common.models.implementation.RoutesListImpl;
+import be.hyperrail.opentransportdata.util.SortedChunkList;
 
 /**
  * Result of a route query. Includes the query, as parsed server-side.
@@ -25,24 +26,38 @@ import be.hyperrail.opentransportdata.util.ArrayUtils;
  */
 public class LinkedConnectionsRoutesList implements RoutesList, Serializable {
 
+    private static final Route[] ROUTE_ARRAY_TYPE = new Route[0];
+
     private final StopLocation origin;
     private final StopLocation destination;
     private final QueryTimeDefinition timeDefinition;
     private final DateTime mLastSearchTime;
-    private Route[] routes;
+    private final SortedChunkList<Route> routes;
 
     private NextDataPointer previousPagePointer;
     private NextDataPointer currentPagePointer;
     private NextDataPointer nextPagePointer;
 
+    // The state of the route query, used to load earlier or later routes without scanning the same connections again.
+    // This state is only kept in memory, and is lost when this list is serialized.
+    private transient RouteScanState mScanState;
+
     public LinkedConnectionsRoutesList(StopLocation origin, StopLocation destination, DateTime searchTime, QueryTimeDefinition timeDefinition, Route[] routes) {
         this.destination = destination;
         this.mLastSearchTime = searchTime;
         this.origin = origin;
-        this.routes = routes;
+        this.routes = new SortedChunkList<>(routes);
         this.timeDefinition = timeDefinition;
     }
 
+    private LinkedConnectionsRoutesList(LinkedConnectionsRoutesList routesList, SortedChunkList<Route> routes) {
+        this.destination = routesList.destination;
+        this.mLastSearchTime = routesList.mLastSearchTime;
+        this.origin = routesList.origin;
+        this.routes = routes;
+        this.timeDefinition = routesList.timeDefinition;
+    }
+
     public StopLocation getOrigin() {
         return origin;
     }
@@ -60,13 +75,18 @@ public class LinkedConnectionsRoutesList implements RoutesList, Serializable {
     }
 
     public Route[] getRoutes() {
-        return routes;
+        return routes.toArray(ROUTE_ARRAY_TYPE);
     }
 
+    /**
+     * Create a list containing both these routes and the routes from another list, sorted by departure time.
+     * Routes which are already present are skipped. This list remains unchanged and shares its routes with the returned list.
+     *
+     * @param data The routes to add, which may depart before or after the routes in this list
+     * @return The combined list, without page information or scan state
+     */
     public LinkedConnectionsRoutesList withRoutesAppended(LinkedConnectionsRoutesList data) {
-        return new LinkedConnectionsRoutesList(this.getOrigin(), this.destination,
-                this.getSearchTime(), this.getTimeDefinition(),
-                ArrayUtils.concatenate(this.routes, data.routes));
+        return new LinkedConnectionsRoutesList(this, routes.withMerged(data.getRoutes(), RoutesListImpl.ROUTE_ORDER, RoutesListImpl.ROUTE_KEY));
     }
 
 
@@ -92,4 +112,30 @@ public class LinkedConnectionsRoutesList implements RoutesList, Serializable {
     public NextDataPointer getNextResultsPointer() {
         return nextPagePointer;
     }
+
+    /**
+     * Create a copy of this list with other page information and scan state. This list remains unchanged and shares its routes with the returned list.
+     *
+     * @return The copy
+     */
+    LinkedConnectionsRoutesList withPageInfo(NextDataPointer previous, NextDataPointer current, NextDataPointer next, RouteScanState scanState) {
+        LinkedConnectionsRoutesList copy = new LinkedConnectionsRoutesList(this, routes);
+        copy.setPageInfo(previous, current, next);
+        copy.mScanState = scanState;
+        return copy;
+    }
+
+    void setScanState(RouteScanState scanState) {
+        mScanState = scanState;
+    }
+
+    /**
+     * Get a copy of the scan state of this list. The state in this list stays unchanged, as this list may be shared, e.g. by a result cache.
+     *
+     * @return A copy of the scan state which can be continued, or null if no state is available
+     */
+    RouteScanState getScanState() {
+        RouteScanState scanState = mScanState;
+        return scanState == null ? null : scanState.copy();
+    }
 }
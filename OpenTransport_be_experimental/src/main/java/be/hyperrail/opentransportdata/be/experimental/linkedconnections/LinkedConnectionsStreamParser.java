@@ -0,0 +1,122 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.opentransportdata.be.experimental.linkedconnections;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+
+/**
+ * Streaming parser which stores the connections of a linked connections page in primitive columns in a single pass.
+ * Unlike the LoganSquare parser, no objects are created per connection, timestamps are decoded without a formatter, and recurring stop, trip, route and direction URIs
+ * share a single id per page.
+ */
+class LinkedConnectionsStreamParser {
+
+    // Most pages contain a few hundred connections
+    private static final int INITIAL_CAPACITY = 512;
+
+    private final JsonFactory mJsonFactory = new JsonFactory();
+
+    LinkedConnections parse(String json) throws IOException {
+        LinkedConnections page = new LinkedConnections();
+        LinkedConnectionsColumns columns = new LinkedConnectionsColumns(INITIAL_CAPACITY);
+        try (JsonParser parser = mJsonFactory.createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Expected a linked connections page");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "@id":
+                        page.current = parser.getValueAsString();
+                        break;
+                    case "hydra:previous":
+                        page.previous = parser.getValueAsString();
+                        break;
+                    case "hydra:next":
+                        page.next = parser.getValueAsString();
+                        break;
+                    case "@graph":
+                        if (value != JsonToken.START_ARRAY) {
+                            throw new IOException("Expected an array of connections");
+                        }
+                        while (parser.nextToken() == JsonToken.START_OBJECT) {
+                            parseConnection(parser, columns);
+                        }
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            }
+        }
+        page.setColumns(columns);
+        return page;
+    }
+
+    private static void parseConnection(JsonParser parser, LinkedConnectionsColumns columns) throws IOException {
+        int i = columns.add();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (value == JsonToken.VALUE_NULL) {
+                continue;
+            }
+            switch (field) {
+                case "@id":
+                    columns.semanticIds[i] = parser.getText();
+                    break;
+                case "departureStop":
+                    columns.departureStops[i] = intern(parser, columns);
+                    break;
+                case "arrivalStop":
+                    columns.arrivalStops[i] = intern(parser, columns);
+                    break;
+                case "departureTime":
+                    columns.departureTimes[i] = parseEpochSeconds(parser);
+                    break;
+                case "arrivalTime":
+                    columns.arrivalTimes[i] = parseEpochSeconds(parser);
+                    break;
+                case "departureDelay":
+                    columns.departureDelays[i] = parser.getValueAsInt();
+                    break;
+                case "arrivalDelay":
+                    columns.arrivalDelays[i] = parser.getValueAsInt();
+                    break;
+                case "direction":
+                    columns.directions[i] = intern(parser, columns);
+                    break;
+                case "gtfs:trip":
+                    columns.trips[i] = intern(parser, columns);
+                    break;
+                case "gtfs:route":
+                    columns.routes[i] = intern(parser, columns);
+                    break;
+                case "gtfs:pickupType":
+                    columns.setPickupType(i, LinkedConnectionsColumns.parseType(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength()));
+                    break;
+                case "gtfs:dropOffType":
+                    columns.setDropOffType(i, LinkedConnectionsColumns.parseType(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength()));
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+    }
+
+    private static long parseEpochSeconds(JsonParser parser) throws IOException {
+        return IsoDateTimeDecoder.parseEpochSeconds(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+    }
+
+    private static int intern(JsonParser parser, LinkedConnectionsColumns columns) throws IOException {
+        return columns.pool.intern(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.opentransportdata.be.experimental.linkedconnections;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.PersistableBundle;
+
+import androidx.annotation.NonNull;
+
+import org.joda.time.DateTime;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background job which syncs the remaining service day, and optionally the next day, into the offline cache.
+ * The job only runs on unmetered networks while the device is charging, at most once per sync interval.
+ */
+public class LinkedConnectionsSyncJobService extends JobService {
+
+    private static final int JOB_ID = 18043001;
+
+    private static final long SYNC_INTERVAL = TimeUnit.HOURS.toMillis(12);
+
+    private static final String EXTRA_INCLUDE_TOMORROW = "include_tomorrow";
+    private static final String EXTRA_STORAGE_BUDGET = "storage_budget";
+
+    private static final List<LinkedConnectionsOfflineSync.Listener> sListeners = new CopyOnWriteArrayList<>();
+
+    private LinkedConnectionsOfflineSync mSync;
+    // Set once the system stopped the job, after which the job may no longer be finished
+    private volatile boolean mStopped;
+
+    /**
+     * Schedule an offline sync. A previously scheduled sync is replaced.
+     *
+     * @param context         The context to schedule the job in
+     * @param includeTomorrow Whether the next service day should be synced as well
+     * @param storageBudget   The maximum size of the offline cache, in bytes
+     */
+    public static void schedule(@NonNull Context context, boolean includeTomorrow, long storageBudget) {
+        PersistableBundle extras = new PersistableBundle();
+        extras.putInt(EXTRA_INCLUDE_TOMORROW, includeTomorrow ? 1 : 0);
+        extras.putLong(EXTRA_STORAGE_BUDGET, storageBudget);
+
+        JobInfo job = new JobInfo.Builder(JOB_ID, new ComponentName(context, LinkedConnectionsSyncJobService.class))
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_UNMETERED)
+                .setRequiresCharging(true)
+                .setPeriodic(SYNC_INTERVAL)
+                .setExtras(extras)
+                .build();
+
+        JobScheduler scheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        scheduler.schedule(job);
+    }
+
+    /**
+     * Schedule an offline sync, unless one is already scheduled. Unlike {@link #schedule(Context, boolean, long)}, this doesn't stop a running sync.
+     *
+     * @param context         The context to schedule the job in
+     * @param includeTomorrow Whether the next service day should be synced as well
+     * @param storageBudget   The maximum size of the offline cache, in bytes
+     */
+    public static void scheduleIfNotPending(@NonNull Context context, boolean includeTomorrow, long storageBudget) {
+        JobScheduler scheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        for (JobInfo job : scheduler.getAllPendingJobs()) {
+            if (job.getId() == JOB_ID) {
+                return;
+            }
+        }
+        schedule(context, includeTomorrow, storageBudget);
+    }
+
+    public static void cancel(@NonNull Context context) {
+        JobScheduler scheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        scheduler.cancel(JOB_ID);
+    }
+
+    /**
+     * Register a listener for the progress of running syncs.
+     */
+    public static void addListener(@NonNull LinkedConnectionsOfflineSync.Listener listener) {
+        sListeners.add(listener);
+    }
+
+    public static void removeListener(@NonNull LinkedConnectionsOfflineSync.Listener listener) {
+        sListeners.remove(listener);
+    }
+
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        PersistableBundle extras = params.getExtras();
+        boolean includeTomorrow = extras.getInt(EXTRA_INCLUDE_TOMORROW, 0) == 1;
+        long storageBudget = extras.getLong(EXTRA_STORAGE_BUDGET, Long.MAX_VALUE);
+
+        mStopped = false;
+        LinkedConnectionsProvider provider = LinkedConnectionsProvider.getInstance(this);
+        DateTime syncUntil = LinkedConnectionsOfflineSync.getEndOfServiceDay(DateTime.now(), includeTomorrow);
+        mSync = new LinkedConnectionsOfflineSync(provider, syncUntil, storageBudget, new LinkedConnectionsOfflineSync.Listener() {
+            @Override
+            public void onSyncProgress(int pages, DateTime syncedUntil, DateTime syncUntil) {
+                for (LinkedConnectionsOfflineSync.Listener listener : sListeners) {
+                    listener.onSyncProgress(pages, syncedUntil, syncUntil);
+                }
+            }
+
+            @Override
+            public void onSyncFinished(boolean completed) {
+                for (LinkedConnectionsOfflineSync.Listener listener : sListeners) {
+                    listener.onSyncFinished(completed);
+                }
+                if (!mStopped) {
+                    jobFinished(params, false);
+                }
+            }
+        });
+        mSync.start();
+        // The sync continues asynchronously
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        mStopped = true;
+        if (mSync != null) {
+            mSync.cancel();
+        }
+        // Constraints are no longer met, try again later
+        return true;
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.opentransportdata.be.experimental.linkedconnections;
+
+import androidx.annotation.Nullable;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps track of the linked connections pages on which a vehicle journey runs.
+ * The index is filled as a side effect of every page which is ingested by the provider, regardless of the query which caused the page to be loaded.
+ * Vehicle queries can use this index to load only the pages on which a journey runs, instead of scanning an entire service day.
+ */
+class LinkedConnectionsTripIndex {
+
+    /**
+     * The number of service days to keep in the index. Older days are removed when a new day is added.
+     */
+    private static final int MAX_SERVICE_DAYS = 3;
+
+    /**
+     * Service days start at 03:00, so night trains are indexed together with the day on which they departed.
+     */
+    private static final int SERVICE_DAY_START_HOUR = 3;
+
+    private static final long HOUR_MILLIS = 60 * 60 * 1000;
+    private static final DateTimeZone TZ_BRUSSELS = DateTimeZone.forID("Europe/Brussels");
+
+    private final Map<LocalDate, Map<String, TripPageRange>> mTrips = new HashMap<>();
+    private final Set<String> mIndexedPages = new HashSet<>();
+
+    /**
+     * Add all trips in a page to the index.
+     *
+     * @param page The page which has just been parsed
+     */
+    synchronized void index(LinkedConnections page) {
+        if (page == null || page.current == null) {
+            return;
+        }
+
+        mIndexedPages.add(page.current);
+
+        LinkedConnectionsColumns columns = page.getColumns();
+        // Service days start on a whole hour, so the service day only needs to be determined once for every hour in the page
+        long hour = -1;
+        Map<String, TripPageRange> trips = null;
+        for (int i = 0; i < columns.size; i++) {
+            if (columns.routes[i] < 0) {
+                continue;
+            }
+
+            long departureTime = columns.departureTimes[i] * 1000;
+            if (trips == null || departureTime / HOUR_MILLIS != hour) {
+                hour = departureTime / HOUR_MILLIS;
+                trips = getTripsForServiceDay(getServiceDay(new DateTime(departureTime, TZ_BRUSSELS)));
+            }
+            String route = columns.getString(columns.routes[i]);
+            TripPageRange range = trips.get(route);
+            if (range == null) {
+                range = new TripPageRange(page);
+                trips.put(route, range);
+            } else {
+                range.include(page);
+            }
+        }
+    }
+
+    /**
+     * Get the pages on which a certain vehicle runs.
+     *
+     * @param routeUri   The URI of the vehicle, as used in the gtfs:route field
+     * @param searchTime A time on the day for which the journey should be found. Like a full scan, this looks at the service day starting at 03:00 on this date.
+     * @return The page range for this vehicle, or null if it hasn't been seen on this day
+     */
+    @Nullable
+    synchronized TripPageRange lookup(String routeUri, DateTime searchTime) {
+        Map<String, TripPageRange> trips = mTrips.get(searchTime.toLocalDate());
+        if (trips == null) {
+            return null;
+        }
+        return trips.get(routeUri);
+    }
+
+    /**
+     * Check whether the first page of a range is the first page on which the journey runs.
+     * This is the case when the page before it has been indexed, as that page didn't contain this journey.
+     *
+     * @param range The range to check
+     * @return True if the start of the journey is known
+     */
+    synchronized boolean coversStart(TripPageRange range) {
+        return range.previousUrl != null && mIndexedPages.contains(range.previousUrl);
+    }
+
+    /**
+     * Check whether the last page of a range is the last page on which the journey runs.
+     * This is the case when the page after it has been indexed, as that page didn't contain this journey.
+     *
+     * @param range The range to check
+     * @return True if the end of the journey is known
+     */
+    synchronized boolean coversEnd(TripPageRange range) {
+        return range.nextUrl != null && mIndexedPages.contains(range.nextUrl);
+    }
+
+    private Map<String, TripPageRange> getTripsForServiceDay(LocalDate serviceDay) {
+        Map<String, TripPageRange> trips = mTrips.get(serviceDay);
+        if (trips != null) {
+            return trips;
+        }
+
+        trips = new HashMap<>();
+        mTrips.put(serviceDay, trips);
+
+        // Forget old service days, the most recent days are the ones which are queried
+        if (mTrips.size() > MAX_SERVICE_DAYS) {
+            LocalDate oldest = null;
+            for (LocalDate day : mTrips.keySet()) {
+                if (oldest == null || day.isBefore(oldest)) {
+                    oldest = day;
+                }
+            }
+            mTrips.remove(oldest);
+            pruneIndexedPages();
+        }
+
+        return trips;
+    }
+
+    /**
+     * Remove pages which are no longer referenced by any trip, so the set of indexed pages doesn't grow without bound.
+     */
+    private void pruneIndexedPages() {
+        Set<String> referenced = new HashSet<>();
+        for (Map<String, TripPageRange> trips : mTrips.values()) {
+            for (TripPageRange range : trips.values()) {
+                referenced.add(range.previousUrl);
+                referenced.add(range.firstUrl);
+                referenced.add(range.lastUrl);
+                referenced.add(range.nextUrl);
+            }
+        }
+        Iterator<String> iterator = mIndexedPages.iterator();
+        while (iterator.hasNext()) {
+            if (!referenced.contains(iterator.next())) {
+                iterator.remove();
+            }
+        }
+    }
+
+    static LocalDate getServiceDay(DateTime departureTime) {
+        return departureTime.minusHours(SERVICE_DAY_START_HOUR).toLocalDate();
+    }
+
+    /**
+     * The first and last page on which a vehicle journey was seen.
+     * Page URLs contain an ISO8601 timestamp, and can therefore be compared as strings.
+     */
+    static class TripPageRange {
+        String previousUrl;
+        String firstUrl;
+        String lastUrl;
+        String nextUrl;
+
+        TripPageRange(LinkedConnections page) {
+            previousUrl = page.previous;
+            firstUrl = page.current;
+            lastUrl = page.current;
+            nextUrl = page.next;
+        }
+
+        void include(LinkedConnections page) {
+            if (page.current.compareTo(firstUrl) < 0) {
+                firstUrl = page.current;
+                previousUrl = page.previous;
+            }
+            if (page.current.compareTo(lastUrl) > 0) {
+                lastUrl = page.current;
+                nextUrl = page.next;
+            }
+        }
+    }
+}
@@ -6,12 +6,12 @@
 
 package be.hyperrail.opentransportdata.be.experimental.linkedconnections;
 
-import androidx.annotation.NonNull;
+import java.io.FileNotFoundException;
 
+import be.hyperrail.opentransportdata.async.AsyncTransportDataSource;
+import be.hyperrail.opentransportdata.async.TransportDataFuture;
 import be.hyperrail.opentransportdata.common.contracts.MeteredDataSource;
 import be.hyperrail.opentransportdata.common.contracts.NextDataPointer;
-import be.hyperrail.opentransportdata.common.contracts.TransportDataErrorResponseListener;
-import be.hyperrail.opentransportdata.common.contracts.TransportDataSuccessResponseListener;
 import be.hyperrail.opentransportdata.common.contracts.TransportStopsDataSource;
 import be.hyperrail.opentransportdata.common.models.Liveboard;
 import be.hyperrail.opentransportdata.common.models.implementation.LiveboardImpl;
@@ -22,13 +22,14 @@ import be.hyperrail.opentransportdata.common.requests.ResultExtensionType;
 /**
  * Created in be.hyperrail.android.irail.implementation.linkedconnections on 17/04/2018.
  */
-public class LiveboardExtendHelper implements TransportDataSuccessResponseListener<Liveboard>, TransportDataErrorResponseListener {
+public class LiveboardExtendHelper {
+
+    private static final int MAX_ATTEMPTS = 12;
 
     private final LinkedConnectionsProvider mLinkedConnectionsProvider;
     private final TransportStopsDataSource mStationProvider;
     private final ExtendLiveboardRequest mRequest;
     private final MeteredDataSource.MeteredRequest mMeteredRequest;
-    private LiveboardImpl mLiveboard;
 
     public LiveboardExtendHelper(LinkedConnectionsProvider linkedConnectionsProvider, TransportStopsDataSource stationProvider, ExtendLiveboardRequest request, MeteredDataSource.MeteredRequest meteredRequest) {
         mLinkedConnectionsProvider = linkedConnectionsProvider;
@@ -43,25 +44,35 @@ public class LiveboardExtendHelper implements TransportDataSuccessResponseListen
     }
 
     public void extend() {
-        extend((LiveboardImpl) mRequest.getLiveboard());
+        AsyncTransportDataSource.forward(getExtendedLiveboard(), mRequest);
     }
 
-    private void extend(LiveboardImpl liveboard) {
-        mLiveboard = liveboard;
-        String url;
+    /**
+     * Load pages before or after the liveboard of the request, until new stops are found or the maximum number of attempts is reached.
+     *
+     * @return The extended liveboard
+     */
+    public TransportDataFuture<Liveboard> getExtendedLiveboard() {
+        return extend((LiveboardImpl) mRequest.getLiveboard(), 1);
+    }
 
+    private TransportDataFuture<Liveboard> extend(final LiveboardImpl liveboard, final int attempt) {
+        if (attempt > MAX_ATTEMPTS) {
+            return TransportDataFuture.failed(new FileNotFoundException());
+        }
+
+        String url;
         if (mRequest.getAction() == ResultExtensionType.PREPEND) {
-            url = (String) mLiveboard.getPreviousResultsPointer().getPointer();
+            url = (String) liveboard.getPreviousResultsPointer().getPointer();
         } else {
-            url = (String) mLiveboard.getNextResultsPointer().getPointer();
+            url = (String) liveboard.getNextResultsPointer().getPointer();
         }
 
-        final LiveboardRequest liveboardRequest = new LiveboardRequest(mLiveboard,
-                mLiveboard.getTimeDefinition(),
-                mLiveboard.getLiveboardType(),
-                mLiveboard.getSearchTime());
-
-        liveboardRequest.setCallback(this, this, mMeteredRequest);
+        final LiveboardRequest liveboardRequest = new LiveboardRequest(liveboard,
+                liveboard.getTimeDefinition(),
+                liveboard.getLiveboardType(),
+                liveboard.getSearchTime());
+        TransportDataFuture<Liveboard> result = AsyncTransportDataSource.toFuture(liveboardRequest);
         LiveboardResponseListener listener = new LiveboardResponseListener(mLinkedConnectionsProvider, mStationProvider, liveboardRequest);
 
         mLinkedConnectionsProvider.getLinkedConnectionsByUrl(url,
@@ -69,41 +80,32 @@ public class LiveboardExtendHelper implements TransportDataSuccessResponseListen
                 listener,
                 mMeteredRequest);
 
+        return result.thenCompose(data -> onResponse(liveboard, data, attempt));
     }
 
-    @Override
-    public void onSuccessResponse(@NonNull Liveboard data, Object tag) {
-
+    private TransportDataFuture<Liveboard> onResponse(LiveboardImpl liveboard, Liveboard data, int attempt) {
         if (!(data instanceof LiveboardImpl)) {
             throw new IllegalArgumentException("Liveboard should be of type irailLiveboard!");
         }
 
+        LiveboardImpl extended = liveboard.withStopsAppended((LiveboardImpl) data);
 
-        int originalLength = mLiveboard.getStops().length;
-        mLiveboard = mLiveboard.withStopsAppended((LiveboardImpl) data);
-
-        NextDataPointer previous =  mRequest.getLiveboard().getPreviousResultsPointer();
-        NextDataPointer current =  mRequest.getLiveboard().getPreviousResultsPointer();
-        NextDataPointer next =  mRequest.getLiveboard().getPreviousResultsPointer();
+        NextDataPointer previous = liveboard.getPreviousResultsPointer();
+        NextDataPointer current = liveboard.getCurrentResultsPointer();
+        NextDataPointer next = liveboard.getNextResultsPointer();
 
         if (mRequest.getAction() == ResultExtensionType.APPEND) {
-            next =  data.getNextResultsPointer();
+            next = data.getNextResultsPointer();
         } else {
-            previous =  data.getPreviousResultsPointer();
-            current =  data.getCurrentResultsPointer();
+            previous = data.getPreviousResultsPointer();
+            current = data.getCurrentResultsPointer();
         }
-        mLiveboard.setPageInfo(previous, current, next);
+        extended.setPageInfo(previous, current, next);
 
-        if (mLiveboard.getStops().length == originalLength) {
+        if (extended.getStopList().size() == liveboard.getStopList().size()) {
             // Didn't find anything new
-            extend(mLiveboard);
-        } else {
-            mRequest.notifySuccessListeners(mLiveboard);
+            return extend(extended, attempt + 1);
         }
-    }
-
-    @Override
-    public void onErrorResponse(@NonNull Exception e, Object tag) {
-        mRequest.notifyErrorListeners(e);
+        return TransportDataFuture.completed(extended);
     }
 }
@@ -9,8 +9,6 @@ package be.hyperrail.opentransportdata.be.experimental.linkedconnections;
 import androidx.annotation.NonNull;
 import android.util.Log;
 
-import com.google.firebase.perf.metrics.AddTrace;
-
 import org.joda.time.DateTime;
 import org.joda.time.Duration;
 
@@ -36,8 +34,10 @@ import be.hyperrail.opentransportdata.common.models.implementation.LiveboardImpl
 import be.hyperrail.opentransportdata.common.models.implementation.StringPagePointer;
 import be.hyperrail.opentransportdata.common.models.implementation.VehicleStopImpl;
 import be.hyperrail.opentransportdata.common.requests.LiveboardRequest;
+import be.hyperrail.opentransportdata.tracing.OpenTransportTracing;
+import be.hyperrail.opentransportdata.tracing.Span;
 
-import static be.hyperrail.opentransportdata.be.experimental.linkedconnections.LinkedConnectionsDataSource.basename;
+import static be.hyperrail.opentransportdata.util.StringUtils.basename;
 
 /**
  * A listener which receives graph.irail.be data and builds a liveboard for 2 hours.
@@ -59,6 +59,11 @@ public class LiveboardResponseListener implements TransportDataSuccessResponseLi
 
     private int pages = 0;
 
+    // When partial results are requested, pages are loaded until the liveboard covers this many hours
+    private static final int STREAMING_WINDOW_HOURS = 2;
+    // The most recent partial result, used as the final result when loading more pages fails
+    private LiveboardImpl mLastPartial;
+
     public LiveboardResponseListener(LinkedConnectionsProvider linkedConnectionsProvider, TransportStopsDataSource stationProvider, LiveboardRequest request) {
         mLinkedConnectionsProvider = linkedConnectionsProvider;
         mStationProvider = stationProvider;
@@ -66,9 +71,59 @@ public class LiveboardResponseListener implements TransportDataSuccessResponseLi
     }
 
     @Override
-    @AddTrace(name = "LiveboardResponseListener.onSuccess")
     public void onSuccessResponse(@NonNull LinkedConnections data, Object tag) {
+        if (request.isCanceled()) {
+            // Stop walking through pages, nobody is waiting for the result
+            ((MeteredRequest) tag).setCanceled();
+            return;
+        }
+        boolean complete;
+        Span span = OpenTransportTracing.startSpan("liveboard", OpenTransportTracing.getRequestSpan(tag));
+        try {
+            complete = onPageReceived(data, tag);
+        } catch (RuntimeException e) {
+            ((MeteredRequest) tag).setFailed(DateTime.now().getMillis());
+            throw e;
+        } finally {
+            span.end();
+        }
+        if (complete) {
+            return;
+        }
+
+        // TODO: use a better way than comparing searchTime, as searchTime can be unchanged when extending a liveboard
+        if (isBeyondSearchWindow(data)) {
+            onErrorResponse(new FileNotFoundException(), tag);
+            return;
+        }
 
+        mLinkedConnectionsProvider.getLinkedConnectionsByUrl(getLinkToContinue(data),
+                this,
+                new TransportDataErrorResponseListener() {
+                    @Override
+                    public void onErrorResponse(@NonNull Exception e, Object tag) {
+                        Log.w("LiveboardResponseLstnr", "Getting next LC page failed");
+                        if (mLastPartial != null) {
+                            // Complete with the stops which have been shown already
+                            ((MeteredRequest) tag).setMsecParsed(DateTime.now().getMillis());
+                            request.notifySuccessListeners(mLastPartial);
+                        } else {
+                            LiveboardResponseListener.this.onErrorResponse(e, tag);
+                        }
+                    }
+                },
+                tag);
+    }
+
+    /**
+     * Add the departures and arrivals in this listener's station from a page.
+     * Only the page's posting lists for this station are read, and only the connections in these lists are created as objects.
+     *
+     * @param data The page to process
+     * @param tag  The metered request for this liveboard
+     * @return True when a liveboard has been passed to the request's listeners, false when more pages are needed
+     */
+    boolean onPageReceived(@NonNull LinkedConnections data, Object tag) {
         ((MeteredRequest) tag).setMsecUsableNetworkResponse(DateTime.now().getMillis());
 
         if (current == null) {
@@ -85,18 +140,22 @@ public class LiveboardResponseListener implements TransportDataSuccessResponseLi
             previous = data.previous;
         }
 
-        for (LinkedConnection connection : data.connections) {
-            if (!connection.isNormal()) {
-                continue;
-            }
+        String stationUri = request.getStation().getSemanticId();
+        int[] departurePostings = data.getDeparturePostings(stationUri);
+        int[] arrivalPostings = data.getArrivalPostings(stationUri);
 
-            if (connection.getDepartureStationUri().equals(request.getStation().getSemanticId())) {
-                departures.add(connection);
-            }
-            if (connection.getArrivalStationUri().equals(request.getStation().getSemanticId())) {
-                arrivals.add(connection);
-                departureIndexForArrivals.add(departures.size());
+        // Merge both posting lists, so we know how many departures preceded every arrival
+        int d = 0;
+        for (int a : arrivalPostings) {
+            while (d < departurePostings.length && departurePostings[d] < a) {
+                departures.add(data.getConnection(departurePostings[d]));
+                d++;
             }
+            arrivals.add(data.getConnection(a));
+            departureIndexForArrivals.add(departures.size());
+        }
+        for (; d < departurePostings.length; d++) {
+            departures.add(data.getConnection(departurePostings[d]));
         }
         pages++;
 
@@ -108,45 +167,80 @@ public class LiveboardResponseListener implements TransportDataSuccessResponseLi
                     new StringPagePointer(current),
                     new StringPagePointer(next)
             );
+            if (request.getOnPartialResponseListener() != null && !coversStreamingWindow(data)) {
+                Log.i("LiveboardResponse", "Found " + stoparray.length + " results so far after searching " + pages + " pages");
+                mLastPartial = liveboard;
+                request.notifyPartialResponseListeners(liveboard);
+                return false;
+            }
             Log.i("LiveboardResponse", "Found " + stoparray.length + " results after searching " + pages + " pages");
             request.notifySuccessListeners(liveboard);
             ((MeteredRequest) tag).setMsecParsed(DateTime.now().getMillis());
-        } else {
-            Log.i("LiveboardResponse", "Found no results");
-            String link = data.next;
-            // When searching for "arrive before", we need to look backwards
-            if (request.getTimeDefinition() == QueryTimeDefinition.EQUAL_OR_EARLIER) {
-                link = data.previous;
-            }
+            return true;
+        }
 
-            // TODO: use a better way than comparing searchTime, as searchTime can be unchanged when extending a liveboard
-            if (data.connections.length > 0 && data.connections[0].getDepartureTime().isAfter(request.getSearchTime().plusHours(48))) {
-                request.notifyErrorListeners(new FileNotFoundException());
-                return;
-            }
+        Log.i("LiveboardResponse", "Found no results");
+        return false;
+    }
 
-            mLinkedConnectionsProvider.getLinkedConnectionsByUrl(link,
-                    this,
-                    new TransportDataErrorResponseListener() {
-                        @Override
-                        public void onErrorResponse(@NonNull Exception e, Object tag) {
-                            Log.w("LiveboardResponseLstnr", "Getting next LC page failed");
-                        }
-                    },
-                    tag);
+    /**
+     * Check whether the pages processed so far cover the time window which is loaded when partial results are requested.
+     *
+     * @param data The last page which has been processed
+     * @return True when no more pages are needed
+     */
+    private boolean coversStreamingWindow(@NonNull LinkedConnections data) {
+        int size = data.size();
+        if (size == 0) {
+            return false;
         }
+        if (request.getTimeDefinition() == QueryTimeDefinition.EQUAL_OR_EARLIER) {
+            return data.getDepartureMillis(0) < request.getSearchTime().minusHours(STREAMING_WINDOW_HOURS).getMillis();
+        }
+        return data.getDepartureMillis(size - 1) > request.getSearchTime().plusHours(STREAMING_WINDOW_HOURS).getMillis();
+    }
 
+    /**
+     * Get the page which should be loaded next when this page didn't contain enough results.
+     *
+     * @param data The last page which has been processed
+     * @return The url of the page to load next
+     */
+    String getLinkToContinue(@NonNull LinkedConnections data) {
+        // When searching for "arrive before", we need to look backwards
+        if (request.getTimeDefinition() == QueryTimeDefinition.EQUAL_OR_EARLIER) {
+            return data.previous;
+        }
+        return data.next;
+    }
+
+    /**
+     * Check whether we've searched too far away from the requested time, in which case searching should stop.
+     *
+     * @param data The last page which has been processed
+     * @return True when no more pages should be loaded
+     */
+    boolean isBeyondSearchWindow(@NonNull LinkedConnections data) {
+        return data.size() > 0 && data.getDepartureMillis(0) > request.getSearchTime().plusHours(48).getMillis();
+    }
+
+    LiveboardRequest getRequest() {
+        return request;
     }
 
     @Override
     public void onErrorResponse(@NonNull Exception e, Object tag) {
-        request.notifyErrorListeners(e);
-        ((MeteredRequest) tag).setMsecParsed(DateTime.now().getMillis());
-        ((MeteredDataSource.MeteredRequest) tag).setResponseType(MeteredDataSource.RESPONSE_FAILED);
+        try {
+            request.notifyErrorListeners(e);
+        } finally {
+            ((MeteredRequest) tag).setFailed(DateTime.now().getMillis());
+        }
     }
 
-    @AddTrace(name = "LiveboardResponseListener.createStopArray")
     private VehicleStopImpl[] generateStopArray() {
+        // The stops are generated again for every partial result
+        stops.clear();
+
         // Find stops (train arrives and leaves again)
         ArrayList<LinkedConnection> handledConnections = new ArrayList<>();
 
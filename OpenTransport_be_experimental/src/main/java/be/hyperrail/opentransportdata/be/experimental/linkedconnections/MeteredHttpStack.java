@@ -0,0 +1,234 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.opentransportdata.be.experimental.linkedconnections;
+
+import com.android.volley.AuthFailureError;
+import com.android.volley.Header;
+import com.android.volley.Request;
+import com.android.volley.toolbox.BaseHttpStack;
+import com.android.volley.toolbox.HttpResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import be.hyperrail.opentransportdata.common.contracts.MeteredDataSource.MeteredRequest;
+
+/**
+ * An HTTP stack which counts the bytes of every call, and attributes them to the MeteredRequest which is set as tag on the Volley request.
+ * <p>
+ * Responses are requested with gzip compression and decompressed here, so both the bytes on the wire and the decompressed bytes are known.
+ * Header sizes are calculated from the HTTP/1.1 representation of the headers, TLS overhead is not included.
+ */
+public class MeteredHttpStack extends BaseHttpStack {
+
+    private static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+    private static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+    private static final String HEADER_CONTENT_LENGTH = "Content-Length";
+
+    // "HTTP/1.1 200 OK\r\n"
+    private static final int STATUS_LINE_BYTES = 17;
+
+    private final BaseHttpStack mStack;
+
+    /**
+     * @param stack The stack which executes the requests, e.g. a HurlStack
+     */
+    public MeteredHttpStack(BaseHttpStack stack) {
+        mStack = stack;
+    }
+
+    @Override
+    public HttpResponse executeRequest(Request<?> request, Map<String, String> additionalHeaders) throws IOException, AuthFailureError {
+        Map<String, String> headers = new HashMap<>(additionalHeaders);
+        if (!request.getHeaders().containsKey(HEADER_ACCEPT_ENCODING)) {
+            // Setting this header disables transparent decompression, so the compressed size can be counted
+            headers.put(HEADER_ACCEPT_ENCODING, "gzip");
+        }
+
+        HttpResponse response = mStack.executeRequest(request, headers);
+
+        if (!(request.getTag() instanceof MeteredRequest)) {
+            return response;
+        }
+        MeteredRequest meteredRequest = (MeteredRequest) request.getTag();
+
+        long sent = getRequestBytes(request, headers);
+        long headerBytes = STATUS_LINE_BYTES + getHeaderBytes(response.getHeaders()) + 2;
+        boolean gzip = isGzip(response.getHeaders());
+
+        if (response.getContent() == null) {
+            meteredRequest.addTransfer(sent, headerBytes, headerBytes);
+            return response;
+        }
+
+        MeteredInputStream content = new MeteredInputStream(response.getContent(), gzip, meteredRequest, sent, headerBytes);
+        if (!gzip) {
+            return new HttpResponse(response.getStatusCode(), response.getHeaders(), response.getContentLength(), content);
+        }
+
+        // The content is decompressed now, so the headers which describe the compressed content no longer apply
+        List<Header> decodedHeaders = new ArrayList<>();
+        for (Header header : response.getHeaders()) {
+            if (!HEADER_CONTENT_ENCODING.equalsIgnoreCase(header.getName()) && !HEADER_CONTENT_LENGTH.equalsIgnoreCase(header.getName())) {
+                decodedHeaders.add(header);
+            }
+        }
+        return new HttpResponse(response.getStatusCode(), decodedHeaders, -1, content);
+    }
+
+    private static long getRequestBytes(Request<?> request, Map<String, String> additionalHeaders) throws AuthFailureError {
+        // "GET <url> HTTP/1.1\r\n", using the full url as an upper bound for the path and host header
+        long bytes = 4 + request.getUrl().length() + 11;
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            bytes += header.getKey().length() + 2 + header.getValue().length() + 2;
+        }
+        for (Map.Entry<String, String> header : additionalHeaders.entrySet()) {
+            bytes += header.getKey().length() + 2 + header.getValue().length() + 2;
+        }
+        bytes += 2;
+        byte[] body = request.getBody();
+        if (body != null) {
+            bytes += body.length;
+        }
+        return bytes;
+    }
+
+    private static long getHeaderBytes(List<Header> headers) {
+        long bytes = 0;
+        for (Header header : headers) {
+            bytes += header.getName().length() + 2 + header.getValue().length() + 2;
+        }
+        return bytes;
+    }
+
+    private static boolean isGzip(List<Header> headers) {
+        for (Header header : headers) {
+            if (HEADER_CONTENT_ENCODING.equalsIgnoreCase(header.getName()) && "gzip".equalsIgnoreCase(header.getValue().trim())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A stream which decompresses the response if needed, and attributes the transfer once the response has been read or closed.
+     */
+    private static class MeteredInputStream extends InputStream {
+
+        private final CountingInputStream mWire;
+        private final boolean mGzip;
+        private final MeteredRequest mMeteredRequest;
+        private final long mSent;
+        private final long mHeaderBytes;
+
+        private InputStream mDecoded;
+        private long mDecodedBytes;
+        private boolean mAttributed;
+
+        MeteredInputStream(InputStream wire, boolean gzip, MeteredRequest meteredRequest, long sent, long headerBytes) {
+            mWire = new CountingInputStream(wire);
+            mGzip = gzip;
+            mMeteredRequest = meteredRequest;
+            mSent = sent;
+            mHeaderBytes = headerBytes;
+        }
+
+        private InputStream getDecoded() throws IOException {
+            // Created lazily, as the gzip stream reads its header in the constructor
+            if (mDecoded == null) {
+                mDecoded = mGzip ? new GZIPInputStream(mWire) : mWire;
+            }
+            return mDecoded;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int result = getDecoded().read();
+            if (result < 0) {
+                attribute();
+            } else {
+                mDecodedBytes++;
+            }
+            return result;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int result = getDecoded().read(b, off, len);
+            if (result < 0) {
+                attribute();
+            } else {
+                mDecodedBytes += result;
+            }
+            return result;
+        }
+
+        @Override
+        public void close() throws IOException {
+            attribute();
+            if (mDecoded != null) {
+                mDecoded.close();
+            } else {
+                mWire.close();
+            }
+        }
+
+        private void attribute() {
+            if (mAttributed) {
+                return;
+            }
+            mAttributed = true;
+            mMeteredRequest.addTransfer(mSent, mHeaderBytes + mWire.getCount(), mHeaderBytes + mDecodedBytes);
+        }
+    }
+
+    private static class CountingInputStream extends InputStream {
+        private final InputStream mStream;
+        private long mCount;
+
+        CountingInputStream(InputStream stream) {
+            mStream = stream;
+        }
+
+        long getCount() {
+            return mCount;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int result = mStream.read();
+            if (result >= 0) {
+                mCount++;
+            }
+            return result;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int result = mStream.read(b, off, len);
+            if (result > 0) {
+                mCount += result;
+            }
+            return result;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return mStream.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            mStream.close();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.opentransportdata.be.experimental.linkedconnections;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import org.joda.time.DateTime;
+
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import be.hyperrail.opentransportdata.common.contracts.MeteredDataSource;
+import be.hyperrail.opentransportdata.common.contracts.TransportDataErrorResponseListener;
+import be.hyperrail.opentransportdata.common.contracts.TransportDataSuccessResponseListener;
+import be.hyperrail.opentransportdata.common.contracts.TransportStopsDataSource;
+import be.hyperrail.opentransportdata.common.requests.LiveboardRequest;
+import be.hyperrail.opentransportdata.tracing.OpenTransportTracing;
+import be.hyperrail.opentransportdata.tracing.Span;
+
+/**
+ * A listener which builds liveboards for multiple stations in a single pass over the same pages.
+ * All requests should start at the same page and move in the same direction, e.g. the current departures for all favourite stations.
+ */
+public class MultiLiveboardResponseListener implements TransportDataSuccessResponseListener<LinkedConnections>, TransportDataErrorResponseListener {
+
+    private final LinkedConnectionsProvider mLinkedConnectionsProvider;
+    private final List<LiveboardResponseListener> mPendingListeners = new ArrayList<>();
+
+    public MultiLiveboardResponseListener(LinkedConnectionsProvider linkedConnectionsProvider, TransportStopsDataSource stationProvider, LiveboardRequest... requests) {
+        mLinkedConnectionsProvider = linkedConnectionsProvider;
+        for (LiveboardRequest request : requests) {
+            mPendingListeners.add(new LiveboardResponseListener(linkedConnectionsProvider, stationProvider, request));
+        }
+    }
+
+    @Override
+    public void onSuccessResponse(@NonNull LinkedConnections data, Object tag) {
+        // Cancelled liveboards don't need more pages
+        Iterator<LiveboardResponseListener> pending = mPendingListeners.iterator();
+        while (pending.hasNext()) {
+            if (pending.next().getRequest().isCanceled()) {
+                pending.remove();
+            }
+        }
+        if (mPendingListeners.isEmpty()) {
+            ((MeteredDataSource.MeteredRequest) tag).setCanceled();
+            return;
+        }
+
+        Span span = OpenTransportTracing.startSpan("liveboards", OpenTransportTracing.getRequestSpan(tag));
+        try {
+            Iterator<LiveboardResponseListener> iterator = mPendingListeners.iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().onPageReceived(data, tag)) {
+                    iterator.remove();
+                }
+            }
+        } catch (RuntimeException e) {
+            ((MeteredDataSource.MeteredRequest) tag).setFailed(DateTime.now().getMillis());
+            throw e;
+        } finally {
+            span.end();
+        }
+
+        if (mPendingListeners.isEmpty()) {
+            return;
+        }
+
+        // All listeners move through the same pages, the first one can decide for all of them
+        LiveboardResponseListener first = mPendingListeners.get(0);
+        if (first.isBeyondSearchWindow(data)) {
+            onErrorResponse(new FileNotFoundException(), tag);
+            return;
+        }
+
+        Log.i("MultiLiveboardResponse", mPendingListeners.size() + " liveboards need more pages");
+        mLinkedConnectionsProvider.getLinkedConnectionsByUrl(first.getLinkToContinue(data),
+                this,
+                new TransportDataErrorResponseListener() {
+                    @Override
+                    public void onErrorResponse(@NonNull Exception e, Object tag) {
+                        Log.w("MultiLiveboardResponse", "Getting next LC page failed");
+                        MultiLiveboardResponseListener.this.onErrorResponse(e, tag);
+                    }
+                },
+                tag);
+    }
+
+    @Override
+    public void onErrorResponse(@NonNull Exception e, Object tag) {
+        try {
+            for (LiveboardResponseListener listener : mPendingListeners) {
+                listener.getRequest().notifyErrorListeners(e);
+            }
+        } finally {
+            mPendingListeners.clear();
+            ((MeteredDataSource.MeteredRequest) tag).setFailed(DateTime.now().getMillis());
+        }
+    }
+}
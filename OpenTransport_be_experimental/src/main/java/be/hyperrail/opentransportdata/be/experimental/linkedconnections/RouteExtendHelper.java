@@ -11,10 +11,13 @@ import androidx.annotation.NonNull;
 import org.joda.time.DateTime;
 
 import java.io.FileNotFoundException;
+import java.util.Collections;
+import java.util.List;
 
+import be.hyperrail.opentransportdata.async.AsyncTransportDataSource;
+import be.hyperrail.opentransportdata.async.TransportDataFuture;
 import be.hyperrail.opentransportdata.common.contracts.MeteredDataSource;
 import be.hyperrail.opentransportdata.common.contracts.QueryTimeDefinition;
-import be.hyperrail.opentransportdata.common.contracts.TransportDataErrorResponseListener;
 import be.hyperrail.opentransportdata.common.contracts.TransportDataSuccessResponseListener;
 import be.hyperrail.opentransportdata.common.contracts.TransportStopsDataSource;
 import be.hyperrail.opentransportdata.common.models.RoutesList;
@@ -25,14 +28,14 @@ import be.hyperrail.opentransportdata.common.requests.RoutePlanningRequest;
 /**
  * Created in be.hyperrail.android.irail.implementation.linkedconnections on 17/04/2018.
  */
-public class RouteExtendHelper implements TransportDataSuccessResponseListener<RoutesList>, TransportDataErrorResponseListener {
+public class RouteExtendHelper {
+
+    private static final int MAX_ATTEMPTS = 12;
 
     private final LinkedConnectionsProvider mLinkedConnectionsProvider;
     private final TransportStopsDataSource mStationProvider;
     private final ExtendRoutePlanningRequest mRequest;
     private final MeteredDataSource.MeteredRequest mMeteredRequest;
-    private LinkedConnectionsRoutesList mRoutes;
-    private int attempts = 0;
 
     RouteExtendHelper(LinkedConnectionsProvider linkedConnectionsProvider, TransportStopsDataSource stationProvider, ExtendRoutePlanningRequest request, MeteredDataSource.MeteredRequest meteredRequest) {
         mLinkedConnectionsProvider = linkedConnectionsProvider;
@@ -42,49 +45,63 @@ public class RouteExtendHelper implements TransportDataSuccessResponseListener<R
     }
 
     void extend() {
+        AsyncTransportDataSource.forward(getExtendedRoutes(), mRequest);
+    }
+
+    /**
+     * Search for routes before or after the routes of the request, until new routes are found or the maximum number of attempts is reached.
+     * Retries extend a copy with updated page information, the routes in the request are never changed.
+     *
+     * @return The extended routes
+     */
+    TransportDataFuture<RoutesList> getExtendedRoutes() {
         if (!(mRequest.getRoutes() instanceof LinkedConnectionsRoutesList)) {
             throw new IllegalArgumentException("Routeslist should be of type LinkedConnectionsRoutesList!");
         }
-        extend((LinkedConnectionsRoutesList) mRequest.getRoutes());
+        return extend((LinkedConnectionsRoutesList) mRequest.getRoutes(), 1);
     }
 
-    private void extend(LinkedConnectionsRoutesList routes) {
-        attempts++;
+    private TransportDataFuture<RoutesList> extend(final LinkedConnectionsRoutesList routes, final int attempt) {
+        if (attempt > MAX_ATTEMPTS) {
+            return TransportDataFuture.failed(new FileNotFoundException());
+        }
 
-        if (attempts > 12) {
-            mRequest.notifyErrorListeners(new FileNotFoundException());
-            return;
+        // A copy of the scan state of the routes which are being extended, if it is still available
+        final RouteScanState scanState = routes.getScanState();
+        if (scanState != null) {
+            if (mRequest.getAction() == ResultExtensionType.PREPEND) {
+                return prependFromScanState(routes, scanState)
+                        .thenCompose(data -> onScanStateResponse(routes, scanState, toLinkedConnectionsRoutesList(data), attempt));
+            } else if (scanState.nextUrl != null) {
+                return appendFromScanState(routes, scanState)
+                        .thenCompose(data -> onScanStateResponse(routes, scanState, toLinkedConnectionsRoutesList(data), attempt));
+            }
+            // Without a next page, the scan state can't be used
         }
 
-        mRoutes = routes;
         String start;
         DateTime departureLimit;
-        if (mRequest.getRoutes().getTimeDefinition() == QueryTimeDefinition.EQUAL_OR_LATER) {
-            departureLimit = mRequest.getRoutes().getSearchTime();
-            if (mRequest.getRoutes().getRoutes().length > 0) {
-                departureLimit = mRequest.getRoutes().getRoutes()[mRequest.getRoutes().getRoutes().length - 1].getDepartureTime();
+        if (routes.getTimeDefinition() == QueryTimeDefinition.EQUAL_OR_LATER) {
+            departureLimit = routes.getSearchTime();
+            if (routes.getRoutes().length > 0) {
+                departureLimit = routes.getRoutes()[routes.getRoutes().length - 1].getDepartureTime();
             }
             if (mRequest.getAction() == ResultExtensionType.PREPEND) {
-                start = (String) mRequest.getRoutes().getCurrentResultsPointer().getPointer();
+                start = (String) routes.getCurrentResultsPointer().getPointer();
             } else {
-                start = (String) mRequest.getRoutes().getNextResultsPointer().getPointer();
+                start = (String) routes.getNextResultsPointer().getPointer();
             }
         } else {
             departureLimit = null;
             if (mRequest.getAction() == ResultExtensionType.PREPEND) {
-                start = (String) mRequest.getRoutes().getPreviousResultsPointer().getPointer();
+                start = (String) routes.getPreviousResultsPointer().getPointer();
             } else {
-                start = (String) mRequest.getRoutes().getNextResultsPointer().getPointer();
+                start = (String) routes.getNextResultsPointer().getPointer();
             }
         }
 
-
-        final RoutePlanningRequest routesRequest = new RoutePlanningRequest(mRoutes.getOrigin(),
-                mRoutes.getDestination(),
-                mRoutes.getTimeDefinition(),
-                mRoutes.getSearchTime());
-
-        routesRequest.setCallback(this, this, mMeteredRequest);
+        final RoutePlanningRequest routesRequest = createRoutesRequest(routes);
+        TransportDataFuture<RoutesList> result = AsyncTransportDataSource.toFuture(routesRequest);
 
         RouteResponseListener listener;
         if (mRequest.getAction() == ResultExtensionType.PREPEND) {
@@ -93,14 +110,8 @@ public class RouteExtendHelper implements TransportDataSuccessResponseListener<R
             listener = new RouteResponseListener(mLinkedConnectionsProvider, mStationProvider, routesRequest, departureLimit, 12 * 60);
         }
 
-        if (mRequest.getRoutes().getTimeDefinition() == QueryTimeDefinition.EQUAL_OR_LATER) {
-            DateTime limit;
-            if (mRoutes.getRoutes() != null && mRoutes.getRoutes().length > 0) {
-                limit = mRoutes.getRoutes()[mRoutes.getRoutes().length - 1].getDepartureTime();
-            } else {
-                limit = mRoutes.getSearchTime();
-            }
-            mLinkedConnectionsProvider.getLinkedConnectionsByUrlForTimeSpanBackwards(start, limit,
+        if (routes.getTimeDefinition() == QueryTimeDefinition.EQUAL_OR_LATER) {
+            mLinkedConnectionsProvider.getLinkedConnectionsByUrlForTimeSpanBackwards(start, getLastDepartureTime(routes),
                     listener,
                     listener,
                     mMeteredRequest);
@@ -110,48 +121,128 @@ public class RouteExtendHelper implements TransportDataSuccessResponseListener<R
                     listener,
                     mMeteredRequest);
         }
+
+        return result.thenCompose(data -> onResponse(routes, toLinkedConnectionsRoutesList(data), attempt));
+    }
+
+    /**
+     * Find earlier routes by continuing the scan of the original query. The connections which have already been scanned don't need to be loaded or scanned again.
+     */
+    private TransportDataFuture<RoutesList> prependFromScanState(LinkedConnectionsRoutesList routes, RouteScanState scanState) {
+        RoutePlanningRequest routesRequest = createRoutesRequest(routes);
+        TransportDataFuture<RoutesList> result = AsyncTransportDataSource.toFuture(routesRequest);
+        RouteResponseListener listener = new RouteResponseListener(mLinkedConnectionsProvider, mStationProvider, routesRequest, null, scanState);
+        listener.resume(mMeteredRequest);
+        return result;
     }
 
-    @Override
-    public void onSuccessResponse(@NonNull RoutesList data, Object tag) {
+    /**
+     * Find later routes by scanning the next page together with the connections which were already loaded after the last route.
+     * Only the next page needs to be loaded, instead of all pages between the last route and the end of the new search window.
+     */
+    private TransportDataFuture<RoutesList> appendFromScanState(LinkedConnectionsRoutesList routes, final RouteScanState scanState) {
+        final DateTime departureLimit = getLastDepartureTime(routes);
+        final RoutePlanningRequest routesRequest = createRoutesRequest(routes);
+        TransportDataFuture<RoutesList> result = AsyncTransportDataSource.toFuture(routesRequest);
+        mLinkedConnectionsProvider.getLinkedConnectionsByUrl(scanState.nextUrl, new TransportDataSuccessResponseListener<LinkedConnections>() {
+            @Override
+            public void onSuccessResponse(@NonNull LinkedConnections page, Object tag) {
+                List<LinkedConnection> connections = scanState.getLatestConnectionsFrom(departureLimit);
+                Collections.addAll(connections, page.getConnections());
+
+                LinkedConnections merged = new LinkedConnections();
+                merged.previous = scanState.latestPreviousUrl;
+                merged.current = page.current;
+                merged.next = page.next;
+                merged.connections = connections.toArray(new LinkedConnection[0]);
+
+                RouteResponseListener listener = new RouteResponseListener(mLinkedConnectionsProvider, mStationProvider, routesRequest, departureLimit, new RouteScanState());
+                listener.onSuccessResponse(merged, tag);
+            }
+        }, (e, tag) -> routesRequest.notifyErrorListeners(e), mMeteredRequest);
+        return result;
+    }
+
+    private RoutePlanningRequest createRoutesRequest(LinkedConnectionsRoutesList routes) {
+        return new RoutePlanningRequest(routes.getOrigin(),
+                routes.getDestination(),
+                routes.getTimeDefinition(),
+                routes.getSearchTime());
+    }
+
+    private static DateTime getLastDepartureTime(LinkedConnectionsRoutesList routes) {
+        if (routes.getRoutes() != null && routes.getRoutes().length > 0) {
+            return routes.getRoutes()[routes.getRoutes().length - 1].getDepartureTime();
+        }
+        return routes.getSearchTime();
+    }
+
+    private static LinkedConnectionsRoutesList toLinkedConnectionsRoutesList(RoutesList data) {
         if (!(data instanceof LinkedConnectionsRoutesList)) {
             throw new IllegalArgumentException("data should be of type LinkedConnectionsRoutesList!");
         }
-        LinkedConnectionsRoutesList newData = (LinkedConnectionsRoutesList) data;
-        LinkedConnectionsRoutesList originalWithAppended = mRoutes.withRoutesAppended(newData);
+        return (LinkedConnectionsRoutesList) data;
+    }
+
+    /**
+     * Handle the result of a query which continued from the scan state of the original routes.
+     *
+     * @param routes    The routes which are being extended
+     * @param scanState The copy of the scan state of these routes which was used for the query
+     * @param newData   The routes which were found
+     */
+    private TransportDataFuture<RoutesList> onScanStateResponse(LinkedConnectionsRoutesList routes, RouteScanState scanState, LinkedConnectionsRoutesList newData, int attempt) {
+        RouteScanState newScanState = newData.getScanState();
+        LinkedConnectionsRoutesList result;
+        if (mRequest.getAction() == ResultExtensionType.PREPEND) {
+            // The resumed scan only returns routes which weren't found before, all departing earlier
+            scanState = newScanState;
+            result = routes.withRoutesAppended(newData);
+            result.setPageInfo(newData.getPreviousResultsPointer(),
+                    routes.getCurrentResultsPointer(),
+                    routes.getNextResultsPointer());
+        } else {
+            // The overlap with the original routes may result in routes which are already known, these are skipped when merging
+            scanState.withLatestConnectionsFrom(newScanState);
+            result = routes.withRoutesAppended(newData);
+            result.setPageInfo(routes.getPreviousResultsPointer(),
+                    routes.getCurrentResultsPointer(),
+                    newData.getNextResultsPointer());
+        }
+
+        if (result.getRoutes().length > routes.getRoutes().length) {
+            result.setScanState(scanState);
+            return TransportDataFuture.completed(result);
+        }
+        // Nothing new yet, continue from the updated state
+        return extend(routes.withPageInfo(routes.getPreviousResultsPointer(), routes.getCurrentResultsPointer(), routes.getNextResultsPointer(), scanState), attempt + 1);
+    }
+
+    private TransportDataFuture<RoutesList> onResponse(LinkedConnectionsRoutesList routes, LinkedConnectionsRoutesList newData, int attempt) {
+        LinkedConnectionsRoutesList originalWithAppended = routes.withRoutesAppended(newData);
 
         originalWithAppended.setPageInfo(
                 newData.getPreviousResultsPointer(),
                 newData.getCurrentResultsPointer(),
                 newData.getNextResultsPointer()
         );
+        if (originalWithAppended.getRoutes().length > routes.getRoutes().length) {
+            return TransportDataFuture.completed(originalWithAppended);
+        }
         if (mRequest.getAction() == ResultExtensionType.APPEND) {
-            if (originalWithAppended.getRoutes().length > mRoutes.getRoutes().length) {
-                mRequest.notifySuccessListeners(originalWithAppended);
-            } else {
-                ((LinkedConnectionsRoutesList) mRequest.getRoutes()).setPageInfo(
-                        mRequest.getRoutes().getPreviousResultsPointer(),
-                        mRequest.getRoutes().getCurrentResultsPointer(),
-                        data.getNextResultsPointer()
-                );
-                extend();
-            }
+            return extend(routes.withPageInfo(
+                    routes.getPreviousResultsPointer(),
+                    routes.getCurrentResultsPointer(),
+                    newData.getNextResultsPointer(),
+                    null
+            ), attempt + 1);
         } else {
-            if (originalWithAppended.getRoutes().length > mRoutes.getRoutes().length) {
-                mRequest.notifySuccessListeners(originalWithAppended);
-            } else {
-                ((LinkedConnectionsRoutesList) mRequest.getRoutes()).setPageInfo(
-                        data.getPreviousResultsPointer(),
-                        data.getCurrentResultsPointer(),
-                        mRequest.getRoutes().getNextResultsPointer()
-                );
-                extend();
-            }
+            return extend(routes.withPageInfo(
+                    newData.getPreviousResultsPointer(),
+                    newData.getCurrentResultsPointer(),
+                    routes.getNextResultsPointer(),
+                    null
+            ), attempt + 1);
         }
     }
-
-    @Override
-    public void onErrorResponse(@NonNull Exception e, Object tag) {
-        mRequest.notifyErrorListeners(e);
-    }
 }
@@ -11,8 +11,6 @@ import android.util.Log;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import com.google.firebase.perf.metrics.AddTrace;
-
 import org.joda.time.DateTime;
 import org.joda.time.Duration;
 
@@ -38,18 +36,19 @@ import be.hyperrail.opentransportdata.common.models.RouteLegType;
 import be.hyperrail.opentransportdata.common.models.implementation.RouteImpl;
 import be.hyperrail.opentransportdata.common.models.implementation.RouteLegEndImpl;
 import be.hyperrail.opentransportdata.common.models.implementation.RouteLegImpl;
-import be.hyperrail.opentransportdata.common.models.implementation.RoutesListImpl;
 import be.hyperrail.opentransportdata.common.models.implementation.StringPagePointer;
 import be.hyperrail.opentransportdata.common.requests.RoutePlanningRequest;
+import be.hyperrail.opentransportdata.tracing.OpenTransportTracing;
+import be.hyperrail.opentransportdata.tracing.Span;
 
-import static be.hyperrail.opentransportdata.be.experimental.linkedconnections.LinkedConnectionsDataSource.basename;
+import static be.hyperrail.opentransportdata.util.StringUtils.basename;
 
 /**
  * Created in be.hyperrail.android.irail.implementation.linkedconnections on 15/03/2018.
  */
 public class RouteResponseListener implements TransportDataSuccessResponseListener<LinkedConnections>, TransportDataErrorResponseListener {
 
-    private final LinkedConnectionsProvider mLinkedConnectionsProvider;
+    private final LinkedConnectionsPageSource mLinkedConnectionsProvider;
     private final TransportStopsDataSource mStationProvider;
     private RoutePlanningRequest mRoutesRequest;
 
@@ -60,7 +59,10 @@ public class RouteResponseListener implements TransportDataSuccessResponseListen
     private int maxTransfers = 4;
 
     // This makes a lot of checks easiers
-    private DateTime infinite = new DateTime(3000, 1, 1, 0, 0);
+    private static final long INFINITE = Long.MAX_VALUE;
+
+    // The scan state is kept in a separate object, so it can be passed along with the result and resumed when loading earlier routes
+    private final RouteScanState mState;
 
     // For each stop, keep an array of (departuretime, arrivaltime) pairs
     // After execution, this array will contain the xt profile for index x
@@ -68,30 +70,82 @@ public class RouteResponseListener implements TransportDataSuccessResponseListen
     // Each entry in this array is an array of  (departuretime, arrivaltime) pairs, sorted by DESCENDING departuretime
     // A DESCENDING departurtime will ensure we always add to the back of the array, thus saving O(n) operations every time!
     // Note: for journey extraction, 2 data fields will be added. These fields can be ignored for the original Profile Connection Scan Algorithm
-    HashMap<String, List<StationStopProfile>> S = new HashMap<>();
+    private final HashMap<String, List<StationStopProfile>> S;
 
     // For every trip, keep the earliest possible arrival time
     // The earliest arrival time for the partial journey departing in the earliest scanned connection of the corresponding trip
     // Size m, where m is the number of trips
-    HashMap<String, TrainProfile> T = new HashMap<>();
+    private final HashMap<String, TrainProfile> T;
+
+    // The journeys from the origin which were added or improved by this listener, in the order they were found. Only these journeys are returned.
+    // Profiles are tracked explicitly, as an improved journey replaces the last profile in S instead of being appended.
+    private final List<StationStopProfile> mFoundOriginProfiles = new ArrayList<>();
+    // The number of found journeys which has been passed as a partial result
+    private int mPartialProfileCount;
     private Object mTag;
     private NextDataPointer mNext;
     private NextDataPointer mPrevious;
     private NextDataPointer mCurrent;
+    // The number of connections to scan on the next page when resuming, or -1 to scan the entire page
+    private int mResumeCount = -1;
+    // The span of the page which is being scanned, which ends before the next page is requested
+    private Span mScanSpan = Span.DISABLED;
+
+    // When set, scanning continues until this time after routes have been found, and the routes found so far are passed as partial results
+    @Nullable
+    private DateTime mStreamUntil;
+
+    public RouteResponseListener(@NonNull LinkedConnectionsPageSource linkedConnectionsProvider, @NonNull TransportStopsDataSource stationProvider, @NonNull RoutePlanningRequest request, @Nullable DateTime departureLimit) {
+        this(linkedConnectionsProvider, stationProvider, request, departureLimit, new RouteScanState());
+    }
 
-    public RouteResponseListener(@NonNull LinkedConnectionsProvider linkedConnectionsProvider, @NonNull TransportStopsDataSource stationProvider, @NonNull RoutePlanningRequest request, @Nullable DateTime departureLimit) {
+    /**
+     * Create a listener which continues the scan from a previous query, in order to find earlier routes.
+     *
+     * @param state The state of the previous query. This state will be updated while scanning.
+     */
+    RouteResponseListener(@NonNull LinkedConnectionsPageSource linkedConnectionsProvider, @NonNull TransportStopsDataSource stationProvider, @NonNull RoutePlanningRequest request, @Nullable DateTime departureLimit, @NonNull RouteScanState state) {
         mLinkedConnectionsProvider = linkedConnectionsProvider;
         mStationProvider = stationProvider;
         mRoutesRequest = request;
         mDepartureLimit = departureLimit;
+        mState = state;
+        S = state.S;
+        T = state.T;
     }
 
-    public RouteResponseListener(LinkedConnectionsProvider linkedConnectionsProvider, TransportStopsDataSource stationProvider, RoutePlanningRequest routesRequest, DateTime departureLimit, int i) {
+    public RouteResponseListener(LinkedConnectionsPageSource linkedConnectionsProvider, TransportStopsDataSource stationProvider, RoutePlanningRequest routesRequest, DateTime departureLimit, int i) {
         this(linkedConnectionsProvider, stationProvider, routesRequest, departureLimit);
         maxMinutes = i;
     }
 
-    @AddTrace(name = "RouteResponseListener.process")
+    /**
+     * Keep scanning earlier pages until the given time, even when routes have already been found.
+     * After every page with new routes, the routes found so far are passed to the partial response listener of the request.
+     *
+     * @param streamUntil The earliest departure time which should be scanned
+     */
+    void setStreamUntil(@Nullable DateTime streamUntil) {
+        mStreamUntil = streamUntil;
+    }
+
+    /**
+     * Continue scanning where a previous query stopped: first the connections which were skipped on the earliest page, then the pages before it.
+     *
+     * @param tag The metered request for this query
+     */
+    void resume(Object tag) {
+        LinkedConnections unscanned = mState.unscannedPage;
+        if (unscanned == null) {
+            unscanned = new LinkedConnections();
+            unscanned.previous = mState.previousUrl;
+            unscanned.current = mState.currentUrl;
+        }
+        mNext = new StringPagePointer(mState.nextUrl);
+        mResumeCount = mState.unscannedCount;
+        onSuccessResponse(unscanned, tag);
+    }
+
     private void process(LinkedConnections data) throws StopLocationNotResolvedException {
         // Keep searching
         // - while no results have been found
@@ -105,44 +159,79 @@ public class RouteResponseListener implements TransportDataSuccessResponseListen
             mNext = new StringPagePointer(data.next);
         }
 
-        if (data.connections.length == 0) {
-            mLinkedConnectionsProvider.getLinkedConnectionsByUrl(data.previous, this, this, null);
+        if (mState.latestPage == null) {
+            mState.latestPage = data;
+            mState.latestPreviousUrl = data.previous;
+            mState.nextUrl = data.next;
+        }
+        mState.currentUrl = data.current;
+        mState.previousUrl = data.previous;
+
+        // When resuming, only the connections which weren't scanned before are scanned
+        int size = data.size();
+        if (mResumeCount >= 0) {
+            size = mResumeCount;
+            mResumeCount = -1;
+        }
+
+        if (size == 0) {
+            mState.unscannedPage = data;
+            mState.unscannedCount = 0;
+            requestPage(data.previous);
+            return;
         }
 
         if (maxMinutes > 0) {
-            DateTime limitByMinutes = data.connections[data.connections.length - 1].getDepartureTime().minusMinutes(maxMinutes);
+            DateTime limitByMinutes = new DateTime(data.getDepartureMillis(size - 1)).minusMinutes(maxMinutes);
             if (limitByMinutes.isAfter(mDepartureLimit)) {
                 mDepartureLimit = limitByMinutes;
             }
             maxMinutes = 0;
         }
 
+        // The scan reads the columns of the page. Connection objects are only created for connections which are stored in S or T.
+        LinkedConnectionsColumns columns = data.getColumns();
+        // Stop ids are only valid within a page, and the destination may not occur in this page at all
+        int destination = columns.getStringId(mRoutesRequest.getDestination().getSemanticId());
+        long departureLimit = mDepartureLimit == null ? Long.MIN_VALUE : mDepartureLimit.getMillis();
+
         boolean hasPassedDepartureLimit = false;
-        for (int i = data.connections.length - 1; i >= 0; i--) {
-            LinkedConnection connection = data.connections[i];
-            if (!connection.isNormal()) {
+        // Connections are sorted by departure time, so all connections before this index depart before the departure limit
+        int unscannedUntil = 0;
+        for (int i = size - 1; i >= 0; i--) {
+            long departureTime = columns.departureTimes[i] * 1000;
+            if (departureTime < departureLimit) {
+                hasPassedDepartureLimit = true;
+                if (unscannedUntil == 0) {
+                    unscannedUntil = i + 1;
+                }
                 continue;
             }
 
-            if (mDepartureLimit != null && connection.getDepartureTime().isBefore(mDepartureLimit)) {
-                hasPassedDepartureLimit = true;
+            if (!columns.isNormal(i)) {
                 continue;
             }
 
+            long arrivalTime = columns.arrivalTimes[i] * 1000;
+            String trip = columns.getString(columns.trips[i]);
+            String arrivalStop = columns.getString(columns.arrivalStops[i]);
+            TrainProfile tripProfile = T.get(trip);
+            List<StationStopProfile> arrivalStopProfiles = S.get(arrivalStop);
+
             // ====================================================== //
             // START GET EARLIEST ARRIVAL TIME
             // ====================================================== //
 
-            DateTime T1_walkingArrivalTime, T2_stayOnTripArrivalTime, T3_transferArrivalTime;
+            long T1_walkingArrivalTime, T2_stayOnTripArrivalTime, T3_transferArrivalTime;
             int T1_transfers, T2_transfers, T3_transfers;
 
             // Log::info((new Station($connection->getDepartureStopUri()))->getDefaultName() .' - '.(new Station($connection->getArrivalStopUri()))->getDefaultName() .' - '. $connection->getRoute());
             // Determine T1, the time when walking from here to the destination
-            if (Objects.equals(connection.getArrivalStationUri(), mRoutesRequest.getDestination().getSemanticId())) {
+            if (destination >= 0 && columns.arrivalStops[i] == destination) {
                 // If this connection ends at the destination, we can walk from here to tthe station exit.
                 // Our implementation does not add a footpath at the end
                 // Therefore, we arrive at our destination at the time this connection arrives
-                T1_walkingArrivalTime = connection.getArrivalTime();
+                T1_walkingArrivalTime = arrivalTime;
                 // We're walking, so this connections has no transfers between it and the destination
                 T1_transfers = 0;
                 // Log::info("[{$connection->getId()}] Walking possible with arrival time  $T1_walkingArrivalTime.");
@@ -152,59 +241,59 @@ public class RouteResponseListener implements TransportDataSuccessResponseListen
                 // For stops which are close to each other, we could walk to another stop to take a train there
                 // This is to be supported later on, but requires a list of footpaths.
                 // TODO: support walking to a nearby stop, e.g. haren/haren-zuid
-                T1_walkingArrivalTime = infinite;
+                T1_walkingArrivalTime = INFINITE;
                 // Default value to prevent errors due to undefined variables.
                 // Will never be used: when an infinitely late arrival is to earliest available, the for loop will skip to the next connection.
                 T1_transfers = 999;
                 // Log::info("[{$connection->getId()}] Walking not possible.");
             }
             // Determine T2, the first possible time of arrival when remaining seated
-            if (T.containsKey(connection.getTrip())) {
+            if (tripProfile != null) {
                 // When we remain seated on this train, we will arrive at the fastest arrival time possible for this vehicle
-                T2_stayOnTripArrivalTime = T.get(connection.getTrip()).arrivalTime;
+                T2_stayOnTripArrivalTime = tripProfile.arrivalTime;
                 // Remaining seated will have the same number of transfers between this connection and the destination, as from the best exit stop and the destination
-                T2_transfers = T.get(connection.getTrip()).transfers;
+                T2_transfers = tripProfile.transfers;
                 // Log::info("[{$connection->getId()}] Remaining seated possible with arrival time $T2_stayOnTripArrivalTime and $T2_transfers transfers.");
             } else {
                 // When there isn't a fastest arrival time for this stop yet, it means we haven't found a connection
                 // - To arrive in the destination using this vehicle, or
                 // - To transfer to another vehicle in another station
-                T2_stayOnTripArrivalTime = infinite;
+                T2_stayOnTripArrivalTime = INFINITE;
                 // Default value to prevent errors due to undefined variables.
                 // Will never be used: when an infinitely late arrival is to earliest available, the for loop will skip to the next connection.
                 T2_transfers = 999;
                 // Log::info("[{$connection->getId()}] Remaining seated not possible");
             }
             // Determine T3, the time of arrival when taking the best possible transfer in this station
-            if (S.containsKey(connection.getArrivalStationUri())) {
+            if (arrivalStopProfiles != null) {
                 // If there are connections leaving from the arrival station, determine the one which departs after we arrive,
                 // but arrives as soon as possible
                 // The earliest departure is in the back of the array. This int will keep track of which pair we're evaluating.
-                int position = S.get(connection.getArrivalStationUri()).size() - 1;
-                StationStopProfile stopProfile = S.get(connection.getArrivalStationUri()).get(position);
+                int position = arrivalStopProfiles.size() - 1;
+                StationStopProfile stopProfile = arrivalStopProfiles.get(position);
 
                 // TODO: replace hard-coded transfer time
                 // As long as we're arriving AFTER the pair departure, move forward in the list until we find a departure which is reachable
                 // The list is sorted by descending departure time, so the earliest departures are in the back (so we move back to front)
 
-                while ((stopProfile.departureTime.getMillis() - 300 * 1000 <= connection.getArrivalTime().getMillis() ||
+                while ((stopProfile.departureTime - 300 * 1000 <= arrivalTime ||
                         stopProfile.transfers >= maxTransfers) && position > 0) {
                     position--;
-                    stopProfile = S.get(connection.getArrivalStationUri()).get(position);
+                    stopProfile = arrivalStopProfiles.get(position);
                 }
-                if (stopProfile.departureTime.getMillis() - 300 * 1000 > connection.getArrivalTime().getMillis() && stopProfile.transfers <= maxTransfers) {
+                if (stopProfile.departureTime - 300 * 1000 > arrivalTime && stopProfile.transfers <= maxTransfers) {
                     // If a result was found in the list, this is the earliest arrival time when transferring here
                     // Optional: Adding one second to the arrival time will ensure that the route with the smallest number of legs is chosen.
                     // This would not affect journey extaction, but would prefer routes with less legs when arrival times are identical (as their arrival time will be one second earlier)
                     // It would prefer remaining seated over transferring when both would result in the same arrival time
                     // TODO: increase to 240 -> this way we prefer one less transfer in exchange for 10 minutes longer trip
                     // See http://lc2irail.dev/connections/008822160/008895257/departing/1519924311
-                    T3_transferArrivalTime = new DateTime(stopProfile.arrivalTime.getMillis() + 240 * 1000);
+                    T3_transferArrivalTime = stopProfile.arrivalTime + 240 * 1000;
                     // Using this transfer will increase the number of transfers with 1
                     T3_transfers = stopProfile.transfers + 1;
                 } else {
                     // When there isn't a reachable connection, transferring isn't an option
-                    T3_transferArrivalTime = infinite;
+                    T3_transferArrivalTime = INFINITE;
                     // Default value to prevent errors due to undefined variables.
                     // Will never be used: when an infinitely late arrival is to earliest available, the for loop will skip to the next connection.
                     T3_transfers = 999;
@@ -212,7 +301,7 @@ public class RouteResponseListener implements TransportDataSuccessResponseListen
                 }
             } else {
                 // When there isn't a reachable connection, transferring isn't an option
-                T3_transferArrivalTime = infinite;
+                T3_transferArrivalTime = INFINITE;
                 // Default value to prevent errors due to undefined variables.
                 // Will never be used: when an infinitely late arrival is to earliest available, the for loop will skip to the next connection.
                 T3_transfers = 999;
@@ -221,8 +310,9 @@ public class RouteResponseListener implements TransportDataSuccessResponseListen
 
             // Tmin = Tc in the paper
             // This is the earliest arrival time over the 3 possibilities
-            DateTime Tmin;
-            LinkedConnection exitTrainConnection;
+            long Tmin;
+            // Whether we get off at the arrival of this connection, or at the exit which was found earlier for this trip
+            boolean exitHere;
             int numberOfTransfers;
             // Where do we need to get off the train?
             // The following if-else structure does not follow the JourneyLeg Extraction algorithm as described in the CSA (march 2017) paper.
@@ -231,95 +321,95 @@ public class RouteResponseListener implements TransportDataSuccessResponseListen
             // If T3 < T2, prefer a transfer.
             // If T3 == T2, prefer T3. This ensures we don't go A - (B) - (C) - D - (C) - (B) - E when searching A-E but A - B - E instead
             // Here we force the least amount of transfers for the same arrival time since T3 is already incremented with some seconds
-            if (T3_transferArrivalTime.getMillis() <= T2_stayOnTripArrivalTime.getMillis()) {
+            if (T3_transferArrivalTime <= T2_stayOnTripArrivalTime) {
                 // Log::info("Transfer time!");
                 Tmin = T3_transferArrivalTime;
                 // We're transferring here, so get off the train in this station
-                exitTrainConnection = connection;
+                exitHere = true;
                 // We already incremented this transfer counter when determining the train
                 numberOfTransfers = T3_transfers;
             } else {
                 // Log::info("Train time!");
                 Tmin = T2_stayOnTripArrivalTime;
                 // We're staying on this trip. This also implicates a key in T exists for this trip. We're getting off at the previous exit for this vehicle.
-                if (T2_stayOnTripArrivalTime.isBefore(infinite)) {
-                    exitTrainConnection = T.get(connection.getTrip()).arrivalConnection;
-                } else {
-                    exitTrainConnection = null;
-                }
+                exitHere = false;
                 numberOfTransfers = T2_transfers;
             }
             // For equal times, we prefer just arriving.
-            if (T1_walkingArrivalTime.getMillis() <= Tmin.getMillis()) {
+            if (T1_walkingArrivalTime <= Tmin) {
                 // Log::info("Nvm, walking time!");
                 Tmin = T1_walkingArrivalTime;
                 // We're walking from here, so get off here
-                exitTrainConnection = connection;
+                exitHere = true;
                 numberOfTransfers = T1_transfers;
             }
             // ====================================================== //
             // END GET EARLIEST ARRIVAL TIME
             // ====================================================== //
 
-            // The exitTrainConnection condition is unnecessary, but will prevent warnings about possible nullReferenceErrors
-            if (Tmin.isEqual(infinite) || exitTrainConnection == null) {
+            if (Tmin == INFINITE) {
                 continue;
             }
 
+            // This connection can be used to reach the destination, only now an object is needed
+            LinkedConnection connection = data.getConnection(i);
+            LinkedConnection exitTrainConnection = exitHere ? connection : tripProfile.arrivalConnection;
+
             // We now have the minimal arrival time for this connection
             // Update T and S with this new data
             // ====================================================== //
             // START UPDATE T
             // ====================================================== //
             // Set the fastest arrival time for this vehicle, and set the connection at which we have to hop off
-            if (T.containsKey(connection.getTrip())) {
+            if (tripProfile != null) {
 
                 // When there is a faster way for this trip, it's by getting of at this connection's arrival station and transferring (or having arrived)
 
                 // Can also be equal for a transfer with the best transfer (don't do bru south - central - north - transfer - north - central - south
                 // We're updating an existing connection, with a way to get off earlier (iterating using descending departure times).
                 // This only modifies the transfer stop, nothing else in the journey
-                if (Tmin.isEqual(T.get(connection.getTrip()).arrivalTime)
-                        && !T.get(connection.getTrip()).arrivalConnection.getArrivalStationUri().equals(mRoutesRequest.getDestination().getSemanticId())
-                        && T3_transferArrivalTime.isEqual(T2_stayOnTripArrivalTime)
-                        && S.containsKey(T.get(connection.getTrip()).arrivalConnection.getArrivalStationUri())
-                        && S.containsKey(connection.getArrivalStationUri())
+                if (Tmin == tripProfile.arrivalTime
+                        && !tripProfile.arrivalConnection.getArrivalStationUri().equals(mRoutesRequest.getDestination().getSemanticId())
+                        && T3_transferArrivalTime == T2_stayOnTripArrivalTime
+                        && S.containsKey(tripProfile.arrivalConnection.getArrivalStationUri())
+                        && arrivalStopProfiles != null
                 ) {
                     // When the arrival time is the same, the number of transfers should also be the same
                     // We prefer the exit connection with the largest transfer time
                     // Suppose we exit the train here: connection. Does this improve on the transfer time?
-                    LinkedConnection currentTrainExit = T.get(connection.getTrip()).arrivalConnection;
+                    LinkedConnection currentTrainExit = tripProfile.arrivalConnection;
                     // Now we need the departure in the next station!
                     // Create a quadruple to lookup the first reachable connection in S
                     // Create one, because we don't know where we'd get on this train
 
                     StationStopProfile stationStopProfile = new StationStopProfile();
-                    stationStopProfile.departureTime = connection.getDepartureTime();
+                    stationStopProfile.departureTime = departureTime;
                     stationStopProfile.departureConnection = connection;
                     // Current situation
                     stationStopProfile.arrivalTime = Tmin;
                     stationStopProfile.arrivalConnection = currentTrainExit;
 
-                    Duration currentTransfer = new Duration(currentTrainExit.getArrivalTime(), getFirstReachableConnection(stationStopProfile).departureTime);
+                    long currentTransfer = getFirstReachableConnection(stationStopProfile).departureTime - currentTrainExit.getArrivalTime().getMillis();
 
                     // New situation
                     stationStopProfile.arrivalTime = Tmin;
                     stationStopProfile.arrivalConnection = exitTrainConnection;
-                    Duration newTransfer = new Duration(exitTrainConnection.getArrivalTime(), getFirstReachableConnection(stationStopProfile).departureTime);
+                    long newTransfer = getFirstReachableConnection(stationStopProfile).departureTime - exitTrainConnection.getArrivalTime().getMillis();
 
                     // If the new situation is better
-                    if (newTransfer.isLongerThan(currentTransfer)) {
+                    if (newTransfer > currentTransfer) {
                         TrainProfile trainProfile = new TrainProfile();
                         trainProfile.arrivalTime = Tmin;
                         trainProfile.arrivalConnection = exitTrainConnection;
                         trainProfile.transfers = numberOfTransfers;
 
-                        T.put(connection.getTrip(), trainProfile);
+                        T.put(trip, trainProfile);
+                        tripProfile = trainProfile;
                     }
                 }
 
                 // Faster way
-                if (Tmin.isBefore(T.get(connection.getTrip()).arrivalTime)) {
+                if (Tmin < tripProfile.arrivalTime) {
                     // exit = (new Station(exitTrainConnection->getArrivalStopUri()))->getDefaultName();
                     // Log::info("[{connection->getId()}] Updating T: Arrive at Tmin using {connection->getRoute()} with numberOfTransfers transfers. Get off at {exit}.");
                     TrainProfile trainProfile = new TrainProfile();
@@ -327,7 +417,8 @@ public class RouteResponseListener implements TransportDataSuccessResponseListen
                     trainProfile.arrivalConnection = exitTrainConnection;
                     trainProfile.transfers = numberOfTransfers;
 
-                    T.put(connection.getTrip(), trainProfile);
+                    T.put(trip, trainProfile);
+                    tripProfile = trainProfile;
                 }
             } else {
                 // exit = (new Station(exitTrainConnection->getArrivalStopUri()))->getDefaultName();
@@ -337,7 +428,8 @@ public class RouteResponseListener implements TransportDataSuccessResponseListen
                 trainProfile.arrivalTime = Tmin;
                 trainProfile.arrivalConnection = exitTrainConnection;
                 trainProfile.transfers = numberOfTransfers;
-                T.put(connection.getTrip(), trainProfile);
+                T.put(trip, trainProfile);
+                tripProfile = trainProfile;
             }
             // ====================================================== //
             // END UPDATE T
@@ -348,60 +440,111 @@ public class RouteResponseListener implements TransportDataSuccessResponseListen
             // ====================================================== //
 
             // Create a stopProfile to update S
+            String departureStop = columns.getString(columns.departureStops[i]);
             StationStopProfile newProfile = new StationStopProfile();
-            newProfile.departureTime = connection.getDepartureTime();
+            newProfile.departureTime = departureTime;
             newProfile.arrivalTime = Tmin;
             // Additional data for journey extraction
             newProfile.departureConnection = connection;
-            newProfile.arrivalConnection = T.get(connection.getTrip()).arrivalConnection;
+            newProfile.arrivalConnection = tripProfile.arrivalConnection;
             newProfile.transfers = numberOfTransfers;
-            if (S.containsKey(connection.getDepartureStationUri())) {
-                int numberOfPairs = S.get(connection.getDepartureStationUri()).size();
-                StationStopProfile existingProfile = S.get(connection.getDepartureStationUri()).get(numberOfPairs - 1);
+            List<StationStopProfile> departureStopProfiles = S.get(departureStop);
+            if (departureStopProfiles != null) {
+                int numberOfPairs = departureStopProfiles.size();
+                StationStopProfile existingProfile = departureStopProfiles.get(numberOfPairs - 1);
                 // If existingQuad does not dominate quad
                 // The new departure time is always less or equal than an already stored one
-                if (newProfile.arrivalTime.isBefore(existingProfile.arrivalTime)) {
+                if (newProfile.arrivalTime < existingProfile.arrivalTime) {
                     // // Log::info("[{connection->getId()}] Updating S: Reach destination from departureStop departing at {quad[self::KEY_DEPARTURE_TIME]} arriving at {quad[self::KEY_ARRIVAL_TIME]}");
-                    if (newProfile.departureTime.isEqual(existingProfile.departureTime)) {
+                    if (newProfile.departureTime == existingProfile.departureTime) {
                         // Replace existingQuad at the back
-                        S.get(connection.getDepartureStationUri()).remove(numberOfPairs - 1);
-                        S.get(connection.getDepartureStationUri()).add(numberOfPairs - 1, newProfile);
+                        departureStopProfiles.set(numberOfPairs - 1, newProfile);
+                        onProfileAdded(departureStop, existingProfile, newProfile);
                     } else {
                         // We're iterating over descending departure times, therefore the departure
                         // Insert at the back
-                        S.get(connection.getDepartureStationUri()).add(newProfile);
+                        departureStopProfiles.add(newProfile);
+                        onProfileAdded(departureStop, null, newProfile);
                     }
                 }
             } else {
                 // Log::info("[{connection->getId()}] Updating S: New: Reach destination from departureStop departing at {quad[self::KEY_DEPARTURE_TIME]} arriving at {quad[self::KEY_ARRIVAL_TIME]}");
-                S.put(connection.getDepartureStationUri(), new ArrayList<StationStopProfile>());
-                S.get(connection.getDepartureStationUri()).add(newProfile);
+                departureStopProfiles = new ArrayList<>();
+                departureStopProfiles.add(newProfile);
+                S.put(departureStop, departureStopProfiles);
+                onProfileAdded(departureStop, null, newProfile);
             }
             // ====================================================== //
             // END UPDATE S
             // ====================================================== //
         }
 
-        // No results? load more data or stop if we passed the departure time limit
-        if (!S.containsKey(mRoutesRequest.getOrigin().getSemanticId())) {
+        mState.unscannedPage = data;
+        mState.unscannedCount = unscannedUntil;
+
+        // No (new) results? load more data or stop if we passed the departure time limit
+        if (mFoundOriginProfiles.isEmpty()) {
             if (hasPassedDepartureLimit) {
-                RoutesListImpl result = new RoutesListImpl(mRoutesRequest.getOrigin(), mRoutesRequest.getDestination(), mRoutesRequest.getSearchTime(), mRoutesRequest.getTimeDefinition(), new Route[0]);
+                LinkedConnectionsRoutesList result = new LinkedConnectionsRoutesList(mRoutesRequest.getOrigin(), mRoutesRequest.getDestination(), mRoutesRequest.getSearchTime(), mRoutesRequest.getTimeDefinition(), new Route[0]);
                 result.setPageInfo(mPrevious, mCurrent, mNext);
+                result.setScanState(mState);
                 ((MeteredDataSource.MeteredRequest) mTag).setMsecParsed(DateTime.now().getMillis());
                 Log.d("RouteResponseListener", "Found 0 results");
                 mRoutesRequest.notifySuccessListeners(result);
             } else {
-                mLinkedConnectionsProvider.getLinkedConnectionsByUrl(data.previous, this, this, mTag);
+                requestPage(data.previous);
             }
             return;
         }
 
-        // Results? Return data
-        Route[] routes = new Route[S.get(mRoutesRequest.getOrigin().getSemanticId()).size()];
+        if (mStreamUntil != null && !hasPassedDepartureLimit && data.getDepartureMillis(0) >= mStreamUntil.getMillis()) {
+            // This page is still inside the search window. Show the routes found so far while scanning the earlier pages.
+            if (mFoundOriginProfiles.size() > mPartialProfileCount) {
+                mPartialProfileCount = mFoundOriginProfiles.size();
+                LinkedConnectionsRoutesList partial = createRoutesList();
+                partial.setPageInfo(mPrevious, mCurrent, mNext);
+                Log.d("RouteResponseListener", "Found " + partial.getRoutes().length + " results so far");
+                mRoutesRequest.notifyPartialResponseListeners(partial);
+            }
+            requestPage(data.previous);
+            return;
+        }
+
+        // Results? Return data. When resuming, only the journeys which were found while resuming are returned.
+        LinkedConnectionsRoutesList result = createRoutesList();
+        result.setPageInfo(mPrevious, mCurrent, mNext);
+        result.setScanState(mState);
+        ((MeteredDataSource.MeteredRequest) mTag).setMsecParsed(DateTime.now().getMillis());
+        Log.d("RouteResponseListener", "Found " + result.getRoutes().length + " results");
+        mRoutesRequest.notifySuccessListeners(result);
+    }
+
+    /**
+     * Keep track of the journeys from the origin which are added to S, or which replace a journey in S.
+     *
+     * @param stopUri  The stop for which the profile was added
+     * @param replaced The profile which was replaced by the new profile, or null if the profile was appended
+     * @param added    The new profile
+     */
+    private void onProfileAdded(String stopUri, @Nullable StationStopProfile replaced, StationStopProfile added) {
+        if (!stopUri.equals(mRoutesRequest.getOrigin().getSemanticId())) {
+            return;
+        }
+        if (replaced != null) {
+            // A replaced journey which was found by this listener shouldn't be returned twice
+            mFoundOriginProfiles.remove(replaced);
+        }
+        mFoundOriginProfiles.add(added);
+    }
+
+    /**
+     * Extract the journeys from the origin which have been found or improved since this listener started scanning.
+     */
+    private LinkedConnectionsRoutesList createRoutesList() throws StopLocationNotResolvedException {
+        Route[] routes = new Route[mFoundOriginProfiles.size()];
 
         int i = 0;
-        for (StationStopProfile profile : S.get(mRoutesRequest.getOrigin().getSemanticId())
-        ) {
+        for (StationStopProfile profile : mFoundOriginProfiles) {
             // it will iterate over all legs
             StationStopProfile it = profile;
             List<RouteLeg> legs = new ArrayList<>();
@@ -412,7 +555,7 @@ public class RouteResponseListener implements TransportDataSuccessResponseListen
                         it.departureConnection.getSemanticId(), TransportOccupancyLevel.UNSUPPORTED);
                 RouteLegEnd arrival = new RouteLegEndImpl(mStationProvider.getStoplocationBySemanticId(it.arrivalConnection.getArrivalStationUri()),
                         it.arrivalConnection.getArrivalTime(), "?", true, Duration.standardSeconds(it.arrivalConnection.getArrivalDelay()), false, it.arrivalConnection.getDelayedArrivalTime().isBeforeNow(),
-                        it.arrivalConnection.getArrivalStationUri(), TransportOccupancyLevel.UNSUPPORTED);
+                        it.arrivalConnection.getSemanticId(), TransportOccupancyLevel.UNSUPPORTED);
                 RouteLeg r = new RouteLegImpl(RouteLegType.TRAIN, new IrailVehicleInfo(basename(it.departureConnection.getRoute()), it.departureConnection.getDirection(), it.departureConnection.getTrip()), departure, arrival, null);
                 legs.add(r);
 
@@ -424,7 +567,7 @@ public class RouteResponseListener implements TransportDataSuccessResponseListen
                     it.departureConnection.getSemanticId(), TransportOccupancyLevel.UNSUPPORTED);
             RouteLegEnd arrival = new RouteLegEndImpl(mStationProvider.getStoplocationBySemanticId(it.arrivalConnection.getArrivalStationUri()),
                     it.arrivalConnection.getArrivalTime(), "?", true, Duration.standardSeconds(it.arrivalConnection.getArrivalDelay()), false, it.arrivalConnection.getDelayedArrivalTime().isBeforeNow(),
-                    it.arrivalConnection.getArrivalStationUri(), TransportOccupancyLevel.UNSUPPORTED);
+                    it.arrivalConnection.getSemanticId(), TransportOccupancyLevel.UNSUPPORTED);
             RouteLeg r = new RouteLegImpl(RouteLegType.TRAIN, new IrailVehicleInfo(basename(it.departureConnection.getRoute()), it.departureConnection.getDirection(), it.departureConnection.getTrip()), departure, arrival, null);
             legs.add(r);
 
@@ -440,11 +583,7 @@ public class RouteResponseListener implements TransportDataSuccessResponseListen
             }
         });
 
-        RoutesListImpl result = new RoutesListImpl(mRoutesRequest.getOrigin(), mRoutesRequest.getDestination(), mRoutesRequest.getSearchTime(), mRoutesRequest.getTimeDefinition(), routes);
-        result.setPageInfo(mPrevious, mCurrent, mNext);
-        ((MeteredDataSource.MeteredRequest) mTag).setMsecParsed(DateTime.now().getMillis());
-        Log.d("RouteResponseListener", "Found " + result.getRoutes().length + " results");
-        mRoutesRequest.notifySuccessListeners(result);
+        return new LinkedConnectionsRoutesList(mRoutesRequest.getOrigin(), mRoutesRequest.getDestination(), mRoutesRequest.getSearchTime(), mRoutesRequest.getTimeDefinition(), routes);
     }
 
     private StationStopProfile getFirstReachableConnection(StationStopProfile arrivalQuad) {
@@ -453,7 +592,7 @@ public class RouteResponseListener implements TransportDataSuccessResponseListen
         // Find the next hop. This is the first reachable hop,
         // or even stricter defined: the hop which will get us to the destination at the same arrival time.
         // There will be a one second difference between the arrival times, as a result of the leg optimization
-        while (i >= 0 && it_options.get(i).arrivalTime.getMillis() != arrivalQuad.arrivalTime.getMillis() - 240 * 1000) {
+        while (i >= 0 && it_options.get(i).arrivalTime != arrivalQuad.arrivalTime - 240 * 1000) {
             i--;
         }
         return it_options.get(i);
@@ -461,33 +600,56 @@ public class RouteResponseListener implements TransportDataSuccessResponseListen
 
     @Override
     public void onSuccessResponse(@NonNull LinkedConnections data, Object tag) {
+        if (mRoutesRequest.isCanceled()) {
+            // Stop walking through pages, nobody is waiting for the result
+            ((MeteredDataSource.MeteredRequest) tag).setCanceled();
+            return;
+        }
         mTag = tag;
+        Span scanSpan = OpenTransportTracing.startSpan("route", OpenTransportTracing.getRequestSpan(tag));
+        mScanSpan = scanSpan;
         try {
             ((MeteredDataSource.MeteredRequest) tag).setMsecUsableNetworkResponse(DateTime.now().getMillis());
             process(data);
         } catch (StopLocationNotResolvedException e) {
-            ((MeteredDataSource.MeteredRequest) tag).setMsecParsed(DateTime.now().getMillis());
-            ((MeteredDataSource.MeteredRequest) tag).setResponseType(MeteredDataSource.RESPONSE_FAILED);
+            ((MeteredDataSource.MeteredRequest) tag).setFailed(DateTime.now().getMillis());
             mRoutesRequest.notifyErrorListeners(e);
+        } catch (RuntimeException e) {
+            ((MeteredDataSource.MeteredRequest) tag).setFailed(DateTime.now().getMillis());
+            throw e;
+        } finally {
+            scanSpan.end();
         }
     }
 
+    /**
+     * Load an earlier page to continue scanning. The scan of the current page ends first, as the next page may be delivered synchronously.
+     */
+    private void requestPage(String url) {
+        mScanSpan.end();
+        mLinkedConnectionsProvider.getLinkedConnectionsByUrl(url, this, this, mTag);
+    }
+
     @Override
     public void onErrorResponse(@NonNull Exception e, Object tag) {
-        mRoutesRequest.notifyErrorListeners(e);
+        try {
+            mRoutesRequest.notifyErrorListeners(e);
+        } finally {
+            ((MeteredDataSource.MeteredRequest) tag).setFailed(DateTime.now().getMillis());
+        }
     }
 
 
-    class StationStopProfile {
+    static class StationStopProfile {
         /**
-         * The departure time in this stop
+         * The departure time in this stop, in milliseconds since the epoch
          */
-        DateTime departureTime;
+        long departureTime;
 
         /**
-         * The arrival time at the final destination
+         * The arrival time at the final destination, in milliseconds since the epoch
          */
-        DateTime arrivalTime;
+        long arrivalTime;
 
         /**
          * The departure connection in this stop
@@ -505,11 +667,11 @@ public class RouteResponseListener implements TransportDataSuccessResponseListen
         int transfers;
     }
 
-    class TrainProfile {
+    static class TrainProfile {
         /**
-         * The arrival time at the final destination
+         * The arrival time at the final destination, in milliseconds since the epoch
          */
-        DateTime arrivalTime;
+        long arrivalTime;
 
         /**
          * The number of transfers until the destination when hopping on to this train
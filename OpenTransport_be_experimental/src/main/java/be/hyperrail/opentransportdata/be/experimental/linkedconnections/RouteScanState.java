@@ -0,0 +1,123 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.opentransportdata.be.experimental.linkedconnections;
+
+import org.joda.time.DateTime;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A snapshot of the profile connection scan state after a route query.
+ * <p>
+ * The profile CSA scans connections in descending departure order. The S and T profiles in this snapshot are valid for every connection which departs after the scan frontier,
+ * which means the scan can be continued with earlier connections to find earlier routes, without scanning the later pages again.
+ * The connections which were loaded for the latest departures are kept as well, so loading later routes only needs to fetch the pages after them.
+ */
+class RouteScanState {
+
+    /**
+     * For each stop, the (departuretime, arrivaltime) pairs sorted by DESCENDING departuretime.
+     */
+    final HashMap<String, List<RouteResponseListener.StationStopProfile>> S = new HashMap<>();
+
+    /**
+     * For every trip, the earliest possible arrival time.
+     */
+    final HashMap<String, RouteResponseListener.TrainProfile> T = new HashMap<>();
+
+    /**
+     * The earliest loaded page, or null before the first page has been scanned.
+     */
+    LinkedConnections unscannedPage;
+
+    /**
+     * The number of connections at the start of the earliest loaded page which haven't been scanned yet, because they departed before the departure limit.
+     */
+    int unscannedCount = 0;
+
+    /**
+     * The url of the earliest loaded page.
+     */
+    String currentUrl;
+
+    /**
+     * The url of the page before the earliest loaded page. Scanning continues here once all unscanned connections have been scanned.
+     */
+    String previousUrl;
+
+    /**
+     * The page which was loaded for the latest departures.
+     */
+    LinkedConnections latestPage;
+
+    /**
+     * The url of the page before the latest loaded connections.
+     */
+    String latestPreviousUrl;
+
+    /**
+     * The url of the page after the latest loaded page.
+     */
+    String nextUrl;
+
+    /**
+     * Get the connections which were loaded for the latest departures, and which depart at or after a given time.
+     *
+     * @param departureLimit The earliest departure time to include
+     * @return The connections in chronological order
+     */
+    List<LinkedConnection> getLatestConnectionsFrom(DateTime departureLimit) {
+        List<LinkedConnection> result = new ArrayList<>();
+        if (latestPage == null) {
+            return result;
+        }
+        long limit = departureLimit.getMillis();
+        for (int i = 0; i < latestPage.size(); i++) {
+            if (latestPage.getDepartureMillis(i) >= limit) {
+                result.add(latestPage.getConnection(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Copy this state, so a query can continue the scan without changing the state it was copied from.
+     * Profiles are replaced instead of changed while scanning, so they can be shared.
+     *
+     * @return A state which can be continued independently
+     */
+    RouteScanState copy() {
+        RouteScanState copy = new RouteScanState();
+        for (Map.Entry<String, List<RouteResponseListener.StationStopProfile>> profiles : S.entrySet()) {
+            copy.S.put(profiles.getKey(), new ArrayList<>(profiles.getValue()));
+        }
+        copy.T.putAll(T);
+        copy.unscannedPage = unscannedPage;
+        copy.unscannedCount = unscannedCount;
+        copy.currentUrl = currentUrl;
+        copy.previousUrl = previousUrl;
+        copy.latestPage = latestPage;
+        copy.latestPreviousUrl = latestPreviousUrl;
+        copy.nextUrl = nextUrl;
+        return copy;
+    }
+
+    /**
+     * Take over the latest loaded connections from a later scan, so a next request for later routes can continue from there.
+     * The profiles in this state stay untouched, as earlier routes are still found by continuing this scan.
+     *
+     * @param later The state of a scan over later connections
+     */
+    void withLatestConnectionsFrom(RouteScanState later) {
+        latestPage = later.latestPage;
+        latestPreviousUrl = later.latestPreviousUrl;
+        nextUrl = later.nextUrl;
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.opentransportdata.be.experimental.linkedconnections;
+
+import java.util.Arrays;
+
+/**
+ * Assigns an integer id to every distinct string in a page, e.g. stop, trip or route URIs.
+ * Strings are looked up directly from a character buffer, so recurring values don't allocate a new String.
+ * A pool belongs to a single page, so it can't grow without bound. It is filled while parsing and only read afterwards, and isn't thread-safe.
+ */
+final class StringPool {
+
+    private String[] mValues = new String[128];
+    // Open addressing hash table, containing id + 1 for every used slot
+    private int[] mTable = new int[256];
+    private int mSize = 0;
+
+    /**
+     * Get the id for a string in a character buffer, adding it to the pool if needed.
+     */
+    int intern(char[] buffer, int offset, int length) {
+        int mask = mTable.length - 1;
+        int slot = hash(buffer, offset, length) & mask;
+        while (mTable[slot] != 0) {
+            int id = mTable[slot] - 1;
+            if (matches(mValues[id], buffer, offset, length)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return add(new String(buffer, offset, length), slot);
+    }
+
+    /**
+     * Get the id for a string, adding it to the pool if needed.
+     */
+    int intern(String value) {
+        return intern(value.toCharArray(), 0, value.length());
+    }
+
+    /**
+     * Get the id for a string without adding it.
+     *
+     * @return The id, or -1 if the string isn't in this pool
+     */
+    int indexOf(String value) {
+        int mask = mTable.length - 1;
+        int slot = value.hashCode() & mask;
+        while (mTable[slot] != 0) {
+            int id = mTable[slot] - 1;
+            if (mValues[id].equals(value)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Get the string for an id. Every call returns the same instance.
+     */
+    String get(int id) {
+        return mValues[id];
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    private int add(String value, int slot) {
+        if (mSize == mValues.length) {
+            mValues = Arrays.copyOf(mValues, mValues.length * 2);
+        }
+        int id = mSize++;
+        mValues[id] = value;
+        mTable[slot] = id + 1;
+
+        // Keep the load factor below 0.5
+        if (mSize * 2 > mTable.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    private void rehash() {
+        int[] table = new int[mTable.length * 2];
+        int mask = table.length - 1;
+        for (int id = 0; id < mSize; id++) {
+            int slot = mValues[id].hashCode() & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = id + 1;
+        }
+        mTable = table;
+    }
+
+    /**
+     * The same hash as String.hashCode(), so existing strings can be rehashed without access to a buffer.
+     */
+    private static int hash(char[] buffer, int offset, int length) {
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + buffer[i];
+        }
+        return hash;
+    }
+
+    static boolean matches(String value, char[] buffer, int offset, int length) {
+        if (value.length() != length) {
+            return false;
+        }
+        for (int i = length - 1; i >= 0; i--) {
+            // Compare back to front, URIs share long prefixes
+            if (value.charAt(i) != buffer[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -59,10 +59,10 @@ public class TimespanQueryResponseListener implements QueryResponseListener.Link
         } else {
             next = data.next;
         }
-        Collections.addAll(result, data.connections);
+        Collections.addAll(result, data.getConnections());
 
-        if ((mDirection > 0 && data.connections[data.connections.length - 1].getDepartureTime().isBefore(mEndTime)) ||
-                (mDirection < 0 && data.connections[0].getDepartureTime().isAfter(mEndTime))) {
+        if ((mDirection > 0 && data.getDepartureMillis(data.size() - 1) < mEndTime.getMillis()) ||
+                (mDirection < 0 && data.getDepartureMillis(0) > mEndTime.getMillis())) {
             return mDirection;
         } else {
             LinkedConnections resultObject = new LinkedConnections();
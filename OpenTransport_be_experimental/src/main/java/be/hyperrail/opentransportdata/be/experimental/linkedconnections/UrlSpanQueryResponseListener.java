@@ -41,7 +41,7 @@ public class UrlSpanQueryResponseListener implements QueryResponseListener.Linke
             current = data.current;
         }
 
-        Collections.addAll(result, data.connections);
+        Collections.addAll(result, data.getConnections());
 
         if ( mLastUrl.compareTo(data.current) > 0) {
             return 1;
@@ -6,18 +6,17 @@
 
 package be.hyperrail.opentransportdata.be.experimental.linkedconnections;
 
-import com.google.firebase.perf.metrics.AddTrace;
-
 import org.joda.time.DateTime;
 import org.joda.time.Duration;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Objects;
 
 import be.hyperrail.opentransportdata.common.contracts.MeteredDataSource;
 import be.hyperrail.opentransportdata.common.contracts.TransportDataErrorResponseListener;
 import be.hyperrail.opentransportdata.common.contracts.TransportDataSuccessResponseListener;
+import be.hyperrail.opentransportdata.tracing.OpenTransportTracing;
+import be.hyperrail.opentransportdata.tracing.Span;
 
 /**
  * A query for linkedconnections related to a certain vehicle. Stop after the vehicle hasn't been seen for 2 hours, only return relevant connections.
@@ -42,39 +41,51 @@ public class VehicleQueryResponseListener implements QueryResponseListener.Linke
     }
 
     @Override
-    @AddTrace(name="vehicleQuery.result")
     public int onQueryResult(LinkedConnections data) {
+        Span span = OpenTransportTracing.startSpan("vehicle query", OpenTransportTracing.getRequestSpan(mTag));
+        try {
+            return findVehicle(data);
+        } finally {
+            span.end();
+        }
+    }
+
+    private int findVehicle(LinkedConnections data) {
         if (current == null) {
             previous = data.previous;
             current = data.current;
         }
 
-        if (data.connections.length < 1) {
+        if (data.size() < 1) {
             return 1;
         }
 
         if (started == null){
-            started = data.connections[0].getDepartureTime();
+            started = new DateTime(data.getDepartureMillis(0));
         } else {
-            if (new Duration(started,data.connections[0].getDepartureTime()).getStandardHours() > 48){
+            if (new Duration(started.getMillis(), data.getDepartureMillis(0)).getStandardHours() > 48){
                 mErrorListener.onErrorResponse(new IndexOutOfBoundsException("Requested page too far from original start"),mTag);
                 return 0;
             }
         }
 
-        DateTime lastDepartureTime = null;
-        for (LinkedConnection connection : data.connections) {
-            if (!connection.isNormal()){
+        // The vehicle is compared by its id in this page, so only its own connections are created as objects
+        LinkedConnectionsColumns columns = data.getColumns();
+        int vehicle = columns.getStringId(mVehicleUri);
+        long lastDepartureTime = Long.MIN_VALUE;
+        for (int i = 0; i < columns.size; i++) {
+            if (!columns.isNormal(i)){
                 continue;
             }
-            if (Objects.equals(connection.getRoute(), mVehicleUri)) {
+            if (vehicle >= 0 && columns.routes[i] == vehicle) {
+                LinkedConnection connection = data.getConnection(i);
                 lastSpotted = connection.getArrivalTime();
                 result.add(connection);
             }
-            lastDepartureTime = connection.getDepartureTime();
+            lastDepartureTime = columns.departureTimes[i] * 1000;
         }
 
-        if (lastSpotted != null && lastDepartureTime.isAfter(lastSpotted.plusHours(2))) {
+        if (lastSpotted != null && lastDepartureTime > lastSpotted.plusHours(2).getMillis()) {
             LinkedConnections resultObject = new LinkedConnections();
             LinkedConnection[] connections = new LinkedConnection[result.size()];
             connections = result.toArray(connections);
@@ -92,8 +103,10 @@ public class VehicleQueryResponseListener implements QueryResponseListener.Linke
 
     @Override
     public void onQueryFailed(Exception e, Object tag) {
-        mErrorListener.onErrorResponse(e, tag);
-        ((MeteredDataSource.MeteredRequest) tag).setMsecParsed(DateTime.now().getMillis());
-        ((MeteredDataSource.MeteredRequest) tag).setResponseType(MeteredDataSource.RESPONSE_FAILED);
+        try {
+            mErrorListener.onErrorResponse(e, tag);
+        } finally {
+            ((MeteredDataSource.MeteredRequest) tag).setFailed(DateTime.now().getMillis());
+        }
     }
 }
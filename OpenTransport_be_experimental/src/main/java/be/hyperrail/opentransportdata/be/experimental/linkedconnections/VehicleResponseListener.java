@@ -9,8 +9,6 @@ package be.hyperrail.opentransportdata.be.experimental.linkedconnections;
 import androidx.annotation.NonNull;
 import android.util.Log;
 
-import com.google.firebase.perf.metrics.AddTrace;
-
 import org.joda.time.DateTime;
 import org.joda.time.Duration;
 
@@ -30,8 +28,10 @@ import be.hyperrail.opentransportdata.common.models.StopLocation;
 import be.hyperrail.opentransportdata.common.models.VehicleStopType;
 import be.hyperrail.opentransportdata.common.models.implementation.VehicleStopImpl;
 import be.hyperrail.opentransportdata.common.requests.VehicleRequest;
+import be.hyperrail.opentransportdata.tracing.OpenTransportTracing;
+import be.hyperrail.opentransportdata.tracing.Span;
 
-import static be.hyperrail.opentransportdata.be.experimental.linkedconnections.LinkedConnectionsDataSource.basename;
+import static be.hyperrail.opentransportdata.util.StringUtils.basename;
 
 /**
  * Created in be.hyperrail.android.irail.implementation.linkedconnections on 15/03/2018.
@@ -48,14 +48,24 @@ public class VehicleResponseListener implements TransportDataSuccessResponseList
     }
 
     @Override
-    @AddTrace(name = "VehicleResponseListener.sucess")
     public void onSuccessResponse(@NonNull LinkedConnections data, Object tag) {
+        Span span = OpenTransportTracing.startSpan("vehicle", OpenTransportTracing.getRequestSpan(tag));
+        try {
+            parseVehicle(data, tag);
+        } finally {
+            span.end();
+            // Every page ends the request. This has no effect when the vehicle was parsed successfully.
+            ((MeteredDataSource.MeteredRequest) tag).setFailed(DateTime.now().getMillis());
+        }
+    }
+
+    private void parseVehicle(@NonNull LinkedConnections data, Object tag) {
         ((MeteredDataSource.MeteredRequest) tag).setMsecUsableNetworkResponse(DateTime.now().getMillis());
         List<VehicleStopImpl> stops = new ArrayList<>();
         Log.i("VehicleResponseListener", "Parsing train...");
         LinkedConnection lastConnection = null;
-        for (int i = 0; i < data.connections.length; i++) {
-            LinkedConnection connection = data.connections[i];
+        for (int i = 0; i < data.size(); i++) {
+            LinkedConnection connection = data.getConnection(i);
             if (!connection.isNormal() || !Objects.equals(connection.getRoute(), "http://irail.be/vehicle/" + mRequest.getVehicleId())) {
                 continue;
             }
@@ -127,7 +137,11 @@ public class VehicleResponseListener implements TransportDataSuccessResponseList
     @Override
     public void onErrorResponse(@NonNull Exception e, Object tag) {
         Log.w("VehicleResponseListener", "Failed to load page! " + e.getMessage());
-        mRequest.notifyErrorListeners(e);
+        try {
+            mRequest.notifyErrorListeners(e);
+        } finally {
+            ((MeteredDataSource.MeteredRequest) tag).setFailed(DateTime.now().getMillis());
+        }
     }
 }
 
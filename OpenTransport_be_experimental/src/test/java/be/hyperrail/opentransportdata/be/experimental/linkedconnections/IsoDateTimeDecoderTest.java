@@ -0,0 +1,87 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.opentransportdata.be.experimental.linkedconnections;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compare the hand-written timestamp decoder against Joda-Time.
+ */
+public class IsoDateTimeDecoderTest {
+
+    @Test
+    public void testUtcTimestamps() {
+        assertDecoded("2018-04-10T12:34:00.000Z");
+        assertDecoded("2018-04-10T12:34:56Z");
+        assertDecoded("2018-04-10T12:34Z");
+        assertDecoded("1970-01-01T00:00:00.000Z");
+    }
+
+    @Test
+    public void testOffsets() {
+        assertDecoded("2018-04-10T14:34:00.000+02:00");
+        assertDecoded("2018-04-10T14:34:00+0200");
+        assertDecoded("2018-12-31T23:59:59.999-05:30");
+    }
+
+    @Test
+    public void testTimestampWithoutOffsetIsUtc() {
+        assertEquals(new DateTime(2018, 4, 10, 12, 34, DateTimeZone.UTC).getMillis() / 1000,
+                IsoDateTimeDecoder.parseEpochSeconds("2018-04-10T12:34:00"));
+    }
+
+    @Test
+    public void testLeapDays() {
+        assertDecoded("2016-02-29T08:00:00.000Z");
+        assertDecoded("2000-02-29T08:00:00.000Z");
+        assertDecoded("2100-03-01T08:00:00.000Z");
+        assertDecoded("2019-03-01T00:00:00.000Z");
+    }
+
+    @Test
+    public void testThreeDigitDay() {
+        // Written by the old DateTimeConverter pattern
+        assertEquals(IsoDateTimeDecoder.parseEpochSeconds("2018-04-10T12:34:00.000Z"),
+                IsoDateTimeDecoder.parseEpochSeconds("2018-04-010T12:34:00.000Z"));
+    }
+
+    @Test
+    public void testDecodeFromBuffer() {
+        char[] buffer = "\"departureTime\":\"2018-04-10T12:34:00.000Z\"".toCharArray();
+        assertEquals(IsoDateTimeDecoder.parseEpochSeconds("2018-04-10T12:34:00.000Z"),
+                IsoDateTimeDecoder.parseEpochSeconds(buffer, 17, 24));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMonth() {
+        IsoDateTimeDecoder.parseEpochSeconds("2018-13-10T12:34:00Z");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTrailingCharacters() {
+        IsoDateTimeDecoder.parseEpochSeconds("2018-04-10T12:34:00Zabc");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTruncatedTimestamp() {
+        IsoDateTimeDecoder.parseEpochSeconds("2018-04-10T1");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testShortYear() {
+        IsoDateTimeDecoder.parseEpochSeconds("18-04-10T12:34:00Z");
+    }
+
+    private static void assertDecoded(String timestamp) {
+        long expected = DateTime.parse(timestamp.replaceFirst("([+-]\\d\\d)(\\d\\d)$", "$1:$2")).getMillis() / 1000;
+        assertEquals(timestamp, expected, IsoDateTimeDecoder.parseEpochSeconds(timestamp));
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.opentransportdata.be.experimental.linkedconnections;
+
+import android.net.ConnectivityManager;
+
+import com.android.volley.Cache;
+import com.android.volley.Network;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import be.hyperrail.opentransportdata.common.contracts.MeteredDataSource;
+import be.hyperrail.opentransportdata.common.contracts.QueryTimeDefinition;
+import be.hyperrail.opentransportdata.common.models.RoutesList;
+import be.hyperrail.opentransportdata.common.requests.RoutePlanningRequest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test that linked connections are processed on the compute executor, and only results are delivered on the calling thread.
+ * The test thread plays the role of the main thread.
+ */
+public class LinkedConnectionsExecutorTest {
+
+    private static final String URL = "https://graph.irail.be/sncb/connections?departureTime=2018-04-10T12:00:00.000Z";
+    private static final String PAGE = "{\"@id\":\"" + URL + "\",\"@graph\":["
+            + "{\"@id\":\"http://irail.be/connections/8814001/20180410/IC1234\","
+            + "\"departureStop\":\"http://irail.be/stations/NMBS/008814001\",\"arrivalStop\":\"http://irail.be/stations/NMBS/008813003\","
+            + "\"departureTime\":\"2018-04-10T12:01:00.000Z\",\"arrivalTime\":\"2018-04-10T12:05:00.000Z\","
+            + "\"gtfs:trip\":\"http://irail.be/vehicle/IC1234/20180410\",\"gtfs:route\":\"http://irail.be/vehicle/IC1234\"}"
+            + "]}";
+
+    @Test
+    public void testWorkRunsOnComputeThread() throws InterruptedException {
+        ThreadPoolExecutor executor = LinkedConnectionsExecutor.create(2);
+        final AtomicReference<Thread> workerThread = new AtomicReference<>();
+        final AtomicReference<Boolean> isComputeThread = new AtomicReference<>();
+        final CountDownLatch done = new CountDownLatch(1);
+
+        executor.execute(() -> {
+            workerThread.set(Thread.currentThread());
+            isComputeThread.set(LinkedConnectionsExecutor.isComputeThread());
+            done.countDown();
+        });
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertFalse(LinkedConnectionsExecutor.isComputeThread());
+        assertTrue(isComputeThread.get());
+        assertFalse(workerThread.get() == Thread.currentThread());
+        executor.shutdown();
+    }
+
+    @Test
+    public void testSaturatedExecutorNeverRunsOnSubmittingThread() throws InterruptedException {
+        ThreadPoolExecutor executor = LinkedConnectionsExecutor.create(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        occupy(executor, release);
+        for (int i = 0; i < 32; i++) {
+            executor.execute(() -> {
+                // Waits in the queue
+            });
+        }
+
+        // The main thread hands its work off, even though the executor is far behind
+        final AtomicReference<Thread> workerThread = new AtomicReference<>();
+        final CountDownLatch done = new CountDownLatch(1);
+        executor.execute(() -> {
+            workerThread.set(Thread.currentThread());
+            done.countDown();
+        });
+        assertNull(workerThread.get());
+
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertFalse(workerThread.get() == Thread.currentThread());
+        executor.shutdown();
+    }
+
+    @Test
+    public void testThrottledSubmitterWaitsForCapacity() throws InterruptedException {
+        ThreadPoolExecutor executor = LinkedConnectionsExecutor.create(1);
+        final Executor throttled = LinkedConnectionsExecutor.throttle(executor, 1);
+        final CountDownLatch release = new CountDownLatch(1);
+        throttled.execute(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        // A network thread delivering another response has to wait until the first one has been processed
+        final AtomicReference<Thread> workerThread = new AtomicReference<>();
+        final CountDownLatch submitted = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        Thread networkThread = new Thread(() -> {
+            throttled.execute(() -> {
+                workerThread.set(Thread.currentThread());
+                done.countDown();
+            });
+            submitted.countDown();
+        });
+        networkThread.start();
+        assertFalse(submitted.await(200, TimeUnit.MILLISECONDS));
+
+        release.countDown();
+        assertTrue(submitted.await(5, TimeUnit.SECONDS));
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertFalse(workerThread.get() == networkThread);
+        executor.shutdown();
+    }
+
+    @Test
+    public void testSaturatedProviderDoesNotLoadOnCallingThread() throws InterruptedException {
+        LinkedConnectionsOfflineCache offlineCache = mock(LinkedConnectionsOfflineCache.class);
+        final AtomicReference<Thread> lookupThread = new AtomicReference<>();
+        when(offlineCache.load(anyString())).thenAnswer(invocation -> {
+            lookupThread.set(Thread.currentThread());
+            return null;
+        });
+        LinkedConnectionsProvider provider = createProvider(offlineCache);
+        ThreadPoolExecutor executor = (ThreadPoolExecutor) provider.getComputeExecutor();
+
+        // Occupy both compute threads and queue more work than the network threads may hand off
+        final CountDownLatch release = new CountDownLatch(1);
+        occupy(executor, release);
+        occupy(executor, release);
+        for (int i = 0; i < 32; i++) {
+            executor.execute(() -> {
+                // Waits in the queue
+            });
+        }
+
+        final CountDownLatch done = new CountDownLatch(1);
+        provider.getLinkedConnectionsByUrl(URL, (LinkedConnections data, Object tag) -> done.countDown(), (e, tag) -> done.countDown(),
+                new MeteredDataSource.MeteredRequest());
+        // The call returns without doing any of the work on the calling thread
+        assertNull(lookupThread.get());
+
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertFalse(lookupThread.get() == Thread.currentThread());
+    }
+
+    @Test
+    public void testResultsArePostedToCallerThread() throws InterruptedException {
+        ThreadPoolExecutor executor = LinkedConnectionsExecutor.create(2);
+        final List<Runnable> posted = new ArrayList<>();
+        final AtomicReference<Thread> listenerThread = new AtomicReference<>();
+
+        RoutePlanningRequest request = new RoutePlanningRequest(null, null, QueryTimeDefinition.EQUAL_OR_LATER, DateTime.now());
+        request.setCallback((RoutesList data, Object tag) -> listenerThread.set(Thread.currentThread()), null, null);
+        CallbackDelivery.deliverOn(runnable -> {
+            synchronized (posted) {
+                posted.add(runnable);
+            }
+        }, request);
+
+        final CountDownLatch done = new CountDownLatch(1);
+        executor.execute(() -> {
+            request.notifySuccessListeners(null);
+            done.countDown();
+        });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+
+        // Nothing may have been delivered on the compute thread
+        assertNull(listenerThread.get());
+        assertEquals(1, posted.size());
+
+        posted.get(0).run();
+        assertSame(Thread.currentThread(), listenerThread.get());
+        executor.shutdown();
+    }
+
+    @Test
+    public void testCacheHitIsProcessedOnComputeThread() throws InterruptedException {
+        LinkedConnectionsOfflineCache offlineCache = mock(LinkedConnectionsOfflineCache.class);
+        LinkedConnectionsOfflineCache.CachedLinkedConnections cached = new LinkedConnectionsOfflineCache.CachedLinkedConnections();
+        cached.url = URL;
+        cached.data = PAGE;
+        cached.createdAt = DateTime.now();
+        final AtomicReference<Thread> lookupThread = new AtomicReference<>();
+        when(offlineCache.load(anyString())).thenAnswer(invocation -> {
+            lookupThread.set(Thread.currentThread());
+            return cached;
+        });
+        LinkedConnectionsProvider provider = createProvider(offlineCache);
+
+        final AtomicReference<Thread> listenerThread = new AtomicReference<>();
+        final AtomicReference<Boolean> isComputeThread = new AtomicReference<>();
+        final AtomicReference<LinkedConnections> result = new AtomicReference<>();
+        final CountDownLatch done = new CountDownLatch(1);
+        provider.getLinkedConnectionsByUrl(URL, (LinkedConnections data, Object tag) -> {
+            listenerThread.set(Thread.currentThread());
+            isComputeThread.set(LinkedConnectionsExecutor.isComputeThread());
+            result.set(data);
+            done.countDown();
+        }, (e, tag) -> done.countDown(), new MeteredDataSource.MeteredRequest());
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, result.get().size());
+        // Neither the lookup, the parsing nor the listener may run on the calling thread
+        assertFalse(lookupThread.get() == Thread.currentThread());
+        assertFalse(listenerThread.get() == Thread.currentThread());
+        assertTrue(isComputeThread.get());
+    }
+
+    @Test
+    public void testOfflineErrorIsDeliveredOnComputeThread() throws InterruptedException {
+        LinkedConnectionsProvider provider = createProvider(mock(LinkedConnectionsOfflineCache.class));
+
+        final AtomicReference<Boolean> isComputeThread = new AtomicReference<>();
+        final AtomicReference<Exception> error = new AtomicReference<>();
+        final CountDownLatch done = new CountDownLatch(1);
+        provider.getLinkedConnectionsByUrl(URL, (LinkedConnections data, Object tag) -> done.countDown(), (e, tag) -> {
+            isComputeThread.set(LinkedConnectionsExecutor.isComputeThread());
+            error.set(e);
+            done.countDown();
+        }, new MeteredDataSource.MeteredRequest());
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(error.get() != null);
+        assertTrue(isComputeThread.get());
+    }
+
+    /**
+     * Occupy a thread of the executor until the latch is released
+     */
+    private static void occupy(ThreadPoolExecutor executor, final CountDownLatch release) throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        executor.execute(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+    }
+
+    private static LinkedConnectionsProvider createProvider(LinkedConnectionsOfflineCache offlineCache) {
+        // Without an active network, cache misses fail without touching the request queue
+        ConnectivityManager connectivityManager = mock(ConnectivityManager.class);
+        return new LinkedConnectionsProvider(offlineCache, mock(Network.class), mock(Cache.class), connectivityManager);
+    }
+}
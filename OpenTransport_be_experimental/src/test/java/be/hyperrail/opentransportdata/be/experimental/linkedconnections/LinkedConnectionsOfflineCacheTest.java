@@ -0,0 +1,51 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.opentransportdata.be.experimental.linkedconnections;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Test how pages which haven't been written yet are found.
+ */
+public class LinkedConnectionsOfflineCacheTest {
+
+    @Test
+    public void testGreatestContainingPageIsFound() {
+        LinkedConnectionsOfflineCache.PendingWrite early = pending("page-1000", "page-1300");
+        LinkedConnectionsOfflineCache.PendingWrite late = pending("page-1100", "page-1200");
+        LinkedConnectionsOfflineCache.PendingWrite other = pending("page-1200", "page-1300");
+
+        // Regardless of the iteration order, the greatest url is used, like on the stored pages
+        List<LinkedConnectionsOfflineCache.PendingWrite> pending = Arrays.asList(early, late, other);
+        assertSame(late, LinkedConnectionsOfflineCache.findApproximate(pending, "page-1150"));
+        pending = Arrays.asList(other, late, early);
+        assertSame(late, LinkedConnectionsOfflineCache.findApproximate(pending, "page-1150"));
+
+        assertSame(other, LinkedConnectionsOfflineCache.findApproximate(pending, "page-1200"));
+        assertSame(early, LinkedConnectionsOfflineCache.findApproximate(pending, "page-1050"));
+    }
+
+    @Test
+    public void testPagesWhichDontContainUrlAreIgnored() {
+        List<LinkedConnectionsOfflineCache.PendingWrite> pending = Arrays.asList(
+                pending("page-1000", "page-1100"),
+                pending("page-1200", null));
+        assertNull(LinkedConnectionsOfflineCache.findApproximate(pending, "page-0900"));
+        assertNull(LinkedConnectionsOfflineCache.findApproximate(pending, "page-1100"));
+        assertNull(LinkedConnectionsOfflineCache.findApproximate(pending, "page-1250"));
+    }
+
+    private static LinkedConnectionsOfflineCache.PendingWrite pending(String url, String next) {
+        return new LinkedConnectionsOfflineCache.PendingWrite(url, next, "{}", 0, 0);
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.opentransportdata.be.experimental.linkedconnections;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Duration;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import be.hyperrail.opentransportdata.common.contracts.DelayChange;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class LinkedConnectionsStreamParserTest {
+
+    private static final String PAGE = "{\"@context\":{\"hydra\":\"http://www.w3.org/ns/hydra/core#\"},"
+            + "\"@id\":\"https://graph.irail.be/sncb/connections?departureTime=2018-04-10T12:00:00.000Z\","
+            + "\"hydra:next\":\"https://graph.irail.be/sncb/connections?departureTime=2018-04-10T12:10:00.000Z\","
+            + "\"hydra:previous\":\"https://graph.irail.be/sncb/connections?departureTime=2018-04-10T11:50:00.000Z\","
+            + "\"@graph\":["
+            + "{\"@id\":\"http://irail.be/connections/8814001/20180410/IC1234\",\"@type\":\"Connection\","
+            + "\"departureStop\":\"http://irail.be/stations/NMBS/008814001\",\"arrivalStop\":\"http://irail.be/stations/NMBS/008813003\","
+            + "\"departureTime\":\"2018-04-10T12:01:00.000Z\",\"arrivalTime\":\"2018-04-10T12:05:00.000Z\",\"departureDelay\":60,"
+            + "\"direction\":\"Antwerpen-Centraal\",\"gtfs:trip\":\"http://irail.be/vehicle/IC1234/20180410\",\"gtfs:route\":\"http://irail.be/vehicle/IC1234\","
+            + "\"gtfs:pickupType\":\"gtfs:Regular\",\"gtfs:dropOffType\":\"gtfs:Regular\"},"
+            + "{\"@id\":\"http://irail.be/connections/8813003/20180410/IC1234\",\"@type\":\"Connection\","
+            + "\"departureStop\":\"http://irail.be/stations/NMBS/008813003\",\"arrivalStop\":\"http://irail.be/stations/NMBS/008812005\","
+            + "\"departureTime\":\"2018-04-10T12:07:00.000Z\",\"arrivalTime\":\"2018-04-10T12:10:00.000Z\",\"arrivalDelay\":120,"
+            + "\"direction\":\"Antwerpen-Centraal\",\"gtfs:trip\":\"http://irail.be/vehicle/IC1234/20180410\",\"gtfs:route\":\"http://irail.be/vehicle/IC1234\","
+            + "\"gtfs:pickupType\":\"gtfs:NotAvailable\",\"gtfs:dropOffType\":\"gtfs:Regular\",\"extra\":{\"nested\":[1,2]}}"
+            + "]}";
+
+    @Test
+    public void testPageIsParsed() throws IOException {
+        LinkedConnections page = new LinkedConnectionsStreamParser().parse(PAGE);
+
+        assertEquals("https://graph.irail.be/sncb/connections?departureTime=2018-04-10T12:00:00.000Z", page.current);
+        assertEquals("https://graph.irail.be/sncb/connections?departureTime=2018-04-10T12:10:00.000Z", page.next);
+        assertEquals("https://graph.irail.be/sncb/connections?departureTime=2018-04-10T11:50:00.000Z", page.previous);
+        assertEquals(2, page.size());
+
+        LinkedConnection first = page.getConnection(0);
+        assertEquals("http://irail.be/connections/8814001/20180410/IC1234", first.getSemanticId());
+        assertEquals("http://irail.be/stations/NMBS/008814001", first.getDepartureStationUri());
+        assertEquals("http://irail.be/stations/NMBS/008813003", first.getArrivalStationUri());
+        assertEquals(new DateTime(2018, 4, 10, 12, 1, DateTimeZone.UTC).getMillis(), first.getDepartureTime().getMillis());
+        assertEquals(new DateTime(2018, 4, 10, 12, 5, DateTimeZone.UTC).getMillis(), first.getArrivalTime().getMillis());
+        assertEquals(60, first.getDepartureDelay());
+        assertEquals(0, first.getArrivalDelay());
+        assertEquals("Antwerpen-Centraal", first.getDirection());
+        assertEquals("http://irail.be/vehicle/IC1234/20180410", first.getTrip());
+        assertEquals("http://irail.be/vehicle/IC1234", first.getRoute());
+        assertTrue(first.isNormal());
+
+        LinkedConnection second = page.getConnection(1);
+        assertEquals(120, second.getArrivalDelay());
+        assertFalse(second.isNormal());
+    }
+
+    @Test
+    public void testRecurringUrisShareOneInstance() throws IOException {
+        LinkedConnections page = new LinkedConnectionsStreamParser().parse(PAGE);
+        assertSame(page.getConnection(0).getArrivalStationUri(), page.getConnection(1).getDepartureStationUri());
+        assertSame(page.getConnection(0).getTrip(), page.getConnection(1).getTrip());
+    }
+
+    @Test
+    public void testColumnsAreFilledWithoutObjects() throws IOException {
+        LinkedConnectionsColumns columns = new LinkedConnectionsStreamParser().parse(PAGE).getColumns();
+        assertEquals(2, columns.size);
+        assertEquals(columns.arrivalStops[0], columns.departureStops[1]);
+        assertEquals(columns.trips[0], columns.trips[1]);
+        assertEquals(new DateTime(2018, 4, 10, 12, 7, DateTimeZone.UTC).getMillis() / 1000, columns.departureTimes[1]);
+        assertEquals(60, columns.departureDelays[0]);
+        assertEquals(LinkedConnectionsColumns.TYPE_NOT_AVAILABLE, columns.getPickupType(1));
+        assertEquals(LinkedConnectionsColumns.TYPE_REGULAR, columns.getDropOffType(1));
+        assertTrue(columns.isNormal(0));
+        assertEquals(-1, columns.getStringId("http://irail.be/stations/NMBS/008892007"));
+    }
+
+    @Test
+    public void testPostingsUsePageIndices() throws IOException {
+        LinkedConnections page = new LinkedConnectionsStreamParser().parse(PAGE);
+        assertArrayEquals(new int[]{0}, page.getDeparturePostings("http://irail.be/stations/NMBS/008814001"));
+        assertArrayEquals(new int[]{0}, page.getArrivalPostings("http://irail.be/stations/NMBS/008813003"));
+        // The second connection isn't regular
+        assertEquals(0, page.getDeparturePostings("http://irail.be/stations/NMBS/008813003").length);
+        assertEquals(0, page.getDeparturePostings("http://irail.be/stations/NMBS/008892007").length);
+    }
+
+    @Test
+    public void testWrittenPageIsParsedAgain() throws IOException {
+        LinkedConnections page = new LinkedConnectionsStreamParser().parse(PAGE);
+        LinkedConnections stored = new LinkedConnectionsStreamParser().parse(page.toJson());
+
+        assertEquals(page.current, stored.current);
+        assertEquals(page.next, stored.next);
+        assertEquals(page.previous, stored.previous);
+        assertTrue(page.updateDelaysFrom(stored).isEmpty());
+        for (int i = 0; i < page.size(); i++) {
+            LinkedConnection original = page.getConnection(i);
+            LinkedConnection copy = stored.getConnection(i);
+            assertEquals(original.getSemanticId(), copy.getSemanticId());
+            assertEquals(original.getDepartureStationUri(), copy.getDepartureStationUri());
+            assertEquals(original.getArrivalStationUri(), copy.getArrivalStationUri());
+            assertEquals(original.getDepartureTime().getMillis(), copy.getDepartureTime().getMillis());
+            assertEquals(original.getArrivalTime().getMillis(), copy.getArrivalTime().getMillis());
+            assertEquals(original.getArrivalDelay(), copy.getArrivalDelay());
+            assertEquals(original.getTrip(), copy.getTrip());
+            assertEquals(original.getRoute(), copy.getRoute());
+            assertEquals(original.getDirection(), copy.getDirection());
+            assertEquals(original.isNormal(), copy.isNormal());
+        }
+    }
+
+    @Test
+    public void testChangedDelaysAreCopiedIntoThePage() throws IOException {
+        LinkedConnections page = new LinkedConnectionsStreamParser().parse(PAGE);
+        LinkedConnection handedOut = page.getConnection(1);
+        LinkedConnections refreshed = new LinkedConnectionsStreamParser().parse(PAGE.replace("\"arrivalDelay\":120", "\"arrivalDelay\":300"));
+
+        List<DelayChange> changes = page.updateDelaysFrom(refreshed);
+        assertEquals(1, changes.size());
+        assertEquals("http://irail.be/connections/8813003/20180410/IC1234", changes.get(0).getSemanticId());
+        assertEquals(Duration.standardSeconds(120), changes.get(0).getPreviousArrivalDelay());
+        assertEquals(Duration.standardSeconds(300), changes.get(0).getArrivalDelay());
+        assertEquals(Duration.ZERO, changes.get(0).getDepartureDelay());
+
+        assertEquals(300, page.getColumns().arrivalDelays[1]);
+        assertEquals(300, handedOut.getArrivalDelay());
+        assertEquals(60, page.getConnection(0).getDepartureDelay());
+        assertTrue(page.updateDelaysFrom(refreshed).isEmpty());
+    }
+
+    @Test
+    public void testPageWithOtherConnectionsIsNotUpdated() throws IOException {
+        LinkedConnections page = new LinkedConnectionsStreamParser().parse(PAGE);
+        LinkedConnections refreshed = new LinkedConnectionsStreamParser().parse(PAGE
+                .replace("\"arrivalDelay\":120", "\"arrivalDelay\":300")
+                .replace("8814001/20180410/IC1234", "8814001/20180410/IC1235"));
+
+        assertNull(page.updateDelaysFrom(refreshed));
+        assertEquals(120, page.getConnection(1).getArrivalDelay());
+
+        List<DelayChange> changes = page.getDelayChanges(refreshed);
+        assertEquals(1, changes.size());
+        assertEquals("http://irail.be/connections/8813003/20180410/IC1234", changes.get(0).getSemanticId());
+        assertEquals(Duration.standardSeconds(300), changes.get(0).getArrivalDelay());
+    }
+
+    @Test
+    public void testMissingTypesAreNotNormal() throws IOException {
+        LinkedConnections page = new LinkedConnectionsStreamParser().parse("{\"@id\":\"a\",\"@graph\":[{\"@id\":\"c\",\"hydra:unknown\":null}]}");
+        assertEquals(1, page.size());
+        assertFalse(page.getConnection(0).isNormal());
+        assertNull(page.next);
+    }
+
+    @Test(expected = IOException.class)
+    public void testGraphMustBeAnArray() throws IOException {
+        new LinkedConnectionsStreamParser().parse("{\"@graph\":{}}");
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.opentransportdata.be.experimental.linkedconnections;
+
+import com.android.volley.Header;
+import com.android.volley.Request;
+import com.android.volley.toolbox.BaseHttpStack;
+import com.android.volley.toolbox.HttpResponse;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import be.hyperrail.opentransportdata.common.contracts.MeteredDataSource.MeteredRequest;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test that the bytes of every call are attributed to the request which caused it, both compressed and decompressed.
+ */
+public class MeteredHttpStackTest {
+
+    private static final byte[] BODY = repeat("{\"@id\":\"http://irail.be/connections/8814001/20181018/IC1832\"}", 50);
+
+    @Test
+    public void testGzipResponseIsDecompressedAndCounted() throws Exception {
+        byte[] compressed = gzip(BODY);
+        MeteredRequest meteredRequest = new MeteredRequest();
+        FakeStack fake = new FakeStack(compressed, new Header("Content-Encoding", "gzip"), new Header("Content-Length", String.valueOf(compressed.length)));
+        MeteredHttpStack stack = new MeteredHttpStack(fake);
+
+        HttpResponse response = stack.executeRequest(mockRequest(meteredRequest), Collections.<String, String>emptyMap());
+
+        assertEquals("gzip", fake.mAcceptEncoding);
+        assertEquals(-1, response.getContentLength());
+        assertEquals(0, response.getHeaders().size());
+        assertArrayEquals(BODY, readFully(response.getContent()));
+
+        long headers = meteredRequest.getBytesDecompressed() - BODY.length;
+        assertTrue(headers > 0);
+        assertEquals(compressed.length + headers, meteredRequest.getBytesReceived());
+        assertTrue(meteredRequest.getBytesReceived() < meteredRequest.getBytesDecompressed());
+        assertTrue(meteredRequest.getBytesSent() > 0);
+    }
+
+    @Test
+    public void testEveryCallIsAttributedToItsOwnRequest() throws Exception {
+        MeteredRequest first = new MeteredRequest();
+        MeteredRequest second = new MeteredRequest();
+        MeteredHttpStack stack = new MeteredHttpStack(new FakeStack(BODY));
+
+        // Two pages for the first request, one for the second
+        readFully(stack.executeRequest(mockRequest(first), Collections.<String, String>emptyMap()).getContent());
+        readFully(stack.executeRequest(mockRequest(second), Collections.<String, String>emptyMap()).getContent());
+        readFully(stack.executeRequest(mockRequest(first), Collections.<String, String>emptyMap()).getContent());
+
+        assertEquals(2 * second.getBytesReceived(), first.getBytesReceived());
+        assertEquals(2 * second.getBytesSent(), first.getBytesSent());
+        // Uncompressed responses are the same size before and after decoding
+        assertEquals(second.getBytesReceived(), second.getBytesDecompressed());
+    }
+
+    @Test
+    public void testClosingBeforeEndIsCountedOnce() throws Exception {
+        MeteredRequest meteredRequest = new MeteredRequest();
+        MeteredHttpStack stack = new MeteredHttpStack(new FakeStack(BODY));
+
+        InputStream content = stack.executeRequest(mockRequest(meteredRequest), Collections.<String, String>emptyMap()).getContent();
+        assertEquals(10, content.read(new byte[10], 0, 10));
+        content.close();
+        content.close();
+
+        assertEquals(meteredRequest.getBytesReceived(), meteredRequest.getBytesDecompressed());
+        assertTrue(meteredRequest.getBytesReceived() < BODY.length);
+    }
+
+    private static Request<?> mockRequest(MeteredRequest tag) throws Exception {
+        Request<?> request = Mockito.mock(Request.class);
+        Mockito.when(request.getUrl()).thenReturn("https://graph.irail.be/sncb/connections?departureTime=2018-10-18T12:00:00.000Z");
+        Mockito.when(request.getHeaders()).thenReturn(Collections.singletonMap("User-agent", "test"));
+        Mockito.when(request.getTag()).thenReturn(tag);
+        return request;
+    }
+
+    private static byte[] repeat(String value, int times) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            builder.append(value);
+        }
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(out);
+        gzip.write(data);
+        gzip.close();
+        return out.toByteArray();
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[256];
+        int read;
+        while ((read = in.read(buffer, 0, buffer.length)) >= 0) {
+            out.write(buffer, 0, read);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+    private static class FakeStack extends BaseHttpStack {
+        private final byte[] mBody;
+        private final List<Header> mHeaders = new ArrayList<>();
+        String mAcceptEncoding;
+
+        FakeStack(byte[] body, Header... headers) {
+            mBody = body;
+            Collections.addAll(mHeaders, headers);
+        }
+
+        @Override
+        public HttpResponse executeRequest(Request<?> request, Map<String, String> additionalHeaders) {
+            mAcceptEncoding = additionalHeaders.get("Accept-Encoding");
+            return new HttpResponse(200, mHeaders, mBody.length, new ByteArrayInputStream(mBody));
+        }
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.opentransportdata.be.experimental.linkedconnections;
+
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import be.hyperrail.opentransportdata.common.contracts.MeteredDataSource;
+import be.hyperrail.opentransportdata.common.contracts.QueryTimeDefinition;
+import be.hyperrail.opentransportdata.common.contracts.TransportDataErrorResponseListener;
+import be.hyperrail.opentransportdata.common.contracts.TransportDataSuccessResponseListener;
+import be.hyperrail.opentransportdata.common.contracts.TransportStopsDataSource;
+import be.hyperrail.opentransportdata.common.models.Route;
+import be.hyperrail.opentransportdata.common.models.RoutesList;
+import be.hyperrail.opentransportdata.common.models.StopLocation;
+import be.hyperrail.opentransportdata.common.requests.ExtendRoutePlanningRequest;
+import be.hyperrail.opentransportdata.common.requests.ResultExtensionType;
+import be.hyperrail.opentransportdata.common.requests.RoutePlanningRequest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test extending linked connections routes through the future based extend helper.
+ */
+public class RouteExtendHelperTest {
+
+    private static final String A = "http://irail.be/stations/NMBS/A";
+    private static final String B = "http://irail.be/stations/NMBS/B";
+
+    private final Map<String, LinkedConnections> mPages = new HashMap<>();
+    // Page requests which are answered when the test calls answerDelayedPages
+    private final List<Object[]> mDelayedPages = new ArrayList<>();
+    private boolean mDelayPages;
+    private LinkedConnectionsProvider mProvider;
+    private TransportStopsDataSource mStops;
+
+    private final List<RoutesList> mResults = new ArrayList<>();
+    private final List<Exception> mErrors = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        mProvider = mock(LinkedConnectionsProvider.class);
+        doAnswer(invocation -> {
+            if (mDelayPages) {
+                mDelayedPages.add(invocation.getArguments());
+            } else {
+                answerPage(invocation.getArguments());
+            }
+            return null;
+        }).when(mProvider).getLinkedConnectionsByUrl(anyString(), any(), any(), any());
+
+        mStops = mock(TransportStopsDataSource.class);
+        when(mStops.getStoplocationBySemanticId(anyString())).thenAnswer(invocation -> stop(invocation.getArgument(0)));
+    }
+
+    @Test
+    public void testAppendFromScanStateReturnsLaterRoutes() {
+        LinkedConnectionsRoutesList routes = search(page("page-1", "page-0", "page-2",
+                connection(A, B, at(10, 0), at(10, 30), "trip-1")));
+        mPages.put("page-2", page("page-2", "page-1", "page-3",
+                connection(A, B, at(11, 0), at(11, 30), "trip-2")));
+
+        createHelper(routes, ResultExtensionType.APPEND).extend();
+
+        assertTrue(mErrors.isEmpty());
+        Route[] extended = mResults.get(0).getRoutes();
+        assertEquals(2, extended.length);
+        assertEquals(at(10, 0), extended[0].getDepartureTime());
+        assertEquals(at(11, 0), extended[1].getDepartureTime());
+        // The routes in the request are never changed
+        assertEquals(1, routes.getRoutes().length);
+    }
+
+    @Test
+    public void testAppendWithoutNewRoutesFailsAfterMaximumAttempts() {
+        LinkedConnectionsRoutesList routes = search(page("page-1", "page-0", "page-2",
+                connection(A, B, at(10, 0), at(10, 30), "trip-1")));
+        for (int i = 2; i < 20; i++) {
+            mPages.put("page-" + i, page("page-" + i, "page-" + (i - 1), "page-" + (i + 1)));
+        }
+
+        createHelper(routes, ResultExtensionType.APPEND).extend();
+
+        assertTrue(mResults.isEmpty());
+        assertEquals(1, mErrors.size());
+        assertTrue(mErrors.get(0) instanceof FileNotFoundException);
+    }
+
+    @Test
+    public void testCancelledExtendRequestStopsPageWalk() {
+        LinkedConnectionsRoutesList routes = search(page("page-1", "page-0", "page-2",
+                connection(A, B, at(10, 0), at(10, 30), "trip-1")));
+        mPages.put("page-2", page("page-2", "page-1", "page-3",
+                connection(A, B, at(11, 0), at(11, 30), "trip-2")));
+
+        mDelayPages = true;
+        ExtendRoutePlanningRequest request = createRequest(routes, ResultExtensionType.APPEND);
+        new RouteExtendHelper(mProvider, mStops, request, new MeteredDataSource.MeteredRequest()).extend();
+        request.cancel();
+        answerDelayedPages();
+
+        assertTrue(mResults.isEmpty());
+        assertTrue(mErrors.isEmpty());
+    }
+
+    private LinkedConnectionsRoutesList search(LinkedConnections page) {
+        RoutePlanningRequest request = new RoutePlanningRequest(stop(A), stop(B), QueryTimeDefinition.EQUAL_OR_LATER, at(9, 0));
+        List<RoutesList> results = new ArrayList<>();
+        request.setCallback((RoutesList data, Object tag) -> results.add(data), (e, tag) -> mErrors.add(e), null);
+        new RouteResponseListener(mProvider, mStops, request, null).onSuccessResponse(page, new MeteredDataSource.MeteredRequest());
+        return (LinkedConnectionsRoutesList) results.get(0);
+    }
+
+    private RouteExtendHelper createHelper(RoutesList routes, ResultExtensionType action) {
+        return new RouteExtendHelper(mProvider, mStops, createRequest(routes, action), new MeteredDataSource.MeteredRequest());
+    }
+
+    private ExtendRoutePlanningRequest createRequest(RoutesList routes, ResultExtensionType action) {
+        ExtendRoutePlanningRequest request = new ExtendRoutePlanningRequest(routes, action);
+        request.setCallback((RoutesList data, Object tag) -> mResults.add(data), (e, tag) -> mErrors.add(e), null);
+        return request;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void answerPage(Object[] arguments) {
+        LinkedConnections page = mPages.get((String) arguments[0]);
+        if (page == null) {
+            ((TransportDataErrorResponseListener) arguments[2]).onErrorResponse(new FileNotFoundException(), arguments[3]);
+        } else {
+            ((TransportDataSuccessResponseListener<LinkedConnections>) arguments[1]).onSuccessResponse(page, arguments[3]);
+        }
+    }
+
+    private void answerDelayedPages() {
+        mDelayPages = false;
+        for (Object[] arguments : new ArrayList<>(mDelayedPages)) {
+            answerPage(arguments);
+        }
+    }
+
+    private static StopLocation stop(String uri) {
+        StopLocation stop = mock(StopLocation.class);
+        when(stop.getSemanticId()).thenReturn(uri);
+        return stop;
+    }
+
+    private static DateTime at(int hour, int minute) {
+        return new DateTime(2018, 3, 15, hour, minute);
+    }
+
+    private static LinkedConnection connection(String from, String to, DateTime departure, DateTime arrival, String trip) {
+        LinkedConnection connection = new LinkedConnection();
+        connection.semanticId = from + "/" + trip;
+        connection.departureStationUri = from;
+        connection.arrivalStationUri = to;
+        connection.departureTime = departure;
+        connection.setArrivalTime(arrival);
+        connection.setTrip(trip);
+        connection.route = "http://irail.be/vehicle/IC" + trip.hashCode();
+        connection.direction = "B";
+        connection.pickupType = "gtfs:Regular";
+        connection.dropoffType = "gtfs:Regular";
+        return connection;
+    }
+
+    private static LinkedConnections page(String current, String previous, String next, LinkedConnection... connections) {
+        LinkedConnections page = new LinkedConnections();
+        page.current = current;
+        page.previous = previous;
+        page.next = next;
+        page.connections = connections;
+        return page;
+    }
+}
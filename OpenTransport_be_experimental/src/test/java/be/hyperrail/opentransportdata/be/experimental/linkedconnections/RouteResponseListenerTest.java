@@ -0,0 +1,300 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.opentransportdata.be.experimental.linkedconnections;
+
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import be.hyperrail.opentransportdata.common.contracts.MeteredDataSource;
+import be.hyperrail.opentransportdata.common.contracts.QueryTimeDefinition;
+import be.hyperrail.opentransportdata.common.contracts.TransportDataErrorResponseListener;
+import be.hyperrail.opentransportdata.common.contracts.TransportDataSuccessResponseListener;
+import be.hyperrail.opentransportdata.common.contracts.TransportStopsDataSource;
+import be.hyperrail.opentransportdata.common.models.Route;
+import be.hyperrail.opentransportdata.common.models.RoutesList;
+import be.hyperrail.opentransportdata.common.models.StopLocation;
+import be.hyperrail.opentransportdata.common.requests.RoutePlanningRequest;
+import be.hyperrail.opentransportdata.metrics.OpenTransportMetrics;
+import be.hyperrail.opentransportdata.tracing.InMemorySpanExporter;
+import be.hyperrail.opentransportdata.tracing.OpenTransportTracing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test the profile connection scan on small, hand-written pages.
+ */
+public class RouteResponseListenerTest {
+
+    private static final String A = "http://irail.be/stations/NMBS/A";
+    private static final String B = "http://irail.be/stations/NMBS/B";
+    private static final String C = "http://irail.be/stations/NMBS/C";
+    private static final String D = "http://irail.be/stations/NMBS/D";
+
+    private final Map<String, LinkedConnections> mPages = new HashMap<>();
+    private LinkedConnectionsProvider mProvider;
+    private TransportStopsDataSource mStops;
+
+    private final List<RoutesList> mResults = new ArrayList<>();
+    private final List<Exception> mErrors = new ArrayList<>();
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        mProvider = mock(LinkedConnectionsProvider.class);
+        doAnswer(invocation -> {
+            LinkedConnections page = mPages.get((String) invocation.getArgument(0));
+            if (page == null) {
+                ((TransportDataErrorResponseListener) invocation.getArgument(2)).onErrorResponse(new FileNotFoundException(), invocation.getArgument(3));
+            } else {
+                ((TransportDataSuccessResponseListener<LinkedConnections>) invocation.getArgument(1)).onSuccessResponse(page, invocation.getArgument(3));
+            }
+            return null;
+        }).when(mProvider).getLinkedConnectionsByUrl(anyString(), any(), any(), any());
+
+        mStops = mock(TransportStopsDataSource.class);
+        when(mStops.getStoplocationBySemanticId(anyString())).thenAnswer(invocation -> stop(invocation.getArgument(0)));
+    }
+
+    @Test
+    public void testDirectConnectionsAreReturnedInDepartureOrder() {
+        LinkedConnections page = page("page-1", "page-0", "page-2",
+                connection(A, B, at(10, 0), at(10, 30), "trip-1"),
+                connection(A, B, at(10, 10), at(10, 40), "trip-2"));
+
+        createListener(null).onSuccessResponse(page, new MeteredDataSource.MeteredRequest());
+
+        assertTrue(mErrors.isEmpty());
+        Route[] routes = mResults.get(0).getRoutes();
+        assertEquals(2, routes.length);
+        assertEquals(at(10, 0), routes[0].getDepartureTime());
+        assertEquals(at(10, 10), routes[1].getDepartureTime());
+    }
+
+    @Test
+    public void testTransferIsFound() {
+        LinkedConnections page = page("page-1", "page-0", "page-2",
+                connection(A, C, at(10, 0), at(10, 20), "trip-1"),
+                connection(C, B, at(10, 21), at(10, 50), "trip-2"),
+                connection(C, B, at(10, 30), at(11, 0), "trip-3"));
+
+        createListener(null).onSuccessResponse(page, new MeteredDataSource.MeteredRequest());
+
+        Route[] routes = mResults.get(0).getRoutes();
+        assertEquals(1, routes.length);
+        // The connection departing one minute after arrival can't be reached
+        assertEquals(2, routes[0].getLegs().length);
+        assertEquals(at(11, 0), routes[0].getArrivalTime());
+    }
+
+    @Test
+    public void testResumedScanReturnsImprovedJourney() {
+        // A faster journey departing at the same time is found on the earlier page, and replaces the last origin profile instead of being appended
+        LinkedConnections later = page("page-2", "page-1", "page-3",
+                connection(A, B, at(10, 0), at(11, 0), "trip-1"),
+                connection(C, B, at(10, 20), at(10, 40), "trip-2"));
+        mPages.put("page-1", page("page-1", "page-0", "page-2",
+                connection(A, C, at(10, 0), at(10, 10), "trip-3")));
+        mPages.put("page-0", page("page-0", "page--1", "page-1",
+                connection(D, C, at(8, 0), at(8, 30), "trip-4")));
+
+        createListener(null).onSuccessResponse(later, new MeteredDataSource.MeteredRequest());
+        assertEquals(1, mResults.get(0).getRoutes().length);
+        RouteScanState state = ((LinkedConnectionsRoutesList) mResults.get(0)).getScanState();
+
+        mResults.clear();
+        RoutePlanningRequest request = createRequest();
+        new RouteResponseListener(mProvider, mStops, request, null, state).resume(new MeteredDataSource.MeteredRequest());
+
+        assertTrue(mErrors.isEmpty());
+        Route[] routes = mResults.get(0).getRoutes();
+        assertEquals(1, routes.length);
+        assertEquals(at(10, 0), routes[0].getDepartureTime());
+        assertEquals(at(10, 40), routes[0].getArrivalTime());
+    }
+
+    @Test
+    public void testResumedScanOnlyReturnsNewJourneys() {
+        LinkedConnections later = page("page-2", "page-1", "page-3",
+                connection(A, B, at(10, 0), at(11, 0), "trip-1"));
+        mPages.put("page-1", page("page-1", "page-0", "page-2",
+                connection(A, B, at(9, 0), at(10, 0), "trip-2")));
+
+        createListener(null).onSuccessResponse(later, new MeteredDataSource.MeteredRequest());
+        RouteScanState state = ((LinkedConnectionsRoutesList) mResults.get(0)).getScanState();
+
+        mResults.clear();
+        new RouteResponseListener(mProvider, mStops, createRequest(), null, state).resume(new MeteredDataSource.MeteredRequest());
+
+        Route[] routes = mResults.get(0).getRoutes();
+        assertEquals(1, routes.length);
+        assertEquals(at(9, 0), routes[0].getDepartureTime());
+    }
+
+    @Test
+    public void testConnectionsBeforeDepartureLimitAreKeptForResuming() {
+        LinkedConnections page = page("page-1", "page-0", "page-2",
+                connection(A, B, at(9, 0), at(9, 30), "trip-1"),
+                connection(A, B, at(10, 0), at(10, 30), "trip-2"));
+
+        createListener(at(9, 30)).onSuccessResponse(page, new MeteredDataSource.MeteredRequest());
+
+        Route[] routes = mResults.get(0).getRoutes();
+        assertEquals(1, routes.length);
+        assertEquals(at(10, 0), routes[0].getDepartureTime());
+        RouteScanState state = ((LinkedConnectionsRoutesList) mResults.get(0)).getScanState();
+        assertEquals(1, state.unscannedCount);
+        assertEquals(at(9, 0), state.unscannedPage.getConnection(0).getDepartureTime());
+    }
+
+    @Test
+    public void testResumingDoesNotChangeStateOfOriginalRoutes() {
+        LinkedConnections later = page("page-2", "page-1", "page-3",
+                connection(A, B, at(10, 0), at(11, 0), "trip-1"));
+        mPages.put("page-1", page("page-1", "page-0", "page-2",
+                connection(A, B, at(9, 0), at(10, 0), "trip-2")));
+
+        createListener(null).onSuccessResponse(later, new MeteredDataSource.MeteredRequest());
+        LinkedConnectionsRoutesList original = (LinkedConnectionsRoutesList) mResults.get(0);
+        RouteScanState state = original.getScanState();
+        assertNotSame(state, original.getScanState());
+
+        mResults.clear();
+        new RouteResponseListener(mProvider, mStops, createRequest(), null, state).resume(new MeteredDataSource.MeteredRequest());
+        assertEquals(1, mResults.get(0).getRoutes().length);
+
+        // The original routes can be extended again, e.g. when they are shared by a cache, and give the same result
+        mResults.clear();
+        new RouteResponseListener(mProvider, mStops, createRequest(), null, original.getScanState()).resume(new MeteredDataSource.MeteredRequest());
+        Route[] routes = mResults.get(0).getRoutes();
+        assertEquals(1, routes.length);
+        assertEquals(at(9, 0), routes[0].getDepartureTime());
+        assertEquals("page-2", original.getScanState().currentUrl);
+    }
+
+    @Test
+    public void testPartialResultsAreOnlyPassedForNewRoutes() {
+        LinkedConnections latest = page("page-3", "page-2", "page-4",
+                connection(A, B, at(11, 0), at(11, 30), "trip-1"));
+        mPages.put("page-2", page("page-2", "page-1", "page-3",
+                connection(D, C, at(10, 30), at(10, 45), "trip-2")));
+        mPages.put("page-1", page("page-1", "page-0", "page-2",
+                connection(A, B, at(9, 30), at(10, 0), "trip-3")));
+        mPages.put("page-0", page("page-0", "page--1", "page-1",
+                connection(D, C, at(8, 0), at(8, 30), "trip-4")));
+
+        List<RoutesList> partials = new ArrayList<>();
+        RoutePlanningRequest request = createRequest();
+        request.setOnPartialResponseListener((data, tag) -> partials.add(data));
+        RouteResponseListener listener = new RouteResponseListener(mProvider, mStops, request, null);
+        listener.setStreamUntil(at(9, 0));
+        listener.onSuccessResponse(latest, new MeteredDataSource.MeteredRequest());
+
+        // The page without routes doesn't result in a partial result
+        assertEquals(2, partials.size());
+        assertEquals(1, partials.get(0).getRoutes().length);
+        assertEquals(2, partials.get(1).getRoutes().length);
+        assertEquals(2, mResults.get(0).getRoutes().length);
+    }
+
+    @Test
+    public void testFailedPageEndsRequestSpan() {
+        InMemorySpanExporter exporter = new InMemorySpanExporter();
+        OpenTransportTracing.addExporter(exporter);
+        try {
+            MeteredDataSource.MeteredRequest meteredRequest = new MeteredDataSource.MeteredRequest();
+            new OpenTransportMetrics().track(meteredRequest);
+            // page-1 isn't available, so the scan fails after the first page
+            LinkedConnections page = page("page-2", "page-1", "page-3",
+                    connection(D, C, at(10, 0), at(10, 30), "trip-1"));
+
+            createListener(at(9, 0)).onSuccessResponse(page, meteredRequest);
+
+            assertEquals(1, mErrors.size());
+            assertEquals(1, exporter.getSpans("request").size());
+            assertTrue(exporter.getSpans("request").get(0).isFailed());
+        } finally {
+            OpenTransportTracing.removeExporter(exporter);
+        }
+    }
+
+    @Test
+    public void testCancelledRequestEndsRequestSpan() {
+        InMemorySpanExporter exporter = new InMemorySpanExporter();
+        OpenTransportTracing.addExporter(exporter);
+        try {
+            MeteredDataSource.MeteredRequest meteredRequest = new MeteredDataSource.MeteredRequest();
+            new OpenTransportMetrics().track(meteredRequest);
+            RoutePlanningRequest request = createRequest();
+            request.cancel();
+
+            new RouteResponseListener(mProvider, mStops, request, null).onSuccessResponse(page("page-1", "page-0", "page-2"), meteredRequest);
+
+            assertTrue(mResults.isEmpty());
+            assertTrue(exporter.getSpans("request").get(0).isFailed());
+        } finally {
+            OpenTransportTracing.removeExporter(exporter);
+        }
+    }
+
+    private RouteResponseListener createListener(DateTime departureLimit) {
+        return new RouteResponseListener(mProvider, mStops, createRequest(), departureLimit);
+    }
+
+    private RoutePlanningRequest createRequest() {
+        RoutePlanningRequest request = new RoutePlanningRequest(stop(A), stop(B), QueryTimeDefinition.EQUAL_OR_LATER, at(9, 0));
+        request.setCallback((RoutesList data, Object tag) -> mResults.add(data), (e, tag) -> mErrors.add(e), null);
+        return request;
+    }
+
+    private static StopLocation stop(String uri) {
+        StopLocation stop = mock(StopLocation.class);
+        when(stop.getSemanticId()).thenReturn(uri);
+        return stop;
+    }
+
+    private static DateTime at(int hour, int minute) {
+        return new DateTime(2018, 3, 15, hour, minute);
+    }
+
+    private static LinkedConnection connection(String from, String to, DateTime departure, DateTime arrival, String trip) {
+        LinkedConnection connection = new LinkedConnection();
+        connection.semanticId = from + "/" + trip;
+        connection.departureStationUri = from;
+        connection.arrivalStationUri = to;
+        connection.departureTime = departure;
+        connection.setArrivalTime(arrival);
+        connection.setTrip(trip);
+        connection.route = "http://irail.be/vehicle/IC" + trip.hashCode();
+        connection.direction = "B";
+        connection.pickupType = "gtfs:Regular";
+        connection.dropoffType = "gtfs:Regular";
+        return connection;
+    }
+
+    private static LinkedConnections page(String current, String previous, String next, LinkedConnection... connections) {
+        LinkedConnections page = new LinkedConnections();
+        page.current = current;
+        page.previous = previous;
+        page.next = next;
+        page.connections = connections;
+        return page;
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.opentransportdata.be.experimental.lc2Irail;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.RunnerException;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import be.hyperrail.opentransportdata.be.irail.IrailStationsDataProvider;
+import be.hyperrail.opentransportdata.be.irail.IrailVehicleJourney;
+import be.hyperrail.opentransportdata.benchmarks.Fixtures;
+import be.hyperrail.opentransportdata.common.contracts.QueryTimeDefinition;
+import be.hyperrail.opentransportdata.common.exceptions.StopLocationNotResolvedException;
+import be.hyperrail.opentransportdata.common.models.LiveboardType;
+import be.hyperrail.opentransportdata.common.models.implementation.LiveboardImpl;
+import be.hyperrail.opentransportdata.common.models.implementation.RoutesListImpl;
+import be.hyperrail.opentransportdata.common.requests.LiveboardRequest;
+import be.hyperrail.opentransportdata.common.requests.RoutePlanningRequest;
+import be.hyperrail.opentransportdata.common.requests.VehicleRequest;
+
+/**
+ * Parses lc2irail responses, from the response body to the models shown in the app.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Lc2IrailParserBenchmark {
+
+    static final DateTime SEARCH_TIME = new DateTime(2018, 4, 10, 7, 0, DateTimeZone.UTC);
+
+    private Lc2IrailParser mParser;
+    private LiveboardRequest mLiveboardRequest;
+    private VehicleRequest mVehicleRequest;
+    private RoutePlanningRequest mRoutePlanningRequest;
+    private String mLiveboard;
+    private String mVehicle;
+    private String mConnections;
+
+    @Setup
+    public void setUp() throws IOException, StopLocationNotResolvedException {
+        IrailStationsDataProvider stations = Fixtures.createStationProvider();
+        mParser = new Lc2IrailParser(stations);
+
+        mLiveboard = Fixtures.read("lc2irail/liveboard.json");
+        mVehicle = Fixtures.read("lc2irail/vehicle.json");
+        mConnections = Fixtures.read("lc2irail/connections.json");
+
+        mLiveboardRequest = createLiveboardRequest(stations);
+        mVehicleRequest = new VehicleRequest(new JSONObject(mVehicle).getString("id"), SEARCH_TIME);
+        mRoutePlanningRequest = new RoutePlanningRequest(stations.getStoplocationByHafasId("008891009"), stations.getStoplocationByHafasId("008833001"),
+                QueryTimeDefinition.EQUAL_OR_LATER, SEARCH_TIME);
+    }
+
+    static LiveboardRequest createLiveboardRequest(IrailStationsDataProvider stations) throws StopLocationNotResolvedException {
+        // Brussels-Central
+        return new LiveboardRequest(stations.getStoplocationByHafasId("008813003"), QueryTimeDefinition.EQUAL_OR_LATER, LiveboardType.DEPARTURES, SEARCH_TIME);
+    }
+
+    @Benchmark
+    public LiveboardImpl liveboard() throws JSONException {
+        return mParser.parseLiveboard(mLiveboardRequest, new JSONObject(mLiveboard));
+    }
+
+    @Benchmark
+    public IrailVehicleJourney vehicleJourney() throws JSONException, StopLocationNotResolvedException {
+        return mParser.parseVehicleJourney(mVehicleRequest, new JSONObject(mVehicle));
+    }
+
+    @Benchmark
+    public RoutesListImpl routes() throws JSONException, StopLocationNotResolvedException {
+        return mParser.parseRoutes(mRoutePlanningRequest, new JSONObject(mConnections));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Fixtures.run(Lc2IrailParserBenchmark.class);
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.opentransportdata.be.experimental.lc2Irail;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.RunnerException;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import be.hyperrail.opentransportdata.be.irail.IrailStationsDataProvider;
+import be.hyperrail.opentransportdata.benchmarks.Fixtures;
+import be.hyperrail.opentransportdata.common.exceptions.StopLocationNotResolvedException;
+import be.hyperrail.opentransportdata.common.models.VehicleStop;
+import be.hyperrail.opentransportdata.common.models.implementation.LiveboardImpl;
+import be.hyperrail.opentransportdata.common.requests.LiveboardRequest;
+
+/**
+ * Extends a liveboard page by page, as done when scrolling through a liveboard. The stops are read after every page, like the list which shows them.
+ * Pages overlap by a few departures, which have to be deduplicated.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LiveboardAppendBenchmark {
+
+    private static final int STOPS_PER_PAGE = 10;
+    private static final int OVERLAP = 2;
+
+    private LiveboardImpl[] mPages;
+
+    @Setup
+    public void setUp() throws IOException, JSONException, StopLocationNotResolvedException {
+        IrailStationsDataProvider stations = Fixtures.createStationProvider();
+        LiveboardRequest request = Lc2IrailParserBenchmark.createLiveboardRequest(stations);
+        LiveboardImpl liveboard = new Lc2IrailParser(stations).parseLiveboard(request, new JSONObject(Fixtures.read("lc2irail/liveboard.json")));
+
+        VehicleStop[] stops = liveboard.getStops();
+        int pageCount = (stops.length - OVERLAP) / (STOPS_PER_PAGE - OVERLAP);
+        mPages = new LiveboardImpl[pageCount];
+        for (int i = 0; i < pageCount; i++) {
+            int start = i * (STOPS_PER_PAGE - OVERLAP);
+            mPages[i] = new LiveboardImpl(request.getStation(), Arrays.copyOfRange(stops, start, start + STOPS_PER_PAGE),
+                    request.getSearchTime(), request.getType(), request.getTimeDefinition());
+        }
+    }
+
+    @Benchmark
+    public int appendLaterPages() {
+        LiveboardImpl liveboard = mPages[0];
+        int shown = liveboard.getStops().length;
+        for (int i = 1; i < mPages.length; i++) {
+            liveboard = liveboard.withStopsAppended(mPages[i]);
+            shown += liveboard.getStops().length;
+        }
+        return shown;
+    }
+
+    @Benchmark
+    public int appendEarlierPages() {
+        LiveboardImpl liveboard = mPages[mPages.length - 1];
+        int shown = liveboard.getStops().length;
+        for (int i = mPages.length - 2; i >= 0; i--) {
+            liveboard = liveboard.withStopsAppended(mPages[i]);
+            shown += liveboard.getStops().length;
+        }
+        return shown;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Fixtures.run(LiveboardAppendBenchmark.class);
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.opentransportdata.be.experimental.linkedconnections;
+
+import com.bluelinelabs.logansquare.LoganSquare;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.RunnerException;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import be.hyperrail.opentransportdata.benchmarks.Fixtures;
+
+/**
+ * Parses a morning of linked connections pages, with the annotation based parser and with the streaming parser used by the provider.
+ * Every operation parses all pages, so the allocation rate reported by the gc profiler is per morning.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LinkedConnectionsPageBenchmark {
+
+    private String[] mPages;
+
+    @Setup
+    public void setUp() throws IOException {
+        mPages = Fixtures.readLinkedConnectionsPages();
+    }
+
+    @Benchmark
+    public void loganSquare(Blackhole blackhole) throws IOException {
+        for (String page : mPages) {
+            blackhole.consume(LoganSquare.parse(page, LinkedConnections.class));
+        }
+    }
+
+    @Benchmark
+    public void stream(Blackhole blackhole) throws IOException {
+        LinkedConnectionsStreamParser parser = new LinkedConnectionsStreamParser();
+        for (String page : mPages) {
+            blackhole.consume(parser.parse(page));
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Fixtures.run(LinkedConnectionsPageBenchmark.class);
+    }
+}
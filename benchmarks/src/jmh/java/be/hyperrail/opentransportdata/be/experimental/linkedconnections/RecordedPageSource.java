@@ -0,0 +1,42 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.opentransportdata.be.experimental.linkedconnections;
+
+import java.io.FileNotFoundException;
+import java.util.HashMap;
+import java.util.Map;
+
+import be.hyperrail.opentransportdata.common.contracts.TransportDataErrorResponseListener;
+import be.hyperrail.opentransportdata.common.contracts.TransportDataSuccessResponseListener;
+
+/**
+ * Serves parsed pages from memory instead of loading them through the linked connections provider.
+ * Pages are delivered synchronously on the calling thread, so a query has finished when the call returns.
+ */
+class RecordedPageSource implements LinkedConnectionsPageSource {
+
+    private final Map<String, LinkedConnections> mPages = new HashMap<>();
+
+    /**
+     * @param pages The pages which can be requested, by their own url
+     */
+    RecordedPageSource(LinkedConnections... pages) {
+        for (LinkedConnections page : pages) {
+            mPages.put(page.current, page);
+        }
+    }
+
+    @Override
+    public void getLinkedConnectionsByUrl(String url, TransportDataSuccessResponseListener<LinkedConnections> successListener, TransportDataErrorResponseListener errorListener, Object tag) {
+        LinkedConnections page = mPages.get(url);
+        if (page == null) {
+            errorListener.onErrorResponse(new FileNotFoundException(url), tag);
+        } else {
+            successListener.onSuccessResponse(page, tag);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.opentransportdata.be.experimental.linkedconnections;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.RunnerException;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import be.hyperrail.opentransportdata.be.irail.IrailStationsDataProvider;
+import be.hyperrail.opentransportdata.benchmarks.Fixtures;
+import be.hyperrail.opentransportdata.common.contracts.MeteredDataSource;
+import be.hyperrail.opentransportdata.common.contracts.QueryTimeDefinition;
+import be.hyperrail.opentransportdata.common.exceptions.StopLocationNotResolvedException;
+import be.hyperrail.opentransportdata.common.models.RoutesList;
+import be.hyperrail.opentransportdata.common.models.StopLocation;
+import be.hyperrail.opentransportdata.common.requests.RoutePlanningRequest;
+
+/**
+ * Plans routes with the connection scan algorithm over a morning of linked connections pages, walking back from the last page.
+ * The pages are parsed once, so only the scan itself is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RouteScanBenchmark {
+
+    private static final DateTime SEARCH_TIME = new DateTime(2018, 4, 10, 6, 0, DateTimeZone.UTC);
+
+    private RecordedPageSource mPageSource;
+    private IrailStationsDataProvider mStations;
+    private LinkedConnections mLastPage;
+
+    private StopLocation mBrugge;
+    private StopLocation mLeuven;
+    private StopLocation mOostende;
+    private StopLocation mGenk;
+
+    @Setup
+    public void setUp() throws IOException, StopLocationNotResolvedException {
+        LinkedConnectionsStreamParser parser = new LinkedConnectionsStreamParser();
+        String[] json = Fixtures.readLinkedConnectionsPages();
+        LinkedConnections[] pages = new LinkedConnections[json.length];
+        for (int i = 0; i < json.length; i++) {
+            pages[i] = parser.parse(json[i]);
+        }
+        mPageSource = new RecordedPageSource(pages);
+        mLastPage = pages[pages.length - 1];
+
+        mStations = Fixtures.createStationProvider();
+        mBrugge = mStations.getStoplocationByHafasId("008891009");
+        mLeuven = mStations.getStoplocationByHafasId("008833001");
+        mOostende = mStations.getStoplocationByHafasId("008891702");
+        mGenk = mStations.getStoplocationByHafasId("008831765");
+    }
+
+    @Benchmark
+    public RoutesList directRoute() {
+        return planRoute(mBrugge, mLeuven);
+    }
+
+    @Benchmark
+    public RoutesList transferRoute() {
+        return planRoute(mOostende, mGenk);
+    }
+
+    private RoutesList planRoute(StopLocation origin, StopLocation destination) {
+        final RoutesList[] result = new RoutesList[1];
+        RoutePlanningRequest request = new RoutePlanningRequest(origin, destination, QueryTimeDefinition.EQUAL_OR_LATER, SEARCH_TIME);
+        request.setCallback((data, tag) -> result[0] = data, (e, tag) -> {
+            throw new IllegalStateException(e);
+        }, null);
+
+        RouteResponseListener listener = new RouteResponseListener(mPageSource, mStations, request, SEARCH_TIME);
+        // The recorded pages are served synchronously, so the scan has finished when this call returns
+        listener.onSuccessResponse(mLastPage, new MeteredDataSource.MeteredRequest());
+        if (result[0] == null) {
+            throw new IllegalStateException("No routes found");
+        }
+        return result[0];
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Fixtures.run(RouteScanBenchmark.class);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.opentransportdata.be.irail;
+
+import org.joda.time.DateTime;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.RunnerException;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import be.hyperrail.opentransportdata.benchmarks.Fixtures;
+import be.hyperrail.opentransportdata.common.contracts.QueryTimeDefinition;
+import be.hyperrail.opentransportdata.common.exceptions.StopLocationNotResolvedException;
+import be.hyperrail.opentransportdata.common.models.LiveboardType;
+import be.hyperrail.opentransportdata.common.models.StopLocation;
+import be.hyperrail.opentransportdata.common.models.implementation.LiveboardImpl;
+import be.hyperrail.opentransportdata.common.models.implementation.RoutesListImpl;
+
+/**
+ * Parses recorded api.irail.be responses, from the response body to the models shown in the app.
+ * Stations are resolved through the station database, as they would be on a device.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IrailApiParserBenchmark {
+
+    private static final DateTime LIVEBOARD_SEARCH_TIME = new DateTime(2017, 11, 16, 13, 0);
+    private static final DateTime ROUTE_SEARCH_TIME = new DateTime(2017, 11, 16, 14, 0);
+
+    private IrailApiParser mParser;
+    private StopLocation mOrigin;
+    private StopLocation mDestination;
+    private String mLiveboard;
+    private String mVehicle;
+    private String mConnections;
+
+    @Setup
+    public void setUp() throws IOException, StopLocationNotResolvedException {
+        IrailStationsDataProvider stations = Fixtures.createStationProvider();
+        mParser = new IrailApiParser(stations);
+        mOrigin = stations.getStoplocationByHafasId("008893120");
+        mDestination = stations.getStoplocationByHafasId("008832375");
+        mLiveboard = Fixtures.read("irail/liveboard.json");
+        mVehicle = Fixtures.read("irail/vehicle.json");
+        mConnections = Fixtures.read("irail/connections.json");
+    }
+
+    @Benchmark
+    public LiveboardImpl liveboard() throws JSONException, StopLocationNotResolvedException {
+        return mParser.parseLiveboard(new JSONObject(mLiveboard), LIVEBOARD_SEARCH_TIME, LiveboardType.DEPARTURES, QueryTimeDefinition.EQUAL_OR_LATER);
+    }
+
+    @Benchmark
+    public IrailVehicleJourney vehicleJourney() throws JSONException, StopLocationNotResolvedException {
+        return mParser.parseVehicleJourney(new JSONObject(mVehicle));
+    }
+
+    @Benchmark
+    public RoutesListImpl routes() throws JSONException {
+        return mParser.parseRouteResult(new JSONObject(mConnections), mOrigin, mDestination, ROUTE_SEARCH_TIME, QueryTimeDefinition.EQUAL_OR_LATER);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Fixtures.run(IrailApiParserBenchmark.class);
+    }
+}
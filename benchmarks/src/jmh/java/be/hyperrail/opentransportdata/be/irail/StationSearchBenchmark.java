@@ -0,0 +1,86 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.opentransportdata.be.irail;
+
+import android.location.Location;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.RunnerException;
+
+import java.util.concurrent.TimeUnit;
+
+import be.hyperrail.opentransportdata.benchmarks.Fixtures;
+import be.hyperrail.opentransportdata.common.exceptions.StopLocationNotResolvedException;
+import be.hyperrail.opentransportdata.common.models.StopLocation;
+
+/**
+ * Searches stations in the embedded stations database, as done while typing in a search field or when looking for nearby stations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StationSearchBenchmark {
+
+    private IrailStationsDataProvider mStations;
+    private Location mLocation;
+
+    @Setup
+    public void setUp() {
+        mStations = Fixtures.createStationProvider();
+        // Brussels-Central
+        mLocation = new Location("benchmark");
+        mLocation.setLatitude(50.845658);
+        mLocation.setLongitude(4.356801);
+    }
+
+    @Benchmark
+    public StopLocation[] byName() {
+        return mStations.getStoplocationsByNameOrderBySize("brus");
+    }
+
+    @Benchmark
+    public StopLocation[] byNameWithAccents() {
+        return mStations.getStoplocationsByNameOrderBySize("Liège");
+    }
+
+    @Benchmark
+    public StopLocation[] byNameWithoutResults() {
+        // Unknown names are retried with a shorter name before giving up
+        return mStations.getStoplocationsByNameOrderBySize("Gent (Sint-Pieters)/Xyz");
+    }
+
+    @Benchmark
+    public StopLocation[] byNameNearby() {
+        return mStations.getStoplocationsByNameOrderByLocation("gent", mLocation);
+    }
+
+    @Benchmark
+    public StopLocation[] nearby() {
+        return mStations.getStoplocationsOrderedByLocationAndSize(mLocation, 10);
+    }
+
+    @Benchmark
+    public StopLocation bySemanticId() throws StopLocationNotResolvedException {
+        return mStations.getStoplocationBySemanticId("http://irail.be/stations/NMBS/008892007");
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Fixtures.run(StationSearchBenchmark.class);
+    }
+}
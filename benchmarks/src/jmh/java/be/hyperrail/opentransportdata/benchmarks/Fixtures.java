@@ -0,0 +1,92 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.opentransportdata.benchmarks;
+
+import android.content.Context;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import be.hyperrail.opentransportdata.be.R;
+import be.hyperrail.opentransportdata.be.irail.IrailStationsDataProvider;
+
+/**
+ * Fixtures and shared setup for the benchmarks.
+ * <p>
+ * The fixtures are stored in src/jmh/resources/fixtures:
+ * <ul>
+ * <li>irail: the recorded api.irail.be responses for a liveboard, a vehicle and a route search, which are also used by the parser tests</li>
+ * <li>linkedconnections: 24 consecutive pages of 10 minutes, in the format served by graph.irail.be, for a timetable of 15 lines between real stations</li>
+ * <li>lc2irail: a liveboard, a vehicle and a route search for the same timetable, in the format served by the lc2irail api</li>
+ * </ul>
+ */
+public final class Fixtures {
+
+    public static final int LINKED_CONNECTIONS_PAGES = 24;
+
+    private Fixtures() {
+        // don't instantiate
+    }
+
+    /**
+     * @param name The path of the fixture, relative to the fixtures folder
+     * @return The contents of the fixture
+     */
+    public static String read(String name) throws IOException {
+        try (InputStream stream = Fixtures.class.getClassLoader().getResourceAsStream("fixtures/" + name)) {
+            if (stream == null) {
+                throw new FileNotFoundException("fixtures/" + name);
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                bytes.write(buffer, 0, read);
+            }
+            return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * @return All linked connections pages, ordered by departure time
+     */
+    public static String[] readLinkedConnectionsPages() throws IOException {
+        String[] pages = new String[LINKED_CONNECTIONS_PAGES];
+        for (int i = 0; i < pages.length; i++) {
+            pages[i] = read(String.format("linkedconnections/page-%02d.json", i));
+        }
+        return pages;
+    }
+
+    /**
+     * Create a station provider with the embedded stations list, and load the stations into its database.
+     */
+    public static IrailStationsDataProvider createStationProvider() {
+        IrailStationsDataProvider stations = new IrailStationsDataProvider(new Context(R.raw.class));
+        stations.preloadDatabase();
+        return stations;
+    }
+
+    /**
+     * Run the benchmarks in a class, reporting the allocations next to the throughput.
+     * This allows to run a single benchmark class from the IDE.
+     */
+    public static void run(Class<?> benchmark) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(benchmark.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package android.content;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * JVM stand-in for a set of column values, which keeps the order in which the values were added.
+ */
+public final class ContentValues {
+
+    private final Map<String, Object> mValues = new LinkedHashMap<>();
+
+    public void put(String key, String value) {
+        mValues.put(key, value);
+    }
+
+    public void put(String key, Integer value) {
+        mValues.put(key, value);
+    }
+
+    public void put(String key, Long value) {
+        mValues.put(key, value);
+    }
+
+    public void put(String key, Float value) {
+        mValues.put(key, value);
+    }
+
+    public void put(String key, Double value) {
+        mValues.put(key, value);
+    }
+
+    public void put(String key, Boolean value) {
+        mValues.put(key, value);
+    }
+
+    public void putNull(String key) {
+        mValues.put(key, null);
+    }
+
+    public Object get(String key) {
+        return mValues.get(key);
+    }
+
+    public int size() {
+        return mValues.size();
+    }
+
+    public Set<String> keySet() {
+        return mValues.keySet();
+    }
+
+    public Set<Map.Entry<String, Object>> valueSet() {
+        return mValues.entrySet();
+    }
+}
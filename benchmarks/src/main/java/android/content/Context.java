@@ -0,0 +1,40 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package android.content;
+
+import android.content.res.Resources;
+
+/**
+ * JVM stand-in for an application context, which offers resources and preferences.
+ */
+public class Context {
+
+    private final Resources mResources;
+    private final SharedPreferences mPreferences = new SharedPreferences();
+
+    /**
+     * @param rawResources The R.raw class of the module of which the raw resources should be available
+     */
+    public Context(Class<?> rawResources) {
+        mResources = new Resources(rawResources);
+    }
+
+    public Context getApplicationContext() {
+        return this;
+    }
+
+    public Resources getResources() {
+        return mResources;
+    }
+
+    /**
+     * All preferences are kept in memory, in a single file.
+     */
+    public SharedPreferences getSharedPreferences(String name, int mode) {
+        return mPreferences;
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package android.content;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * JVM stand-in for preferences, which are kept in memory.
+ */
+public class SharedPreferences {
+
+    private final Map<String, Object> mValues = new HashMap<>();
+
+    public synchronized String getString(String key, String defValue) {
+        return mValues.containsKey(key) ? (String) mValues.get(key) : defValue;
+    }
+
+    public synchronized int getInt(String key, int defValue) {
+        return mValues.containsKey(key) ? (Integer) mValues.get(key) : defValue;
+    }
+
+    public synchronized boolean getBoolean(String key, boolean defValue) {
+        return mValues.containsKey(key) ? (Boolean) mValues.get(key) : defValue;
+    }
+
+    public Editor edit() {
+        return new Editor();
+    }
+
+    public class Editor {
+
+        private final Map<String, Object> mChanges = new HashMap<>();
+
+        public Editor putString(String key, String value) {
+            mChanges.put(key, value);
+            return this;
+        }
+
+        public Editor putInt(String key, int value) {
+            mChanges.put(key, value);
+            return this;
+        }
+
+        public Editor putBoolean(String key, boolean value) {
+            mChanges.put(key, value);
+            return this;
+        }
+
+        public void apply() {
+            commit();
+        }
+
+        public boolean commit() {
+            synchronized (SharedPreferences.this) {
+                mValues.putAll(mChanges);
+            }
+            return true;
+        }
+    }
+}
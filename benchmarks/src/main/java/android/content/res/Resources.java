@@ -0,0 +1,47 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package android.content.res;
+
+import java.io.InputStream;
+import java.lang.reflect.Field;
+
+/**
+ * JVM stand-in for the resources of an application. Only raw resources are supported.
+ * <p>
+ * A raw resource is loaded from raw/&lt;name&gt; on the classpath, where the name is the name of the resource id in the R.raw class.
+ */
+public class Resources {
+
+    private final Class<?> mRawResources;
+
+    public Resources(Class<?> rawResources) {
+        mRawResources = rawResources;
+    }
+
+    public InputStream openRawResource(int id) {
+        for (Field field : mRawResources.getFields()) {
+            try {
+                if (field.getType() == int.class && field.getInt(null) == id) {
+                    InputStream stream = Resources.class.getClassLoader().getResourceAsStream("raw/" + field.getName());
+                    if (stream == null) {
+                        throw new NotFoundException("Raw resource " + field.getName() + " is not on the classpath");
+                    }
+                    return stream;
+                }
+            } catch (IllegalAccessException e) {
+                throw new NotFoundException(e.getMessage());
+            }
+        }
+        throw new NotFoundException("Resource ID #0x" + Integer.toHexString(id));
+    }
+
+    public static class NotFoundException extends RuntimeException {
+        public NotFoundException(String name) {
+            super(name);
+        }
+    }
+}
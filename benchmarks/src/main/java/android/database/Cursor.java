@@ -0,0 +1,48 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package android.database;
+
+import java.io.Closeable;
+
+/**
+ * JVM stand-in for the result of a database query.
+ */
+public interface Cursor extends Closeable {
+
+    int getCount();
+
+    int getPosition();
+
+    boolean moveToPosition(int position);
+
+    boolean moveToFirst();
+
+    boolean moveToNext();
+
+    boolean isAfterLast();
+
+    int getColumnIndex(String columnName);
+
+    int getColumnIndexOrThrow(String columnName) throws IllegalArgumentException;
+
+    String getString(int columnIndex);
+
+    int getInt(int columnIndex);
+
+    long getLong(int columnIndex);
+
+    float getFloat(int columnIndex);
+
+    double getDouble(int columnIndex);
+
+    boolean isNull(int columnIndex);
+
+    boolean isClosed();
+
+    @Override
+    void close();
+}
@@ -0,0 +1,153 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package android.database.sqlite;
+
+import android.database.Cursor;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A cursor over all rows of a JDBC result set. The rows are read when the cursor is created, like the window of an Android cursor.
+ */
+class SQLiteCursor implements Cursor {
+
+    private final String[] mColumns;
+    private final List<Object[]> mRows = new ArrayList<>();
+    private int mPosition = -1;
+    private boolean mClosed;
+
+    SQLiteCursor(ResultSet resultSet) throws SQLException {
+        ResultSetMetaData metaData = resultSet.getMetaData();
+        mColumns = new String[metaData.getColumnCount()];
+        for (int i = 0; i < mColumns.length; i++) {
+            mColumns[i] = metaData.getColumnLabel(i + 1);
+        }
+        while (resultSet.next()) {
+            Object[] row = new Object[mColumns.length];
+            for (int i = 0; i < row.length; i++) {
+                row[i] = resultSet.getObject(i + 1);
+            }
+            mRows.add(row);
+        }
+    }
+
+    @Override
+    public int getCount() {
+        return mRows.size();
+    }
+
+    @Override
+    public int getPosition() {
+        return mPosition;
+    }
+
+    @Override
+    public boolean moveToPosition(int position) {
+        if (position < -1) {
+            position = -1;
+        } else if (position > mRows.size()) {
+            position = mRows.size();
+        }
+        mPosition = position;
+        return position >= 0 && position < mRows.size();
+    }
+
+    @Override
+    public boolean moveToFirst() {
+        return moveToPosition(0);
+    }
+
+    @Override
+    public boolean moveToNext() {
+        return moveToPosition(mPosition + 1);
+    }
+
+    @Override
+    public boolean isAfterLast() {
+        return mRows.isEmpty() || mPosition >= mRows.size();
+    }
+
+    @Override
+    public int getColumnIndex(String columnName) {
+        for (int i = 0; i < mColumns.length; i++) {
+            if (mColumns[i].equalsIgnoreCase(columnName)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int getColumnIndexOrThrow(String columnName) {
+        int index = getColumnIndex(columnName);
+        if (index < 0) {
+            throw new IllegalArgumentException("column '" + columnName + "' does not exist");
+        }
+        return index;
+    }
+
+    private Object get(int columnIndex) {
+        if (mPosition < 0 || mPosition >= mRows.size()) {
+            throw new IllegalStateException("Cursor is not positioned on a row");
+        }
+        return mRows.get(mPosition)[columnIndex];
+    }
+
+    @Override
+    public String getString(int columnIndex) {
+        Object value = get(columnIndex);
+        return value == null ? null : value.toString();
+    }
+
+    @Override
+    public int getInt(int columnIndex) {
+        return (int) getLong(columnIndex);
+    }
+
+    @Override
+    public long getLong(int columnIndex) {
+        Object value = get(columnIndex);
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        return value == null ? 0 : Long.parseLong(value.toString());
+    }
+
+    @Override
+    public float getFloat(int columnIndex) {
+        return (float) getDouble(columnIndex);
+    }
+
+    @Override
+    public double getDouble(int columnIndex) {
+        Object value = get(columnIndex);
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        return value == null ? 0 : Double.parseDouble(value.toString());
+    }
+
+    @Override
+    public boolean isNull(int columnIndex) {
+        return get(columnIndex) == null;
+    }
+
+    @Override
+    public boolean isClosed() {
+        return mClosed;
+    }
+
+    @Override
+    public void close() {
+        mClosed = true;
+        mRows.clear();
+    }
+}
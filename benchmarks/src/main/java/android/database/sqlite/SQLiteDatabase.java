@@ -0,0 +1,159 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package android.database.sqlite;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.SQLException;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Map;
+
+/**
+ * JVM stand-in for a SQLite database, which runs the statements on a JDBC connection to the same SQLite engine.
+ */
+public class SQLiteDatabase {
+
+    /**
+     * Creates cursors for queries. Custom cursors aren't supported on the JVM, this only exists to keep the constructor signatures.
+     */
+    public interface CursorFactory {
+    }
+
+    private final Connection mConnection;
+    private boolean mTransactionSuccessful;
+
+    SQLiteDatabase(Connection connection) {
+        mConnection = connection;
+    }
+
+    public void execSQL(String sql) {
+        try (Statement statement = mConnection.createStatement()) {
+            statement.execute(sql);
+        } catch (java.sql.SQLException e) {
+            throw new SQLException(sql, e);
+        }
+    }
+
+    /**
+     * @return The row id of the inserted row, or -1 if an error occurred
+     */
+    public long insert(String table, String nullColumnHack, ContentValues values) {
+        StringBuilder columns = new StringBuilder();
+        StringBuilder placeholders = new StringBuilder();
+        Object[] args = new Object[values.size()];
+        int i = 0;
+        for (Map.Entry<String, Object> value : values.valueSet()) {
+            if (i > 0) {
+                columns.append(',');
+                placeholders.append(',');
+            }
+            columns.append(value.getKey());
+            placeholders.append('?');
+            args[i++] = value.getValue();
+        }
+
+        String sql = "INSERT INTO " + table + " (" + columns + ") VALUES (" + placeholders + ")";
+        try (PreparedStatement statement = mConnection.prepareStatement(sql)) {
+            for (i = 0; i < args.length; i++) {
+                statement.setObject(i + 1, args[i]);
+            }
+            statement.executeUpdate();
+            try (ResultSet keys = statement.getGeneratedKeys()) {
+                return keys.next() ? keys.getLong(1) : -1;
+            }
+        } catch (java.sql.SQLException e) {
+            return -1;
+        }
+    }
+
+    public Cursor query(String table, String[] columns, String selection, String[] selectionArgs, String groupBy, String having, String orderBy) {
+        return query(table, columns, selection, selectionArgs, groupBy, having, orderBy, null);
+    }
+
+    public Cursor query(String table, String[] columns, String selection, String[] selectionArgs, String groupBy, String having, String orderBy, String limit) {
+        StringBuilder sql = new StringBuilder("SELECT ");
+        if (columns == null || columns.length == 0) {
+            sql.append('*');
+        } else {
+            sql.append(String.join(", ", columns));
+        }
+        sql.append(" FROM ").append(table);
+        appendClause(sql, " WHERE ", selection);
+        appendClause(sql, " GROUP BY ", groupBy);
+        appendClause(sql, " HAVING ", having);
+        appendClause(sql, " ORDER BY ", orderBy);
+        appendClause(sql, " LIMIT ", limit);
+        return rawQuery(sql.toString(), selectionArgs);
+    }
+
+    public Cursor rawQuery(String sql, String[] selectionArgs) {
+        try (PreparedStatement statement = mConnection.prepareStatement(sql)) {
+            if (selectionArgs != null) {
+                for (int i = 0; i < selectionArgs.length; i++) {
+                    statement.setString(i + 1, selectionArgs[i]);
+                }
+            }
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return new SQLiteCursor(resultSet);
+            }
+        } catch (java.sql.SQLException e) {
+            throw new SQLException(sql, e);
+        }
+    }
+
+    public void beginTransaction() {
+        try {
+            mConnection.setAutoCommit(false);
+            mTransactionSuccessful = false;
+        } catch (java.sql.SQLException e) {
+            throw new SQLException("BEGIN", e);
+        }
+    }
+
+    public void setTransactionSuccessful() {
+        mTransactionSuccessful = true;
+    }
+
+    public void endTransaction() {
+        try {
+            if (mTransactionSuccessful) {
+                mConnection.commit();
+            } else {
+                mConnection.rollback();
+            }
+            mConnection.setAutoCommit(true);
+        } catch (java.sql.SQLException e) {
+            throw new SQLException("END", e);
+        }
+    }
+
+    public boolean isOpen() {
+        try {
+            return !mConnection.isClosed();
+        } catch (java.sql.SQLException e) {
+            return false;
+        }
+    }
+
+    public void close() {
+        try {
+            mConnection.close();
+        } catch (java.sql.SQLException e) {
+            throw new SQLException("CLOSE", e);
+        }
+    }
+
+    private static void appendClause(StringBuilder sql, String name, String clause) {
+        if (clause != null && !clause.isEmpty()) {
+            sql.append(name).append(clause);
+        }
+    }
+}
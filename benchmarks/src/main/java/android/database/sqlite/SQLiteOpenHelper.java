@@ -0,0 +1,63 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package android.database.sqlite;
+
+import android.content.Context;
+import android.database.SQLException;
+
+import java.sql.DriverManager;
+
+/**
+ * JVM stand-in for a helper which creates a database when it's first opened.
+ * <p>
+ * Databases are kept in memory, so they're created again for every helper instance and never need to be upgraded.
+ */
+public abstract class SQLiteOpenHelper {
+
+    private final String mName;
+    private SQLiteDatabase mDatabase;
+
+    public SQLiteOpenHelper(Context context, String name, SQLiteDatabase.CursorFactory factory, int version) {
+        mName = name;
+    }
+
+    public String getDatabaseName() {
+        return mName;
+    }
+
+    public abstract void onCreate(SQLiteDatabase db);
+
+    public abstract void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion);
+
+    public void onOpen(SQLiteDatabase db) {
+        // No action by default
+    }
+
+    public SQLiteDatabase getReadableDatabase() {
+        return getWritableDatabase();
+    }
+
+    public synchronized SQLiteDatabase getWritableDatabase() {
+        if (mDatabase == null || !mDatabase.isOpen()) {
+            try {
+                mDatabase = new SQLiteDatabase(DriverManager.getConnection("jdbc:sqlite::memory:"));
+            } catch (java.sql.SQLException e) {
+                throw new SQLException("Failed to open " + mName + ", is sqlite-jdbc on the classpath?", e);
+            }
+            onCreate(mDatabase);
+            onOpen(mDatabase);
+        }
+        return mDatabase;
+    }
+
+    public synchronized void close() {
+        if (mDatabase != null) {
+            mDatabase.close();
+            mDatabase = null;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package android.location;
+
+/**
+ * JVM stand-in for a geographic location.
+ */
+public class Location {
+
+    private final String mProvider;
+    private double mLatitude;
+    private double mLongitude;
+
+    public Location(String provider) {
+        mProvider = provider;
+    }
+
+    public String getProvider() {
+        return mProvider;
+    }
+
+    public double getLatitude() {
+        return mLatitude;
+    }
+
+    public void setLatitude(double latitude) {
+        mLatitude = latitude;
+    }
+
+    public double getLongitude() {
+        return mLongitude;
+    }
+
+    public void setLongitude(double longitude) {
+        mLongitude = longitude;
+    }
+}
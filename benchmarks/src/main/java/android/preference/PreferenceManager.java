@@ -0,0 +1,24 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package android.preference;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+/**
+ * JVM stand-in for the default preferences of an application.
+ */
+public final class PreferenceManager {
+
+    private PreferenceManager() {
+        // don't instantiate
+    }
+
+    public static SharedPreferences getDefaultSharedPreferences(Context context) {
+        return context.getSharedPreferences("default", 0);
+    }
+}
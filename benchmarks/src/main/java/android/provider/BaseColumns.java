@@ -0,0 +1,15 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package android.provider;
+
+/**
+ * JVM stand-in for the standard columns of a table.
+ */
+public interface BaseColumns {
+    String _ID = "_id";
+    String _COUNT = "_count";
+}
@@ -0,0 +1,19 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.opentransportdata;
+
+/**
+ * JVM stand-in for the build config of the OpenTransport module. Benchmarks measure release builds.
+ */
+public final class BuildConfig {
+
+    public static final boolean DEBUG = false;
+
+    private BuildConfig() {
+        // don't instantiate
+    }
+}
@@ -0,0 +1,26 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package be.hyperrail.opentransportdata.be;
+
+/**
+ * JVM stand-in for the resource ids of the opentransport_be module.
+ */
+public final class R {
+
+    private R() {
+        // don't instantiate
+    }
+
+    public static final class raw {
+        public static final int stationfacilities = 0x7f0f0000;
+        public static final int stations = 0x7f0f0001;
+
+        private raw() {
+            // don't instantiate
+        }
+    }
+}
@@ -27,20 +27,25 @@ import org.joda.time.format.DateTimeFormatter;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.FileNotFoundException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 
+import be.hyperrail.opentransportdata.async.AsyncTransportDataSource;
+import be.hyperrail.opentransportdata.async.TransportDataFuture;
 import be.hyperrail.opentransportdata.be.irail.util.AsyncJsonPostRequest;
 import be.hyperrail.opentransportdata.common.contracts.QueryTimeDefinition;
+import be.hyperrail.opentransportdata.common.contracts.TransportDataRequest;
 import be.hyperrail.opentransportdata.common.contracts.TransportDataSource;
 import be.hyperrail.opentransportdata.common.contracts.TransportStopsDataSource;
 import be.hyperrail.opentransportdata.common.exceptions.StopLocationNotResolvedException;
 import be.hyperrail.opentransportdata.common.models.Disturbance;
 import be.hyperrail.opentransportdata.common.models.LiveboardType;
 import be.hyperrail.opentransportdata.common.models.Route;
+import be.hyperrail.opentransportdata.common.models.RoutesList;
 import be.hyperrail.opentransportdata.common.models.VehicleStop;
 import be.hyperrail.opentransportdata.common.models.implementation.LiveboardImpl;
 import be.hyperrail.opentransportdata.common.models.implementation.RoutesListImpl;
@@ -105,18 +110,20 @@ public class IrailApi implements TransportDataSource {
                     request.getSearchTime()
             );
 
-            // Create a new routerequest. A successful response will be iterated to find a matching route. An unsuccessful query will cause the original error handler to be called.
-            routesRequest.setCallback((data, tag) -> {
-                for (Route r : data.getRoutes()) {
-                    if (r.getDeparture().getDepartureSemanticId() != null && r.getDeparture().getDepartureSemanticId().equals(
-                            request.getDepartureSemanticId())) {
-                        request.notifySuccessListeners(r);
-                    }
-                }
-            }, (e, tag) -> request.notifyErrorListeners(e), request.getTag());
-
+            // A successful response will be iterated to find a matching route. An unsuccessful query will cause the original error handler to be called.
+            TransportDataFuture<RoutesList> routes = AsyncTransportDataSource.toFuture(routesRequest);
             getRoutes(routesRequest);
+            AsyncTransportDataSource.forward(routes.thenApply(data -> findRoute(data, request.getDepartureSemanticId())), request);
+        }
+    }
+
+    private static Route findRoute(RoutesList routes, String departureSemanticId) throws FileNotFoundException {
+        for (Route r : routes.getRoutes()) {
+            if (r.getDeparture().getDepartureSemanticId() != null && r.getDeparture().getDepartureSemanticId().equals(departureSemanticId)) {
+                return r;
+            }
         }
+        throw new FileNotFoundException("Route " + departureSemanticId + " is no longer available");
     }
 
     @Override
@@ -149,19 +156,16 @@ public class IrailApi implements TransportDataSource {
             locale = Locale.getDefault().getISO3Language();
         }
 
+        String timeSel = request.getTimeDefinition() == QueryTimeDefinition.EQUAL_OR_LATER ? "depart" : "arrive";
         String url = BASE_URL + "/connections/?format=json"
                 + "&to=" + request.getDestination().getHafasId()
                 + "&from=" + request.getOrigin().getHafasId()
                 + "&date=" + dateformat.print(request.getSearchTime())
                 + "&time=" + timeformat.print(request.getSearchTime().withZone(DateTimeZone.forID("Europe/Brussels")))
-                + "&lang=" + locale.substring(0, 2);
+                + "&lang=" + locale.substring(0, 2)
+                + "&timeSel=" + timeSel;
 
-        if (request.getTimeDefinition() == QueryTimeDefinition.EQUAL_OR_LATER) {
-            url += "&timeSel=depart";
-        } else {
-            url += "&timeSel=arrive";
-        }
-        log.debug("Fetching connections from " + url);
+        log.debug(() -> "Fetching connections from " + url);
         Response.Listener<JSONObject> successListener = response -> {
             RoutesListImpl routeResult;
             try {
@@ -182,7 +186,7 @@ public class IrailApi implements TransportDataSource {
             request.notifyErrorListeners(e);
         };
 
-        JsonObjectRequest jsObjRequest = getRequestObject(url, successListener, errorListener, request.getRequestTypeTag());
+        JsonObjectRequest jsObjRequest = getRequestObject(url, request, successListener, errorListener, request.getRequestTypeTag());
 
         tryOnlineOrServerCache(jsObjRequest, successListener, errorListener);
     }
@@ -245,7 +249,7 @@ public class IrailApi implements TransportDataSource {
                 + "&date=" + dateformat.print(request.getSearchTime())
                 + "&time=" + timeformat.print(request.getSearchTime().withZone(DateTimeZone.forID("Europe/Brussels")))
                 + "&arrdep=" + ((request.getType() == LiveboardType.DEPARTURES) ? "dep" : "arr");
-        log.info("Fetching liveboard from " + url);
+        log.info(() -> "Fetching liveboard from " + url);
         Response.Listener<JSONObject> successListener = response -> {
             LiveboardImpl result;
             try {
@@ -264,7 +268,7 @@ public class IrailApi implements TransportDataSource {
             request.notifyErrorListeners(e);
         };
 
-        JsonObjectRequest jsObjRequest = getRequestObject(url, successListener, errorListener, request.getRequestTypeTag());
+        JsonObjectRequest jsObjRequest = getRequestObject(url, request, successListener, errorListener, request.getRequestTypeTag());
 
         tryOnlineOrServerCache(jsObjRequest, successListener, errorListener);
     }
@@ -283,7 +287,7 @@ public class IrailApi implements TransportDataSource {
         String url = BASE_URL + "/vehicle/?format=json"
                 + "&id=" + request.getVehicleId() + "&date=" + dateTimeformat.print(
                 request.getSearchTime());
-        log.info("Fetching vehicle route from " + url);
+        log.info(() -> "Fetching vehicle route from " + url);
         Response.Listener<JSONObject> successListener = response -> {
             IrailVehicleJourney result;
             try {
@@ -300,7 +304,7 @@ public class IrailApi implements TransportDataSource {
             log.warning("Failed to get vehicle:" + e.getMessage());
             request.notifyErrorListeners(e);
         };
-        JsonObjectRequest jsObjRequest = getRequestObject(url, successListener, errorListener, request.getRequestTypeTag());
+        JsonObjectRequest jsObjRequest = getRequestObject(url, request, successListener, errorListener, request.getRequestTypeTag());
 
         tryOnlineOrServerCache(jsObjRequest, successListener, errorListener);
     }
@@ -349,7 +353,7 @@ public class IrailApi implements TransportDataSource {
         }
 
         String url = BASE_URL + "/disturbances/?format=json&lineBreakCharacter=<br>&lang=" + locale.substring(0, 2);
-        log.info("Fetching disturbances from " + url);
+        log.info(() -> "Fetching disturbances from " + url);
         Response.Listener<JSONObject> successListener = response -> {
             Disturbance[] result;
             try {
@@ -367,7 +371,7 @@ public class IrailApi implements TransportDataSource {
             request.notifyErrorListeners(e);
         };
 
-        JsonObjectRequest jsObjRequest = getRequestObject(url, successListener, errorListener, request.getRequestTypeTag());
+        JsonObjectRequest jsObjRequest = getRequestObject(url, request, successListener, errorListener, request.getRequestTypeTag());
         tryOnlineOrServerCache(jsObjRequest, successListener, errorListener);
     }
 
@@ -383,7 +387,7 @@ public class IrailApi implements TransportDataSource {
     public void getVehicleComposition(VehicleCompositionRequest request) {
         String url = BASE_URL + "/composition/?format=json"
                 + "&id=" + request.getVehicleId();
-        log.info("Fetching vehicle composition from " + url);
+        log.info(() -> "Fetching vehicle composition from " + url);
         Response.Listener<JSONObject> successListener = response -> {
             VehicleCompositionImpl result;
             try {
@@ -402,12 +406,12 @@ public class IrailApi implements TransportDataSource {
             request.notifyErrorListeners(e);
         };
 
-        JsonObjectRequest jsObjRequest = getRequestObject(url, successListener, errorListener, request.getRequestTypeTag());
+        JsonObjectRequest jsObjRequest = getRequestObject(url, request, successListener, errorListener, request.getRequestTypeTag());
 
         tryOnlineOrServerCache(jsObjRequest, successListener, errorListener);
     }
 
-    private JsonObjectRequest getRequestObject(String url, Response.Listener<JSONObject> successListener, Response.ErrorListener errorListener, int tag) {
+    private JsonObjectRequest getRequestObject(String url, TransportDataRequest<?> request, Response.Listener<JSONObject> successListener, Response.ErrorListener errorListener, int tag) {
         JsonObjectRequest jsObjRequest = new JsonObjectRequest
                 (Request.Method.GET, url, null, successListener, errorListener) {
             @Override
@@ -420,6 +424,8 @@ public class IrailApi implements TransportDataSource {
 
         jsObjRequest.setRetryPolicy(requestPolicy);
         jsObjRequest.setTag(tag);
+        // Volley won't deliver a response for a cancelled request
+        request.addOnCancelListener(jsObjRequest::cancel);
         return jsObjRequest;
     }
 
@@ -431,11 +437,11 @@ public class IrailApi implements TransportDataSource {
      * @param errorListener   The listener for unsuccessful responses
      */
     private void tryOnlineOrServerCache(JsonObjectRequest jsObjRequest, Response.Listener<JSONObject> successListener, Response.ErrorListener errorListener) {
-        log.debug("Making request to iRail API at " + jsObjRequest.getUrl());
+        log.debug(() -> "Making request to iRail API at " + jsObjRequest.getUrl());
         if (isInternetAvailable()) {
             requestQueue.add(jsObjRequest);
         } else {
-            log.debug("Offline, using cache for " + jsObjRequest.getUrl());
+            log.debug(() -> "Offline, using cache for " + jsObjRequest.getUrl());
             if (requestQueue.getCache().get(jsObjRequest.getCacheKey()) != null) {
                 try {
                     JSONObject cache = new JSONObject(new String(requestQueue.getCache().get(jsObjRequest.getCacheKey()).data));
@@ -446,7 +452,7 @@ public class IrailApi implements TransportDataSource {
                 }
 
             } else {
-                log.debug("No cache for " + jsObjRequest.getUrl());
+                log.debug(() -> "No cache for " + jsObjRequest.getUrl());
                 errorListener.onErrorResponse(new NoConnectionError());
             }
         }
@@ -485,7 +491,7 @@ public class IrailApi implements TransportDataSource {
 
     @Override
     public void abortQueries(RequestType type) {
-        log.info("Aborting all queries for type " + type);
+        log.info(() -> "Aborting all queries for type " + type);
         this.requestQueue.cancelAll(type.getRequestTypeTag());
     }
 
@@ -15,153 +15,97 @@ package be.hyperrail.opentransportdata.be.irail;
 import org.joda.time.DateTime;
 
 import be.hyperrail.opentransportdata.OpenTransportApi;
+import be.hyperrail.opentransportdata.async.AsyncTransportDataSource;
+import be.hyperrail.opentransportdata.async.TransportDataFuture;
 import be.hyperrail.opentransportdata.common.contracts.QueryTimeDefinition;
-import be.hyperrail.opentransportdata.common.contracts.TransportDataErrorResponseListener;
-import be.hyperrail.opentransportdata.common.contracts.TransportDataSource;
-import be.hyperrail.opentransportdata.common.contracts.TransportDataSuccessResponseListener;
 import be.hyperrail.opentransportdata.common.models.Liveboard;
+import be.hyperrail.opentransportdata.common.models.VehicleStop;
 import be.hyperrail.opentransportdata.common.models.VehicleStopType;
 import be.hyperrail.opentransportdata.common.models.implementation.LiveboardImpl;
 import be.hyperrail.opentransportdata.common.requests.ExtendLiveboardRequest;
 import be.hyperrail.opentransportdata.common.requests.LiveboardRequest;
-import be.hyperrail.opentransportdata.common.requests.ResultExtensionType;
 
 /**
  * A class which allows to withStopsAppended liveboards.
  */
-public class IrailLiveboardExtendHelper implements TransportDataSuccessResponseListener<Liveboard>, TransportDataErrorResponseListener {
+public class IrailLiveboardExtendHelper {
 
-    private static final int TAG_APPEND = 0;
-    private static final int TAG_PREPEND = 1;
+    private static final int MAX_ATTEMPTS = 12;
 
-    private int attempt = 0;
-    private DateTime lastSearchTime;
-    private LiveboardImpl originalLiveboard;
-    private ExtendLiveboardRequest mExtendRequest;
-
-    private TransportDataSource api = OpenTransportApi.getDataProviderInstance();
+    private AsyncTransportDataSource api = OpenTransportApi.getAsyncDataProviderInstance();
 
     public void extendLiveboard(ExtendLiveboardRequest extendRequest) {
+        AsyncTransportDataSource.forward(getExtendedLiveboard(extendRequest), extendRequest);
+    }
+
+    /**
+     * Search for stops before or after the liveboard of the request, until new stops are found or the maximum number of attempts is reached.
+     *
+     * @return The extended liveboard, or the original liveboard if no new stops were found
+     */
+    public TransportDataFuture<Liveboard> getExtendedLiveboard(ExtendLiveboardRequest extendRequest) {
+        LiveboardImpl originalLiveboard = (LiveboardImpl) extendRequest.getLiveboard();
         switch (extendRequest.getAction()) {
             default:
             case APPEND:
-                appendLiveboard(extendRequest);
-                break;
+                return appendLiveboard(originalLiveboard, getAppendSearchTime(originalLiveboard), 0);
             case PREPEND:
-                prependLiveboard(extendRequest);
-                break;
+                return prependLiveboard(originalLiveboard, getPrependSearchTime(originalLiveboard), 0);
         }
     }
 
-    private void appendLiveboard(ExtendLiveboardRequest extendRequest) {
-
-        this.originalLiveboard = (LiveboardImpl) extendRequest.getLiveboard();
-        mExtendRequest = extendRequest;
-
-        if (originalLiveboard.getStops().length > 0) {
-            if (originalLiveboard.getStops()[originalLiveboard.getStops().length - 1].getType() == VehicleStopType.DEPARTURE) {
-                this.lastSearchTime = originalLiveboard.getStops()[originalLiveboard.getStops().length - 1].getDepartureTime().minusMinutes(3);
+    private DateTime getAppendSearchTime(LiveboardImpl originalLiveboard) {
+        VehicleStop[] stops = originalLiveboard.getStops();
+        if (stops.length > 0) {
+            if (stops[stops.length - 1].getType() == VehicleStopType.DEPARTURE) {
+                return stops[stops.length - 1].getDepartureTime().minusMinutes(3);
             } else {
-                this.lastSearchTime = originalLiveboard.getStops()[originalLiveboard.getStops().length - 1].getArrivalTime().minusMinutes(3);
+                return stops[stops.length - 1].getArrivalTime().minusMinutes(3);
             }
         } else {
-            this.lastSearchTime = originalLiveboard.getSearchTime().plusHours(1);
+            return originalLiveboard.getSearchTime().plusHours(1);
         }
-
-        makeLiveboardRequest(ResultExtensionType.APPEND);
     }
 
-    private void makeLiveboardRequest(ResultExtensionType action) {
-        if (action == ResultExtensionType.APPEND) {
-            LiveboardRequest request = new LiveboardRequest(originalLiveboard, QueryTimeDefinition.EQUAL_OR_LATER, originalLiveboard.getLiveboardType(), lastSearchTime);
-            request.setCallback(this, this, TAG_APPEND);
-            api.getLiveboard(request);
-        } else {
-            LiveboardRequest request = new LiveboardRequest(originalLiveboard, QueryTimeDefinition.EQUAL_OR_EARLIER, originalLiveboard.getLiveboardType(), lastSearchTime);
-            request.setCallback(this, this, TAG_PREPEND);
-            api.getLiveboard(request);
-        }
-    }
-
-
-    private void prependLiveboard(ExtendLiveboardRequest extendRequest) {
-        this.originalLiveboard = (LiveboardImpl) extendRequest.getLiveboard();
-        mExtendRequest = extendRequest;
-
-        if (originalLiveboard.getStops().length > 0) {
-            if (originalLiveboard.getStops()[originalLiveboard.getStops().length - 1].getType() == VehicleStopType.DEPARTURE) {
-                this.lastSearchTime = originalLiveboard.getStops()[0].getDepartureTime().minusHours(1);
+    private DateTime getPrependSearchTime(LiveboardImpl originalLiveboard) {
+        VehicleStop[] stops = originalLiveboard.getStops();
+        if (stops.length > 0) {
+            if (stops[stops.length - 1].getType() == VehicleStopType.DEPARTURE) {
+                return stops[0].getDepartureTime().minusHours(1);
             } else {
-                this.lastSearchTime = originalLiveboard.getStops()[0].getArrivalTime().minusHours(1);
+                return stops[0].getArrivalTime().minusHours(1);
             }
         } else {
-            this.lastSearchTime = originalLiveboard.getSearchTime().minusHours(1);
-        }
-
-        makeLiveboardRequest(ResultExtensionType.PREPEND);
-    }
-
-    @Override
-    public void onSuccessResponse(Liveboard data, Object tag) {
-        switch ((int) tag) {
-            case TAG_APPEND:
-                handleAppendSuccessResponse((LiveboardImpl) data);
-                break;
-            case TAG_PREPEND:
-                handlePrependSuccessResponse((LiveboardImpl) data);
-                break;
-            default:
-                throw new IllegalArgumentException("Invalid tag");
+            return originalLiveboard.getSearchTime().minusHours(1);
         }
     }
 
-    /**
-     * Handle a successful response when prepending a liveboard
-     *
-     * @param data The newly received data
-     */
-    private void handlePrependSuccessResponse(LiveboardImpl data) {
-        // If there is new data
-        if (data.getStops().length > 0) {
-            mExtendRequest.notifySuccessListeners(originalLiveboard.withStopsAppended(data));
-        } else {
-            attempt++;
-            lastSearchTime = lastSearchTime.minusHours(1);
-
-            if (attempt < 12) {
-                makeLiveboardRequest(ResultExtensionType.PREPEND);
-            } else {
-                mExtendRequest.notifySuccessListeners(originalLiveboard);
+    private TransportDataFuture<Liveboard> appendLiveboard(final LiveboardImpl originalLiveboard, final DateTime searchTime, final int attempt) {
+        LiveboardRequest request = new LiveboardRequest(originalLiveboard, QueryTimeDefinition.EQUAL_OR_LATER, originalLiveboard.getLiveboardType(), searchTime);
+        return api.getLiveboard(request).thenCompose(data -> {
+            LiveboardImpl withNewStops = originalLiveboard.withStopsAppended((LiveboardImpl) data);
+            if (withNewStops.getStopList().size() > originalLiveboard.getStopList().size()) {
+                return TransportDataFuture.completed(withNewStops);
+            }
+            if (attempt + 1 >= MAX_ATTEMPTS) {
+                return TransportDataFuture.completed(originalLiveboard);
             }
-        }
-    }
-
-    /**
-     * Handle a successful response when appending a liveboard
-     *
-     * @param data The newly received data
-     */
-    private void handleAppendSuccessResponse(LiveboardImpl data) {
-        Liveboard withNewStops = originalLiveboard.withStopsAppended(data);
-
-        if (withNewStops.getStops().length > originalLiveboard.getStops().length) {
-            mExtendRequest.notifySuccessListeners(withNewStops);
-        } else {
             // No results, search two hours further in case this day doesn't have results.
             // Skip 2 hours at once, possible due to large API pages.
-            attempt++;
-            lastSearchTime = lastSearchTime.plusHours(2);
-
-            if (attempt < 12) {
-                makeLiveboardRequest(ResultExtensionType.APPEND);
-            } else {
-                mExtendRequest.notifySuccessListeners(originalLiveboard);
-            }
-        }
+            return appendLiveboard(originalLiveboard, searchTime.plusHours(2), attempt + 1);
+        });
     }
 
-    @Override
-    public void onErrorResponse(Exception e, Object tag) {
-        mExtendRequest.notifyErrorListeners(e);
+    private TransportDataFuture<Liveboard> prependLiveboard(final LiveboardImpl originalLiveboard, final DateTime searchTime, final int attempt) {
+        LiveboardRequest request = new LiveboardRequest(originalLiveboard, QueryTimeDefinition.EQUAL_OR_EARLIER, originalLiveboard.getLiveboardType(), searchTime);
+        return api.getLiveboard(request).thenCompose(data -> {
+            if (data.getStops().length > 0) {
+                return TransportDataFuture.completed(originalLiveboard.withStopsAppended((LiveboardImpl) data));
+            }
+            if (attempt + 1 >= MAX_ATTEMPTS) {
+                return TransportDataFuture.completed(originalLiveboard);
+            }
+            return prependLiveboard(originalLiveboard, searchTime.minusHours(1), attempt + 1);
+        });
     }
 }
@@ -21,135 +21,77 @@ package be.hyperrail.opentransportdata.be.irail;
 import org.joda.time.DateTime;
 
 import be.hyperrail.opentransportdata.OpenTransportApi;
+import be.hyperrail.opentransportdata.async.AsyncTransportDataSource;
+import be.hyperrail.opentransportdata.async.TransportDataFuture;
 import be.hyperrail.opentransportdata.common.contracts.QueryTimeDefinition;
-import be.hyperrail.opentransportdata.common.contracts.TransportDataErrorResponseListener;
-import be.hyperrail.opentransportdata.common.contracts.TransportDataSource;
-import be.hyperrail.opentransportdata.common.contracts.TransportDataSuccessResponseListener;
-import be.hyperrail.opentransportdata.common.models.Route;
 import be.hyperrail.opentransportdata.common.models.RoutesList;
 import be.hyperrail.opentransportdata.common.models.implementation.RoutesListImpl;
 import be.hyperrail.opentransportdata.common.requests.ExtendRoutePlanningRequest;
 import be.hyperrail.opentransportdata.common.requests.RoutePlanningRequest;
-import be.hyperrail.opentransportdata.util.ArrayUtils;
 
 /**
  * A class which allows to withStopsAppended route results.
  */
-public class IrailRouteExtendHelper implements TransportDataSuccessResponseListener<RoutesList>, TransportDataErrorResponseListener {
+public class IrailRouteExtendHelper {
 
-    private final int TAG_APPEND = 0;
-    private final int TAG_PREPEND = 1;
+    private static final int MAX_ATTEMPTS = 12;
 
-    private int attempt = 0;
-    private DateTime lastSearchTime;
-    private RoutesList originalRouteResult;
-
-    private TransportDataSource api = OpenTransportApi.getDataProviderInstance();
-    private ExtendRoutePlanningRequest mExtendRoutePlanningRequest;
+    private AsyncTransportDataSource api = OpenTransportApi.getAsyncDataProviderInstance();
 
     public void extendRoutesRequest(ExtendRoutePlanningRequest extendRoutePlanningRequest) {
+        AsyncTransportDataSource.forward(getExtendedRoutes(extendRoutePlanningRequest), extendRoutePlanningRequest);
+    }
+
+    /**
+     * Search for routes before or after the routes of the request, until new routes are found or the maximum number of attempts is reached.
+     *
+     * @return The extended routes, or the original routes if no new routes were found
+     */
+    public TransportDataFuture<RoutesList> getExtendedRoutes(ExtendRoutePlanningRequest extendRoutePlanningRequest) {
+        RoutesList originalRouteResult = extendRoutePlanningRequest.getRoutes();
         switch (extendRoutePlanningRequest.getAction()) {
             default:
             case APPEND:
-                appendRouteResult(extendRoutePlanningRequest);
-                break;
+                DateTime appendSearchTime;
+                if (originalRouteResult.getRoutes().length > 0) {
+                    appendSearchTime = originalRouteResult.getRoutes()[originalRouteResult.getRoutes().length - 1].getDepartureTime().plusMinutes(1);
+                } else {
+                    appendSearchTime = originalRouteResult.getSearchTime().plusHours(1);
+                }
+                return extendRoutes(originalRouteResult, QueryTimeDefinition.EQUAL_OR_LATER, appendSearchTime, 0);
             case PREPEND:
-                prependRouteResult(extendRoutePlanningRequest);
-                break;
+                DateTime prependSearchTime;
+                if (originalRouteResult.getRoutes().length > 0) {
+                    prependSearchTime = originalRouteResult.getRoutes()[0].getArrivalTime().minusMinutes(1);
+                } else {
+                    prependSearchTime = originalRouteResult.getSearchTime();
+                }
+                return extendRoutes(originalRouteResult, QueryTimeDefinition.EQUAL_OR_EARLIER, prependSearchTime, 0);
         }
     }
 
-    private void appendRouteResult(ExtendRoutePlanningRequest extendRoutePlanningRequest) {
-        mExtendRoutePlanningRequest = extendRoutePlanningRequest;
-
-        this.originalRouteResult = extendRoutePlanningRequest.getRoutes();
-
-        if (originalRouteResult.getRoutes().length > 0) {
-            lastSearchTime = originalRouteResult.getRoutes()[originalRouteResult.getRoutes().length - 1].getDepartureTime().plusMinutes(1);
-        } else {
-            lastSearchTime = originalRouteResult.getSearchTime().plusHours(1);
-        }
-        RoutePlanningRequest request = new RoutePlanningRequest(originalRouteResult.getOrigin(), originalRouteResult.getDestination(), QueryTimeDefinition.EQUAL_OR_LATER, lastSearchTime);
-        request.setCallback(this, this, TAG_APPEND);
-        api.getRoutePlanning(request);
-    }
-
-    private void prependRouteResult(ExtendRoutePlanningRequest extendRoutePlanningRequest) {
-        mExtendRoutePlanningRequest = extendRoutePlanningRequest;
-
-        this.originalRouteResult = extendRoutePlanningRequest.getRoutes();
-
-        if (originalRouteResult.getRoutes().length > 0) {
-            lastSearchTime = originalRouteResult.getRoutes()[0].getArrivalTime().minusMinutes(1);
-        } else {
-            lastSearchTime = originalRouteResult.getSearchTime();
-        }
-
-        RoutePlanningRequest request = new RoutePlanningRequest(originalRouteResult.getOrigin(), originalRouteResult.getDestination(), QueryTimeDefinition.EQUAL_OR_EARLIER, lastSearchTime);
-        request.setCallback(this, this, TAG_PREPEND);
-        api.getRoutePlanning(request);
-    }
-
-    @Override
-    public void onSuccessResponse(RoutesList data, Object tag) {
-        switch ((int) tag) {
-            case TAG_APPEND:
-                handleAppendSuccessResponse((RoutesListImpl) data);
-                break;
-            case TAG_PREPEND:
-                handlePrependSuccessResponse((RoutesListImpl) data);
-                break;
-        }
-    }
-
-    /**
-     * Handle a successful response when prepending a route result
-     *
-     * @param data The newly received data
-     */
-    private void handlePrependSuccessResponse(RoutesListImpl data) {
-        if (data.getRoutes().length > 0) {
-            Route[] mergedRoutes = ArrayUtils.concatenate(data.getRoutes(), originalRouteResult.getRoutes());
-            RoutesListImpl merged = new RoutesListImpl(originalRouteResult.getOrigin(), originalRouteResult.getDestination(), originalRouteResult.getSearchTime(), originalRouteResult.getTimeDefinition(), mergedRoutes);
-            mExtendRoutePlanningRequest.notifySuccessListeners(merged);
-        } else {
-            attempt++;
-            lastSearchTime = lastSearchTime.minusHours(2);
-            if (attempt < 12) {
-                RoutePlanningRequest request = new RoutePlanningRequest(originalRouteResult.getOrigin(), originalRouteResult.getDestination(), QueryTimeDefinition.EQUAL_OR_EARLIER, lastSearchTime);
-                request.setCallback(this, this, TAG_PREPEND);
-                api.getRoutePlanning(request);
-            } else {
-                mExtendRoutePlanningRequest.notifySuccessListeners(originalRouteResult);
+    private TransportDataFuture<RoutesList> extendRoutes(final RoutesList originalRouteResult, final QueryTimeDefinition timeDefinition, final DateTime searchTime, final int attempt) {
+        RoutePlanningRequest request = new RoutePlanningRequest(originalRouteResult.getOrigin(), originalRouteResult.getDestination(), timeDefinition, searchTime);
+        return api.getRoutePlanning(request).thenCompose(data -> {
+            if (data.getRoutes().length > 0) {
+                return TransportDataFuture.completed(getRoutesList(originalRouteResult).withRoutesAppended(data));
             }
-        }
+            if (attempt + 1 >= MAX_ATTEMPTS) {
+                return TransportDataFuture.completed(originalRouteResult);
+            }
+            // No results, search two hours further in case this period doesn't have results.
+            DateTime nextSearchTime = timeDefinition == QueryTimeDefinition.EQUAL_OR_LATER ? searchTime.plusHours(2) : searchTime.minusHours(2);
+            return extendRoutes(originalRouteResult, timeDefinition, nextSearchTime, attempt + 1);
+        });
     }
 
     /**
-     * Handle a successful response when appending a route result
-     *
-     * @param data The newly received data
+     * Get the original routes as a list which can be extended.
      */
-    private void handleAppendSuccessResponse(RoutesListImpl data) {
-        if (data.getRoutes().length > 0) {
-            Route[] mergedRoutes = ArrayUtils.concatenate(originalRouteResult.getRoutes(), data.getRoutes());
-            RoutesListImpl merged = new RoutesListImpl(originalRouteResult.getOrigin(), originalRouteResult.getDestination(), originalRouteResult.getSearchTime(), originalRouteResult.getTimeDefinition(), mergedRoutes);
-            mExtendRoutePlanningRequest.notifySuccessListeners(merged);
-        } else {
-            attempt++;
-            lastSearchTime = lastSearchTime.plusHours(2);
-            if (attempt < 12) {
-                RoutePlanningRequest request = new RoutePlanningRequest(originalRouteResult.getOrigin(), originalRouteResult.getDestination(), QueryTimeDefinition.EQUAL_OR_LATER, lastSearchTime);
-                request.setCallback(this, this, TAG_APPEND);
-                api.getRoutePlanning(request);
-            } else {
-                mExtendRoutePlanningRequest.notifySuccessListeners(originalRouteResult);
-            }
+    private static RoutesListImpl getRoutesList(RoutesList originalRouteResult) {
+        if (originalRouteResult instanceof RoutesListImpl) {
+            return (RoutesListImpl) originalRouteResult;
         }
-    }
-
-    @Override
-    public void onErrorResponse(Exception e, Object tag) {
-        mExtendRoutePlanningRequest.notifyErrorListeners(e);
+        return new RoutesListImpl(originalRouteResult.getOrigin(), originalRouteResult.getDestination(), originalRouteResult.getSearchTime(), originalRouteResult.getTimeDefinition(), originalRouteResult.getRoutes());
     }
 }
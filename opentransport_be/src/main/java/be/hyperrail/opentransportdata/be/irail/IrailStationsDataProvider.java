@@ -191,7 +191,6 @@ public class IrailStationsDataProvider implements TransportStopsDataSource {
             // TODO: remove in the future when it is 100% sure this is no longer used
             id = id.substring(8);
             log.info("Incorrect call to getStopLocationByHafasId");
-            log.info(Arrays.toString(Thread.currentThread().getStackTrace()));
             log.logException(new IllegalStateException("getStopLocationByHAfasId should not be used with a BE.NMBS.* id"));
         }
 
@@ -154,7 +154,8 @@ class IrailStopsDatabase extends SQLiteOpenHelper {
         field = fields.next();
         insertDoubleSafely(values, field, StationsDataColumns.COLUMN_NAME_AVG_STOP_TIMES);
 
-        field = fields.next();
+        // The scanner doesn't return a trailing empty field, which is the case for stations without a transfer time
+        field = fields.hasNext() ? fields.next() : null;
         insertDoubleSafely(values, field, StationsDataColumns.COLUMN_NAME_OFFICIAL_TRANSFER_TIME);
         // Insert row
         db.insert(StationsDataColumns.TABLE_NAME, null, values);
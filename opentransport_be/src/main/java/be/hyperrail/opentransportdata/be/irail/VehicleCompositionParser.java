@@ -88,19 +88,17 @@ class VehicleCompositionParser {
 
     private int getResourceIdForTrain(Context appContext, NmbsTrainType trainType) {
         String resourceName = ("sncb_" + trainType.parentType + "_" + trainType.subType + "_" + trainType.orientation).toLowerCase();
-        log.info("Getting vehicle image for " + resourceName);
+        log.debug(() -> "Getting vehicle image for " + resourceName);
         Resources resources = appContext.getResources();
         int resourceId = resources.getIdentifier(resourceName, "drawable", appContext.getPackageName());
 
         if (resourceId == 0) {
             // Locomotives don't have a subtype
-            resourceName = ("sncb_" + trainType.parentType + "_" + trainType.orientation).toLowerCase();
-            resources = appContext.getResources();
-            resourceId = resources.getIdentifier(resourceName, "drawable", appContext.getPackageName());
-        }
-
-        if (resourceId == 0) {
-            log.warning("Could not find image for vehicle " + resourceName);
+            String locomotiveResourceName = ("sncb_" + trainType.parentType + "_" + trainType.orientation).toLowerCase();
+            resourceId = resources.getIdentifier(locomotiveResourceName, "drawable", appContext.getPackageName());
+            if (resourceId == 0) {
+                log.warning("Could not find image for vehicle " + locomotiveResourceName);
+            }
         }
         return resourceId;
     }